@@ -0,0 +1,43 @@
+package com.mt.agent.workflow.api.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * 会话缓存近端缓存配置
+ * 体积较大、读多写少的会话域（格式化后的表信息、表结构）在进程内保留一份，
+ * 写入时通过Redis发布订阅通知其他节点失效
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "buffer-near-cache")
+public class BufferNearCacheProperties {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled = true;
+
+    /**
+     * 进程内缓存容量上限（MB），按字符串大小计重
+     */
+    private int maxSizeMb = 64;
+
+    /**
+     * 本地条目最长存活时间（秒），失效通知丢失时以此兜底
+     */
+    private int ttlSeconds = 300;
+
+    /**
+     * 使用近端缓存的域名前缀
+     */
+    private List<String> fieldPrefixes = List.of("session_table_info_", "session_table_schema_", "TableSchema_result");
+
+    /**
+     * 跨节点失效通知的Redis频道
+     */
+    private String invalidationTopic = "coze:buffer:invalidate";
+}
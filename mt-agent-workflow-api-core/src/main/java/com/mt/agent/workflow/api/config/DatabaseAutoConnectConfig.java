@@ -1,37 +1,163 @@
 package com.mt.agent.workflow.api.config;
 
+import com.mt.agent.workflow.api.entity.DbConfig;
+import com.mt.agent.workflow.api.service.DbConfigService;
 import com.mt.agent.workflow.api.service.DbConnectionManagerService;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.stereotype.Component;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * 数据库自动连接配置
- * 在应用启动时自动初始化所有启用的数据库连接
+ * 数据库连接池预热
+ * 连接池默认在首次查询时创建；启动时只在后台并行预热external-db-pool.warm-up-db-config-ids中的库，
+ * 不阻塞启动，单个库超时或失败不影响其他库，进度通过就绪探针（dbPoolWarmUp健康检查）暴露
  */
 @Slf4j
 @Component
 public class DatabaseAutoConnectConfig implements ApplicationRunner {
-    
+
     @Autowired
     private DbConnectionManagerService dbConnectionManagerService;
-    
+    @Autowired
+    private DbConfigService dbConfigService;
+    @Autowired
+    private ExternalDbPoolProperties properties;
+
+    /**
+     * 单个库的预热状态
+     */
+    public enum WarmUpState {
+        PENDING, RUNNING, SUCCEEDED, FAILED, TIMEOUT, SKIPPED
+    }
+
+    private static class Attempt {
+        volatile WarmUpState state = WarmUpState.PENDING;
+        volatile long startedAtMs;
+        volatile Future<?> future;
+    }
+
+    private final Map<Long, Attempt> attempts = new ConcurrentHashMap<>();
+    private volatile boolean finished;
+    private ExecutorService warmUpExecutor;
+    private ScheduledExecutorService watchdog;
+
     @Override
-    public void run(ApplicationArguments args) throws Exception {
-        log.info("开始初始化数据库自动连接...");
-        
+    public void run(ApplicationArguments args) {
+        List<Long> ids = properties.getWarmUpDbConfigIds();
+        if (ids == null || ids.isEmpty()) {
+            finished = true;
+            log.info("🔍 [连接池] 未配置预热的数据库，连接池在首次查询时创建");
+            return;
+        }
+        log.info("🔍 [连接池] 开始后台预热 {} 个数据库连接池", ids.size());
+
+        AtomicInteger threadNo = new AtomicInteger();
+        warmUpExecutor = Executors.newFixedThreadPool(Math.max(1, properties.getWarmUpThreads()), r -> {
+            Thread thread = new Thread(r, "db-pool-warmup-" + threadNo.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "db-pool-warmup-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (Long id : ids) {
+            Attempt attempt = new Attempt();
+            if (attempts.putIfAbsent(id, attempt) != null) {
+                continue;
+            }
+            attempt.future = warmUpExecutor.submit(() -> warmUp(id, attempt));
+        }
+        watchdog.scheduleWithFixedDelay(this::checkTimeouts, 500, 500, TimeUnit.MILLISECONDS);
+    }
+
+    private void warmUp(Long id, Attempt attempt) {
+        attempt.startedAtMs = System.currentTimeMillis();
+        attempt.state = WarmUpState.RUNNING;
         try {
-            // 延迟启动，确保其他服务都已初始化
-            Thread.sleep(2000);
-            
-            // 初始化所有启用的数据库连接
-            dbConnectionManagerService.initializeEnabledConnections();
-            
-            log.info("数据库自动连接初始化完成");
+            DbConfig config = dbConfigService.getDbConfig(id);
+            if (config == null || !Integer.valueOf(1).equals(config.getStatus())) {
+                attempt.state = WarmUpState.SKIPPED;
+                log.warn("🔍 [连接池] 数据库配置 {} 不存在或未启用，跳过预热", id);
+                return;
+            }
+            boolean ok = dbConnectionManagerService.createConnectionPool(config);
+            if (attempt.state == WarmUpState.RUNNING) {
+                attempt.state = ok ? WarmUpState.SUCCEEDED : WarmUpState.FAILED;
+            }
         } catch (Exception e) {
-            log.error("数据库自动连接初始化失败: {}", e.getMessage(), e);
+            if (attempt.state == WarmUpState.RUNNING) {
+                attempt.state = WarmUpState.FAILED;
+            }
+            log.warn("🔍 [连接池] 数据库配置 {} 预热失败: {}", id, e.getMessage());
+        }
+    }
+
+    /**
+     * 从开始预热计时，超时的中断并放弃；全部结束后释放线程
+     */
+    private void checkTimeouts() {
+        long now = System.currentTimeMillis();
+        long timeoutMs = TimeUnit.SECONDS.toMillis(properties.getWarmUpTimeoutSeconds());
+        boolean allDone = true;
+        for (Map.Entry<Long, Attempt> entry : attempts.entrySet()) {
+            Attempt attempt = entry.getValue();
+            if (attempt.state == WarmUpState.RUNNING && now - attempt.startedAtMs > timeoutMs) {
+                attempt.state = WarmUpState.TIMEOUT;
+                attempt.future.cancel(true);
+                log.warn("🔍 [连接池] 数据库配置 {} 预热超时，改为首次查询时创建", entry.getKey());
+            }
+            if (attempt.state == WarmUpState.PENDING || attempt.state == WarmUpState.RUNNING) {
+                allDone = false;
+            }
+        }
+        if (allDone && !finished) {
+            finished = true;
+            log.info("🔍 [连接池] 连接池预热完成: {}", getWarmUpStates());
+            warmUpExecutor.shutdown();
+            watchdog.shutdown();
+        }
+    }
+
+    /**
+     * 预热是否已结束（包括未配置预热的情况）
+     */
+    public boolean isWarmUpFinished() {
+        return finished;
+    }
+
+    /**
+     * 各库的预热状态
+     */
+    public Map<Long, WarmUpState> getWarmUpStates() {
+        Map<Long, WarmUpState> states = new LinkedHashMap<>();
+        attempts.forEach((id, attempt) -> states.put(id, attempt.state));
+        return states;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+        if (warmUpExecutor != null) {
+            warmUpExecutor.shutdownNow();
         }
     }
 }
@@ -0,0 +1,23 @@
+package com.mt.agent.workflow.api.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * 连接池预热健康检查，加入readiness健康组
+ * 预热期间为OUT_OF_SERVICE，结束后为UP；个别库预热失败不影响就绪，首次查询时会再次创建
+ */
+@Component
+@RequiredArgsConstructor
+public class DbPoolWarmUpHealthIndicator implements HealthIndicator {
+
+    private final DatabaseAutoConnectConfig databaseAutoConnectConfig;
+
+    @Override
+    public Health health() {
+        Health.Builder builder = databaseAutoConnectConfig.isWarmUpFinished() ? Health.up() : Health.outOfService();
+        return builder.withDetail("pools", databaseAutoConnectConfig.getWarmUpStates()).build();
+    }
+}
@@ -0,0 +1,40 @@
+package com.mt.agent.workflow.api.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Dify分析计划缓存配置
+ * 缓存Dify工作流返回的思考内容与Python代码，相同问题、表选择、表结构版本与对话历史时直接复用
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "dify-plan-cache")
+public class DifyPlanCacheProperties {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled = true;
+
+    /**
+     * 缓存有效期（分钟）
+     */
+    private int ttlMinutes = 120;
+
+    /**
+     * 进程内缓存条目上限
+     */
+    private int localMaxEntries = 2000;
+
+    /**
+     * 是否启用Redis共享缓存
+     */
+    private boolean redisEnabled = true;
+
+    /**
+     * Redis键前缀，键格式为 前缀 + dbConfigId + ":" + 指纹
+     */
+    private String redisKeyPrefix = "dify_plan:";
+}
@@ -0,0 +1,56 @@
+package com.mt.agent.workflow.api.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 外部数据库隔离舱配置
+ * 每个数据库配置独立的并发上限，按查询耗时自适应调整（AIMD）：
+ * 查询正常完成时缓慢增加，超时或耗时超过阈值时按比例减少
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "external-db-bulkhead")
+public class ExternalDbBulkheadProperties {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled = true;
+
+    /**
+     * 初始并发上限
+     */
+    private int initialLimit = 4;
+
+    /**
+     * 并发上限的下限
+     */
+    private int minLimit = 1;
+
+    /**
+     * 并发上限的上限，0表示与连接池最大连接数一致；配置值大于连接池大小时仍以连接池大小为准
+     */
+    private int maxLimit = 0;
+
+    /**
+     * 查询耗时超过该值视为数据库过载（毫秒）
+     */
+    private long latencyThresholdMs = 5_000;
+
+    /**
+     * 过载时并发上限的缩减比例
+     */
+    private double backoffRatio = 0.9;
+
+    /**
+     * 排队上限，超过后直接拒绝
+     */
+    private int queueCapacity = 20;
+
+    /**
+     * 最长排队时间（毫秒）
+     */
+    private long maxWaitMs = 3_000;
+}
@@ -0,0 +1,69 @@
+package com.mt.agent.workflow.api.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 外部数据库连接池默认配置
+ * db_config中对应字段为空时使用这里的值；连接池在首次查询时创建，启动时只预热指定的库
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "external-db-pool")
+public class ExternalDbPoolProperties {
+
+    /**
+     * 连接池最大连接数与最小空闲连接数
+     */
+    private int maxPoolSize = 5;
+    private int minIdle = 0;
+
+    /**
+     * 获取连接超时（毫秒）
+     */
+    private long connectionTimeoutMs = 10_000;
+
+    /**
+     * 空闲连接回收时间（毫秒）
+     */
+    private long idleTimeoutMs = 300_000;
+
+    /**
+     * 连接最长存活时间（毫秒），应小于数据库的wait_timeout
+     */
+    private long maxLifetimeMs = 1_800_000;
+
+    /**
+     * 连接泄漏检测阈值（毫秒），0表示关闭
+     */
+    private long leakDetectionThresholdMs = 60_000;
+
+    /**
+     * 预览查询的默认fetchSize，0表示使用驱动默认值
+     */
+    private int defaultFetchSize = 0;
+
+    /**
+     * 连接信息变更替换连接池后，旧连接池等待执行中查询结束的最长时间（秒）
+     */
+    private int drainTimeoutSeconds = 120;
+
+    /**
+     * 启动时预热连接池的数据库配置ID，为空时全部在首次查询时创建
+     */
+    private List<Long> warmUpDbConfigIds = new ArrayList<>();
+
+    /**
+     * 预热并行线程数
+     */
+    private int warmUpThreads = 4;
+
+    /**
+     * 单个连接池预热超时（秒），超时后放弃，首次查询时再创建
+     */
+    private int warmUpTimeoutSeconds = 15;
+}
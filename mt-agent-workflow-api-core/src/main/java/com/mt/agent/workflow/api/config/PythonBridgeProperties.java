@@ -0,0 +1,39 @@
+package com.mt.agent.workflow.api.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Java与Python桥接通道配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "python.executor.bridge")
+public class PythonBridgeProperties {
+
+    /**
+     * 优先使用Unix域套接字，不支持时回退为本地回环TCP
+     */
+    private boolean preferUnixSocket = true;
+
+    /**
+     * 双方都支持时使用CBOR紧凑编码（Python端需安装cbor2）
+     */
+    private boolean compactEncoding = true;
+
+    /**
+     * 行数据每个分块的行数
+     */
+    private int chunkRows = 1000;
+
+    /**
+     * 单帧最大字节数（MB）
+     */
+    private int maxFrameMb = 64;
+
+    /**
+     * 等待Python连接的超时（秒）
+     */
+    private int connectTimeoutSeconds = 30;
+}
@@ -0,0 +1,62 @@
+package com.mt.agent.workflow.api.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 常驻Python工作进程池配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "python.executor.pool")
+public class PythonWorkerPoolProperties {
+
+    /**
+     * 是否启用工作进程池，关闭时每次执行都启动一次性Python进程
+     */
+    private boolean enabled = true;
+
+    /**
+     * 预热的最小空闲进程数
+     */
+    private int minIdle = 2;
+
+    /**
+     * 进程池最大进程数
+     */
+    private int maxSize = 10;
+
+    /**
+     * 单个进程执行任务数上限，达到后回收重建
+     */
+    private int maxJobsPerWorker = 200;
+
+    /**
+     * 相对启动时的内存增长上限（MB），超过后回收重建
+     */
+    private int maxRssGrowthMb = 512;
+
+    /**
+     * 获取空闲进程的等待时间（秒）
+     */
+    private int borrowTimeoutSeconds = 30;
+
+    /**
+     * 进程启动就绪等待时间（秒）
+     */
+    private int startupTimeoutSeconds = 30;
+
+    /**
+     * 单次任务执行超时（秒），超时后强制结束进程并补充新进程
+     */
+    private int jobTimeoutSeconds = 300;
+
+    /**
+     * 进程启动时预加载的Python模块
+     */
+    private List<String> preloadModules = new ArrayList<>();
+}
@@ -0,0 +1,96 @@
+package com.mt.agent.workflow.api.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 查询结果多级缓存配置
+ * L1为进程内缓存，L2为Redis共享缓存，L3为query_result_cache表
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "query-cache")
+public class QueryCacheProperties {
+
+    /**
+     * 查询结果缓存有效期（秒）
+     */
+    private int ttlSeconds = 3600;
+
+    /**
+     * 过期后仍可返回旧结果的时间（秒），期间命中时先返回旧值再异步刷新；0表示不返回过期结果
+     */
+    private int staleWindowSeconds = 600;
+
+    /**
+     * 异步刷新线程数与排队上限，队列满时跳过本次刷新
+     */
+    private int refreshThreads = 2;
+    private int refreshQueueCapacity = 100;
+
+    /**
+     * 是否按API配置的刷新周期在过期前预先刷新热点查询
+     */
+    private boolean scheduledRefreshEnabled = true;
+
+    /**
+     * 定时刷新检查间隔（秒）
+     */
+    private int refreshTickSeconds = 30;
+
+    /**
+     * 热点查询统计的条目上限
+     */
+    private int hotQueryMaxEntries = 10000;
+
+    /**
+     * 热点查询命中数衰减周期（分钟），每个周期命中数减半，使排名偏向近期访问
+     */
+    private int hotQueryDecayMinutes = 10;
+
+    /**
+     * L1进程内缓存容量上限（MB），按结果JSON大小计重
+     */
+    private int l1MaxSizeMb = 64;
+
+    /**
+     * L1条目最长存活时间（秒），同时限制从L2/L3回填条目的陈旧程度
+     */
+    private int l1TtlSeconds = 60;
+
+    /**
+     * 是否启用Redis二级缓存
+     */
+    private boolean l2Enabled = true;
+
+    /**
+     * Redis键前缀
+     */
+    private String l2KeyPrefix = "query_cache:";
+
+    /**
+     * 压缩后超过该大小（KB）的结果不写入L1/L2，只落库
+     */
+    private int maxEntryKb = 2048;
+
+    /**
+     * 压缩后超过该大小（KB）的结果不缓存
+     */
+    private int maxStoredEntryKb = 16384;
+
+    /**
+     * 结果压缩级别（1-9），1最快，9最小
+     */
+    private int compressionLevel = 1;
+
+    /**
+     * 异步落库队列上限，队列满时丢弃本次落库（L1/L2已写入）
+     */
+    private int writeBehindQueueCapacity = 1000;
+
+    /**
+     * 是否通过Redis锁跨节点合并相同SQL的并发执行，关闭时只在本进程内合并
+     */
+    private boolean singleFlightDistributed = true;
+}
@@ -0,0 +1,63 @@
+package com.mt.agent.workflow.api.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 数据问答异步流水线配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "data-question.pipeline")
+public class QuestionPipelineProperties {
+
+    /**
+     * 异步任务执行线程数
+     */
+    private int jobWorkers = 32;
+
+    /**
+     * 异步任务排队上限，超过后直接拒绝
+     */
+    private int jobQueueCapacity = 200;
+
+    /**
+     * 已结束任务的保留时间（分钟）
+     */
+    private int jobRetentionMinutes = 30;
+
+    /**
+     * 大模型阶段（Dify工作流、SQL生成）
+     */
+    private Stage llm = new Stage(8, 50, 60);
+
+    /**
+     * Python执行阶段
+     */
+    private Stage python = new Stage(10, 50, 60);
+
+    /**
+     * SQL执行阶段
+     */
+    private Stage sql = new Stage(16, 100, 30);
+
+    @Data
+    public static class Stage {
+        /** 最大并发数 */
+        private int maxConcurrent;
+        /** 排队上限 */
+        private int queueCapacity;
+        /** 最长排队时间（秒） */
+        private int maxWaitSeconds;
+
+        public Stage() {
+        }
+
+        public Stage(int maxConcurrent, int queueCapacity, int maxWaitSeconds) {
+            this.maxConcurrent = maxConcurrent;
+            this.queueCapacity = queueCapacity;
+            this.maxWaitSeconds = maxWaitSeconds;
+        }
+    }
+}
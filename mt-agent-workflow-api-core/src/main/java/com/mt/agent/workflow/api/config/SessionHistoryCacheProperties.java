@@ -0,0 +1,35 @@
+package com.mt.agent.workflow.api.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 会话历史缓存配置
+ * 每个会话最近若干条成功消息保存在Redis定长列表中，写消息时追加，取历史时不再查库
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "session-history-cache")
+public class SessionHistoryCacheProperties {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每个会话保留的最近消息条数，应不小于取历史时的轮数×2
+     */
+    private int maxMessages = 20;
+
+    /**
+     * 列表最后一次写入后的存活时间（分钟）
+     */
+    private int ttlMinutes = 60;
+
+    /**
+     * Redis键前缀，列表键为 前缀{sessionId}，版本号键为 前缀{sessionId}:version
+     */
+    private String keyPrefix = "chat_history:";
+}
@@ -0,0 +1,46 @@
+package com.mt.agent.workflow.api.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 生成SQL缓存配置
+ * 按完整提示词输入缓存大模型生成的SQL，表结构同步后按数据库配置失效
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "sql-gen-cache")
+public class SqlGenerationCacheProperties {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled = true;
+
+    /**
+     * 缓存有效期（分钟）
+     */
+    private int ttlMinutes = 60;
+
+    /**
+     * 进程内缓存条目上限
+     */
+    private int localMaxEntries = 5000;
+
+    /**
+     * 是否启用Redis共享缓存
+     */
+    private boolean redisEnabled = true;
+
+    /**
+     * Redis键前缀，键格式为 前缀 + dbConfigId + ":" + 指纹
+     */
+    private String redisKeyPrefix = "sql_gen:";
+
+    /**
+     * 是否启用近似问题匹配：只按表结构、表名和规范化后的查询文本匹配，忽略对话历史与Python代码。
+     * 查询文本由规划代码生成、通常已自包含时才建议开启
+     */
+    private boolean nearDuplicateEnabled = false;
+}
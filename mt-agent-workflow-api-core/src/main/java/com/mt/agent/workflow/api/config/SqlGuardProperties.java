@@ -0,0 +1,62 @@
+package com.mt.agent.workflow.api.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SQL执行前检查配置
+ * 执行前按行数上限添加或收紧LIMIT，并用EXPLAIN预估扫描行数，超过上限的查询直接拒绝；
+ * 策略校验的全局默认值（禁止函数、子查询嵌套层数）也在这里配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "sql-guard")
+public class SqlGuardProperties {
+
+    /**
+     * 是否添加或收紧顶层查询的LIMIT
+     */
+    private boolean limitRewriteEnabled = true;
+
+    /**
+     * 是否执行EXPLAIN检查预估扫描行数
+     */
+    private boolean explainEnabled = true;
+
+    /**
+     * EXPLAIN超时（秒），超时或失败时不做检查直接执行
+     */
+    private int explainTimeoutSeconds = 5;
+
+    /**
+     * 执行计划缓存条数与有效期（分钟），按数据库、schema版本与规范化SQL缓存
+     */
+    private int explainCacheMaxEntries = 5000;
+    private int explainCacheTtlMinutes = 30;
+
+    /**
+     * 未配置SQL安全策略时的预估扫描行数上限；配置了策略时使用策略的max_scan_rows
+     */
+    private long defaultMaxExaminedRows = 10_000_000L;
+
+    /**
+     * 所有策略都禁止调用的函数，与策略的deny_functions合并
+     */
+    private List<String> denyFunctions = new ArrayList<>(List.of(
+            "SLEEP", "BENCHMARK", "LOAD_FILE", "GET_LOCK", "RELEASE_LOCK", "RELEASE_ALL_LOCKS",
+            "IS_FREE_LOCK", "IS_USED_LOCK", "MASTER_POS_WAIT", "SOURCE_POS_WAIT", "WAIT_FOR_EXECUTED_GTID_SET"));
+
+    /**
+     * 策略未配置max_subquery_depth时的子查询最大嵌套层数，0表示不限制
+     */
+    private int maxSubqueryDepth = 5;
+
+    /**
+     * 编译后策略的缓存条数，按数据库配置ID缓存
+     */
+    private int policyCacheMaxEntries = 1000;
+}
@@ -125,9 +125,8 @@ public class ChatController {
             if (sessions.getRecords() != null) {
                 for (ChatSession session : sessions.getRecords()) {
                     // 获取会话的第一条消息作为预览
-                    List<ChatMessage> messages = chatService.getSessionMessages(session.getId(), userId);
-                    if (!messages.isEmpty()) {
-                        ChatMessage firstMessage = messages.get(0);
+                    ChatMessage firstMessage = chatService.getFirstSessionMessage(session.getId());
+                    if (firstMessage != null) {
                         if ("user".equals(firstMessage.getRole())) {
                             String preview = firstMessage.getContent();
                             if (preview.length() > 50) {
@@ -175,14 +174,21 @@ public class ChatController {
 
     /**
      * 获取会话消息列表
+     * 传limit时按游标分页：首页不传游标，下一页传上一页第一条消息的createdAtMs和id
      */
     @GetMapping("/sessions/{sessionId}/messages")
     public Result<List<ChatMessage>> getMessages(
             @PathVariable Long sessionId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) Long beforeCreatedAtMs,
+            @RequestParam(required = false) Long beforeId,
             HttpServletRequest request) {
         Long userId = 1L; // 使用默认用户ID
         try {
-            List<ChatMessage> messages = chatService.getSessionMessages(sessionId, userId);
+            List<ChatMessage> messages = limit == null
+                    ? chatService.getSessionMessages(sessionId, userId)
+                    : chatService.getSessionMessages(sessionId, userId, beforeCreatedAtMs, beforeId,
+                            Math.max(1, Math.min(limit, 200)));
             return Result.success(messages);
         } catch (Exception e) {
             log.error("获取消息列表失败: {}", e.getMessage(), e);
@@ -1,13 +1,21 @@
 package com.mt.agent.workflow.api.controller;
 
+import com.mt.agent.workflow.api.dto.DataQuestionJob;
+import com.mt.agent.workflow.api.dto.DataQuestionRequest;
 import com.mt.agent.workflow.api.dto.DataQuestionResponse;
+import com.mt.agent.workflow.api.infra.pipeline.CancellationToken;
 import com.mt.agent.workflow.api.service.ChatOrchestratorService;
+import com.mt.agent.workflow.api.service.DataQuestionJobService;
 import com.mt.agent.workflow.api.service.DbConfigService;
+import com.mt.agent.workflow.api.service.DifyPlanCacheService;
+import com.mt.agent.workflow.api.service.impl.SubEventReporter;
 import com.mt.agent.workflow.api.util.Result;
 import com.mt.agent.workflow.api.util.BufferUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import jakarta.servlet.http.HttpServletRequest;
 import java.util.Map;
@@ -28,6 +36,11 @@ import com.mt.agent.workflow.api.bottomReply.service.BottomReplyService;
 @CrossOrigin
 public class DataQuestionController {
 
+    /**
+     * 流式请求超时时间，略长于编排服务整体超时
+     */
+    private static final long STREAM_TIMEOUT_MS = 5 * 60 * 1000L;
+
     @Autowired
     private ChatOrchestratorService orchestratorService;
     
@@ -43,6 +56,12 @@ public class DataQuestionController {
     @Autowired
     private BottomReplyService bottomReplyService;
 
+    @Autowired
+    private DataQuestionJobService jobService;
+
+    @Autowired
+    private DifyPlanCacheService difyPlanCacheService;
+
     /**
      * 数据问答接口 - 阻塞式返回
      * 
@@ -55,109 +74,15 @@ public class DataQuestionController {
         Long userId = 1L; // 使用默认用户ID
         bufferUtil.clearOutputResultCache(userId.toString());
         try {
-            // 解析请求参数
-            Long sessionId = Long.valueOf(requestBody.get("sessionId").toString());
-            String question = (String) requestBody.get("question");
-            Object dbConfigIdObj = requestBody.get("dbConfigId");
-            Long dbConfigId = dbConfigIdObj != null ? Long.valueOf(dbConfigIdObj.toString()) : null;
-
-            
-            // 处理tableIds参数，支持数组或单个ID
-            Object tableIdsObj = requestBody.get("tableIds");
-            List<Long> tableIds = null;
-            Long tableId = null; // 保持向后兼容的单个tableId
-            String tableName = null;
-            
-            if (tableIdsObj != null) {
-                if (tableIdsObj instanceof List) {
-                    // 处理tableIds数组
-                    tableIds = ((List<?>) tableIdsObj).stream()
-                        .map(id -> Long.valueOf(id.toString()))
-                        .collect(java.util.stream.Collectors.toList());
-//                    log.info("📊 [数据问答] 使用表ID数组: {}", tableIds);
-                    
-                    // 为了兼容现有的方法签名，使用第一个表ID作为主表ID
-                    if (!tableIds.isEmpty()) {
-                        tableId = tableIds.get(0);
-                    }
-                } else {
-                    // 兼容旧的单个tableId参数
-                    String tableIdStr = tableIdsObj.toString();
-                    try {
-                        tableId = Long.valueOf(tableIdStr);
-                        tableIds = java.util.Arrays.asList(tableId);
-                        log.info("📊 [数据问答] 使用单个表ID: {}", tableId);
-                    } catch (NumberFormatException e) {
-                        // 如果不是数字，说明传递的是表名
-                        tableName = tableIdStr;
-                        log.info("📊 [数据问答] 使用表名: {}", tableName);
-                    }
-                }
-            }
-            
-            // 兼容处理单个tableId参数（如果没有tableIds参数）
-            if (tableIds == null && requestBody.get("tableId") != null) {
-                Object tableIdObj = requestBody.get("tableId");
-                String tableIdStr = tableIdObj.toString();
-                try {
-                    tableId = Long.valueOf(tableIdStr);
-                    tableIds = java.util.Arrays.asList(tableId);
-                    log.info("📊 [数据问答] 兼容模式使用表ID: {}", tableId);
-                } catch (NumberFormatException e) {
-                    tableName = tableIdStr;
-                    log.info("📊 [数据问答] 兼容模式使用表名: {}", tableName);
-                }
-            }
+            DataQuestionRequest questionRequest = parseRequest(requestBody);
             
             // 参数验证
-            if (question == null || question.trim().isEmpty()) {
-                log.error("📊 [数据问答] 问题内容为空");
-                return Result.error("问题内容不能为空");
-            }
-            
-            if (dbConfigId == null) {
-                return Result.error("请选择数据库");
-            }
-            
-            // 将dbConfigId和tableIds存入缓存，供后续Python执行时使用
-            String userIdStr = userId.toString();
-            bufferUtil.setFieldPermanent(userIdStr, "dbConfigId", dbConfigId.toString());
-//            log.info("📊 [数据问答] 已将dbConfigId={}存入缓存，用户ID={}", dbConfigId, userIdStr);
-            
-            // 将选中的表ID列表存入session缓存
-            if (tableIds != null && !tableIds.isEmpty()) {
-                String tableIdsJson = tableIds.stream()
-                    .sorted() // 确保排序一致性
-                    .map(String::valueOf)
-                    .collect(java.util.stream.Collectors.joining(","));
-                String tableIdsKey = "session_table_ids_" + sessionId;
-                bufferUtil.setField(userIdStr, tableIdsKey, tableIdsJson, 24, java.util.concurrent.TimeUnit.HOURS);
-                log.info("📊 [数据问答] 已将tableIds={}存入session缓存，sessionId={}", tableIdsJson, sessionId);
+            String validationError = validateRequest(questionRequest);
+            if (validationError != null) {
+                return Result.error(validationError);
             }
             
-            // 调用编排服务处理数据问答
-            DataQuestionResponse response = orchestratorService.processDataQuestionSync(sessionId, userId, question, dbConfigId, tableId, tableName);
-            
-            // 调用兜底回复服务
-            try {
-                // 准备兜底回复的参数
-                String dialogHistory = ""; // 暂时为空，后续可以从数据库获取
-                String executions = response.getResult() != null ? response.getResult() : "";
-                String taskName = "智能数据问答";
-                String bottomReplyResult = bottomReplyService.replyForExecution(question, dialogHistory, executions, taskName, userId.toString(), null);
-                log.info("📊 [数据问答] 兜底回复处理成功: {}", bottomReplyResult);
-
-                // 将兜底回复设置为主要的显示内容
-                if (bottomReplyResult != null && !bottomReplyResult.trim().isEmpty()) {
-                    response.setBottomReply(bottomReplyResult);
-                    // 将兜底回复内容设置为主要的result，这样前端会显示兜底回复而不是原始查询结果
-                    response.setResult(bottomReplyResult);
-                    response.setResultType("text");
-                }
-
-            } catch (Exception e) {
-                log.error("📊 [数据问答] 兜底回复处理失败: {}", e.getMessage());
-            }
+            DataQuestionResponse response = answerQuestion(userId, questionRequest, null, null);
             
             // 返回处理结果
             if (response.isSuccess()) {
@@ -184,6 +109,288 @@ public class DataQuestionController {
         }
     }
 
+    /**
+     * 数据问答接口 - 异步提交
+     * 立即返回任务句柄，通过 /jobs/{jobId} 查询处理结果；排队已满时返回429
+     *
+     * @param requestBody 请求体与 /ask 相同
+     * @return 任务句柄
+     */
+    @PostMapping("/ask-async")
+    public Result<DataQuestionJob> askQuestionAsync(@RequestBody Map<String, Object> requestBody) {
+        Long userId = 1L; // 使用默认用户ID
+        try {
+            DataQuestionRequest questionRequest = parseRequest(requestBody);
+            String validationError = validateRequest(questionRequest);
+            if (validationError != null) {
+                return Result.error(validationError);
+            }
+            
+            DataQuestionJob job = jobService.submit(questionRequest.getSessionId(), userId, questionRequest.getQuestion(),
+                    cancellation -> {
+                        bufferUtil.clearOutputResultCache(userId.toString());
+                        return answerQuestion(userId, questionRequest, null, cancellation);
+                    });
+            if (DataQuestionJob.REJECTED.equals(job.getStatus())) {
+                return Result.error(429, job.getError());
+            }
+            return Result.success(job);
+        } catch (Exception e) {
+            log.error("📊 [数据问答] 提交异步数据问答失败: {}", e.getMessage(), e);
+            return Result.error("提交数据问答失败");
+        }
+    }
+
+    /**
+     * 数据问答接口 - SSE流式返回
+     * 依次推送事件：thinking（大模型输出增量）、python_code（提取的Python代码）、
+     * progress（Python执行进度）、sql（每条SQL及返回行数）、result（最终结果）或error；
+     * 客户端断开连接时自动取消执行
+     *
+     * @param requestBody 请求体与 /ask 相同
+     */
+    @PostMapping(value = "/ask-stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter askQuestionStream(@RequestBody Map<String, Object> requestBody) {
+        Long userId = 1L; // 使用默认用户ID
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        SubEventReporter reporter = new SubEventReporter(emitter);
+        
+        DataQuestionRequest questionRequest;
+        try {
+            questionRequest = parseRequest(requestBody);
+        } catch (Exception e) {
+            log.error("📊 [数据问答] 解析流式请求失败: {}", e.getMessage());
+            reporter.reportError("请求参数格式错误");
+            emitter.complete();
+            return emitter;
+        }
+        String validationError = validateRequest(questionRequest);
+        if (validationError != null) {
+            reporter.reportError(validationError);
+            emitter.complete();
+            return emitter;
+        }
+        
+        DataQuestionJob job = jobService.submit(questionRequest.getSessionId(), userId, questionRequest.getQuestion(),
+                cancellation -> {
+                    reporter.onSendFailure(() -> cancellation.cancel("客户端断开连接"));
+                    try {
+                        bufferUtil.clearOutputResultCache(userId.toString());
+                        DataQuestionResponse response = answerQuestion(userId, questionRequest, reporter, cancellation);
+                        if (response.isSuccess()) {
+                            emitter.send(SseEmitter.event().name("result").data(response));
+                        } else {
+                            reporter.reportError(response.getError());
+                        }
+                        emitter.complete();
+                        return response;
+                    } catch (Exception e) {
+                        log.error("📊 [数据问答] 流式数据问答失败: {}", e.getMessage(), e);
+                        reporter.reportError("处理数据问答失败");
+                        emitter.complete();
+                        throw new RuntimeException(e.getMessage(), e);
+                    }
+                });
+        if (DataQuestionJob.REJECTED.equals(job.getStatus())) {
+            reporter.reportError(job.getError());
+            emitter.complete();
+            return emitter;
+        }
+        emitter.onTimeout(() -> jobService.cancel(job.getJobId(), "流式请求超时"));
+        emitter.onError(e -> jobService.cancel(job.getJobId(), "客户端断开连接"));
+        return emitter;
+    }
+
+    /**
+     * 查询异步数据问答任务
+     */
+    @GetMapping("/jobs/{jobId}")
+    public Result<DataQuestionJob> getJob(@PathVariable String jobId) {
+        DataQuestionJob job = jobService.getJob(jobId);
+        if (job == null) {
+            return Result.error(404, "任务不存在或已过期");
+        }
+        return Result.success(job);
+    }
+
+    /**
+     * 取消异步数据问答任务
+     */
+    @PostMapping("/jobs/{jobId}/cancel")
+    public Result<Boolean> cancelJob(@PathVariable String jobId) {
+        if (jobService.getJob(jobId) == null) {
+            return Result.error(404, "任务不存在或已过期");
+        }
+        return Result.success(jobService.cancel(jobId, "用户取消"));
+    }
+
+    /**
+     * 按助手消息ID取消执行中的数据问答
+     */
+    @PostMapping("/messages/{messageId}/cancel")
+    public Result<Boolean> cancelMessage(@PathVariable Long messageId) {
+        return Result.success(jobService.cancelByMessage(messageId, "用户取消"));
+    }
+
+    /**
+     * 流水线运行统计：任务队列与各阶段排队数、执行中数量、拒绝次数
+     */
+    @GetMapping("/pipeline/stats")
+    public Result<Map<String, Object>> getPipelineStats() {
+        return Result.success(jobService.getPipelineStats());
+    }
+
+    /**
+     * 分析计划缓存命中统计
+     */
+    @GetMapping("/plan-cache/stats")
+    public Result<Map<String, Object>> getPlanCacheStats() {
+        return Result.success(difyPlanCacheService.getStats());
+    }
+
+    /**
+     * 清理分析计划缓存，不传dbConfigId时清空全部
+     */
+    @DeleteMapping("/plan-cache")
+    public Result<Long> invalidatePlanCache(@RequestParam(required = false) Long dbConfigId) {
+        return Result.success(difyPlanCacheService.invalidate(dbConfigId));
+    }
+
+    /**
+     * 解析请求参数，tableIds支持数组、单个ID或表名，兼容旧的tableId参数
+     */
+    private DataQuestionRequest parseRequest(Map<String, Object> requestBody) {
+        DataQuestionRequest questionRequest = new DataQuestionRequest();
+        Object sessionIdObj = requestBody.get("sessionId");
+        questionRequest.setSessionId(sessionIdObj != null ? Long.valueOf(sessionIdObj.toString()) : null);
+        questionRequest.setQuestion((String) requestBody.get("question"));
+        Object dbConfigIdObj = requestBody.get("dbConfigId");
+        questionRequest.setDbConfigId(dbConfigIdObj != null ? Long.valueOf(dbConfigIdObj.toString()) : null);
+        
+        // 处理tableIds参数，支持数组或单个ID
+        Object tableIdsObj = requestBody.get("tableIds");
+        if (tableIdsObj != null) {
+            if (tableIdsObj instanceof List) {
+                // 处理tableIds数组
+                List<Long> tableIds = ((List<?>) tableIdsObj).stream()
+                    .map(id -> Long.valueOf(id.toString()))
+                    .collect(Collectors.toList());
+                questionRequest.setTableIds(tableIds);
+                
+                // 为了兼容现有的方法签名，使用第一个表ID作为主表ID
+                if (!tableIds.isEmpty()) {
+                    questionRequest.setTableId(tableIds.get(0));
+                }
+            } else {
+                // 兼容旧的单个tableId参数
+                parseSingleTable(questionRequest, tableIdsObj.toString(), "使用");
+            }
+        }
+        
+        // 兼容处理单个tableId参数（如果没有tableIds参数）
+        if (questionRequest.getTableIds() == null && requestBody.get("tableId") != null) {
+            parseSingleTable(questionRequest, requestBody.get("tableId").toString(), "兼容模式使用");
+        }
+        return questionRequest;
+    }
+
+    private void parseSingleTable(DataQuestionRequest questionRequest, String tableIdStr, String mode) {
+        try {
+            Long tableId = Long.valueOf(tableIdStr);
+            questionRequest.setTableId(tableId);
+            questionRequest.setTableIds(java.util.Arrays.asList(tableId));
+            log.info("📊 [数据问答] {}表ID: {}", mode, tableId);
+        } catch (NumberFormatException e) {
+            // 如果不是数字，说明传递的是表名
+            questionRequest.setTableName(tableIdStr);
+            log.info("📊 [数据问答] {}表名: {}", mode, tableIdStr);
+        }
+    }
+
+    /**
+     * 参数验证，通过时返回null
+     */
+    private String validateRequest(DataQuestionRequest questionRequest) {
+        if (questionRequest.getQuestion() == null || questionRequest.getQuestion().trim().isEmpty()) {
+            log.error("📊 [数据问答] 问题内容为空");
+            return "问题内容不能为空";
+        }
+        if (questionRequest.getSessionId() == null) {
+            return "会话ID不能为空";
+        }
+        if (questionRequest.getDbConfigId() == null) {
+            return "请选择数据库";
+        }
+        return null;
+    }
+
+    /**
+     * 执行数据问答：缓存表选择、调用编排服务并进行兜底回复
+     *
+     * @param reporter 流式输出报告器，非流式请求传null
+     * @param cancellation 取消令牌，同步请求传null
+     */
+    private DataQuestionResponse answerQuestion(Long userId, DataQuestionRequest questionRequest, SubEventReporter reporter,
+                                                CancellationToken cancellation) {
+        Long sessionId = questionRequest.getSessionId();
+        String question = questionRequest.getQuestion();
+        Long dbConfigId = questionRequest.getDbConfigId();
+        List<Long> tableIds = questionRequest.getTableIds();
+        
+        // 将dbConfigId和tableIds存入缓存，供后续Python执行时使用
+        String userIdStr = userId.toString();
+        BufferUtil.FieldBatch fieldBatch = bufferUtil.batch(userIdStr)
+            .set("dbConfigId", dbConfigId.toString(), 0, null);
+        
+        // 将选中的表ID列表存入session缓存
+        String tableIdsJson = null;
+        if (tableIds != null && !tableIds.isEmpty()) {
+            tableIdsJson = tableIds.stream()
+                .sorted() // 确保排序一致性
+                .map(String::valueOf)
+                .collect(Collectors.joining(","));
+            String tableIdsKey = "session_table_ids_" + sessionId;
+            fieldBatch.set(tableIdsKey, tableIdsJson, 24, java.util.concurrent.TimeUnit.HOURS);
+        }
+        fieldBatch.execute();
+        if (tableIdsJson != null) {
+            log.info("📊 [数据问答] 已将tableIds={}存入session缓存，sessionId={}", tableIdsJson, sessionId);
+        }
+        
+        // 调用编排服务处理数据问答
+        DataQuestionResponse response = reporter != null || cancellation != null
+                ? orchestratorService.processDataQuestion(sessionId, userId, question, dbConfigId,
+                        questionRequest.getTableId(), questionRequest.getTableName(), reporter, cancellation)
+                : orchestratorService.processDataQuestionSync(sessionId, userId, question, dbConfigId,
+                        questionRequest.getTableId(), questionRequest.getTableName());
+        
+        if (cancellation != null && cancellation.isCancelled()) {
+            return response;
+        }
+        
+        // 调用兜底回复服务
+        try {
+            // 准备兜底回复的参数
+            String dialogHistory = ""; // 暂时为空，后续可以从数据库获取
+            String executions = response.getResult() != null ? response.getResult() : "";
+            String taskName = "智能数据问答";
+            String bottomReplyResult = bottomReplyService.replyForExecution(question, dialogHistory, executions, taskName, userIdStr, null);
+            log.info("📊 [数据问答] 兜底回复处理成功: {}", bottomReplyResult);
+
+            // 将兜底回复设置为主要的显示内容
+            if (bottomReplyResult != null && !bottomReplyResult.trim().isEmpty()) {
+                response.setBottomReply(bottomReplyResult);
+                // 将兜底回复内容设置为主要的result，这样前端会显示兜底回复而不是原始查询结果
+                response.setResult(bottomReplyResult);
+                response.setResultType("text");
+            }
+
+        } catch (Exception e) {
+            log.error("📊 [数据问答] 兜底回复处理失败: {}", e.getMessage());
+        }
+        return response;
+    }
+
     /**
      * 调试接口：检查数据库和表的状态
      */
@@ -2,11 +2,25 @@ package com.mt.agent.workflow.api.controller;
 
 import com.mt.agent.workflow.api.entity.SqlExecution;
 import com.mt.agent.workflow.api.infra.ExternalDbExecutor;
+import com.mt.agent.workflow.api.infra.result.ResultTableCodec;
 import com.mt.agent.workflow.api.service.SqlExecutionService;
 import com.mt.agent.workflow.api.util.Result;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+@Slf4j
 @RestController
 @RequestMapping("/api/sql")
 @CrossOrigin
@@ -43,6 +57,35 @@ public class SqlController {
         }
     }
     
+    /**
+     * 流式导出查询结果为CSV，行数据边读边写，内存占用与结果行数无关
+     */
+    @PostMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestBody ExecRequest req) {
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write('\uFEFF'); // Excel识别UTF-8
+            ExternalDbExecutor.QueryResult summary = sqlExecutionService.executeStreaming(req.dbConfigId, req.sql,
+                    new ExternalDbExecutor.RowCallback() {
+                        @Override
+                        public void onColumns(List<String> columns, int[] sqlTypes) throws IOException {
+                            ResultTableCodec.writeCsvRow(writer, columns.toArray());
+                        }
+
+                        @Override
+                        public void onRow(Object[] values) throws IOException {
+                            ResultTableCodec.writeCsvRow(writer, values);
+                        }
+                    }, null);
+            writer.flush();
+            log.info("📤 [SQL导出] 导出完成，共{}行，耗时{}ms", summary.rowCount, summary.durationMs);
+        };
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"export.csv\"")
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .body(body);
+    }
+
     /**
      * 获取执行记录详情
      */
@@ -15,6 +15,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -133,10 +134,11 @@ public class TableInfoController {
                 String tableIdsKey = "session_table_ids_" + sessionId;
                 String isCustomKey = "session_is_custom_" + sessionId;
                 
-                String cachedTableInfo = bufferUtil.getField("1", tableInfoKey);
-                String cachedTableSchema = bufferUtil.getField("1", tableSchemaKey);
-                String cachedTableIds = bufferUtil.getField("1", tableIdsKey);
-                String cachedIsCustom = bufferUtil.getField("1", isCustomKey);
+                Map<String, Object> cached = bufferUtil.getFields("1", Set.of(tableInfoKey, tableSchemaKey, tableIdsKey, isCustomKey));
+                String cachedTableInfo = (String) cached.get(tableInfoKey);
+                String cachedTableSchema = (String) cached.get(tableSchemaKey);
+                String cachedTableIds = (String) cached.get(tableIdsKey);
+                String cachedIsCustom = (String) cached.get(isCustomKey);
                 
                 // 检查缓存是否存在且表选择是否匹配
                 if (cachedTableInfo != null && cachedTableSchema != null) {
@@ -201,17 +203,19 @@ public class TableInfoController {
                     String tableIdsKey = "session_table_ids_" + sessionId;
                     String isCustomKey = "session_is_custom_" + sessionId;
                     
-                    bufferUtil.setField("1", tableInfoKey, tableInfo, 24, TimeUnit.HOURS);
-                    bufferUtil.setField("1", tableSchemaKey, tableSchema, 24, TimeUnit.HOURS);
-                    bufferUtil.setField("1", isCustomKey, "false", 24, TimeUnit.HOURS);
+                    Map<String, Object> sessionFields = new HashMap<>();
+                    sessionFields.put(tableInfoKey, tableInfo);
+                    sessionFields.put(tableSchemaKey, tableSchema);
+                    sessionFields.put(isCustomKey, "false");
                     
                     if (tableIds != null && !tableIds.isEmpty()) {
                         String tableIdsStr = tableIds.stream()
                             .sorted() // 确保排序一致性
                             .map(String::valueOf)
                             .collect(java.util.stream.Collectors.joining(","));
-                        bufferUtil.setField("1", tableIdsKey, tableIdsStr, 24, TimeUnit.HOURS);
+                        sessionFields.put(tableIdsKey, tableIdsStr);
                     }
+                    bufferUtil.setFields("1", sessionFields, 24, TimeUnit.HOURS);
                     
                     log.info("已存储表信息到session缓存, sessionId: {}", sessionId);
                 }
@@ -256,9 +260,8 @@ public class TableInfoController {
             String tableSchemaKey = "session_table_schema_" + sessionId;
             String isCustomKey = "session_is_custom_" + sessionId;
             
-            bufferUtil.setField("1", tableInfoKey, customTableInfo, 24, TimeUnit.HOURS);
-            bufferUtil.setField("1", tableSchemaKey, customTableSchema, 24, TimeUnit.HOURS);
-            bufferUtil.setField("1", isCustomKey, "true", 24, TimeUnit.HOURS);
+            bufferUtil.setFields("1", Map.of(tableInfoKey, customTableInfo, tableSchemaKey, customTableSchema,
+                    isCustomKey, "true"), 24, TimeUnit.HOURS);
             
             log.info("自定义表信息已保存到session缓存, sessionId: {}", sessionId);
             
@@ -307,9 +310,11 @@ public class TableInfoController {
             String tableSchemaKey = "session_table_schema_" + sessionId;
             String isCustomKey = "session_is_custom_" + sessionId;
             
-            bufferUtil.setField("1", tableInfoKey, tableInfo, 24, TimeUnit.HOURS);
-            bufferUtil.setField("1", tableSchemaKey, tableSchema, 24, TimeUnit.HOURS);
-            bufferUtil.setField("1", isCustomKey, "false", 24, TimeUnit.HOURS);
+            Map<String, Object> sessionFields = new HashMap<>();
+            sessionFields.put(tableInfoKey, tableInfo);
+            sessionFields.put(tableSchemaKey, tableSchema);
+            sessionFields.put(isCustomKey, "false");
+            bufferUtil.setFields("1", sessionFields, 24, TimeUnit.HOURS);
             
             log.info("已重置为自动生成的表信息, sessionId: {}", sessionId);
             
@@ -0,0 +1,72 @@
+package com.mt.agent.workflow.api.dto;
+
+import lombok.Data;
+
+/**
+ * 数据问答异步任务
+ */
+@Data
+public class DataQuestionJob {
+
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String SUCCEEDED = "SUCCEEDED";
+    public static final String FAILED = "FAILED";
+    public static final String REJECTED = "REJECTED";
+    public static final String CANCELLED = "CANCELLED";
+
+    /**
+     * 任务ID
+     */
+    private String jobId;
+
+    /**
+     * 会话ID
+     */
+    private Long sessionId;
+
+    /**
+     * 用户ID
+     */
+    private Long userId;
+
+    /**
+     * 用户问题
+     */
+    private String question;
+
+    /**
+     * 任务状态：QUEUED/RUNNING/SUCCEEDED/FAILED/REJECTED/CANCELLED
+     */
+    private volatile String status;
+
+    /**
+     * 提交时间
+     */
+    private long submittedAt;
+
+    /**
+     * 开始执行时间
+     */
+    private volatile Long startedAt;
+
+    /**
+     * 结束时间
+     */
+    private volatile Long finishedAt;
+
+    /**
+     * 处理结果，任务结束后可用
+     */
+    private volatile DataQuestionResponse response;
+
+    /**
+     * 错误信息
+     */
+    private volatile String error;
+
+    public boolean isFinished() {
+        return SUCCEEDED.equals(status) || FAILED.equals(status) || REJECTED.equals(status)
+                || CANCELLED.equals(status);
+    }
+}
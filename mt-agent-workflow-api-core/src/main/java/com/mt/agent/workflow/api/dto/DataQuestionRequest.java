@@ -2,6 +2,8 @@ package com.mt.agent.workflow.api.dto;
 
 import lombok.Data;
 
+import java.util.List;
+
 /**
  * 数据问答请求DTO
  */
@@ -28,6 +30,11 @@ public class DataQuestionRequest {
      */
     private Long tableId;
     
+    /**
+     * 选中的表ID列表（可选）
+     */
+    private List<Long> tableIds;
+    
     /**
      * 表名（可选，当没有tableId时使用）
      */
@@ -0,0 +1,132 @@
+package com.mt.agent.workflow.api.dto;
+
+import com.mt.agent.workflow.api.infra.ExternalDbExecutor;
+import com.mt.agent.workflow.api.infra.pipeline.CancellationToken;
+import com.mt.agent.workflow.api.service.impl.SubEventReporter;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * 单次Python执行的上下文
+ * 保存本次执行所需的问题、历史、表结构和数据库配置，以及执行过程中产生的错误输出和结果，
+ * 每次执行独立一份，并发执行之间互不影响
+ */
+@Getter
+@Setter
+public class ExecutionContext {
+
+    private static final int DEFAULT_ERROR_LINES = 200;
+
+    /**
+     * 用户ID
+     */
+    private final String userId;
+
+    private Long dbConfigId;
+    private Long sessionId;
+    private Long messageId;
+
+    /**
+     * 当前用户问题
+     */
+    private String question;
+
+    /**
+     * 历史对话上下文
+     */
+    private String historyContext;
+
+    /**
+     * 执行器使用的表结构信息
+     */
+    private String tableSchema;
+
+    /**
+     * 大模型生成的Python代码
+     */
+    private String pythonCode;
+
+    /**
+     * 流式输出报告器，非流式请求为null
+     */
+    private SubEventReporter reporter;
+
+    /**
+     * 取消令牌，不支持取消的调用为null
+     */
+    private CancellationToken cancellation;
+
+    /**
+     * 最近一次exec_sql的结果，没有output_result时序列化为执行结果；
+     * 只保留引用，避免每次查询都生成一份完整JSON
+     */
+    private volatile ExternalDbExecutor.QueryResult lastQueryResult;
+
+    /**
+     * Python错误输出，只保留最近的若干行
+     */
+    private final ErrorBuffer errorOutput = new ErrorBuffer(DEFAULT_ERROR_LINES);
+
+    private final StringBuilder outputResult = new StringBuilder();
+
+    public ExecutionContext(String userId) {
+        this.userId = userId;
+    }
+
+    public static ExecutionContext forUser(Long userId) {
+        return new ExecutionContext(userId != null ? userId.toString() : null);
+    }
+
+    /**
+     * 追加output_result输出
+     */
+    public void appendOutputResult(Object result) {
+        synchronized (outputResult) {
+            outputResult.append("\n").append(result);
+        }
+    }
+
+    public String getOutputResult() {
+        synchronized (outputResult) {
+            return outputResult.length() > 0 ? outputResult.toString() : null;
+        }
+    }
+
+    /**
+     * 有界错误输出缓冲，超出容量时丢弃最早的行
+     */
+    public static class ErrorBuffer {
+
+        private static final int MAX_LINE_LENGTH = 2000;
+
+        private final int capacity;
+        private final Deque<String> lines;
+
+        public ErrorBuffer(int capacity) {
+            this.capacity = capacity;
+            this.lines = new ArrayDeque<>(capacity);
+        }
+
+        public synchronized void append(String line) {
+            if (line == null) {
+                return;
+            }
+            if (lines.size() == capacity) {
+                lines.removeFirst();
+            }
+            lines.addLast(line.length() > MAX_LINE_LENGTH ? line.substring(0, MAX_LINE_LENGTH) : line);
+        }
+
+        public synchronized boolean isEmpty() {
+            return lines.isEmpty();
+        }
+
+        @Override
+        public synchronized String toString() {
+            return lines.isEmpty() ? "" : String.join("\n", lines) + "\n";
+        }
+    }
+}
@@ -86,4 +86,14 @@ public class ApiConfig {
      * 超时时间（秒）
      */
     private Integer timeout;
+    
+    /**
+     * 热点查询缓存预刷新周期（秒），为空或0不刷新
+     */
+    private Integer cacheRefreshSeconds;
+    
+    /**
+     * 每次预刷新的热点查询数
+     */
+    private Integer cacheRefreshTopK;
 }
\ No newline at end of file
@@ -41,6 +41,21 @@ public class DbConfig {
 
     private Integer status; // 状态（1启用 0禁用）
 
+    /**
+     * 连接池配置，为空时使用external-db-pool中的默认值
+     */
+    private Integer poolMaxSize;
+
+    private Integer poolMinIdle;
+
+    private Long connectionTimeoutMs;
+
+    private Long idleTimeoutMs;
+
+    private Long maxLifetimeMs;
+
+    private Integer fetchSize;
+
     @TableField(value = "created_at")
     private Date createdAt;
 
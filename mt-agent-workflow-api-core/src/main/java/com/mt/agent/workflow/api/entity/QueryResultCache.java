@@ -14,7 +14,10 @@ public class QueryResultCache {
     private Long dbConfigId;
     private Long schemaVersionId;
     private String sqlHash;
-    private String previewJson; // 结果预览JSON(前N行+统计)
+    private String previewJson; // 结果预览JSON(前N行+统计)，旧版本写入
+    private byte[] previewBlob; // 压缩后的结果负载(ResultPayloadCodec)
+    private Long rawSizeBytes; // 压缩前大小
+    private Long storedSizeBytes; // 压缩后大小
     private String resultPath; // 完整结果文件路径
     private Long rowCount; // 总行数
     private String columnHeadersJson; // 列头信息JSON
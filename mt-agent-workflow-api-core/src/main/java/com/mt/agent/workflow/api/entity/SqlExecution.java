@@ -20,6 +20,12 @@ public class SqlExecution {
     private Long affectedRows;
     private String errorMsg;
     private String resultCacheKey;
+    /** 执行前检查改写后实际执行的SQL，未改写时为空 */
+    private String executedSql;
+    /** 执行计划预估扫描行数 */
+    private Long estimatedRows;
+    /** 执行计划估算代价 */
+    private Double planCost;
     private Long createdAtMs;
     private Long finishedAtMs;
 }
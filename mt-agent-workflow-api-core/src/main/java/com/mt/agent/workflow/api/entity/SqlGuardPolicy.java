@@ -16,6 +16,8 @@ public class SqlGuardPolicy {
     private String denyKeywords;
     private String tableBlacklist;
     private String tableWhitelist;
+    private String denyFunctions;
+    private Integer maxSubqueryDepth;
     private Long maxScanRows;
     private Integer maxTimeoutMs;
     private Integer status;
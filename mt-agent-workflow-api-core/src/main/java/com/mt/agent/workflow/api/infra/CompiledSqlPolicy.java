@@ -0,0 +1,597 @@
+package com.mt.agent.workflow.api.infra;
+
+import com.mt.agent.workflow.api.entity.SqlGuardPolicy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 编译后的SQL安全策略
+ * 对SQL做一遍MySQL词法扫描，同时检查只读、禁止关键字、禁止函数、表白名单/黑名单与子查询嵌套深度。
+ * 字符串字面量与注释中的内容不参与检查，MySQL可执行注释（/*!开头）中的内容照常检查；
+ * 关键字与名单都编译为哈希表，检查耗时只与SQL长度有关，与名单长度无关。
+ * 违反策略时抛出IllegalArgumentException
+ */
+public final class CompiledSqlPolicy {
+
+    /**
+     * 只读模式下禁止出现的写操作关键字，后跟括号时是同名字符串函数（如REPLACE()、INSERT()），不拦截
+     */
+    private static final Set<String> WRITE_KEYWORDS = Set.of(
+            "INSERT", "UPDATE", "DELETE", "MERGE", "REPLACE", "INTO",
+            "DROP", "ALTER", "TRUNCATE", "CREATE", "RENAME", "GRANT", "REVOKE");
+
+    /**
+     * 只读模式下允许的语句开头
+     */
+    private static final Set<String> READ_STATEMENTS = Set.of(
+            "SELECT", "WITH", "SHOW", "DESC", "DESCRIBE", "EXPLAIN");
+
+    /**
+     * 结束FROM表列表的子句关键字
+     */
+    private static final Set<String> CLAUSE_KEYWORDS = Set.of(
+            "SELECT", "WHERE", "GROUP", "HAVING", "ORDER", "LIMIT", "UNION", "EXCEPT", "INTERSECT",
+            "WINDOW", "SET", "VALUES", "FOR", "LOCK");
+
+    /**
+     * 集合运算关键字，其后可跟MySQL 8的 TABLE t 语句
+     */
+    private static final Set<String> SET_OPERATORS = Set.of("UNION", "EXCEPT", "INTERSECT");
+
+    /**
+     * 后跟括号时不是函数调用的关键字
+     */
+    private static final Set<String> NON_FUNCTION_KEYWORDS = Set.of(
+            "IN", "EXISTS", "FROM", "JOIN", "AS", "ON", "AND", "OR", "NOT", "XOR", "WHERE", "SELECT",
+            "VALUES", "USING", "INTO", "HAVING", "BY", "WHEN", "THEN", "ELSE", "CASE", "UNION", "ALL",
+            "ANY", "SOME", "LATERAL", "WITH", "RECURSIVE", "DISTINCT", "IS", "LIKE", "BETWEEN", "OVER");
+
+    /**
+     * 不是表名的FROM/JOIN目标
+     */
+    private static final Set<String> NON_TABLE_WORDS = Set.of("DUAL", "LATERAL", "JSON_TABLE");
+
+    /**
+     * 只检查只读的策略
+     */
+    public static final CompiledSqlPolicy READ_ONLY = new CompiledSqlPolicy(
+            true, Map.of(), Set.of(), null, null, 0, null, null);
+
+    private final boolean readOnly;
+    private final Map<String, List<String[]>> denyKeywords;
+    private final Set<String> denyFunctions;
+    private final NameSet whitelist;
+    private final NameSet blacklist;
+    private final int maxSubqueryDepth;
+    private final Long policyId;
+    private final Long policyUpdatedAtMs;
+
+    private CompiledSqlPolicy(boolean readOnly, Map<String, List<String[]>> denyKeywords, Set<String> denyFunctions,
+                              NameSet whitelist, NameSet blacklist, int maxSubqueryDepth,
+                              Long policyId, Long policyUpdatedAtMs) {
+        this.readOnly = readOnly;
+        this.denyKeywords = denyKeywords;
+        this.denyFunctions = denyFunctions;
+        this.whitelist = whitelist;
+        this.blacklist = blacklist;
+        this.maxSubqueryDepth = maxSubqueryDepth;
+        this.policyId = policyId;
+        this.policyUpdatedAtMs = policyUpdatedAtMs;
+    }
+
+    /**
+     * 编译策略
+     *
+     * @param defaultDenyFunctions    所有策略都禁止的函数，与策略的deny_functions合并
+     * @param defaultMaxSubqueryDepth 策略未配置max_subquery_depth时的子查询嵌套上限，0表示不限制
+     */
+    public static CompiledSqlPolicy compile(SqlGuardPolicy policy, Collection<String> defaultDenyFunctions,
+                                            int defaultMaxSubqueryDepth) {
+        Map<String, List<String[]>> keywords = new HashMap<>();
+        for (String keyword : parseList(policy.getDenyKeywords())) {
+            List<Token> tokens = tokenize(keyword);
+            if (tokens.isEmpty()) {
+                continue;
+            }
+            String[] sequence = new String[tokens.size()];
+            for (int i = 0; i < sequence.length; i++) {
+                sequence[i] = tokens.get(i).upper;
+            }
+            keywords.computeIfAbsent(sequence[0], k -> new ArrayList<>()).add(sequence);
+        }
+
+        Set<String> functions = new HashSet<>();
+        if (defaultDenyFunctions != null) {
+            defaultDenyFunctions.forEach(f -> functions.add(f.trim().toUpperCase(Locale.ROOT)));
+        }
+        parseList(policy.getDenyFunctions()).forEach(f -> functions.add(f.toUpperCase(Locale.ROOT)));
+
+        int depth = policy.getMaxSubqueryDepth() != null ? policy.getMaxSubqueryDepth() : defaultMaxSubqueryDepth;
+        return new CompiledSqlPolicy(policy.getReadOnly() == null || policy.getReadOnly() == 1,
+                keywords, functions, NameSet.of(policy.getTableWhitelist()), NameSet.of(policy.getTableBlacklist()),
+                Math.max(0, depth), policy.getId(), policy.getUpdatedAtMs());
+    }
+
+    /**
+     * 是否由该策略的当前版本编译而来
+     */
+    public boolean isCompiledFrom(SqlGuardPolicy policy) {
+        return Objects.equals(policyId, policy.getId()) && Objects.equals(policyUpdatedAtMs, policy.getUpdatedAtMs());
+    }
+
+    /**
+     * 检查SQL，违反策略时抛出IllegalArgumentException
+     */
+    public void check(String sql) {
+        check(sql, null);
+    }
+
+    /**
+     * 检查SQL，违反策略时抛出IllegalArgumentException
+     *
+     * @param database 连接的默认库，白名单中未限定库名的表项只匹配未限定库名或限定为该库的引用；为空时只匹配未限定库名的引用
+     */
+    public void check(String sql, String database) {
+        String defaultSchema = database == null || database.isBlank() ? null : database.toLowerCase(Locale.ROOT);
+        List<Token> tokens = tokenize(sql == null ? "" : sql);
+        if (tokens.isEmpty()) {
+            throw new IllegalArgumentException("SQL为空");
+        }
+        if (readOnly) {
+            checkStatementStart(tokens);
+        }
+
+        Deque<Frame> parents = new ArrayDeque<>();
+        Frame frame = new Frame(Paren.ROOT);
+        Set<String> cteNames = null;
+        int subqueryDepth = 0;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Token t = tokens.get(i);
+            Token prev = i > 0 ? tokens.get(i - 1) : null;
+            Token next = i + 1 < tokens.size() ? tokens.get(i + 1) : null;
+            // 跟在.后面的是限定名的一部分，不是关键字
+            boolean qualified = prev != null && prev.is(".");
+
+            if (!denyKeywords.isEmpty() && t.type != TokenType.STRING) {
+                checkDenyKeywords(tokens, i);
+            }
+
+            if (t.type == TokenType.SYMBOL) {
+                switch (t.text) {
+                    case "(" -> {
+                        Paren kind;
+                        if (next != null && (next.isWord("SELECT") || next.isWord("WITH") || next.isWord("TABLE"))) {
+                            kind = Paren.SUBQUERY;
+                            subqueryDepth++;
+                            if (maxSubqueryDepth > 0 && subqueryDepth > maxSubqueryDepth) {
+                                throw new IllegalArgumentException("子查询嵌套超过" + maxSubqueryDepth + "层");
+                            }
+                        } else if (prev != null && (prev.type == TokenType.QUOTED
+                                || prev.type == TokenType.WORD && !NON_FUNCTION_KEYWORDS.contains(prev.upper))) {
+                            kind = Paren.FUNCTION;
+                        } else {
+                            kind = Paren.GROUP;
+                        }
+                        Frame child = new Frame(kind);
+                        if (frame.pendingCte != null && prev != null && prev.isWord("AS")) {
+                            // 非递归CTE体内的同名引用指向真实表，CTE名到体结束后才生效
+                            child.cteName = frame.pendingCte;
+                            frame.pendingCte = null;
+                        }
+                        if (kind == Paren.GROUP && frame.expectTable) {
+                            // FROM (t1, t2) 形式的表列表
+                            child.inFrom = true;
+                            child.expectTable = true;
+                        }
+                        frame.expectTable = false;
+                        parents.push(frame);
+                        frame = child;
+                    }
+                    case ")" -> {
+                        if (!parents.isEmpty()) {
+                            if (frame.kind == Paren.SUBQUERY) {
+                                subqueryDepth--;
+                            }
+                            if (frame.cteName != null) {
+                                if (cteNames == null) {
+                                    cteNames = new HashSet<>();
+                                }
+                                cteNames.add(frame.cteName);
+                            }
+                            frame = parents.pop();
+                        }
+                    }
+                    case "," -> {
+                        frame.expectTable = frame.inFrom;
+                        frame.expectCte = frame.inWith;
+                    }
+                    case ";" -> {
+                        if (readOnly && hasStatementAfter(tokens, i)) {
+                            throw new IllegalArgumentException("仅允许执行单条查询语句");
+                        }
+                    }
+                    default -> {
+                    }
+                }
+                continue;
+            }
+            if (t.type != TokenType.WORD && t.type != TokenType.QUOTED) {
+                continue;
+            }
+
+            boolean call = next != null && next.is("(");
+            if (call && denyFunctions.contains(t.upper)) {
+                throw new IllegalArgumentException("禁止调用函数: " + t.upper);
+            }
+            boolean keyword = t.type == TokenType.WORD && !qualified;
+            if (readOnly && keyword && !call && WRITE_KEYWORDS.contains(t.upper)) {
+                throw new IllegalArgumentException("仅允许只读查询，检测到关键字: " + t.upper);
+            }
+
+            if (frame.expectCte) {
+                if (keyword && t.upper.equals("RECURSIVE")) {
+                    frame.recursive = true;
+                    continue;
+                }
+                frame.expectCte = false;
+                if (next != null && (next.isWord("AS") || next.is("("))) {
+                    if (frame.recursive) {
+                        // 递归CTE体内可以引用自身
+                        if (cteNames == null) {
+                            cteNames = new HashSet<>();
+                        }
+                        cteNames.add(t.lower());
+                    } else {
+                        frame.pendingCte = t.lower();
+                    }
+                    continue;
+                }
+            }
+
+            if (frame.expectTable) {
+                frame.expectTable = false;
+                if (keyword && NON_TABLE_WORDS.contains(t.upper)) {
+                    continue;
+                }
+                Token qualifier = null;
+                Token name = t;
+                if (next != null && next.is(".") && i + 2 < tokens.size() && tokens.get(i + 2).isName()) {
+                    qualifier = t;
+                    name = tokens.get(i + 2);
+                    i += 2;
+                }
+                checkTable(qualifier == null ? null : qualifier.lower(), name.lower(), defaultSchema, cteNames);
+                continue;
+            }
+
+            if (!keyword) {
+                continue;
+            }
+            switch (t.upper) {
+                case "FROM", "JOIN", "STRAIGHT_JOIN" -> {
+                    // EXTRACT(YEAR FROM d)、TRIM(x FROM y)中的FROM不引出表
+                    if (frame.kind != Paren.FUNCTION) {
+                        frame.inFrom = true;
+                        frame.expectTable = true;
+                    }
+                }
+                case "UPDATE", "INTO" -> frame.expectTable = frame.kind != Paren.FUNCTION;
+                // MySQL 8 的 TABLE t 等价于 SELECT * FROM t
+                case "TABLE" -> frame.expectTable = startsQuery(tokens, i);
+                case "WITH" -> {
+                    // GROUP BY ... WITH ROLLUP 不是公共表表达式
+                    if (next == null || !next.isWord("ROLLUP")) {
+                        frame.inWith = true;
+                        frame.expectCte = true;
+                        frame.recursive = false;
+                    }
+                }
+                default -> {
+                    if (CLAUSE_KEYWORDS.contains(t.upper)) {
+                        frame.inFrom = false;
+                        if (t.upper.equals("SELECT")) {
+                            frame.inWith = false;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void checkStatementStart(List<Token> tokens) {
+        for (Token t : tokens) {
+            if (t.is("(")) {
+                continue;
+            }
+            if (t.type != TokenType.WORD || !READ_STATEMENTS.contains(t.upper)) {
+                throw new IllegalArgumentException("仅允许只读查询，不支持的语句: " + t.text);
+            }
+            return;
+        }
+    }
+
+    /**
+     * 是否位于语句、子查询开头或集合运算之后
+     */
+    private static boolean startsQuery(List<Token> tokens, int index) {
+        int i = index - 1;
+        if (i >= 0 && (tokens.get(i).isWord("ALL") || tokens.get(i).isWord("DISTINCT"))) {
+            i--;
+            return i >= 0 && tokens.get(i).type == TokenType.WORD && SET_OPERATORS.contains(tokens.get(i).upper);
+        }
+        if (i < 0 || tokens.get(i).is("(") || tokens.get(i).is(";")) {
+            return true;
+        }
+        return tokens.get(i).type == TokenType.WORD && SET_OPERATORS.contains(tokens.get(i).upper);
+    }
+
+    private static boolean hasStatementAfter(List<Token> tokens, int index) {
+        for (int i = index + 1; i < tokens.size(); i++) {
+            if (!tokens.get(i).is(";")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void checkDenyKeywords(List<Token> tokens, int index) {
+        List<String[]> candidates = denyKeywords.get(tokens.get(index).upper);
+        if (candidates == null) {
+            return;
+        }
+        for (String[] sequence : candidates) {
+            if (index + sequence.length > tokens.size()) {
+                continue;
+            }
+            boolean matched = true;
+            for (int k = 1; k < sequence.length && matched; k++) {
+                Token t = tokens.get(index + k);
+                matched = t.type != TokenType.STRING && t.upper.equals(sequence[k]);
+            }
+            if (matched) {
+                throw new IllegalArgumentException("包含禁止关键字: " + String.join(" ", sequence));
+            }
+        }
+    }
+
+    private void checkTable(String qualifier, String name, String defaultSchema, Set<String> cteNames) {
+        if (qualifier == null && cteNames != null && cteNames.contains(name)) {
+            return;
+        }
+        String display = qualifier == null ? name : qualifier + "." + name;
+        if (blacklist != null && blacklist.matchesAnySchema(qualifier, name)) {
+            throw new IllegalArgumentException("禁止访问表: " + display);
+        }
+        if (whitelist != null && !whitelist.matches(qualifier, name, defaultSchema)) {
+            throw new IllegalArgumentException("表不在允许访问的范围内: " + display);
+        }
+    }
+
+    /**
+     * 解析策略中的名单，兼容JSON数组与逗号分隔
+     */
+    static List<String> parseList(String value) {
+        List<String> items = new ArrayList<>();
+        if (value == null || value.isBlank()) {
+            return items;
+        }
+        for (String item : value.replace("[", "").replace("]", "").split(",")) {
+            item = item.replace("\"", "").trim();
+            if (!item.isEmpty()) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * 表名单，名单项为 表名 或 库名.表名，不区分大小写
+     */
+    private static final class NameSet {
+        private final Set<String> bare = new HashSet<>();
+        private final Set<String> qualified = new HashSet<>();
+        private final Set<String> bareOfQualified = new HashSet<>();
+
+        static NameSet of(String value) {
+            List<String> items = parseList(value);
+            if (items.isEmpty()) {
+                return null;
+            }
+            NameSet set = new NameSet();
+            for (String item : items) {
+                String name = item.replace("`", "").toLowerCase(Locale.ROOT);
+                int dot = name.indexOf('.');
+                if (dot < 0) {
+                    set.bare.add(name);
+                } else {
+                    set.qualified.add(name);
+                    set.bareOfQualified.add(name.substring(dot + 1));
+                }
+            }
+            return set;
+        }
+
+        /**
+         * 白名单匹配：表名项只代表默认库下的表，其他库的表须配置 库名.表名；
+         * 默认库未知时，未限定库名的引用匹配任意库下的同名表项
+         */
+        boolean matches(String qualifier, String name, String defaultSchema) {
+            if ((qualifier == null || qualifier.equals(defaultSchema)) && bare.contains(name)) {
+                return true;
+            }
+            String schema = qualifier != null ? qualifier : defaultSchema;
+            return schema != null ? qualified.contains(schema + "." + name) : bareOfQualified.contains(name);
+        }
+
+        /**
+         * 黑名单匹配：宁可多拦，表名项匹配任意库下的同名表，未限定库名的引用匹配任意库下的同名表项
+         */
+        boolean matchesAnySchema(String qualifier, String name) {
+            if (bare.contains(name)) {
+                return true;
+            }
+            return qualifier != null ? qualified.contains(qualifier + "." + name) : bareOfQualified.contains(name);
+        }
+    }
+
+    private enum Paren {ROOT, SUBQUERY, FUNCTION, GROUP}
+
+    /**
+     * 括号层级的解析状态
+     */
+    private static final class Frame {
+        final Paren kind;
+        boolean inFrom;
+        boolean expectTable;
+        boolean inWith;
+        boolean expectCte;
+        boolean recursive;
+        /**
+         * 等待CTE体的括号时记下的CTE名
+         */
+        String pendingCte;
+        /**
+         * 作为CTE体的子查询所定义的CTE名，括号结束时生效
+         */
+        String cteName;
+
+        Frame(Paren kind) {
+            this.kind = kind;
+        }
+    }
+
+    private enum TokenType {WORD, QUOTED, STRING, NUMBER, SYMBOL}
+
+    private record Token(TokenType type, String text, String upper) {
+        boolean is(String symbol) {
+            return type == TokenType.SYMBOL && text.equals(symbol);
+        }
+
+        boolean isWord(String word) {
+            return type == TokenType.WORD && upper.equals(word);
+        }
+
+        boolean isName() {
+            return type == TokenType.WORD || type == TokenType.QUOTED;
+        }
+
+        String lower() {
+            return text.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * MySQL词法扫描：跳过空白、注释与字符串内容，反引号标识符去掉引号
+     */
+    private static List<Token> tokenize(String sql) {
+        List<Token> tokens = new ArrayList<>();
+        int n = sql.length();
+        int i = 0;
+        boolean executableComment = false;
+        while (i < n) {
+            char c = sql.charAt(i);
+            char next = i + 1 < n ? sql.charAt(i + 1) : 0;
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '#' || c == '-' && next == '-' && (i + 2 >= n || Character.isWhitespace(sql.charAt(i + 2)))) {
+                // MySQL的 -- 注释要求后跟空白，a--1 是减负数
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? n : end + 1;
+            } else if (c == '/' && next == '*') {
+                if (i + 2 < n && sql.charAt(i + 2) == '!') {
+                    // 可执行注释的内容会被MySQL执行，跳过标记与版本号后照常扫描
+                    executableComment = true;
+                    i += 3;
+                    while (i < n && Character.isDigit(sql.charAt(i))) {
+                        i++;
+                    }
+                } else {
+                    int end = sql.indexOf("*/", i + 2);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("SQL中存在未闭合的注释");
+                    }
+                    i = end + 2;
+                }
+            } else if (c == '*' && next == '/' && executableComment) {
+                executableComment = false;
+                i += 2;
+            } else if (c == '\'' || c == '"') {
+                int end = skipString(sql, i, c);
+                tokens.add(new Token(TokenType.STRING, sql.substring(i, end), ""));
+                i = end;
+            } else if (c == '`') {
+                StringBuilder name = new StringBuilder();
+                int j = i + 1;
+                while (true) {
+                    if (j >= n) {
+                        throw new IllegalArgumentException("SQL中存在未闭合的标识符");
+                    }
+                    char ch = sql.charAt(j);
+                    if (ch == '`') {
+                        if (j + 1 < n && sql.charAt(j + 1) == '`') {
+                            name.append('`');
+                            j += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    name.append(ch);
+                    j++;
+                }
+                String text = name.toString();
+                tokens.add(new Token(TokenType.QUOTED, text, text.toUpperCase(Locale.ROOT)));
+                i = j + 1;
+            } else if (isIdentifierChar(c)) {
+                int j = i;
+                boolean digits = true;
+                while (j < n && isIdentifierChar(sql.charAt(j))) {
+                    digits &= Character.isDigit(sql.charAt(j));
+                    j++;
+                }
+                String text = sql.substring(i, j);
+                tokens.add(new Token(digits ? TokenType.NUMBER : TokenType.WORD, text, text.toUpperCase(Locale.ROOT)));
+                i = j;
+            } else {
+                String text = String.valueOf(c);
+                tokens.add(new Token(TokenType.SYMBOL, text, text));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static int skipString(String sql, int start, char quote) {
+        int n = sql.length();
+        int i = start + 1;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                if (i + 1 < n && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        throw new IllegalArgumentException("SQL中存在未闭合的字符串");
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+}
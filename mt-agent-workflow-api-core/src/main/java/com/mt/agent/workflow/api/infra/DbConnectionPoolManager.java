@@ -1,53 +1,301 @@
 package com.mt.agent.workflow.api.infra;
 
+import com.mt.agent.workflow.api.config.ExternalDbPoolProperties;
 import com.mt.agent.workflow.api.entity.DbConfig;
+import com.mt.agent.workflow.api.util.CryptoKeyProvider;
 import com.mt.agent.workflow.api.util.PasswordCipherService;
 import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariConfigMXBean;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
 
 import javax.sql.DataSource;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
 
+/**
+ * 外部数据库连接池注册表
+ * 每个数据库配置只有一个连接池，SQL执行、结构同步与连接管理共用。
+ * 连接池大小与超时按db_config配置，变化时在运行中的连接池上直接调整；
+ * 地址或账号密码变化时新建连接池替换，旧连接池不再借出连接，等执行中的查询归还后再关闭
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
 public class DbConnectionPoolManager {
 
-    private static final Map<Long, HikariDataSource> POOLS = new ConcurrentHashMap<>();
+    private final ExternalDbPoolProperties properties;
+    private final MeterRegistry meterRegistry;
 
-    public static DataSource getOrCreate(Long dbConfigId, DbConfig cfg, byte[] masterKey) {
-        return POOLS.computeIfAbsent(dbConfigId, id -> create(cfg, masterKey));
+    private final Map<Long, Pool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * 已替换、等待执行中查询结束的旧连接池
+     */
+    private final Set<HikariDataSource> draining = ConcurrentHashMap.newKeySet();
+
+    private final Set<Long> metered = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final ScheduledExecutorService drainExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "db-pool-drain");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final byte[] masterKey = CryptoKeyProvider.getMasterKey();
+
+    /**
+     * @param identity 连接地址与账号密码，变化时需要替换连接池
+     */
+    private record Pool(HikariDataSource dataSource, String identity) {
+    }
+
+    /**
+     * 获取数据库配置对应的连接池，不存在时创建
+     * 传入的配置与现有连接池不一致时，按配置调整或替换。
+     * 新连接池在注册表之外创建（首个连接可能耗时较长），再以CAS发布，并发创建时落败的一方关闭自己创建的连接池
+     */
+    public DataSource getOrCreate(DbConfig cfg) {
+        Long dbConfigId = cfg.getId();
+        String identity = identity(cfg);
+        while (true) {
+            Pool current = pools.get(dbConfigId);
+            if (current != null && current.identity().equals(identity)) {
+                applySizing(current.dataSource(), cfg);
+                return current.dataSource();
+            }
+
+            Pool created = new Pool(create(cfg), identity);
+            boolean published = current == null
+                    ? pools.putIfAbsent(dbConfigId, created) == null
+                    : pools.replace(dbConfigId, current, created);
+            if (!published) {
+                // 其他线程已发布或替换，关闭本次创建的连接池后按最新状态重试
+                created.dataSource().close();
+                continue;
+            }
+            if (current != null) {
+                log.info("🔍 [连接池] 数据库配置 {} 的连接信息已变更，替换连接池", dbConfigId);
+                drain(current.dataSource());
+            }
+            registerMetrics(dbConfigId);
+            applySizing(created.dataSource(), cfg);
+            return created.dataSource();
+        }
+    }
+
+    /**
+     * 数据库配置变更后同步到已有连接池，未创建过连接池时不做处理
+     */
+    public void refresh(DbConfig cfg) {
+        if (cfg != null && pools.containsKey(cfg.getId())) {
+            getOrCreate(cfg);
+        }
+    }
+
+    /**
+     * 移除连接池，执行中的查询结束后关闭
+     */
+    public void evict(Long dbConfigId) {
+        Pool pool = pools.remove(dbConfigId);
+        if (pool != null) {
+            drain(pool.dataSource());
+        }
+    }
+
+    /**
+     * 是否已有连接池
+     */
+    public boolean contains(Long dbConfigId) {
+        return pools.containsKey(dbConfigId);
     }
 
-    public static void evict(Long dbConfigId) {
-        HikariDataSource ds = POOLS.remove(dbConfigId);
-        if (ds != null) {
-            ds.close();
+    /**
+     * 已创建连接池的数据库配置ID
+     */
+    public Set<Long> poolIds() {
+        return Set.copyOf(pools.keySet());
+    }
+
+    /**
+     * 查询使用的fetchSize：数据库配置优先，其次全局默认值，都未配置时使用调用方的值
+     */
+    public int fetchSize(DbConfig cfg, int fallback) {
+        if (cfg.getFetchSize() != null && cfg.getFetchSize() > 0) {
+            return cfg.getFetchSize();
         }
+        return properties.getDefaultFetchSize() > 0 ? properties.getDefaultFetchSize() : fallback;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        drainExecutor.shutdownNow();
+        pools.values().forEach(pool -> pool.dataSource().close());
+        pools.clear();
+        draining.forEach(HikariDataSource::close);
+        draining.clear();
     }
 
-    private static HikariDataSource create(DbConfig cfg, byte[] masterKey) {
-        // 解密密码
-        String password = com.mt.agent.workflow.api.util.PasswordCipherService.decryptToStringFromString(masterKey, cfg.getPasswordCipher());
-        String jdbcUrl = buildJdbcUrl(cfg);
+    private HikariDataSource create(DbConfig cfg) {
         HikariConfig hc = new HikariConfig();
-        hc.setJdbcUrl(jdbcUrl);
+        hc.setPoolName("ext-db-" + cfg.getId() + "-" + generation.incrementAndGet());
+        hc.setJdbcUrl(buildJdbcUrl(cfg));
         hc.setUsername(cfg.getUsername());
-        hc.setPassword(password);
-        hc.setMaximumPoolSize(5);
-        hc.setMinimumIdle(0);
-        hc.setIdleTimeout(60_000);
-        hc.setConnectionTimeout(10_000);
-        hc.setMaxLifetime(10 * 60_000);
+        hc.setPassword(decryptPassword(cfg));
+        hc.setMaximumPoolSize(maxPoolSize(cfg));
+        hc.setMinimumIdle(minIdle(cfg));
+        hc.setConnectionTimeout(value(cfg.getConnectionTimeoutMs(), properties.getConnectionTimeoutMs()));
+        hc.setIdleTimeout(value(cfg.getIdleTimeoutMs(), properties.getIdleTimeoutMs()));
+        hc.setMaxLifetime(value(cfg.getMaxLifetimeMs(), properties.getMaxLifetimeMs()));
+        hc.setLeakDetectionThreshold(properties.getLeakDetectionThresholdMs());
+        hc.setValidationTimeout(5_000);
         hc.setReadOnly(true);
+        log.info("🔍 [连接池] 创建连接池: {}, maxPoolSize: {}, minIdle: {}",
+                hc.getPoolName(), hc.getMaximumPoolSize(), hc.getMinimumIdle());
         return new HikariDataSource(hc);
     }
 
+    /**
+     * 在运行中的连接池上调整大小与超时，不影响已借出的连接
+     */
+    private void applySizing(HikariDataSource ds, DbConfig cfg) {
+        HikariConfigMXBean mx = ds.getHikariConfigMXBean();
+        int maxPoolSize = maxPoolSize(cfg);
+        int minIdle = minIdle(cfg);
+        long connectionTimeout = value(cfg.getConnectionTimeoutMs(), properties.getConnectionTimeoutMs());
+        long idleTimeout = value(cfg.getIdleTimeoutMs(), properties.getIdleTimeoutMs());
+        long maxLifetime = value(cfg.getMaxLifetimeMs(), properties.getMaxLifetimeMs());
+        if (mx.getMaximumPoolSize() == maxPoolSize && mx.getMinimumIdle() == minIdle
+                && mx.getConnectionTimeout() == connectionTimeout && mx.getIdleTimeout() == idleTimeout
+                && mx.getMaxLifetime() == maxLifetime) {
+            return;
+        }
+        // 扩容时先调最大值，缩容时先调最小值，保证minIdle不超过maximumPoolSize
+        if (maxPoolSize >= mx.getMaximumPoolSize()) {
+            mx.setMaximumPoolSize(maxPoolSize);
+            mx.setMinimumIdle(minIdle);
+        } else {
+            mx.setMinimumIdle(minIdle);
+            mx.setMaximumPoolSize(maxPoolSize);
+        }
+        mx.setConnectionTimeout(connectionTimeout);
+        mx.setIdleTimeout(idleTimeout);
+        mx.setMaxLifetime(maxLifetime);
+        log.info("🔍 [连接池] 调整连接池: {}, maxPoolSize: {}, minIdle: {}", ds.getPoolName(), maxPoolSize, minIdle);
+    }
+
+    /**
+     * 旧连接池立即淘汰空闲连接，借出的连接归还时关闭；全部归还或超过等待时间后关闭连接池
+     */
+    private void drain(HikariDataSource ds) {
+        draining.add(ds);
+        HikariPoolMXBean pool = ds.getHikariPoolMXBean();
+        if (pool != null) {
+            pool.softEvictConnections();
+        }
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(properties.getDrainTimeoutSeconds());
+        Runnable check = new Runnable() {
+            @Override
+            public void run() {
+                int active = pool != null ? pool.getActiveConnections() : 0;
+                if (active > 0 && System.currentTimeMillis() < deadline) {
+                    drainExecutor.schedule(this, 1, TimeUnit.SECONDS);
+                    return;
+                }
+                if (active > 0) {
+                    log.warn("🔍 [连接池] 连接池 {} 等待超时，仍有 {} 个连接未归还，强制关闭", ds.getPoolName(), active);
+                }
+                draining.remove(ds);
+                ds.close();
+                log.info("🔍 [连接池] 旧连接池已关闭: {}", ds.getPoolName());
+            }
+        };
+        drainExecutor.execute(check);
+    }
+
+    /**
+     * 按数据库配置注册连接池指标，连接池替换后指标读取新连接池
+     */
+    private void registerMetrics(Long dbConfigId) {
+        if (!metered.add(dbConfigId)) {
+            return;
+        }
+        String id = String.valueOf(dbConfigId);
+        registerGauge(dbConfigId, id, "active", HikariPoolMXBean::getActiveConnections);
+        registerGauge(dbConfigId, id, "idle", HikariPoolMXBean::getIdleConnections);
+        registerGauge(dbConfigId, id, "total", HikariPoolMXBean::getTotalConnections);
+        registerGauge(dbConfigId, id, "pending", HikariPoolMXBean::getThreadsAwaitingConnection);
+        Gauge.builder("external.db.pool.max", this, registry -> {
+                    Pool pool = registry.pools.get(dbConfigId);
+                    return pool != null ? pool.dataSource().getHikariConfigMXBean().getMaximumPoolSize() : Double.NaN;
+                })
+                .tag("dbConfigId", id)
+                .register(meterRegistry);
+    }
+
+    private void registerGauge(Long dbConfigId, String id, String state, ToIntFunction<HikariPoolMXBean> stat) {
+        Gauge.builder("external.db.pool.connections", this, registry -> {
+                    Pool pool = registry.pools.get(dbConfigId);
+                    HikariPoolMXBean mx = pool != null ? pool.dataSource().getHikariPoolMXBean() : null;
+                    return mx != null ? stat.applyAsInt(mx) : Double.NaN;
+                })
+                .tag("dbConfigId", id)
+                .tag("state", state)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 数据库配置生效的最大连接数
+     */
+    public int maxPoolSize(DbConfig cfg) {
+        int max = cfg.getPoolMaxSize() != null && cfg.getPoolMaxSize() > 0 ? cfg.getPoolMaxSize() : properties.getMaxPoolSize();
+        return Math.max(1, max);
+    }
+
+    private int minIdle(DbConfig cfg) {
+        int minIdle = cfg.getPoolMinIdle() != null && cfg.getPoolMinIdle() >= 0 ? cfg.getPoolMinIdle() : properties.getMinIdle();
+        return Math.min(Math.max(0, minIdle), maxPoolSize(cfg));
+    }
+
+    private static long value(Long configured, long defaultValue) {
+        return configured != null && configured > 0 ? configured : defaultValue;
+    }
+
+    private static String identity(DbConfig cfg) {
+        return buildJdbcUrl(cfg) + "|" + cfg.getUsername() + "|" + cfg.getPasswordCipher();
+    }
+
+    private String decryptPassword(DbConfig cfg) {
+        try {
+            return PasswordCipherService.decryptToStringFromString(masterKey, cfg.getPasswordCipher());
+        } catch (Exception e) {
+            if (cfg.getRawPassword() != null && !cfg.getRawPassword().isEmpty()) {
+                log.warn("🔍 [连接池] 密码解密失败，使用明文密码: {}", e.getMessage());
+                return cfg.getRawPassword();
+            }
+            throw new RuntimeException("密码解密失败，且无明文密码可用: " + e.getMessage(), e);
+        }
+    }
+
     private static String buildJdbcUrl(DbConfig cfg) {
         // 目前仅支持 MySQL，后续可扩展方言
         if ("mysql".equalsIgnoreCase(cfg.getDbType())) {
-            return "jdbc:mysql://" + cfg.getHost() + ":" + cfg.getPort() + "/" + cfg.getDatabaseName() + "?useSSL=false&characterEncoding=utf-8&serverTimezone=Asia/Shanghai";
+            return "jdbc:mysql://" + cfg.getHost() + ":" + cfg.getPort() + "/" + cfg.getDatabaseName() + "?useSSL=false&characterEncoding=utf-8&serverTimezone=Asia/Shanghai&useCursorFetch=true&connectTimeout=10000";
         }
         throw new IllegalArgumentException("Unsupported db_type: " + cfg.getDbType());
     }
 }
-
-
@@ -1,11 +1,16 @@
 package com.mt.agent.workflow.api.infra;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.mt.agent.workflow.api.infra.pipeline.CancellationToken;
+import com.mt.agent.workflow.api.infra.result.ResultTable;
+
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -13,43 +18,158 @@ public class ExternalDbExecutor {
     public static class ExecOptions {
         public int queryTimeoutSeconds = 30;
         public int maxRows = 1000;
+        /**
+         * 每次从服务端拉取的行数，0表示使用驱动默认值（MySQL默认一次性缓冲全部结果）；
+         * 正数需要连接开启useCursorFetch，Integer.MIN_VALUE为MySQL逐行流式读取
+         */
+        public int fetchSize = 0;
+        /** 取消令牌，取消时对执行中的语句调用Statement.cancel() */
+        public CancellationToken cancellation;
     }
 
     public static class QueryResult {
-        public List<Map<String, Object>> rows = new ArrayList<>();
+        public List<String> columns = new ArrayList<>();
+        /** 列式存储的结果数据，流式查询时为空表 */
+        @JsonIgnore
+        public ResultTable table = ResultTable.empty(List.of());
         public long rowCount;
         public long durationMs;
+
+        /**
+         * 行视图，按Map访问每一行，不复制数据
+         */
+        @JsonProperty("rows")
+        public List<Map<String, Object>> getRows() {
+            return table.rows();
+        }
+    }
+
+    /**
+     * 流式行回调，列信息只解析一次，之后逐行推送
+     */
+    public interface RowCallback {
+        /**
+         * 结果集列信息
+         *
+         * @param columns 列标签
+         * @param sqlTypes 列类型（java.sql.Types）
+         */
+        default void onColumns(List<String> columns, int[] sqlTypes) throws Exception {
+        }
+
+        /**
+         * 一行数据，数组按列顺序排列，每行都是新数组
+         */
+        void onRow(Object[] values) throws Exception;
     }
 
     public static QueryResult query(DataSource ds, String sql, ExecOptions opt) {
+        QueryResult qr = new QueryResult();
+        ResultTable.Builder[] builder = new ResultTable.Builder[1];
+        QueryResult summary = stream(ds, sql, opt, new RowCallback() {
+            @Override
+            public void onColumns(List<String> columns, int[] sqlTypes) {
+                builder[0] = ResultTable.builder(columns);
+            }
+
+            @Override
+            public void onRow(Object[] values) {
+                builder[0].addRow(values);
+            }
+        });
+        qr.columns = summary.columns;
+        if (builder[0] != null) {
+            qr.table = builder[0].build();
+        }
+        qr.rowCount = qr.table.getRowCount();
+        qr.durationMs = summary.durationMs;
+        return qr;
+    }
+
+    /**
+     * 流式执行查询，行数据不在内存中累积，由回调逐行处理
+     *
+     * @return 只包含列信息、行数和耗时的结果
+     */
+    public static QueryResult stream(DataSource ds, String sql, ExecOptions opt, RowCallback callback) {
         long start = System.currentTimeMillis();
+        if (opt.cancellation != null) {
+            opt.cancellation.throwIfCancelled();
+        }
+        Runnable unregister = null;
         try (Connection conn = ds.getConnection();
-             Statement stmt = conn.createStatement()) {
+             Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
             conn.setReadOnly(true);
             stmt.setQueryTimeout(opt.queryTimeoutSeconds);
             stmt.setMaxRows(opt.maxRows);
+            if (opt.fetchSize != 0) {
+                stmt.setFetchSize(opt.fetchSize);
+            }
+            if (opt.cancellation != null) {
+                unregister = opt.cancellation.register(() -> cancelQuietly(stmt));
+            }
             boolean has = stmt.execute(sql);
-            QueryResult qr = new QueryResult();
+            QueryResult summary = new QueryResult();
             if (has) {
                 try (ResultSet rs = stmt.getResultSet()) {
-                    int colCount = rs.getMetaData().getColumnCount();
+                    ResultSetMetaData meta = rs.getMetaData();
+                    int colCount = meta.getColumnCount();
+                    int[] sqlTypes = new int[colCount];
+                    for (int i = 1; i <= colCount; i++) {
+                        summary.columns.add(meta.getColumnLabel(i));
+                        sqlTypes[i - 1] = meta.getColumnType(i);
+                    }
+                    callback.onColumns(summary.columns, sqlTypes);
+                    long rowCount = 0;
                     while (rs.next()) {
-                        Map<String, Object> row = new HashMap<>();
+                        Object[] values = new Object[colCount];
                         for (int i = 1; i <= colCount; i++) {
-                            String label = rs.getMetaData().getColumnLabel(i);
-                            row.put(label, rs.getObject(i));
+                            values[i - 1] = rs.getObject(i);
                         }
-                        qr.rows.add(row);
+                        callback.onRow(values);
+                        rowCount++;
                     }
-                    qr.rowCount = qr.rows.size();
+                    summary.rowCount = rowCount;
                 }
             }
-            qr.durationMs = System.currentTimeMillis() - start;
-            return qr;
+            summary.durationMs = System.currentTimeMillis() - start;
+            return summary;
         } catch (Exception e) {
+            if (opt.cancellation != null && opt.cancellation.isCancelled()) {
+                throw opt.cancellation.cancelledException();
+            }
             throw new RuntimeException("外库查询失败: " + e.getMessage(), e);
+        } finally {
+            if (unregister != null) {
+                unregister.run();
+            }
         }
     }
-}
 
+    /**
+     * 获取查询的执行计划（MySQL EXPLAIN FORMAT=JSON），不执行查询本身
+     */
+    public static String explain(DataSource ds, String sql, int timeoutSeconds) {
+        try (Connection conn = ds.getConnection();
+             Statement stmt = conn.createStatement()) {
+            conn.setReadOnly(true);
+            stmt.setQueryTimeout(timeoutSeconds);
+            try (ResultSet rs = stmt.executeQuery("EXPLAIN FORMAT=JSON " + sql)) {
+                if (!rs.next()) {
+                    throw new IllegalStateException("执行计划为空");
+                }
+                return rs.getString(1);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("获取执行计划失败: " + e.getMessage(), e);
+        }
+    }
 
+    private static void cancelQuietly(Statement stmt) {
+        try {
+            stmt.cancel();
+        } catch (Exception ignored) {
+            // 语句已结束或驱动不支持取消
+        }
+    }
+}
@@ -0,0 +1,779 @@
+package com.mt.agent.workflow.api.infra;
+
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.BinaryExpression;
+import net.sf.jsqlparser.expression.DoubleValue;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.Function;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.NotExpression;
+import net.sf.jsqlparser.expression.NullValue;
+import net.sf.jsqlparser.expression.Parenthesis;
+import net.sf.jsqlparser.expression.StringValue;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
+import net.sf.jsqlparser.expression.operators.relational.Between;
+import net.sf.jsqlparser.expression.operators.relational.ComparisonOperator;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.expression.operators.relational.ExistsExpression;
+import net.sf.jsqlparser.expression.operators.relational.ExpressionList;
+import net.sf.jsqlparser.expression.operators.relational.GreaterThan;
+import net.sf.jsqlparser.expression.operators.relational.GreaterThanEquals;
+import net.sf.jsqlparser.expression.operators.relational.InExpression;
+import net.sf.jsqlparser.expression.operators.relational.IsNullExpression;
+import net.sf.jsqlparser.expression.operators.relational.MinorThan;
+import net.sf.jsqlparser.expression.operators.relational.MinorThanEquals;
+import net.sf.jsqlparser.expression.operators.relational.NotEqualsTo;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.AllTableColumns;
+import net.sf.jsqlparser.statement.select.FromItem;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.OrderByElement;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SelectBody;
+import net.sf.jsqlparser.statement.select.SelectExpressionItem;
+import net.sf.jsqlparser.statement.select.SelectItem;
+import net.sf.jsqlparser.statement.select.SetOperationList;
+import net.sf.jsqlparser.statement.select.SubSelect;
+import net.sf.jsqlparser.statement.select.WithItem;
+import net.sf.jsqlparser.util.TablesNamesFinder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * SQL规范化，用于生成查询结果缓存的指纹
+ * 解析为语法树后统一反引号标识符与列名大小写、按出现顺序重命名表别名、
+ * 对AND/OR及比较运算的操作数排序并去掉冗余括号；字符串字面量保持原样。
+ * 结果只用于比较，不保证可执行；无法解析时退化为词法规范化。
+ * 选择列的顺序与列别名决定结果的列，不参与规范化；
+ * 结果列名（getColumnLabel）取决于选择项的原始写法，作为标签附加在规范形式之后
+ */
+@Slf4j
+public final class SqlCanonicalizer {
+
+    /**
+     * 生成的表别名前缀，#不能出现在未加引号的标识符中，不会与原有名称冲突
+     */
+    private static final String ALIAS_PREFIX = "#t";
+
+    private static final Pattern SIMPLE_IDENTIFIER = Pattern.compile("[\\p{L}\\p{N}_$]+");
+
+    private SqlCanonicalizer() {
+    }
+
+    /**
+     * 返回SQL的规范形式
+     */
+    public static String canonicalize(String sql) {
+        if (sql == null) {
+            return "";
+        }
+        String trimmed = stripTrailingSemicolons(sql.trim());
+        try {
+            String canonical = canonicalizeSelect(trimmed, true);
+            if (canonical == null) {
+                // 存在未能重写的别名引用，放弃别名重命名
+                canonical = canonicalizeSelect(trimmed, false);
+            }
+            if (canonical != null) {
+                return canonical;
+            }
+        } catch (JSQLParserException | RuntimeException e) {
+            log.debug("🔍 [SQL规范化] 解析失败，按词法规范化: {}", e.getMessage());
+        }
+        return lexicalCanonicalize(trimmed) + labelSuffix(rawSelectItems(trimmed));
+    }
+
+    /**
+     * 返回顶层查询结果列的标签：别名、列名原文，或表达式的原始写法；*与t.*记为*
+     */
+    static List<String> resultLabels(String sql) {
+        String trimmed = stripTrailingSemicolons(sql.trim());
+        try {
+            if (CCJSqlParserUtil.parse(trimmed) instanceof Select select) {
+                return resultLabels(select, trimmed);
+            }
+        } catch (JSQLParserException | RuntimeException e) {
+            log.debug("🔍 [SQL规范化] 解析失败，按词法取结果列: {}", e.getMessage());
+        }
+        return rawSelectItems(trimmed);
+    }
+
+    /**
+     * 基于语法树规范化，非SELECT语句返回原文的词法规范形式；
+     * 重命名别名后仍残留原别名引用时返回null
+     */
+    private static String canonicalizeSelect(String sql, boolean renameAliases) throws JSQLParserException {
+        Statement statement = CCJSqlParserUtil.parse(sql);
+        if (!(statement instanceof Select select)) {
+            return lexicalCanonicalize(sql) + labelSuffix(rawSelectItems(sql));
+        }
+        // 标签取自改写前的语法树
+        List<String> labels = resultLabels(select, sql);
+
+        IdentifierNormalizer identifiers = new IdentifierNormalizer(renameAliases);
+        identifiers.collectAliases(select);
+        identifiers.rewrite(select);
+
+        new ExpressionNormalizer().select(select);
+
+        String canonical = select.toString();
+        if (renameAliases && identifiers.hasResidualAlias(canonical)) {
+            return null;
+        }
+        return canonical + labelSuffix(labels);
+    }
+
+    private static List<String> resultLabels(Select select, String sql) {
+        SelectBody body = select.getSelectBody();
+        while (body instanceof SetOperationList list && list.getSelects() != null && !list.getSelects().isEmpty()) {
+            // 集合运算的列名取自第一个查询
+            body = list.getSelects().get(0);
+        }
+        List<String> raw = rawSelectItems(sql);
+        if (!(body instanceof PlainSelect plainSelect) || plainSelect.getSelectItems() == null) {
+            return raw;
+        }
+        List<SelectItem> items = plainSelect.getSelectItems();
+        List<String> labels = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            SelectItem item = items.get(i);
+            if (!(item instanceof SelectExpressionItem expressionItem)) {
+                labels.add("*");
+            } else if (expressionItem.getAlias() != null && expressionItem.getAlias().getName() != null) {
+                labels.add(unquote(expressionItem.getAlias().getName()));
+            } else if (expressionItem.getExpression() instanceof Column column) {
+                labels.add(unquote(column.getColumnName()));
+            } else if (raw.size() == items.size()) {
+                labels.add(raw.get(i));
+            } else {
+                // 原文与选择项无法一一对应时保留整个选择列表原文
+                return raw;
+            }
+        }
+        return labels;
+    }
+
+    private static String labelSuffix(List<String> labels) {
+        return labels.isEmpty() ? "" : " /* labels: " + String.join(", ", labels) + " */";
+    }
+
+    /**
+     * 按词法取出顶层查询选择列表中各项的原文，优先取括号外的SELECT（WITH子句中的查询在括号内）；
+     * 没有SELECT时返回空列表
+     */
+    private static List<String> rawSelectItems(String sql) {
+        int select = findKeyword(sql, "select", true);
+        if (select < 0) {
+            select = findKeyword(sql, "select", false);
+        }
+        if (select < 0) {
+            return List.of();
+        }
+        List<String> items = new ArrayList<>();
+        int itemStart = select + "select".length();
+        int depth = 0;
+        int i = itemStart;
+        while (i < sql.length()) {
+            int skipped = skipQuotedOrComment(sql, i);
+            if (skipped > i) {
+                i = skipped;
+                continue;
+            }
+            char c = sql.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (depth == 0) {
+                    break;
+                }
+                depth--;
+            } else if (depth == 0 && c == ',') {
+                items.add(sql.substring(itemStart, i).trim());
+                itemStart = i + 1;
+            } else if (depth == 0 && isKeywordAt(sql, i, "from")) {
+                break;
+            }
+            i++;
+        }
+        items.add(sql.substring(itemStart, Math.min(i, sql.length())).trim());
+        return items;
+    }
+
+    private static int findKeyword(String sql, String keyword, boolean topLevelOnly) {
+        int depth = 0;
+        int i = 0;
+        while (i < sql.length()) {
+            int skipped = skipQuotedOrComment(sql, i);
+            if (skipped > i) {
+                i = skipped;
+                continue;
+            }
+            char c = sql.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if ((!topLevelOnly || depth == 0) && isKeywordAt(sql, i, keyword)) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private static boolean isKeywordAt(String sql, int i, String keyword) {
+        int end = i + keyword.length();
+        return sql.regionMatches(true, i, keyword, 0, keyword.length())
+                && (i == 0 || !isIdentifierChar(sql.charAt(i - 1)))
+                && (end >= sql.length() || !isIdentifierChar(sql.charAt(end)));
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    /**
+     * start处为字符串、反引号标识符或注释时返回其结束位置，否则返回start
+     */
+    private static int skipQuotedOrComment(String sql, int start) {
+        char c = sql.charAt(start);
+        char next = start + 1 < sql.length() ? sql.charAt(start + 1) : 0;
+        int end;
+        if (c == '\'' || c == '"') {
+            return literalEnd(sql, start);
+        } else if (c == '`') {
+            end = sql.indexOf('`', start + 1);
+            return end < 0 ? sql.length() : end + 1;
+        } else if (c == '#' || c == '-' && next == '-') {
+            end = sql.indexOf('\n', start);
+            return end < 0 ? sql.length() : end + 1;
+        } else if (c == '/' && next == '*') {
+            end = sql.indexOf("*/", start + 2);
+            return end < 0 ? sql.length() : end + 2;
+        }
+        return start;
+    }
+
+    /**
+     * 统一标识符写法并重命名表别名
+     * 遍历复用TablesNamesFinder，它覆盖了子查询、CASE、函数参数等位置的全部表达式
+     */
+    private static final class IdentifierNormalizer extends TablesNamesFinder {
+
+        private final boolean renameAliases;
+        private final Map<String, String> aliases = new HashMap<>();
+        private boolean rewriting;
+
+        IdentifierNormalizer(boolean renameAliases) {
+            this.renameAliases = renameAliases;
+        }
+
+        void collectAliases(Select select) {
+            rewriting = false;
+            getTableList((Statement) select);
+        }
+
+        void rewrite(Select select) {
+            rewriting = true;
+            getTableList((Statement) select);
+        }
+
+        /**
+         * 规范文本中是否仍有原别名作为限定符出现（忽略字符串字面量）
+         */
+        boolean hasResidualAlias(String canonical) {
+            if (aliases.isEmpty()) {
+                return false;
+            }
+            String outsideLiterals = maskLiterals(canonical).toLowerCase(Locale.ROOT);
+            for (String original : aliases.keySet()) {
+                if (Pattern.compile("(?<![\\p{L}\\p{N}_$#`])" + Pattern.quote(original) + "`?\\s*\\.")
+                        .matcher(outsideLiterals).find()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void visit(PlainSelect plainSelect) {
+            super.visit(plainSelect);
+            if (!rewriting) {
+                return;
+            }
+            // TablesNamesFinder不遍历JOIN条件、GROUP BY与ORDER BY，重复访问时重写结果不变
+            if (plainSelect.getJoins() != null) {
+                for (Join join : plainSelect.getJoins()) {
+                    if (join.getOnExpressions() != null) {
+                        join.getOnExpressions().forEach(e -> e.accept(this));
+                    }
+                    if (join.getUsingColumns() != null) {
+                        join.getUsingColumns().forEach(c -> c.accept(this));
+                    }
+                }
+            }
+            if (plainSelect.getGroupBy() != null && plainSelect.getGroupBy().getGroupByExpressionList() != null) {
+                List<Expression> expressions = plainSelect.getGroupBy().getGroupByExpressionList().getExpressions();
+                if (expressions != null) {
+                    expressions.forEach(e -> e.accept(this));
+                }
+            }
+            if (plainSelect.getOrderByElements() != null) {
+                plainSelect.getOrderByElements().forEach(o -> o.getExpression().accept(this));
+            }
+        }
+
+        @Override
+        public void visit(SetOperationList list) {
+            super.visit(list);
+            if (rewriting && list.getOrderByElements() != null) {
+                list.getOrderByElements().forEach(o -> o.getExpression().accept(this));
+            }
+        }
+
+        @Override
+        public void visit(Table table) {
+            super.visit(table);
+            if (!rewriting) {
+                declareAlias(table.getAlias());
+                return;
+            }
+            table.setName(unquote(table.getName()));
+            if (table.getSchemaName() != null) {
+                table.setSchemaName(unquote(table.getSchemaName()));
+            }
+            renameAlias(table.getAlias());
+        }
+
+        @Override
+        public void visit(SubSelect subSelect) {
+            super.visit(subSelect);
+            if (!rewriting) {
+                declareAlias(subSelect.getAlias());
+            } else {
+                renameAlias(subSelect.getAlias());
+            }
+        }
+
+        @Override
+        public void visit(Column column) {
+            if (!rewriting) {
+                return;
+            }
+            column.setColumnName(normalizeColumnName(column.getColumnName()));
+            qualify(column.getTable());
+        }
+
+        @Override
+        public void visit(AllTableColumns allTableColumns) {
+            super.visit(allTableColumns);
+            if (rewriting) {
+                qualify(allTableColumns.getTable());
+            }
+        }
+
+        @Override
+        public void visit(SelectExpressionItem item) {
+            super.visit(item);
+            if (rewriting && item.getAlias() != null) {
+                // 列别名决定结果列名，只去掉反引号，不改大小写
+                item.getAlias().setName(unquote(item.getAlias().getName()));
+            }
+        }
+
+        @Override
+        public void visit(Function function) {
+            super.visit(function);
+            if (rewriting && function.getName() != null) {
+                function.setName(function.getName().toUpperCase(Locale.ROOT));
+            }
+        }
+
+        private void declareAlias(Alias alias) {
+            if (!renameAliases || alias == null || alias.getName() == null) {
+                return;
+            }
+            String key = aliasKey(alias.getName());
+            aliases.putIfAbsent(key, ALIAS_PREFIX + (aliases.size() + 1));
+        }
+
+        private void renameAlias(Alias alias) {
+            if (alias == null || alias.getName() == null) {
+                return;
+            }
+            String renamed = aliases.get(aliasKey(alias.getName()));
+            alias.setName(renamed != null ? renamed : unquote(alias.getName()));
+            alias.setUseAs(false);
+        }
+
+        private void qualify(Table table) {
+            if (table == null || table.getName() == null) {
+                return;
+            }
+            String renamed = table.getSchemaName() == null ? aliases.get(aliasKey(table.getName())) : null;
+            table.setName(renamed != null ? renamed : unquote(table.getName()));
+            if (table.getSchemaName() != null) {
+                table.setSchemaName(unquote(table.getSchemaName()));
+            }
+        }
+
+        private static String aliasKey(String name) {
+            return unquote(name).toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * 规范化条件表达式：展平并排序AND/OR，交换对称比较的操作数，去掉冗余括号
+     */
+    private static final class ExpressionNormalizer {
+
+        private static final Comparator<Expression> BY_TEXT = Comparator.comparing(Object::toString);
+
+        void select(Select select) {
+            if (select.getWithItemsList() != null) {
+                for (WithItem withItem : select.getWithItemsList()) {
+                    if (withItem.getSubSelect() != null) {
+                        body(withItem.getSubSelect().getSelectBody());
+                    }
+                }
+            }
+            body(select.getSelectBody());
+        }
+
+        void body(SelectBody body) {
+            if (body instanceof PlainSelect plainSelect) {
+                plain(plainSelect);
+            } else if (body instanceof SetOperationList list) {
+                list.getSelects().forEach(this::body);
+            } else if (body instanceof WithItem withItem && withItem.getSubSelect() != null) {
+                body(withItem.getSubSelect().getSelectBody());
+            }
+        }
+
+        private void plain(PlainSelect plainSelect) {
+            if (plainSelect.getSelectItems() != null) {
+                for (SelectItem item : plainSelect.getSelectItems()) {
+                    if (item instanceof SelectExpressionItem expressionItem) {
+                        expressionItem.setExpression(expr(expressionItem.getExpression()));
+                    }
+                }
+            }
+            fromItem(plainSelect.getFromItem());
+            if (plainSelect.getJoins() != null) {
+                for (Join join : plainSelect.getJoins()) {
+                    fromItem(join.getRightItem());
+                    if (join.getOnExpressions() != null && !join.getOnExpressions().isEmpty()) {
+                        List<Expression> on = new ArrayList<>();
+                        for (Expression expression : join.getOnExpressions()) {
+                            on.add(logical(expression));
+                        }
+                        join.setOnExpressions(on);
+                    }
+                }
+            }
+            if (plainSelect.getWhere() != null) {
+                plainSelect.setWhere(logical(plainSelect.getWhere()));
+            }
+            if (plainSelect.getHaving() != null) {
+                plainSelect.setHaving(logical(plainSelect.getHaving()));
+            }
+            if (plainSelect.getOrderByElements() != null) {
+                for (OrderByElement element : plainSelect.getOrderByElements()) {
+                    element.setExpression(expr(element.getExpression()));
+                }
+            }
+        }
+
+        private void fromItem(FromItem item) {
+            if (item instanceof SubSelect subSelect) {
+                body(subSelect.getSelectBody());
+            }
+        }
+
+        /**
+         * 规范化处于条件位置的表达式，此处AND/OR两侧的括号可以安全去掉后按需补回
+         */
+        private Expression logical(Expression expression) {
+            Expression e = unwrap(expression);
+            if (!(e instanceof AndExpression) && !(e instanceof OrExpression)) {
+                return expr(e);
+            }
+            boolean and = e instanceof AndExpression;
+            List<Expression> operands = new ArrayList<>();
+            flatten(e, and, operands);
+            List<Expression> normalized = new ArrayList<>(operands.size());
+            for (Expression operand : operands) {
+                normalized.add(logical(operand));
+            }
+            normalized.sort(BY_TEXT);
+
+            Expression result = null;
+            for (Expression operand : normalized) {
+                Expression grouped = operand instanceof AndExpression || operand instanceof OrExpression
+                        ? new Parenthesis(operand) : operand;
+                result = result == null ? grouped
+                        : (and ? new AndExpression(result, grouped) : new OrExpression(result, grouped));
+            }
+            return result;
+        }
+
+        private void flatten(Expression expression, boolean and, List<Expression> operands) {
+            Expression e = unwrap(expression);
+            if (and ? e instanceof AndExpression : e instanceof OrExpression) {
+                BinaryExpression binary = (BinaryExpression) e;
+                flatten(binary.getLeftExpression(), and, operands);
+                flatten(binary.getRightExpression(), and, operands);
+            } else {
+                operands.add(e);
+            }
+        }
+
+        /**
+         * 规范化一般位置的表达式，只去掉包裹单个操作数的括号
+         */
+        private Expression expr(Expression e) {
+            if (e == null) {
+                return null;
+            }
+            if (e instanceof Parenthesis parenthesis) {
+                Expression inner = expr(parenthesis.getExpression());
+                if (isAtomic(inner)) {
+                    return inner;
+                }
+                if (inner instanceof AndExpression || inner instanceof OrExpression) {
+                    return new Parenthesis(logical(inner));
+                }
+                parenthesis.setExpression(inner);
+                return parenthesis;
+            }
+            if (e instanceof AndExpression || e instanceof OrExpression) {
+                return logical(e);
+            }
+            if (e instanceof ComparisonOperator comparison) {
+                return comparison(comparison);
+            }
+            if (e instanceof BinaryExpression binary) {
+                binary.setLeftExpression(expr(binary.getLeftExpression()));
+                binary.setRightExpression(expr(binary.getRightExpression()));
+                return binary;
+            }
+            if (e instanceof NotExpression not) {
+                not.setExpression(expr(not.getExpression()));
+                return not;
+            }
+            if (e instanceof InExpression in) {
+                in.setLeftExpression(expr(in.getLeftExpression()));
+                if (in.getRightExpression() != null) {
+                    in.setRightExpression(expr(in.getRightExpression()));
+                }
+                if (in.getRightItemsList() instanceof SubSelect subSelect) {
+                    body(subSelect.getSelectBody());
+                } else if (in.getRightItemsList() instanceof ExpressionList list && list.getExpressions() != null) {
+                    list.setExpressions(list.getExpressions().stream().map(this::expr).toList());
+                }
+                return in;
+            }
+            if (e instanceof Between between) {
+                between.setLeftExpression(expr(between.getLeftExpression()));
+                between.setBetweenExpressionStart(expr(between.getBetweenExpressionStart()));
+                between.setBetweenExpressionEnd(expr(between.getBetweenExpressionEnd()));
+                return between;
+            }
+            if (e instanceof IsNullExpression isNull) {
+                isNull.setLeftExpression(expr(isNull.getLeftExpression()));
+                return isNull;
+            }
+            if (e instanceof Function function && function.getParameters() != null
+                    && function.getParameters().getExpressions() != null) {
+                function.getParameters().setExpressions(
+                        function.getParameters().getExpressions().stream().map(this::expr).toList());
+                return function;
+            }
+            if (e instanceof SubSelect subSelect) {
+                body(subSelect.getSelectBody());
+                return subSelect;
+            }
+            if (e instanceof ExistsExpression exists) {
+                exists.setRightExpression(expr(exists.getRightExpression()));
+                return exists;
+            }
+            return e;
+        }
+
+        /**
+         * 等于/不等于按文本排序操作数，大小比较统一为左侧文本较小的方向
+         */
+        private Expression comparison(ComparisonOperator comparison) {
+            Expression left = expr(comparison.getLeftExpression());
+            Expression right = expr(comparison.getRightExpression());
+            boolean swap = left.toString().compareTo(right.toString()) > 0;
+            if (comparison.getOldOracleJoinSyntax() != 0 || comparison.getOraclePriorPosition() != 0) {
+                swap = false;
+            }
+            if (!swap) {
+                comparison.setLeftExpression(left);
+                comparison.setRightExpression(right);
+                return comparison;
+            }
+            ComparisonOperator flipped;
+            if (comparison instanceof EqualsTo || comparison instanceof NotEqualsTo) {
+                flipped = comparison;
+            } else if (comparison instanceof GreaterThan) {
+                flipped = new MinorThan();
+            } else if (comparison instanceof GreaterThanEquals) {
+                flipped = new MinorThanEquals();
+            } else if (comparison instanceof MinorThan) {
+                flipped = new GreaterThan();
+            } else if (comparison instanceof MinorThanEquals) {
+                flipped = new GreaterThanEquals();
+            } else {
+                comparison.setLeftExpression(left);
+                comparison.setRightExpression(right);
+                return comparison;
+            }
+            flipped.setLeftExpression(right);
+            flipped.setRightExpression(left);
+            return flipped;
+        }
+
+        private static Expression unwrap(Expression e) {
+            while (e instanceof Parenthesis parenthesis) {
+                e = parenthesis.getExpression();
+            }
+            return e;
+        }
+
+        private static boolean isAtomic(Expression e) {
+            return e instanceof Column || e instanceof Function || e instanceof Parenthesis
+                    || e instanceof StringValue
+                    || e instanceof LongValue
+                    || e instanceof DoubleValue
+                    || e instanceof NullValue;
+        }
+    }
+
+    /**
+     * 去掉反引号；双引号在MySQL中默认是字符串，保持原样
+     */
+    private static String unquote(String identifier) {
+        if (identifier != null && identifier.length() >= 2
+                && identifier.startsWith("`") && identifier.endsWith("`")) {
+            String inner = identifier.substring(1, identifier.length() - 1);
+            if (SIMPLE_IDENTIFIER.matcher(inner).matches()) {
+                return inner;
+            }
+        }
+        return identifier;
+    }
+
+    /**
+     * MySQL列名不区分大小写，统一为小写；双引号包裹的可能是字符串字面量，保持原样
+     */
+    private static String normalizeColumnName(String name) {
+        if (name == null || name.startsWith("\"") || name.startsWith("'")) {
+            return name;
+        }
+        String unquoted = unquote(name);
+        return unquoted.startsWith("`") ? unquoted : unquoted.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 词法规范化：字符串字面量外的内容转小写并合并空白，去掉简单标识符的反引号
+     */
+    static String lexicalCanonicalize(String sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        boolean pendingSpace = false;
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = out.length() > 0;
+                i++;
+                continue;
+            }
+            if (pendingSpace) {
+                out.append(' ');
+                pendingSpace = false;
+            }
+            if (c == '\'' || c == '"') {
+                int end = literalEnd(sql, i);
+                out.append(sql, i, end);
+                i = end;
+            } else if (c == '`') {
+                int end = sql.indexOf('`', i + 1);
+                end = end < 0 ? sql.length() : end + 1;
+                String identifier = unquote(sql.substring(i, end));
+                out.append(identifier.startsWith("`") ? identifier : identifier.toLowerCase(Locale.ROOT));
+                i = end;
+            } else {
+                out.append(Character.toLowerCase(c));
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * 把字符串字面量替换为占位，避免字面量内容参与别名检查
+     */
+    private static String maskLiterals(String sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                i = literalEnd(sql, i);
+                out.append("''");
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * 返回从start处引号开始的字面量结束位置（不含），支持反斜杠转义与重复引号
+     */
+    private static int literalEnd(String sql, int start) {
+        char quote = sql.charAt(start);
+        int i = start + 1;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return sql.length();
+    }
+
+    private static String stripTrailingSemicolons(String sql) {
+        int end = sql.length();
+        while (end > 0 && (sql.charAt(end - 1) == ';' || Character.isWhitespace(sql.charAt(end - 1)))) {
+            end--;
+        }
+        return sql.substring(0, end);
+    }
+}
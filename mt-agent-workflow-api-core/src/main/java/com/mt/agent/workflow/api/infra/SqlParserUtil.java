@@ -1,25 +1,25 @@
 package com.mt.agent.workflow.api.infra;
 
-import java.util.Arrays;
-import java.util.HashSet;
 import java.util.Locale;
-import java.util.Set;
+import java.util.regex.Pattern;
 import lombok.extern.slf4j.Slf4j;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.Limit;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SelectBody;
+import net.sf.jsqlparser.statement.select.SetOperationList;
 
 @Slf4j
 public class SqlParserUtil {
-    private static final Set<String> DML_DDL = new HashSet<>(Arrays.asList(
-            "INSERT", "UPDATE", "DELETE", "MERGE", "REPLACE",
-            "DROP", "ALTER", "TRUNCATE", "CREATE", "RENAME", "GRANT", "REVOKE"
-    ));
-
+    /**
+     * 只读检查，字符串字面量与注释中的关键字不会误判
+     */
     public static void assertReadOnly(String sql) {
-        String s = stripComments(sql).trim().toUpperCase(Locale.ROOT);
-        for (String kw : DML_DDL) {
-            if (s.contains(kw + " ") || s.startsWith(kw)) {
-                throw new IllegalArgumentException("仅允许只读查询，检测到关键字: " + kw);
-            }
-        }
+        CompiledSqlPolicy.READ_ONLY.check(sql);
     }
 
     public static String ensureLimit(String sql, int maxRows) {
@@ -42,9 +42,77 @@ public class SqlParserUtil {
         return result;
     }
 
-    private static String stripComments(String sql) {
-        return sql.replaceAll("/\\*.*?\\*/", " ").replaceAll("--.*?(\\r?\\n)", " ");
+    private static final Pattern AGGREGATE = Pattern.compile(
+            "\\b(COUNT|SUM|AVG|MIN|MAX|GROUP_CONCAT|STD|STDDEV|VARIANCE)\\s*\\(", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern SUBQUERY = Pattern.compile("\\bSELECT\\b", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * 改写LIMIT的结果
+     *
+     * @param sql          改写后的SQL，未改写时为原SQL
+     * @param rewritten    是否添加或收紧了LIMIT
+     * @param limitBounded 顶层查询是单表无条件扫描（无WHERE、JOIN、排序、分组、去重、聚合与子查询）且有LIMIT，
+     *                     数据库读够行数即可停止；带过滤条件时可能扫完全表也凑不够行数，不算
+     */
+    public record LimitRewrite(String sql, boolean rewritten, boolean limitBounded) {
     }
-}
 
+    /**
+     * 顶层查询没有LIMIT时添加，LIMIT大于maxRows时收紧到maxRows
+     * 只改写顶层查询，不影响返回的前maxRows行；无法解析时原样返回
+     */
+    public static LimitRewrite applyLimit(String sql, int maxRows) {
+        if (maxRows <= 0) {
+            return new LimitRewrite(sql, false, false);
+        }
+        Statement statement;
+        try {
+            statement = CCJSqlParserUtil.parse(sql);
+        } catch (Exception e) {
+            log.debug("🔍 [SQL解析] 无法解析，跳过LIMIT改写: {}", e.getMessage());
+            return new LimitRewrite(sql, false, false);
+        }
+        if (!(statement instanceof Select select)) {
+            return new LimitRewrite(sql, false, false);
+        }
+        SelectBody body = select.getSelectBody();
+        Limit limit;
+        if (body instanceof PlainSelect plain) {
+            limit = plain.getLimit();
+        } else if (body instanceof SetOperationList setOperation) {
+            limit = setOperation.getLimit();
+        } else {
+            return new LimitRewrite(sql, false, false);
+        }
 
+        boolean rewritten = false;
+        if (limit == null) {
+            limit = new Limit();
+            limit.setRowCount(new LongValue(maxRows));
+            rewritten = true;
+        } else if (limit.getRowCount() instanceof LongValue rowCount && rowCount.getValue() > maxRows) {
+            limit.setRowCount(new LongValue(maxRows));
+            rewritten = true;
+        }
+        boolean bounded = limit.getRowCount() instanceof LongValue;
+        if (body instanceof PlainSelect plain) {
+            plain.setLimit(limit);
+            String selectItems = String.valueOf(plain.getSelectItems());
+            bounded = bounded && plain.getFromItem() instanceof Table
+                    && plain.getWhere() == null && (plain.getJoins() == null || plain.getJoins().isEmpty())
+                    && plain.getGroupBy() == null && plain.getOrderByElements() == null
+                    && plain.getDistinct() == null && plain.getHaving() == null
+                    && !AGGREGATE.matcher(selectItems).find() && !SUBQUERY.matcher(selectItems).find();
+        } else {
+            ((SetOperationList) body).setLimit(limit);
+            bounded = false;
+        }
+        if (!rewritten) {
+            return new LimitRewrite(sql, false, bounded);
+        }
+        String result = statement.toString();
+        log.info("🔍 [SQL解析] 改写LIMIT为{}，最终SQL: {}", maxRows, result);
+        return new LimitRewrite(result, true, bounded);
+    }
+}
@@ -0,0 +1,101 @@
+package com.mt.agent.workflow.api.infra.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mt.agent.workflow.api.config.QueryCacheProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 热点查询统计
+ * 按(数据库配置, schema版本, SQL hash)记录命中次数，供定时刷新挑选最常访问的查询；
+ * 命中数按周期衰减，排名偏向近期访问
+ */
+@Component
+public class HotQueryTracker {
+
+    private final Cache<String, HotQuery> queries;
+    private final long decayIntervalMs;
+    private final AtomicLong lastDecayAtMs = new AtomicLong(System.currentTimeMillis());
+
+    public HotQueryTracker(QueryCacheProperties properties) {
+        this.queries = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1, properties.getHotQueryMaxEntries()))
+                .expireAfterAccess(1, TimeUnit.DAYS)
+                .build();
+        this.decayIntervalMs = Math.max(1, properties.getHotQueryDecayMinutes()) * 60_000L;
+    }
+
+    /**
+     * 记录一次访问
+     */
+    public void record(Long dbConfigId, Long schemaVersionId, String sqlHash, String sql) {
+        String key = dbConfigId + ":" + schemaVersionId + ":" + sqlHash;
+        HotQuery query = queries.asMap().computeIfAbsent(key, k -> new HotQuery(dbConfigId, schemaVersionId, sqlHash, sql));
+        query.hits.incrementAndGet();
+    }
+
+    /**
+     * 指定数据库配置下命中最多的前K个查询
+     */
+    public List<HotQuery> top(Long dbConfigId, int k) {
+        decayIfDue();
+        return queries.asMap().values().stream()
+                .filter(q -> q.dbConfigId.equals(dbConfigId) && q.hits.get() > 0)
+                .sorted(Comparator.comparingLong(HotQuery::getHits).reversed())
+                .limit(Math.max(0, k))
+                .toList();
+    }
+
+    /**
+     * 到达衰减周期时所有命中数减半，归零的条目不再参与排名
+     */
+    private void decayIfDue() {
+        long now = System.currentTimeMillis();
+        long last = lastDecayAtMs.get();
+        if (now - last < decayIntervalMs || !lastDecayAtMs.compareAndSet(last, now)) {
+            return;
+        }
+        queries.asMap().values().forEach(q -> q.hits.updateAndGet(h -> h / 2));
+        queries.asMap().values().removeIf(q -> q.hits.get() == 0);
+    }
+
+    public static class HotQuery {
+        private final Long dbConfigId;
+        private final Long schemaVersionId;
+        private final String sqlHash;
+        private final String sql;
+        private final AtomicLong hits = new AtomicLong();
+
+        HotQuery(Long dbConfigId, Long schemaVersionId, String sqlHash, String sql) {
+            this.dbConfigId = dbConfigId;
+            this.schemaVersionId = schemaVersionId;
+            this.sqlHash = sqlHash;
+            this.sql = sql;
+        }
+
+        public Long getDbConfigId() {
+            return dbConfigId;
+        }
+
+        public Long getSchemaVersionId() {
+            return schemaVersionId;
+        }
+
+        public String getSqlHash() {
+            return sqlHash;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getHits() {
+            return hits.get();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.mt.agent.workflow.api.infra.pipeline;
+
+import com.mt.agent.workflow.api.exception.ExecutionFailureException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 自适应并发隔离舱
+ * 与StageBulkhead一样使用有界等待队列快速拒绝，但并发上限按执行结果调整（AIMD）：
+ * 正常完成时每完成约limit次增加1，超时、获取连接超时或耗时超过阈值时乘以缩减比例
+ */
+public class AdaptiveBulkhead {
+
+    private final String name;
+    private final int minLimit;
+    private final int queueCapacity;
+    private final long maxWaitMs;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private final MeterRegistry meterRegistry;
+    private final String metricTag;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    private volatile double limit;
+    private volatile int maxLimit;
+    private volatile int inFlight;
+    private volatile int waiting;
+
+    public AdaptiveBulkhead(String name, int initialLimit, int minLimit, int maxLimit, int queueCapacity, long maxWaitMs,
+                            long latencyThresholdMs, double backoffRatio, MeterRegistry meterRegistry, String metricTag) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.queueCapacity = Math.max(0, queueCapacity);
+        this.maxWaitMs = maxWaitMs;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+        this.backoffRatio = backoffRatio > 0 && backoffRatio < 1 ? backoffRatio : 0.9;
+        this.meterRegistry = meterRegistry;
+        this.metricTag = metricTag;
+        Gauge.builder("external.db.bulkhead.limit", this, AdaptiveBulkhead::getLimit)
+                .tag("dbConfigId", metricTag)
+                .description("当前并发上限")
+                .register(meterRegistry);
+        Gauge.builder("external.db.bulkhead.inflight", this, AdaptiveBulkhead::getInFlight)
+                .tag("dbConfigId", metricTag)
+                .description("执行中数量")
+                .register(meterRegistry);
+        Gauge.builder("external.db.bulkhead.queue.depth", this, AdaptiveBulkhead::getQueueDepth)
+                .tag("dbConfigId", metricTag)
+                .description("排队数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 在并发许可内执行任务，按耗时与异常调整并发上限
+     */
+    public <T> T execute(Supplier<T> task) {
+        return execute(task, true);
+    }
+
+    /**
+     * 在并发许可内执行任务
+     *
+     * @param measureLatency 耗时是否反映数据库负载；为false时只占用许可，正常完成不调整并发上限，
+     *                       用于流式导出等耗时取决于客户端读取速度的任务
+     */
+    public <T> T execute(Supplier<T> task, boolean measureLatency) {
+        acquire();
+        long start = System.nanoTime();
+        Outcome outcome = Outcome.IGNORED;
+        try {
+            T result = task.get();
+            if (measureLatency) {
+                outcome = System.nanoTime() - start > latencyThresholdNanos ? Outcome.OVERLOADED : Outcome.SUCCEEDED;
+            }
+            return result;
+        } catch (RuntimeException e) {
+            // 语法错误、取消等与数据库负载无关，不参与调整
+            outcome = isOverload(e) ? Outcome.OVERLOADED : Outcome.IGNORED;
+            throw e;
+        } finally {
+            release(outcome);
+        }
+    }
+
+    /**
+     * 调整并发上限的上限，连接池大小变化时调用
+     */
+    public void setMaxLimit(int maxLimit) {
+        int value = Math.max(minLimit, maxLimit);
+        if (value == this.maxLimit) {
+            return;
+        }
+        lock.lock();
+        try {
+            this.maxLimit = value;
+            limit = Math.min(limit, value);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private enum Outcome {
+        SUCCEEDED, OVERLOADED, IGNORED
+    }
+
+    private void acquire() {
+        lock.lock();
+        try {
+            if (inFlight < permits()) {
+                inFlight++;
+                return;
+            }
+            if (waiting >= queueCapacity) {
+                throw reject("queue_full", "排队已满");
+            }
+            waiting++;
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+                while (inFlight >= permits()) {
+                    if (remaining <= 0) {
+                        throw reject("timeout", "等待超时");
+                    }
+                    remaining = available.awaitNanos(remaining);
+                }
+                inFlight++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ExecutionFailureException("数据库" + name + "排队等待被中断", "INTERRUPTED");
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Outcome outcome) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (outcome == Outcome.OVERLOADED) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (outcome == Outcome.SUCCEEDED && (inFlight + 1) * 2 >= limit) {
+                // 只有并发用到一半以上时才说明上限是瓶颈，才值得增加
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int permits() {
+        return Math.max(minLimit, (int) limit);
+    }
+
+    private static boolean isOverload(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLTimeoutException || t instanceof SQLTransientConnectionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ExecutionFailureException reject(String reason, String message) {
+        meterRegistry.counter("external.db.bulkhead.rejected", "dbConfigId", metricTag, "reason", reason).increment();
+        return new ExecutionFailureException("数据库" + name + "繁忙，" + message + "，请稍后重试", "DB_BUSY");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getLimit() {
+        return limit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public int getQueueDepth() {
+        return waiting;
+    }
+}
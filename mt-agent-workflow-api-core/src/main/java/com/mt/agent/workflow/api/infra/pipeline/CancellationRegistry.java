@@ -0,0 +1,43 @@
+package com.mt.agent.workflow.api.infra.pipeline;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 执行中数据问答的取消令牌登记
+ * 按任务ID登记，助手消息创建后再按消息ID登记，两者都可以触发取消
+ */
+@Component
+public class CancellationRegistry {
+
+    private final Map<String, CancellationToken> jobTokens = new ConcurrentHashMap<>();
+    private final Map<Long, CancellationToken> messageTokens = new ConcurrentHashMap<>();
+
+    public void registerJob(String jobId, CancellationToken token) {
+        jobTokens.put(jobId, token);
+    }
+
+    public void registerMessage(Long messageId, CancellationToken token) {
+        messageTokens.put(messageId, token);
+    }
+
+    public boolean cancelJob(String jobId, String reason) {
+        CancellationToken token = jobTokens.get(jobId);
+        return token != null && token.cancel(reason);
+    }
+
+    public boolean cancelMessage(Long messageId, String reason) {
+        CancellationToken token = messageTokens.get(messageId);
+        return token != null && token.cancel(reason);
+    }
+
+    /**
+     * 执行结束后移除该令牌的全部登记
+     */
+    public void remove(CancellationToken token) {
+        jobTokens.values().removeIf(t -> t == token);
+        messageTokens.values().removeIf(t -> t == token);
+    }
+}
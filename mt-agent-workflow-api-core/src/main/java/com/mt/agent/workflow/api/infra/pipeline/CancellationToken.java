@@ -0,0 +1,104 @@
+package com.mt.agent.workflow.api.infra.pipeline;
+
+import com.mt.agent.workflow.api.exception.ExecutionFailureException;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单次数据问答的取消令牌
+ * 各阶段在占用外部资源时注册取消动作（断开Dify订阅、强制结束Python进程、取消JDBC语句），
+ * 取消时依次执行；已取消后注册的动作立即执行
+ */
+@Slf4j
+public class CancellationToken {
+
+    public static final String CANCELLED_CODE = "CANCELLED";
+
+    private final List<Runnable> actions = new ArrayList<>();
+    private final Sinks.One<Boolean> cancelSignal = Sinks.one();
+    private volatile boolean cancelled;
+    private volatile String reason;
+
+    /**
+     * 注册取消动作
+     *
+     * @return 注销函数，资源释放后调用，避免取消时作用到后续任务
+     */
+    public Runnable register(Runnable action) {
+        synchronized (actions) {
+            if (!cancelled) {
+                actions.add(action);
+                return () -> {
+                    synchronized (actions) {
+                        actions.remove(action);
+                    }
+                };
+            }
+        }
+        runQuietly(action);
+        return () -> {
+        };
+    }
+
+    /**
+     * 取消，重复调用无效
+     *
+     * @return 本次调用是否触发了取消
+     */
+    public boolean cancel(String reason) {
+        List<Runnable> toRun;
+        synchronized (actions) {
+            if (cancelled) {
+                return false;
+            }
+            this.reason = reason;
+            cancelled = true;
+            toRun = new ArrayList<>(actions);
+            actions.clear();
+        }
+        log.info("⛔ [取消] 开始取消执行，原因: {}", reason);
+        cancelSignal.tryEmitValue(Boolean.TRUE);
+        toRun.forEach(CancellationToken::runQuietly);
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * 取消信号，供Reactor流通过takeUntilOther断开订阅
+     */
+    public Mono<Boolean> onCancel() {
+        return cancelSignal.asMono();
+    }
+
+    /**
+     * 已取消时抛出取消异常
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw cancelledException();
+        }
+    }
+
+    public ExecutionFailureException cancelledException() {
+        return new ExecutionFailureException("执行已取消" + (reason != null ? "：" + reason : ""), CANCELLED_CODE);
+    }
+
+    private static void runQuietly(Runnable action) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            log.warn("⛔ [取消] 执行取消动作失败: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.mt.agent.workflow.api.infra.pipeline;
+
+import com.mt.agent.workflow.api.config.ExternalDbBulkheadProperties;
+import com.mt.agent.workflow.api.entity.DbConfig;
+import com.mt.agent.workflow.api.infra.DbConnectionPoolManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 外部数据库隔离舱
+ * 每个数据库配置一个自适应隔离舱，某个库变慢时只压缩该库的并发，排队满后快速失败，
+ * 不会占满所有请求线程拖慢其他库的查询
+ */
+@Component
+@RequiredArgsConstructor
+public class DatasourceBulkheads {
+
+    private final ExternalDbBulkheadProperties properties;
+    private final DbConnectionPoolManager dbConnectionPoolManager;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Long, AdaptiveBulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    /**
+     * 在数据库配置的隔离舱内执行查询
+     */
+    public <T> T execute(DbConfig cfg, Supplier<T> task) {
+        if (!properties.isEnabled()) {
+            return task.get();
+        }
+        return bulkhead(cfg).execute(task);
+    }
+
+    /**
+     * 在隔离舱内执行流式读取：占用并发许可，但耗时取决于客户端读取速度，不参与并发上限调整
+     */
+    public <T> T executeStreaming(DbConfig cfg, Supplier<T> task) {
+        if (!properties.isEnabled()) {
+            return task.get();
+        }
+        return bulkhead(cfg).execute(task, false);
+    }
+
+    private AdaptiveBulkhead bulkhead(DbConfig cfg) {
+        int maxLimit = maxLimit(cfg);
+        AdaptiveBulkhead bulkhead = bulkheads.computeIfAbsent(cfg.getId(), id -> new AdaptiveBulkhead(
+                cfg.getName() != null ? cfg.getName() : String.valueOf(id),
+                properties.getInitialLimit(), properties.getMinLimit(), maxLimit,
+                properties.getQueueCapacity(), properties.getMaxWaitMs(),
+                properties.getLatencyThresholdMs(), properties.getBackoffRatio(),
+                meterRegistry, String.valueOf(id)));
+        bulkhead.setMaxLimit(maxLimit);
+        return bulkhead;
+    }
+
+    /**
+     * 并发上限不超过连接池大小，超出的部分只会在连接池内排队
+     */
+    private int maxLimit(DbConfig cfg) {
+        int poolSize = dbConnectionPoolManager.maxPoolSize(cfg);
+        return properties.getMaxLimit() > 0 ? Math.min(properties.getMaxLimit(), poolSize) : poolSize;
+    }
+}
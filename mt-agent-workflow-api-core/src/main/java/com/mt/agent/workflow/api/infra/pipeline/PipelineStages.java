@@ -0,0 +1,46 @@
+package com.mt.agent.workflow.api.infra.pipeline;
+
+import com.mt.agent.workflow.api.config.QuestionPipelineProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 数据问答流水线各阶段的隔离舱
+ * 大模型、Python、SQL三个阶段分别限流，慢阶段不会占满其他阶段的资源
+ */
+@Component
+public class PipelineStages {
+
+    private final StageBulkhead llm;
+    private final StageBulkhead python;
+    private final StageBulkhead sql;
+
+    public PipelineStages(QuestionPipelineProperties properties, MeterRegistry meterRegistry) {
+        this.llm = create("llm", properties.getLlm(), meterRegistry);
+        this.python = create("python", properties.getPython(), meterRegistry);
+        this.sql = create("sql", properties.getSql(), meterRegistry);
+    }
+
+    private static StageBulkhead create(String name, QuestionPipelineProperties.Stage stage, MeterRegistry meterRegistry) {
+        return new StageBulkhead(name, stage.getMaxConcurrent(), stage.getQueueCapacity(),
+                stage.getMaxWaitSeconds() * 1000L, meterRegistry);
+    }
+
+    public StageBulkhead llm() {
+        return llm;
+    }
+
+    public StageBulkhead python() {
+        return python;
+    }
+
+    public StageBulkhead sql() {
+        return sql;
+    }
+
+    public List<StageBulkhead> all() {
+        return List.of(llm, python, sql);
+    }
+}
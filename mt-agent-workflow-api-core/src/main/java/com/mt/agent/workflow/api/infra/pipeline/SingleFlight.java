@@ -0,0 +1,100 @@
+package com.mt.agent.workflow.api.infra.pipeline;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * 相同键的并发调用合并
+ * 第一个调用方在自身线程内执行加载，执行期间到达的其他调用方等待同一结果；
+ * 执行结束后立即移除，不缓存结果
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 加入指定键的调用
+     * 成为执行方时同步执行loader，返回时结果已就绪；否则返回正在执行的调用
+     */
+    public Call<V> join(K key, Supplier<V> loader) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return new Call<>(existing, false);
+        }
+        try {
+            created.complete(loader.get());
+        } catch (Throwable t) {
+            created.completeExceptionally(t);
+        } finally {
+            inFlight.remove(key, created);
+        }
+        return new Call<>(created, true);
+    }
+
+    /**
+     * 正在执行的调用数
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    public static final class Call<V> {
+
+        private final CompletableFuture<V> future;
+        private final boolean leader;
+
+        private Call(CompletableFuture<V> future, boolean leader) {
+            this.future = future;
+            this.leader = leader;
+        }
+
+        /**
+         * 是否由当前调用方执行
+         */
+        public boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * 等待结果，等待期间当前调用方取消时立即抛出取消异常，不影响执行方
+         */
+        public V await(CancellationToken cancellation) {
+            CompletableFuture<V> view = future;
+            Runnable unregister = () -> {
+            };
+            if (!future.isDone() && cancellation != null) {
+                CompletableFuture<V> waiting = future.thenApply(v -> v);
+                unregister = cancellation.register(() -> waiting.completeExceptionally(cancellation.cancelledException()));
+                view = waiting;
+            }
+            try {
+                return view.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("等待合并调用结果时被中断");
+            } catch (ExecutionException e) {
+                throw unwrap(e.getCause());
+            } finally {
+                unregister.run();
+            }
+        }
+
+        private static RuntimeException unwrap(Throwable cause) {
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof RuntimeException runtime) {
+                return runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            return new RuntimeException(cause);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.mt.agent.workflow.api.infra.pipeline;
+
+import com.mt.agent.workflow.api.exception.ExecutionFailureException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 流水线阶段隔离舱
+ * 每个阶段独立的并发许可和有界等待队列，队列满或等待超时时快速拒绝
+ */
+public class StageBulkhead {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int queueCapacity;
+    private final long maxWaitMs;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Counter rejectedCounter;
+
+    public StageBulkhead(String name, int maxConcurrent, int queueCapacity, long maxWaitMs, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.queueCapacity = Math.max(0, queueCapacity);
+        this.maxWaitMs = maxWaitMs;
+        this.permits = new Semaphore(this.maxConcurrent, true);
+        this.rejectedCounter = Counter.builder("dataquestion.stage.rejected")
+                .tag("stage", name)
+                .description("阶段拒绝次数")
+                .register(meterRegistry);
+        Gauge.builder("dataquestion.stage.queue.depth", waiting, AtomicInteger::get)
+                .tag("stage", name)
+                .description("阶段排队数")
+                .register(meterRegistry);
+        Gauge.builder("dataquestion.stage.active", this, StageBulkhead::getActive)
+                .tag("stage", name)
+                .description("阶段执行中数量")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 在阶段许可内执行任务
+     */
+    public <T> T execute(Supplier<T> task) {
+        acquire();
+        try {
+            return task.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void acquire() {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        if (waiting.incrementAndGet() > queueCapacity) {
+            waiting.decrementAndGet();
+            throw reject("排队已满");
+        }
+        try {
+            if (!permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                throw reject("等待超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExecutionFailureException(name + "阶段等待被中断", "INTERRUPTED");
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    private ExecutionFailureException reject(String reason) {
+        rejectedCounter.increment();
+        return new ExecutionFailureException("系统繁忙，" + name + "阶段" + reason + "，请稍后重试", "STAGE_REJECTED");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public int getQueueDepth() {
+        return waiting.get();
+    }
+
+    public long getRejectedCount() {
+        return (long) rejectedCounter.count();
+    }
+}
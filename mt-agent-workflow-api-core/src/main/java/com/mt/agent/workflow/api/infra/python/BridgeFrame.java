@@ -0,0 +1,44 @@
+package com.mt.agent.workflow.api.infra.python;
+
+/**
+ * Java与Python桥接协议帧
+ * 帧格式：[4字节长度][1字节类型][1字节编码][4字节请求ID][负载]，长度不含自身4字节，均为大端序
+ */
+public class BridgeFrame {
+
+    public static final int HEADER_BYTES = 6;
+
+    /** 握手：Python连接后以JSON编码发送令牌、支持的编码和内存信息 */
+    public static final byte HELLO = 1;
+    /** Python调用Java函数 */
+    public static final byte REQUEST = 2;
+    /** 单值响应 */
+    public static final byte RESPONSE = 3;
+    /** 错误响应 */
+    public static final byte ERROR = 4;
+    /** 行数据分块，负载为行数组 */
+    public static final byte CHUNK = 5;
+    /** 分块结束 */
+    public static final byte END = 6;
+    /** 下发任务（常驻工作进程） */
+    public static final byte JOB = 7;
+    /** 任务完成（常驻工作进程） */
+    public static final byte DONE = 8;
+    /** 握手应答：Java端选定的编码，与HELLO一样始终使用JSON编码 */
+    public static final byte HELLO_ACK = 9;
+
+    public static final byte ENCODING_JSON = 0;
+    public static final byte ENCODING_CBOR = 1;
+
+    public final byte type;
+    public final byte encoding;
+    public final int requestId;
+    public final byte[] payload;
+
+    public BridgeFrame(byte type, byte encoding, int requestId, byte[] payload) {
+        this.type = type;
+        this.encoding = encoding;
+        this.requestId = requestId;
+        this.payload = payload;
+    }
+}
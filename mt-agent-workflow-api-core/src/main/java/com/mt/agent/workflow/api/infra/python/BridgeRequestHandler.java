@@ -0,0 +1,10 @@
+package com.mt.agent.workflow.api.infra.python;
+
+/**
+ * 桥接通道上Python发起的Java函数调用处理器
+ */
+@FunctionalInterface
+public interface BridgeRequestHandler {
+
+    void handle(BridgeFrame frame, PythonBridgeChannel channel);
+}
@@ -0,0 +1,271 @@
+package com.mt.agent.workflow.api.infra.python;
+
+import com.mt.agent.workflow.api.infra.result.ResultTable;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java与Python之间的专用桥接通道
+ * 与Python进程的stdout分离，使用长度前缀帧传输请求与响应，行数据按分块流式发送
+ */
+@Slf4j
+public class PythonBridgeChannel implements Closeable {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final SocketChannel socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final PythonBridgeCodec codec;
+    private byte encoding = BridgeFrame.ENCODING_JSON;
+    private Map<String, Object> hello = Map.of();
+
+    private PythonBridgeChannel(SocketChannel socket, PythonBridgeCodec codec) {
+        this.socket = socket;
+        this.codec = codec;
+        this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(socket), 64 * 1024));
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(socket), 64 * 1024));
+    }
+
+    /**
+     * 创建监听端，优先Unix域套接字，不可用时使用本地回环TCP
+     */
+    public static Listener listen(PythonBridgeCodec codec) throws IOException {
+        if (codec.getProperties().isPreferUnixSocket()) {
+            Path dir = null;
+            try {
+                dir = Files.createTempDirectory("python_bridge_");
+                Path socketPath = dir.resolve("bridge.sock");
+                ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                server.bind(UnixDomainSocketAddress.of(socketPath));
+                return new Listener(server, dir, "unix:" + socketPath, codec);
+            } catch (UnsupportedOperationException | IOException e) {
+                log.debug("🐍 [桥接通道] Unix域套接字不可用，改用TCP: {}", e.getMessage());
+                if (dir != null) {
+                    Files.deleteIfExists(dir);
+                }
+            }
+        }
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1);
+        int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+        return new Listener(server, null, "tcp:" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + port, codec);
+    }
+
+    /**
+     * 读取一帧，对端关闭时返回null
+     */
+    public BridgeFrame readFrame() throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < BridgeFrame.HEADER_BYTES || length - BridgeFrame.HEADER_BYTES > codec.getMaxFrameBytes()) {
+            throw new IOException("非法的桥接帧长度: " + length);
+        }
+        byte type = in.readByte();
+        byte frameEncoding = in.readByte();
+        int requestId = in.readInt();
+        byte[] payload = new byte[length - BridgeFrame.HEADER_BYTES];
+        in.readFully(payload);
+        return new BridgeFrame(type, frameEncoding, requestId, payload);
+    }
+
+    public void send(byte type, int requestId, Object value) throws IOException {
+        writeFrame(type, requestId, codec.encode(value, encoding));
+    }
+
+    /**
+     * 按分块发送行数据，每块为一个行数组，最后发送结束帧
+     */
+    public void sendRows(int requestId, List<?> rows) throws IOException {
+        int chunkRows = codec.getChunkRows();
+        for (int from = 0; from < rows.size(); from += chunkRows) {
+            List<?> chunk = rows.subList(from, Math.min(rows.size(), from + chunkRows));
+            writeFrame(BridgeFrame.CHUNK, requestId, codec.encode(chunk, encoding));
+        }
+        writeFrame(BridgeFrame.END, requestId, EMPTY);
+    }
+
+    /**
+     * 按列式结构分块发送行数据，每块为{columns, data}，data按列存放该块内的值；
+     * 列名只在首块发送，无数据时也发送一块以携带列名
+     */
+    public void sendColumns(int requestId, Columnar result) throws IOException {
+        ResultTable table = result.table();
+        List<String> columns = table.getColumns();
+        int rowCount = table.getRowCount();
+        int chunkRows = codec.getChunkRows();
+        int from = 0;
+        do {
+            int to = Math.min(rowCount, from + chunkRows);
+            List<List<Object>> data = new ArrayList<>(columns.size());
+            for (int c = 0; c < columns.size(); c++) {
+                data.add(table.columnValues(c, from, to));
+            }
+            Map<String, Object> payload = new HashMap<>(4);
+            payload.put("columns", from == 0 ? columns : List.of());
+            payload.put("data", data);
+            writeFrame(BridgeFrame.CHUNK, requestId, codec.encode(payload, encoding));
+            from += chunkRows;
+        } while (from < rowCount);
+        writeFrame(BridgeFrame.END, requestId, EMPTY);
+    }
+
+    public void sendError(int requestId, String message) throws IOException {
+        send(BridgeFrame.ERROR, requestId, message != null ? message : "未知错误");
+    }
+
+    public <T> T decode(BridgeFrame frame, Class<T> type) throws IOException {
+        return codec.decode(frame, type);
+    }
+
+    public Map<String, Object> getHello() {
+        return hello;
+    }
+
+    private void writeFrame(byte type, int requestId, byte[] payload) throws IOException {
+        if (payload.length > codec.getMaxFrameBytes()) {
+            throw new IOException("桥接帧超过上限: " + payload.length + "字节");
+        }
+        out.writeInt(payload.length + BridgeFrame.HEADER_BYTES);
+        out.writeByte(type);
+        out.writeByte(encoding);
+        out.writeInt(requestId);
+        out.write(payload);
+        out.flush();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void handshake(String token) throws IOException {
+        BridgeFrame frame = readFrame();
+        if (frame == null || frame.type != BridgeFrame.HELLO) {
+            throw new IOException("Python桥接握手失败");
+        }
+        Map<String, Object> message = decode(frame, Map.class);
+        if (!token.equals(message.get("token"))) {
+            throw new IOException("Python桥接握手令牌不匹配");
+        }
+        this.hello = message;
+        // 应答仍用JSON编码，Python端收到后才切换到选定的编码
+        byte negotiated = codec.negotiate((Collection<?>) message.get("encodings"));
+        send(BridgeFrame.HELLO_ACK, 0, Map.of("encoding", negotiated == BridgeFrame.ENCODING_CBOR ? "cbor" : "json"));
+        this.encoding = negotiated;
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.debug("关闭桥接通道失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 以列式结构返回给Python的查询结果
+     */
+    public record Columnar(ResultTable table) {
+    }
+
+    /**
+     * 桥接通道监听端，接受一个Python进程的连接
+     */
+    public static class Listener implements Closeable {
+
+        private final ServerSocketChannel server;
+        private final Path socketDir;
+        private final String address;
+        private final String token = UUID.randomUUID().toString();
+        private final PythonBridgeCodec codec;
+
+        private Listener(ServerSocketChannel server, Path socketDir, String address, PythonBridgeCodec codec) {
+            this.server = server;
+            this.socketDir = socketDir;
+            this.address = address;
+            this.codec = codec;
+        }
+
+        /**
+         * 将通道地址和握手令牌写入Python进程环境变量
+         */
+        public void configure(ProcessBuilder processBuilder) {
+            processBuilder.environment().put("JAVA_BRIDGE_ADDRESS", address);
+            processBuilder.environment().put("JAVA_BRIDGE_TOKEN", token);
+        }
+
+        /**
+         * 等待Python进程连接并完成握手；进程提前退出或超时时抛出异常
+         */
+        public PythonBridgeChannel accept(Process process, int timeoutSeconds) throws IOException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+            server.configureBlocking(false);
+            try (Selector selector = Selector.open()) {
+                server.register(selector, SelectionKey.OP_ACCEPT);
+                while (true) {
+                    if (selector.select(200) > 0) {
+                        selector.selectedKeys().clear();
+                        SocketChannel socket = server.accept();
+                        if (socket != null) {
+                            socket.configureBlocking(true);
+                            PythonBridgeChannel channel = new PythonBridgeChannel(socket, codec);
+                            try {
+                                channel.handshake(token);
+                            } catch (IOException e) {
+                                channel.close();
+                                throw e;
+                            }
+                            return channel;
+                        }
+                    }
+                    if (!process.isAlive()) {
+                        throw new IOException("Python进程在建立桥接通道前退出，退出码: " + process.exitValue());
+                    }
+                    if (System.nanoTime() > deadline) {
+                        throw new IOException("等待Python桥接连接超时（" + timeoutSeconds + "秒）");
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                server.close();
+                if (socketDir != null) {
+                    Files.deleteIfExists(socketDir.resolve("bridge.sock"));
+                    Files.deleteIfExists(socketDir);
+                }
+            } catch (IOException e) {
+                log.debug("关闭桥接监听失败: {}", e.getMessage());
+            }
+        }
+    }
+}
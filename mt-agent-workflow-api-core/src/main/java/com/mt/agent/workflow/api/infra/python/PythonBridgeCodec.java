@@ -0,0 +1,67 @@
+package com.mt.agent.workflow.api.infra.python;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.mt.agent.workflow.api.config.PythonBridgeProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * 桥接协议编解码
+ * 默认JSON编码；开启compactEncoding且Python端安装cbor2时使用CBOR紧凑编码
+ */
+@Component
+public class PythonBridgeCodec {
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper;
+    private final PythonBridgeProperties properties;
+
+    public PythonBridgeCodec(ObjectMapper objectMapper, PythonBridgeProperties properties) {
+        this.jsonMapper = objectMapper;
+        this.properties = properties;
+        this.cborMapper = properties.isCompactEncoding() ? objectMapper.copyWith(new CBORFactory()) : null;
+    }
+
+    /**
+     * 根据Python端声明支持的编码协商本端发送使用的编码
+     */
+    public byte negotiate(Collection<?> peerEncodings) {
+        if (cborMapper != null && peerEncodings != null && peerEncodings.contains("cbor")) {
+            return BridgeFrame.ENCODING_CBOR;
+        }
+        return BridgeFrame.ENCODING_JSON;
+    }
+
+    public byte[] encode(Object value, byte encoding) throws IOException {
+        return mapperFor(encoding).writeValueAsBytes(value);
+    }
+
+    public <T> T decode(BridgeFrame frame, Class<T> type) throws IOException {
+        return mapperFor(frame.encoding).readValue(frame.payload, type);
+    }
+
+    public int getChunkRows() {
+        return Math.max(1, properties.getChunkRows());
+    }
+
+    public int getMaxFrameBytes() {
+        return properties.getMaxFrameMb() * 1024 * 1024;
+    }
+
+    public PythonBridgeProperties getProperties() {
+        return properties;
+    }
+
+    private ObjectMapper mapperFor(byte encoding) throws IOException {
+        if (encoding == BridgeFrame.ENCODING_JSON) {
+            return jsonMapper;
+        }
+        if (encoding == BridgeFrame.ENCODING_CBOR && cborMapper != null) {
+            return cborMapper;
+        }
+        throw new IOException("不支持的桥接编码: " + encoding);
+    }
+}
@@ -0,0 +1,303 @@
+package com.mt.agent.workflow.api.infra.python;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Python运行时模块脚本
+ * 一次性执行进程与常驻工作进程共用同一份java_bridge.py和system_functions.py
+ */
+public final class PythonBridgeScripts {
+
+    public static final String JAVA_BRIDGE_FILE = "java_bridge.py";
+    public static final String SYSTEM_FUNCTIONS_FILE = "system_functions.py";
+    public static final String WORKER_MAIN_FILE = "worker_main.py";
+
+    /**
+     * Java Bridge通信模块
+     * 通过JAVA_BRIDGE_ADDRESS指定的专用通道（Unix域套接字或本地TCP）与Java端交换长度前缀帧，
+     * 帧格式：[4字节长度][1字节类型][1字节编码][4字节请求ID][负载]；
+     * 握手帧与应答帧均为JSON编码，之后按应答中Java端选定的编码发送
+     */
+    public static final String JAVA_BRIDGE = """
+            import json
+            import os
+            import socket
+            import struct
+            import sys
+            from typing import Any, Dict, List
+
+            try:
+                import cbor2
+            except ImportError:
+                cbor2 = None
+
+            FRAME_HELLO = 1
+            FRAME_REQUEST = 2
+            FRAME_RESPONSE = 3
+            FRAME_ERROR = 4
+            FRAME_CHUNK = 5
+            FRAME_END = 6
+            FRAME_JOB = 7
+            FRAME_DONE = 8
+            FRAME_HELLO_ACK = 9
+
+            ENCODING_JSON = 0
+            ENCODING_CBOR = 1
+
+            def current_rss_kb():
+                '''获取进程峰值内存（KB），不支持的平台返回0'''
+                try:
+                    import resource
+                    return int(resource.getrusage(resource.RUSAGE_SELF).ru_maxrss)
+                except Exception:
+                    return 0
+
+            class JavaBridge:
+                def __init__(self):
+                    self.request_id = 0
+                    self.sock = None
+                    self.reader = None
+                    # 握手使用JSON，收到Java端选定的编码后再切换
+                    self.encoding = ENCODING_JSON
+                    # 常驻工作进程由Java端随任务下发参数，一次性进程为None
+                    self.job_params = None
+
+                def connect(self):
+                    '''连接Java端桥接通道并握手'''
+                    address = os.environ['JAVA_BRIDGE_ADDRESS']
+                    if address.startswith('unix:'):
+                        sock = socket.socket(socket.AF_UNIX, socket.SOCK_STREAM)
+                        sock.connect(address[5:])
+                    else:
+                        host, port = address[4:].rsplit(':', 1)
+                        sock = socket.create_connection((host, int(port)))
+                    self.sock = sock
+                    self.reader = sock.makefile('rb')
+                    encodings = ['json', 'cbor'] if cbor2 is not None else ['json']
+                    self.send_frame(FRAME_HELLO, 0, {
+                        'token': os.environ.get('JAVA_BRIDGE_TOKEN'),
+                        'encodings': encodings,
+                        'rss_kb': current_rss_kb()
+                    })
+                    frame = self.read_frame()
+                    if frame is None or frame[0] != FRAME_HELLO_ACK:
+                        raise Exception("Java桥接握手失败")
+                    ack = self.decode(frame[1], frame[3])
+                    if ack.get('encoding') == 'cbor' and cbor2 is not None:
+                        self.encoding = ENCODING_CBOR
+
+                def encode(self, value):
+                    if self.encoding == ENCODING_CBOR:
+                        return cbor2.dumps(value)
+                    return json.dumps(value, ensure_ascii=False).encode('utf-8')
+
+                def decode(self, encoding, payload):
+                    if encoding == ENCODING_CBOR:
+                        return cbor2.loads(payload)
+                    return json.loads(payload.decode('utf-8'))
+
+                def send_frame(self, frame_type, request_id, value):
+                    payload = self.encode(value)
+                    header = struct.pack('>IBBI', len(payload) + 6, frame_type, self.encoding, request_id)
+                    self.sock.sendall(header + payload)
+
+                def read_frame(self):
+                    '''读取一帧，通道关闭时返回None'''
+                    head = self.reader.read(4)
+                    if len(head) < 4:
+                        return None
+                    (length,) = struct.unpack('>I', head)
+                    body = self.reader.read(length)
+                    if len(body) < length:
+                        return None
+                    frame_type, encoding, request_id = struct.unpack('>BBI', body[:6])
+                    return frame_type, encoding, request_id, body[6:]
+
+                def call_java_function(self, function_name: str, *args) -> Any:
+                    '''调用Java函数并返回结果，行数据按分块接收'''
+                    if self.sock is None:
+                        raise Exception("Java桥接通道未连接")
+                    self.request_id += 1
+                    request_id = self.request_id
+                    self.send_frame(FRAME_REQUEST, request_id, {
+                        'function': function_name,
+                        'args': list(args)
+                    })
+
+                    rows = None
+                    while True:
+                        frame = self.read_frame()
+                        if frame is None:
+                            raise Exception("Java进程通信中断")
+                        frame_type, encoding, response_id, payload = frame
+                        if response_id != request_id:
+                            raise Exception(f"无效的Java响应: 请求{request_id}收到响应{response_id}")
+                        if frame_type == FRAME_RESPONSE:
+                            return self.decode(encoding, payload)
+                        if frame_type == FRAME_ERROR:
+                            raise Exception(f"Java函数调用失败: {self.decode(encoding, payload)}")
+                        if frame_type == FRAME_CHUNK:
+                            chunk = self.decode(encoding, payload)
+                            if isinstance(chunk, dict):
+                                # 列式分块：按列追加
+                                if rows is None:
+                                    rows = {'columns': chunk['columns'], 'data': [[] for _ in chunk['columns']]}
+                                for column_values, values in zip(rows['data'], chunk['data']):
+                                    column_values.extend(values)
+                            else:
+                                if rows is None:
+                                    rows = []
+                                rows.extend(chunk)
+                        elif frame_type == FRAME_END:
+                            return rows if rows is not None else []
+
+                def report_step(self, message: str):
+                    '''报告执行步骤'''
+                    self.call_java_function('report_step', message)
+
+                def report_progress(self, message: str):
+                    '''报告执行进度'''
+                    self.call_java_function('report_progress', message)
+
+            # 全局Bridge实例，一次性进程导入时即连接，常驻工作进程在预加载完成后连接
+            bridge = JavaBridge()
+            if os.environ.get('JAVA_BRIDGE_ADDRESS') and not os.environ.get('PY_WORKER'):
+                bridge.connect()
+
+            # 报告函数 - 供用户代码调用
+            def report(message: str):
+                '''流式输出报告函数，供大模型在Python代码中调用'''
+                bridge.report_progress(message)
+
+            def load_params():
+                '''加载执行参数：常驻工作进程使用任务参数，一次性进程读取params.json'''
+                if bridge.job_params is not None:
+                    return bridge.job_params
+                with open('params.json', 'r', encoding='utf-8') as f:
+                    return json.load(f)
+            """;
+
+    /**
+     * 系统函数模块
+     */
+    public static final String SYSTEM_FUNCTIONS = """
+            from java_bridge import bridge
+            from typing import List, Dict, Any
+
+            def gen_sql(query, table_name=None):
+                '''生成SQL查询
+                Args:
+                    query: 查询文本
+                    table_name: 表名（可选）
+                '''
+                if table_name:
+                    return bridge.call_java_function('gen_sql', query, table_name)
+                else:
+                    return bridge.call_java_function('gen_sql', query)
+
+            def exec_sql(query):
+                '''执行SQL查询'''
+                return bridge.call_java_function('exec_sql', query)
+
+            def exec_sql_frame(query):
+                '''执行SQL查询并按列返回，安装pandas时返回DataFrame，否则返回{列名: 值列表}'''
+                frame = bridge.call_java_function('exec_sql_frame', query)
+                columns = frame.get('columns', []) if isinstance(frame, dict) else []
+                data = dict(zip(columns, frame.get('data', []))) if columns else {}
+                try:
+                    import pandas as pd
+                except ImportError:
+                    return data
+                return pd.DataFrame(data, columns=columns)
+
+            def output_result(res: dict[str, object]) -> None:
+               '''将待展示的结果进行输出,其中key值是数据说明'''
+               return bridge.call_java_function('output_result', res)
+            """;
+
+    /**
+     * 常驻工作进程主程序
+     * 预加载模块后连接桥接通道，循环接收任务帧并在全新命名空间中执行；
+     * 任务结束时先在stdout输出结束标记再回传完成帧，保证Java端已收齐本次任务的输出
+     */
+    public static final String WORKER_MAIN = """
+            # -*- coding: utf-8 -*-
+            import os
+            import sys
+            import traceback
+            import importlib
+            from java_bridge import bridge, current_rss_kb, FRAME_JOB, FRAME_DONE
+            import system_functions
+
+            JOB_END_MARKER = 'WORKER_JOB_END:'
+
+            def preload_modules():
+                '''预加载常用模块，避免每个任务重复导入'''
+                for name in os.environ.get('PY_WORKER_PRELOAD', '').split(','):
+                    name = name.strip()
+                    if not name:
+                        continue
+                    try:
+                        importlib.import_module(name)
+                    except Exception as e:
+                        print(f"预加载模块{name}失败: {e}", flush=True)
+
+            def run_job(job):
+                '''在全新命名空间中执行一次任务，返回退出码'''
+                bridge.job_params = job.get('params') or {}
+                namespace = {'__name__': '__main__', '__builtins__': __builtins__}
+                try:
+                    exec(compile(job.get('code', ''), 'main.py', 'exec'), namespace)
+                    return 0
+                except SystemExit as e:
+                    if e.code is None:
+                        return 0
+                    return e.code if isinstance(e.code, int) else 1
+                except BaseException:
+                    traceback.print_exc()
+                    return 1
+                finally:
+                    bridge.job_params = None
+                    sys.stdout.flush()
+
+            def main():
+                preload_modules()
+                bridge.connect()
+                while True:
+                    frame = bridge.read_frame()
+                    if frame is None:
+                        break
+                    frame_type, encoding, job_id, payload = frame
+                    if frame_type != FRAME_JOB:
+                        continue
+                    exit_code = run_job(bridge.decode(encoding, payload))
+                    sys.stderr.flush()
+                    print(f"{JOB_END_MARKER}{job_id}", flush=True)
+                    bridge.send_frame(FRAME_DONE, job_id, {'exit_code': exit_code, 'rss_kb': current_rss_kb()})
+
+            if __name__ == '__main__':
+                main()
+            """;
+
+    private PythonBridgeScripts() {
+    }
+
+    /**
+     * 写入Bridge与系统函数模块
+     */
+    public static void writeRuntimeModules(Path dir) throws IOException {
+        Files.writeString(dir.resolve(JAVA_BRIDGE_FILE), JAVA_BRIDGE, StandardCharsets.UTF_8);
+        Files.writeString(dir.resolve(SYSTEM_FUNCTIONS_FILE), SYSTEM_FUNCTIONS, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 写入常驻工作进程所需的全部模块
+     */
+    public static void writeWorkerModules(Path dir) throws IOException {
+        writeRuntimeModules(dir);
+        Files.writeString(dir.resolve(WORKER_MAIN_FILE), WORKER_MAIN, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,171 @@
+package com.mt.agent.workflow.api.infra.python;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 常驻Python工作进程
+ * 任务与Java函数调用走专用桥接通道，stdout仅承载用户代码输出，由独立线程转发
+ */
+@Slf4j
+public class PythonWorker {
+
+    static final String JOB_END_MARKER = "WORKER_JOB_END:";
+
+    private final long id;
+    private final Process process;
+    private final Semaphore jobOutputDrained = new Semaphore(0);
+    private volatile Consumer<String> outputSink;
+    private PythonBridgeChannel channel;
+
+    private int jobSeq;
+    private int jobsExecuted;
+    private long baselineRssKb;
+    private long lastRssKb;
+
+    private PythonWorker(long id, Process process) {
+        this.id = id;
+        this.process = process;
+    }
+
+    /**
+     * 启动工作进程并等待其连接桥接通道
+     */
+    static PythonWorker start(long id, String pythonCommand, Path workerDir, List<String> preloadModules,
+                              int startupTimeoutSeconds, PythonBridgeCodec codec) throws IOException {
+        try (PythonBridgeChannel.Listener listener = PythonBridgeChannel.listen(codec)) {
+            ProcessBuilder pb = new ProcessBuilder(pythonCommand, PythonBridgeScripts.WORKER_MAIN_FILE);
+            pb.directory(workerDir.toFile());
+            pb.redirectErrorStream(true);
+            pb.environment().put("PYTHONIOENCODING", "utf-8");
+            pb.environment().put("PY_WORKER", "1");
+            pb.environment().put("PY_WORKER_PRELOAD", String.join(",", preloadModules));
+            listener.configure(pb);
+
+            PythonWorker worker = new PythonWorker(id, pb.start());
+            worker.startOutputPump();
+            try {
+                worker.channel = listener.accept(worker.process, startupTimeoutSeconds);
+            } catch (IOException e) {
+                worker.destroy();
+                throw e;
+            }
+            worker.baselineRssKb = toLong(worker.channel.getHello().get("rss_kb"));
+            worker.lastRssKb = worker.baselineRssKb;
+            log.info("🐍 [工作进程] Python工作进程#{}已就绪, pid: {}, 内存: {}KB", id, worker.process.pid(), worker.baselineRssKb);
+            return worker;
+        }
+    }
+
+    private void startOutputPump() {
+        Thread pump = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(JOB_END_MARKER)) {
+                        jobOutputDrained.release();
+                        continue;
+                    }
+                    Consumer<String> sink = outputSink;
+                    if (sink != null) {
+                        sink.accept(line);
+                    } else {
+                        log.info("🐍 [工作进程] #{} 输出: {}", id, line);
+                    }
+                }
+            } catch (IOException e) {
+                log.debug("🐍 [工作进程] #{} 输出流关闭: {}", id, e.getMessage());
+            }
+        }, "python-worker-" + id + "-output");
+        pump.setDaemon(true);
+        pump.start();
+    }
+
+    /**
+     * 下发任务并阻塞处理桥接请求直到任务结束
+     *
+     * @param job            任务内容（code、params）
+     * @param requestHandler Java函数调用处理器
+     * @param outputHandler  用户代码stdout输出处理器
+     * @return Python代码退出码
+     */
+    public int runJob(Map<String, Object> job, BridgeRequestHandler requestHandler,
+                      Consumer<String> outputHandler) throws IOException {
+        jobOutputDrained.drainPermits();
+        outputSink = outputHandler;
+        try {
+            channel.send(BridgeFrame.JOB, ++jobSeq, job);
+            BridgeFrame frame;
+            while ((frame = channel.readFrame()) != null) {
+                if (frame.type == BridgeFrame.DONE) {
+                    Map<?, ?> status = channel.decode(frame, Map.class);
+                    jobsExecuted++;
+                    lastRssKb = toLong(status.get("rss_kb"));
+                    awaitJobOutput();
+                    return (int) toLong(status.get("exit_code"));
+                }
+                if (frame.type == BridgeFrame.REQUEST) {
+                    requestHandler.handle(frame, channel);
+                }
+            }
+            throw new IOException("Python工作进程#" + id + "意外退出");
+        } finally {
+            outputSink = null;
+        }
+    }
+
+    /**
+     * 等待stdout中本次任务的结束标记，确保错误输出已全部转发
+     */
+    private void awaitJobOutput() {
+        try {
+            jobOutputDrained.tryAcquire(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * 强制结束进程
+     */
+    public void destroy() {
+        if (channel != null) {
+            channel.close();
+        }
+        process.destroyForcibly();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getJobsExecuted() {
+        return jobsExecuted;
+    }
+
+    /**
+     * 相对启动时的内存增长（KB）
+     */
+    public long getRssGrowthKb() {
+        return Math.max(0, lastRssKb - baselineRssKb);
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+}
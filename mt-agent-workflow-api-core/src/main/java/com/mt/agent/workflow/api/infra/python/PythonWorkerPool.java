@@ -0,0 +1,213 @@
+package com.mt.agent.workflow.api.infra.python;
+
+import com.mt.agent.workflow.api.config.PythonWorkerPoolProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 常驻Python工作进程池
+ * 预热minIdle个进程，最多maxSize个进程并发执行；进程执行任务数或内存增长超限后回收，
+ * 超时或异常的进程直接强制结束并异步补充
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PythonWorkerPool {
+
+    private final PythonWorkerPoolProperties properties;
+    private final PythonBridgeCodec bridgeCodec;
+
+    @Value("${python.executor.python-command:python}")
+    private String pythonCommand;
+
+    private final LinkedBlockingDeque<PythonWorker> idleWorkers = new LinkedBlockingDeque<>();
+    private final AtomicInteger liveWorkers = new AtomicInteger();
+    private final AtomicLong workerSeq = new AtomicLong();
+
+    private Semaphore permits;
+    private ExecutorService maintenanceExecutor;
+    private ThreadPoolExecutor jobExecutor;
+    private Path workerDir;
+    private volatile boolean shutdown;
+
+    @PostConstruct
+    public void init() {
+        if (!properties.isEnabled()) {
+            log.info("🐍 [工作进程池] 未启用，使用一次性Python进程执行");
+            return;
+        }
+        int maxSize = Math.max(1, properties.getMaxSize());
+        permits = new Semaphore(maxSize, true);
+        // 任务线程阻塞等待工作进程输出，与借出许可一一对应；
+        // 队列留出maxSize余量，容纳超时任务的线程在进程被结束后退出前的短暂重叠
+        AtomicInteger jobThreadSeq = new AtomicInteger();
+        jobExecutor = new ThreadPoolExecutor(maxSize, maxSize, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(maxSize), r -> {
+            Thread t = new Thread(r, "python-worker-job-" + jobThreadSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        jobExecutor.allowCoreThreadTimeOut(true);
+        maintenanceExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "python-worker-pool");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            workerDir = Files.createTempDirectory("python_worker_");
+            PythonBridgeScripts.writeWorkerModules(workerDir);
+        } catch (IOException e) {
+            log.error("🐍 [工作进程池] 创建工作目录失败，回退为一次性进程执行: {}", e.getMessage(), e);
+            properties.setEnabled(false);
+            return;
+        }
+        log.info("🐍 [工作进程池] 初始化完成, 目录: {}, minIdle: {}, maxSize: {}",
+                workerDir, properties.getMinIdle(), properties.getMaxSize());
+        maintenanceExecutor.execute(this::ensureMinIdle);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled() && !shutdown;
+    }
+
+    public String getPythonCommand() {
+        return pythonCommand;
+    }
+
+    /**
+     * 执行工作进程任务的线程池，大小与进程池maxSize一致
+     */
+    public ExecutorService getJobExecutor() {
+        return jobExecutor;
+    }
+
+    public int getJobTimeoutSeconds() {
+        return properties.getJobTimeoutSeconds();
+    }
+
+    /**
+     * 借出一个空闲进程，无空闲进程时在容量范围内新建
+     */
+    public PythonWorker borrow() throws IOException, InterruptedException {
+        if (!permits.tryAcquire(properties.getBorrowTimeoutSeconds(), TimeUnit.SECONDS)) {
+            throw new IOException("等待Python工作进程超时（" + properties.getBorrowTimeoutSeconds() + "秒），当前进程数: " + liveWorkers.get());
+        }
+        try {
+            PythonWorker worker;
+            while ((worker = idleWorkers.pollFirst()) != null) {
+                if (worker.isAlive()) {
+                    return worker;
+                }
+                retire(worker, "进程已退出");
+            }
+            return spawn();
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 归还执行成功的进程，达到回收条件时结束进程并补充
+     */
+    public void release(PythonWorker worker) {
+        try {
+            if (shutdown || !worker.isAlive()) {
+                retire(worker, "进程已退出");
+            } else if (worker.getJobsExecuted() >= properties.getMaxJobsPerWorker()) {
+                retire(worker, "执行任务数达到上限" + properties.getMaxJobsPerWorker());
+            } else if (worker.getRssGrowthKb() > properties.getMaxRssGrowthMb() * 1024L) {
+                retire(worker, "内存增长" + worker.getRssGrowthKb() / 1024 + "MB超过上限");
+            } else {
+                idleWorkers.offerFirst(worker);
+            }
+        } finally {
+            permits.release();
+        }
+        replenishAsync();
+    }
+
+    /**
+     * 丢弃超时或状态异常的进程，强制结束后异步补充新进程
+     */
+    public void discard(PythonWorker worker, String reason) {
+        try {
+            retire(worker, reason);
+        } finally {
+            permits.release();
+        }
+        replenishAsync();
+    }
+
+    private PythonWorker spawn() throws IOException {
+        long id = workerSeq.incrementAndGet();
+        PythonWorker worker = PythonWorker.start(id, pythonCommand, workerDir,
+                properties.getPreloadModules(), properties.getStartupTimeoutSeconds(), bridgeCodec);
+        liveWorkers.incrementAndGet();
+        return worker;
+    }
+
+    private void retire(PythonWorker worker, String reason) {
+        log.info("🐍 [工作进程池] 回收Python工作进程#{}: {}, 已执行任务数: {}", worker.getId(), reason, worker.getJobsExecuted());
+        worker.destroy();
+        liveWorkers.decrementAndGet();
+    }
+
+    private void replenishAsync() {
+        if (!shutdown && maintenanceExecutor != null) {
+            maintenanceExecutor.execute(this::ensureMinIdle);
+        }
+    }
+
+    private void ensureMinIdle() {
+        int target = Math.min(properties.getMinIdle(), properties.getMaxSize());
+        while (!shutdown && idleWorkers.size() < target && liveWorkers.get() < properties.getMaxSize()) {
+            try {
+                idleWorkers.offerLast(spawn());
+            } catch (IOException e) {
+                log.error("🐍 [工作进程池] 预热Python工作进程失败: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shutdown = true;
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+        }
+        if (jobExecutor != null) {
+            jobExecutor.shutdownNow();
+        }
+        PythonWorker worker;
+        while ((worker = idleWorkers.pollFirst()) != null) {
+            retire(worker, "应用关闭");
+        }
+        if (workerDir != null) {
+            try (var paths = Files.walk(workerDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            } catch (IOException e) {
+                log.warn("🐍 [工作进程池] 清理工作目录失败: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.mt.agent.workflow.api.infra.result;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 查询结果缓存负载编码
+ * 行数、耗时与ResultTable二进制拼成原始负载后按Deflate压缩，压缩后不变小时原样保存；
+ * 头部记录原始大小，解压时一次分配到位
+ * <p>
+ * 格式：[4字节魔数][1字节压缩方式][4字节原始大小][负载]
+ */
+public final class ResultPayloadCodec {
+
+    private static final int MAGIC = 0x52505A31; // "RPZ1"
+    private static final int HEADER_BYTES = 9;
+
+    private static final byte METHOD_NONE = 0;
+    private static final byte METHOD_DEFLATE = 1;
+
+    private ResultPayloadCodec() {
+    }
+
+    /**
+     * 编码后的负载
+     *
+     * @param bytes    存储字节
+     * @param rawBytes 压缩前大小
+     */
+    public record Encoded(byte[] bytes, int rawBytes) {
+        public int storedBytes() {
+            return bytes.length;
+        }
+    }
+
+    /**
+     * 解码后的结果
+     */
+    public record Decoded(ResultTable table, long rowCount, long durationMs) {
+    }
+
+    /**
+     * 编码并压缩
+     *
+     * @param level Deflate压缩级别，1最快，9最小
+     */
+    public static Encoded encode(ResultTable table, long rowCount, long durationMs, int level) {
+        byte[] tableBytes = ResultTableCodec.toBinary(table);
+        ByteArrayOutputStream rawOut = new ByteArrayOutputStream(tableBytes.length + 16);
+        try (DataOutputStream out = new DataOutputStream(rawOut)) {
+            out.writeLong(rowCount);
+            out.writeLong(durationMs);
+            out.write(tableBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] raw = rawOut.toByteArray();
+
+        byte[] compressed = deflate(raw, level);
+        boolean useCompressed = compressed != null && compressed.length < raw.length;
+        byte[] body = useCompressed ? compressed : raw;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_BYTES + body.length);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(useCompressed ? METHOD_DEFLATE : METHOD_NONE);
+            out.writeInt(raw.length);
+            out.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Encoded(bytes.toByteArray(), raw.length);
+    }
+
+    /**
+     * 解压并解码
+     */
+    public static Decoded decode(byte[] data) {
+        if (data == null || data.length < HEADER_BYTES) {
+            throw new IllegalArgumentException("不是有效的查询结果缓存数据");
+        }
+        try (DataInputStream header = new DataInputStream(new ByteArrayInputStream(data, 0, HEADER_BYTES))) {
+            if (header.readInt() != MAGIC) {
+                throw new IllegalArgumentException("不是有效的查询结果缓存数据");
+            }
+            byte method = header.readByte();
+            int rawBytes = header.readInt();
+            byte[] raw = switch (method) {
+                case METHOD_NONE -> Arrays.copyOfRange(data, HEADER_BYTES, data.length);
+                case METHOD_DEFLATE -> inflate(data, HEADER_BYTES, rawBytes);
+                default -> throw new IllegalArgumentException("未知的压缩方式: " + method);
+            };
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+                long rowCount = in.readLong();
+                long durationMs = in.readLong();
+                ResultTable table = ResultTableCodec.fromBinary(Arrays.copyOfRange(raw, 16, raw.length));
+                return new Decoded(table, rowCount, durationMs);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 读取头部记录的原始大小
+     */
+    public static int rawBytes(byte[] data) {
+        if (data == null || data.length < HEADER_BYTES) {
+            return 0;
+        }
+        return ((data[5] & 0xFF) << 24) | ((data[6] & 0xFF) << 16) | ((data[7] & 0xFF) << 8) | (data[8] & 0xFF);
+    }
+
+    private static byte[] deflate(byte[] raw, int level) {
+        Deflater deflater = new Deflater(Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, level)));
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            // 输出不小于输入时直接放弃压缩
+            byte[] buffer = new byte[raw.length];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    return null;
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int offset, int rawBytes) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, data.length - offset);
+            byte[] raw = new byte[rawBytes];
+            int length = 0;
+            while (length < rawBytes && !inflater.finished()) {
+                int n = inflater.inflate(raw, length, rawBytes - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != rawBytes) {
+                throw new IllegalArgumentException("查询结果缓存数据已损坏");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("查询结果缓存数据已损坏", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,482 @@
+package com.mt.agent.workflow.api.infra.result;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * 列式查询结果
+ * 所有行共享一份列名，值按列存放：整数、浮点、布尔使用基本类型数组，字符串字典编码，
+ * 其他类型（BigDecimal、日期时间等）按对象存放，空值用位图标记。
+ * rows()返回按需读取的行视图，不复制数据，兼容原有按Map访问行的调用方
+ */
+public final class ResultTable {
+
+    /**
+     * 列存储类型，按该列实际取到的值类型确定，同一列出现不同类型时退化为OBJECT
+     */
+    public enum ColumnType {
+        INT, LONG, DOUBLE, BOOLEAN, STRING, OBJECT
+    }
+
+    private final List<String> columns;
+    private final Column[] data;
+    private final int rowCount;
+    /**
+     * 行视图的列名到列下标，重复列名与LinkedHashMap行为一致：保留首次出现的位置，取最后一列的值
+     */
+    private final Map<String, Integer> viewIndex;
+    private final String[] viewKeys;
+    private final int[] viewColumns;
+
+    private ResultTable(List<String> columns, Column[] data, int rowCount) {
+        this.columns = List.copyOf(columns);
+        this.data = data;
+        this.rowCount = rowCount;
+        LinkedHashMap<String, Integer> index = new LinkedHashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            index.put(columns.get(i), i);
+        }
+        this.viewIndex = index;
+        this.viewKeys = index.keySet().toArray(new String[0]);
+        this.viewColumns = index.values().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public static Builder builder(List<String> columns) {
+        return new Builder(columns);
+    }
+
+    public static ResultTable empty(List<String> columns) {
+        return builder(columns).build();
+    }
+
+    /**
+     * 从行列表构建，列名为空时使用首行的键
+     */
+    public static ResultTable fromRows(List<String> columns, List<Map<String, Object>> rows) {
+        List<String> names = columns;
+        if ((names == null || names.isEmpty()) && rows != null && !rows.isEmpty()) {
+            names = new ArrayList<>(rows.get(0).keySet());
+        }
+        Builder builder = builder(names != null ? names : List.of());
+        if (rows != null) {
+            Object[] values = new Object[builder.data.length];
+            for (Map<String, Object> row : rows) {
+                for (int c = 0; c < values.length; c++) {
+                    values[c] = row.get(builder.columns.get(c));
+                }
+                builder.addRow(values);
+            }
+        }
+        return builder.build();
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public int getColumnCount() {
+        return data.length;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public ColumnType getColumnType(int column) {
+        return data[column].type();
+    }
+
+    public boolean isNull(int row, int column) {
+        checkRow(row);
+        return data[column].nulls.get(row);
+    }
+
+    /**
+     * 读取单元格，基本类型列返回装箱值
+     */
+    public Object get(int row, int column) {
+        checkRow(row);
+        return data[column].get(row);
+    }
+
+    public int getInt(int row, int column) {
+        return data[column].ints[row];
+    }
+
+    public long getLong(int row, int column) {
+        return data[column].longs[row];
+    }
+
+    public double getDouble(int row, int column) {
+        return data[column].doubles[row];
+    }
+
+    public boolean getBoolean(int row, int column) {
+        return data[column].bools.get(row);
+    }
+
+    public String getString(int row, int column) {
+        Column col = data[column];
+        return col.nulls.get(row) ? null : col.dictionary.get(col.codes[row]);
+    }
+
+    /**
+     * 某列在[from, to)范围内的值视图
+     */
+    public List<Object> columnValues(int column, int from, int to) {
+        if (from < 0 || to > rowCount || from > to) {
+            throw new IndexOutOfBoundsException("行范围越界: [" + from + ", " + to + ")，总行数" + rowCount);
+        }
+        Column col = data[column];
+        return new ValueList(col, from, to - from);
+    }
+
+    /**
+     * 行视图列表，每行是只读Map
+     */
+    public List<Map<String, Object>> rows() {
+        return new RowList();
+    }
+
+    /**
+     * 估算占用的堆内存（字节），用于缓存容量控制
+     */
+    public long estimatedBytes() {
+        long bytes = 64;
+        for (String column : columns) {
+            bytes += 48 + 2L * column.length();
+        }
+        for (Column column : data) {
+            bytes += column.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("行下标越界: " + row + "，总行数" + rowCount);
+        }
+    }
+
+    /**
+     * 按行追加的构建器，构建完成后不可再追加
+     */
+    public static final class Builder {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final List<String> columns;
+        private final Column[] data;
+        private int rowCount;
+        private int capacity = INITIAL_CAPACITY;
+
+        private Builder(List<String> columns) {
+            this.columns = List.copyOf(columns);
+            this.data = new Column[columns.size()];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = new Column(capacity);
+            }
+        }
+
+        /**
+         * 追加一行，数组按列顺序排列，构建器不持有该数组
+         */
+        public Builder addRow(Object[] values) {
+            if (values.length != data.length) {
+                throw new IllegalArgumentException("列数不匹配: 期望" + data.length + "，实际" + values.length);
+            }
+            if (rowCount == capacity) {
+                capacity = capacity + (capacity >> 1);
+                for (Column column : data) {
+                    column.grow(capacity);
+                }
+            }
+            for (int i = 0; i < data.length; i++) {
+                data[i].set(rowCount, values[i]);
+            }
+            rowCount++;
+            return this;
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public ResultTable build() {
+            for (Column column : data) {
+                column.trim(rowCount);
+            }
+            return new ResultTable(columns, data, rowCount);
+        }
+    }
+
+    /**
+     * 单列存储，类型由首个非空值确定
+     */
+    static final class Column {
+        private ColumnType type;
+        int[] ints;
+        long[] longs;
+        double[] doubles;
+        BitSet bools;
+        int[] codes;
+        List<String> dictionary;
+        private Map<String, Integer> dictionaryIndex;
+        Object[] objects;
+        BitSet nulls = new BitSet();
+        private int capacity;
+
+        Column(int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * 按已解码的数据创建列，供二进制解码使用
+         */
+        static Column of(ColumnType type, int rowCount) {
+            Column column = new Column(rowCount);
+            column.allocate(type);
+            return column;
+        }
+
+        ColumnType type() {
+            // 全为空的列按字符串列处理
+            return type != null ? type : ColumnType.STRING;
+        }
+
+        void set(int row, Object value) {
+            if (value == null) {
+                nulls.set(row);
+                return;
+            }
+            ColumnType valueType = typeOf(value);
+            if (type == null) {
+                allocate(valueType);
+            } else if (type != valueType && type != ColumnType.OBJECT) {
+                convertToObjects(row);
+            }
+            switch (type) {
+                case INT -> ints[row] = (Integer) value;
+                case LONG -> longs[row] = (Long) value;
+                case DOUBLE -> doubles[row] = (Double) value;
+                case BOOLEAN -> bools.set(row, (Boolean) value);
+                case STRING -> codes[row] = encode((String) value);
+                default -> objects[row] = value;
+            }
+        }
+
+        Object get(int row) {
+            if (type == null || nulls.get(row)) {
+                return null;
+            }
+            return switch (type) {
+                case INT -> ints[row];
+                case LONG -> longs[row];
+                case DOUBLE -> doubles[row];
+                case BOOLEAN -> bools.get(row);
+                case STRING -> dictionary.get(codes[row]);
+                default -> objects[row];
+            };
+        }
+
+        int encode(String value) {
+            Integer code = dictionaryIndex.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                dictionaryIndex.put(value, code);
+            }
+            return code;
+        }
+
+        void allocate(ColumnType valueType) {
+            type = valueType;
+            switch (valueType) {
+                case INT -> ints = new int[capacity];
+                case LONG -> longs = new long[capacity];
+                case DOUBLE -> doubles = new double[capacity];
+                case BOOLEAN -> bools = new BitSet();
+                case STRING -> {
+                    codes = new int[capacity];
+                    dictionary = new ArrayList<>();
+                    dictionaryIndex = new HashMap<>();
+                }
+                default -> objects = new Object[capacity];
+            }
+        }
+
+        void grow(int newCapacity) {
+            capacity = newCapacity;
+            if (ints != null) ints = Arrays.copyOf(ints, newCapacity);
+            if (longs != null) longs = Arrays.copyOf(longs, newCapacity);
+            if (doubles != null) doubles = Arrays.copyOf(doubles, newCapacity);
+            if (codes != null) codes = Arrays.copyOf(codes, newCapacity);
+            if (objects != null) objects = Arrays.copyOf(objects, newCapacity);
+        }
+
+        void trim(int rowCount) {
+            if (capacity != rowCount) {
+                grow(rowCount);
+            }
+            dictionaryIndex = null;
+        }
+
+        private void convertToObjects(int rowCount) {
+            Object[] converted = new Object[capacity];
+            for (int i = 0; i < rowCount; i++) {
+                converted[i] = get(i);
+            }
+            ints = null;
+            longs = null;
+            doubles = null;
+            bools = null;
+            codes = null;
+            dictionary = null;
+            dictionaryIndex = null;
+            objects = converted;
+            type = ColumnType.OBJECT;
+        }
+
+        long estimatedBytes() {
+            long bytes = 48 + nulls.size() / 8;
+            if (ints != null) bytes += 16 + 4L * ints.length;
+            if (longs != null) bytes += 16 + 8L * longs.length;
+            if (doubles != null) bytes += 16 + 8L * doubles.length;
+            if (bools != null) bytes += 16 + bools.size() / 8;
+            if (codes != null) bytes += 16 + 4L * codes.length;
+            if (dictionary != null) {
+                bytes += 16 + 8L * dictionary.size();
+                for (String value : dictionary) {
+                    bytes += 40 + value.length();
+                }
+            }
+            if (objects != null) {
+                // 对象列按每个值平均32字节估算
+                bytes += 16 + 8L * objects.length + 32L * objects.length;
+            }
+            return bytes;
+        }
+
+        static ColumnType typeOf(Object value) {
+            if (value instanceof Integer) return ColumnType.INT;
+            if (value instanceof Long) return ColumnType.LONG;
+            if (value instanceof Double) return ColumnType.DOUBLE;
+            if (value instanceof Boolean) return ColumnType.BOOLEAN;
+            if (value instanceof String) return ColumnType.STRING;
+            return ColumnType.OBJECT;
+        }
+    }
+
+    Column column(int index) {
+        return data[index];
+    }
+
+    static ResultTable of(List<String> columns, Column[] data, int rowCount) {
+        return new ResultTable(columns, data, rowCount);
+    }
+
+    private final class RowList extends AbstractList<Map<String, Object>> implements RandomAccess {
+        @Override
+        public Map<String, Object> get(int index) {
+            checkRow(index);
+            return new RowView(index);
+        }
+
+        @Override
+        public int size() {
+            return rowCount;
+        }
+    }
+
+    private final class RowView extends AbstractMap<String, Object> {
+        private final int row;
+
+        RowView(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public Object get(Object key) {
+            Integer column = viewIndex.get(key);
+            return column != null ? data[column].get(row) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return viewIndex.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return viewKeys.length;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<>() {
+                        private int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < viewKeys.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (next >= viewKeys.length) {
+                                throw new NoSuchElementException();
+                            }
+                            int i = next++;
+                            return new SimpleImmutableEntry<>(viewKeys[i], data[viewColumns[i]].get(row));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return viewKeys.length;
+                }
+            };
+        }
+    }
+
+    private static final class ValueList extends AbstractList<Object> implements RandomAccess {
+        private final Column column;
+        private final int offset;
+        private final int size;
+
+        ValueList(Column column, int offset, int size) {
+            this.column = column;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        @Override
+        public Object get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("下标越界: " + index);
+            }
+            return column.get(offset + index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
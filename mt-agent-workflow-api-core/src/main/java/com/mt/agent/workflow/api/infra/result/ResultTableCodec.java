@@ -0,0 +1,374 @@
+package com.mt.agent.workflow.api.infra.result;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * ResultTable编码器
+ * 直接按列读取写出JSON、CSV和紧凑二进制，不经过行Map
+ */
+public final class ResultTableCodec {
+
+    private static final int BINARY_MAGIC = 0x52544231; // "RTB1"
+
+    // 对象列的值类型标记
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_BIG_DECIMAL = 2;
+    private static final byte TAG_TIMESTAMP = 3;
+    private static final byte TAG_SQL_DATE = 4;
+    private static final byte TAG_SQL_TIME = 5;
+    private static final byte TAG_LOCAL_DATE_TIME = 6;
+    private static final byte TAG_LOCAL_DATE = 7;
+    private static final byte TAG_LOCAL_TIME = 8;
+    private static final byte TAG_BYTES = 9;
+    private static final byte TAG_BIG_INTEGER = 10;
+    private static final byte TAG_FLOAT = 11;
+    private static final byte TAG_SHORT = 12;
+    private static final byte TAG_BYTE = 13;
+    private static final byte TAG_INT = 14;
+    private static final byte TAG_LONG = 15;
+    private static final byte TAG_DOUBLE = 16;
+    private static final byte TAG_BOOLEAN = 17;
+    private static final byte TAG_OFFSET_DATE_TIME = 18;
+
+    private ResultTableCodec() {
+    }
+
+    /**
+     * 写出行对象数组：[{列名: 值, ...}, ...]，对象列通过生成器的ObjectCodec序列化
+     */
+    public static void writeJsonRows(ResultTable table, JsonGenerator gen) throws IOException {
+        List<String> columns = table.getColumns();
+        int[] viewColumns = distinctColumns(columns);
+        gen.writeStartArray();
+        for (int row = 0; row < table.getRowCount(); row++) {
+            gen.writeStartObject();
+            for (int c : viewColumns) {
+                gen.writeFieldName(columns.get(c));
+                writeJsonValue(table, row, c, gen);
+            }
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+
+    private static void writeJsonValue(ResultTable table, int row, int column, JsonGenerator gen) throws IOException {
+        if (table.isNull(row, column)) {
+            gen.writeNull();
+            return;
+        }
+        switch (table.getColumnType(column)) {
+            case INT -> gen.writeNumber(table.getInt(row, column));
+            case LONG -> gen.writeNumber(table.getLong(row, column));
+            case DOUBLE -> gen.writeNumber(table.getDouble(row, column));
+            case BOOLEAN -> gen.writeBoolean(table.getBoolean(row, column));
+            case STRING -> gen.writeString(table.getString(row, column));
+            default -> gen.writeObject(table.get(row, column));
+        }
+    }
+
+    /**
+     * 写出CSV，首行为列名
+     */
+    public static void writeCsv(ResultTable table, Writer writer) throws IOException {
+        writeCsvRow(writer, table.getColumns().toArray());
+        Object[] values = new Object[table.getColumnCount()];
+        for (int row = 0; row < table.getRowCount(); row++) {
+            for (int c = 0; c < values.length; c++) {
+                values[c] = table.get(row, c);
+            }
+            writeCsvRow(writer, values);
+        }
+    }
+
+    /**
+     * 写出一行CSV，含逗号、引号或换行的值加引号转义
+     */
+    public static void writeCsvRow(Writer writer, Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (values[i] != null) {
+                String text = values[i].toString();
+                if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+                    text = '"' + text.replace("\"", "\"\"") + '"';
+                }
+                writer.write(text);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * 编码为二进制：列名、行数，之后逐列写出类型、空值位图和值
+     */
+    public static byte[] toBinary(ResultTable table) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, table.estimatedBytes() / 2 + 64));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(BINARY_MAGIC);
+            out.writeInt(table.getColumnCount());
+            for (String column : table.getColumns()) {
+                writeString(out, column);
+            }
+            int rowCount = table.getRowCount();
+            out.writeInt(rowCount);
+            for (int c = 0; c < table.getColumnCount(); c++) {
+                ResultTable.Column column = table.column(c);
+                ResultTable.ColumnType type = column.type();
+                out.writeByte(type.ordinal());
+                writeBits(out, column.nulls);
+                switch (type) {
+                    case INT -> {
+                        for (int row = 0; row < rowCount; row++) out.writeInt(column.ints[row]);
+                    }
+                    case LONG -> {
+                        for (int row = 0; row < rowCount; row++) out.writeLong(column.longs[row]);
+                    }
+                    case DOUBLE -> {
+                        for (int row = 0; row < rowCount; row++) out.writeDouble(column.doubles[row]);
+                    }
+                    case BOOLEAN -> writeBits(out, column.bools);
+                    case STRING -> {
+                        List<String> dictionary = column.dictionary != null ? column.dictionary : List.of();
+                        out.writeInt(dictionary.size());
+                        for (String value : dictionary) {
+                            writeString(out, value);
+                        }
+                        for (int row = 0; row < rowCount; row++) out.writeInt(column.codes != null ? column.codes[row] : 0);
+                    }
+                    default -> {
+                        for (int row = 0; row < rowCount; row++) writeObject(out, column.objects[row]);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 从二进制解码
+     */
+    public static ResultTable fromBinary(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != BINARY_MAGIC) {
+                throw new IllegalArgumentException("不是有效的ResultTable二进制数据");
+            }
+            int columnCount = in.readInt();
+            List<String> columns = new ArrayList<>(columnCount);
+            for (int c = 0; c < columnCount; c++) {
+                columns.add(readString(in));
+            }
+            int rowCount = in.readInt();
+            ResultTable.Column[] columnData = new ResultTable.Column[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                ResultTable.ColumnType type = ResultTable.ColumnType.values()[in.readByte()];
+                ResultTable.Column column = ResultTable.Column.of(type, rowCount);
+                column.nulls = readBits(in);
+                switch (type) {
+                    case INT -> {
+                        for (int row = 0; row < rowCount; row++) column.ints[row] = in.readInt();
+                    }
+                    case LONG -> {
+                        for (int row = 0; row < rowCount; row++) column.longs[row] = in.readLong();
+                    }
+                    case DOUBLE -> {
+                        for (int row = 0; row < rowCount; row++) column.doubles[row] = in.readDouble();
+                    }
+                    case BOOLEAN -> column.bools = readBits(in);
+                    case STRING -> {
+                        int dictionarySize = in.readInt();
+                        for (int i = 0; i < dictionarySize; i++) {
+                            column.dictionary.add(readString(in));
+                        }
+                        for (int row = 0; row < rowCount; row++) column.codes[row] = in.readInt();
+                    }
+                    default -> {
+                        for (int row = 0; row < rowCount; row++) column.objects[row] = readObject(in);
+                    }
+                }
+                column.trim(rowCount);
+                columnData[c] = column;
+            }
+            return ResultTable.of(columns, columnData, rowCount);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int[] distinctColumns(List<String> columns) {
+        // 与行视图一致：重复列名保留首次位置、取最后一列的值
+        LinkedHashMap<String, Integer> index = new LinkedHashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            index.put(columns.get(i), i);
+        }
+        return index.values().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void writeBits(DataOutputStream out, BitSet bits) throws IOException {
+        long[] words = bits.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    private static BitSet readBits(DataInputStream in) throws IOException {
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return BitSet.valueOf(words);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeObject(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof String s) {
+            out.writeByte(TAG_STRING);
+            writeString(out, s);
+        } else if (value instanceof BigDecimal d) {
+            out.writeByte(TAG_BIG_DECIMAL);
+            writeString(out, d.toString());
+        } else if (value instanceof java.sql.Timestamp t) {
+            out.writeByte(TAG_TIMESTAMP);
+            out.writeLong(t.getTime());
+            out.writeInt(t.getNanos());
+        } else if (value instanceof java.sql.Date d) {
+            out.writeByte(TAG_SQL_DATE);
+            out.writeLong(d.getTime());
+        } else if (value instanceof java.sql.Time t) {
+            out.writeByte(TAG_SQL_TIME);
+            out.writeLong(t.getTime());
+        } else if (value instanceof LocalDateTime t) {
+            out.writeByte(TAG_LOCAL_DATE_TIME);
+            writeString(out, t.toString());
+        } else if (value instanceof LocalDate d) {
+            out.writeByte(TAG_LOCAL_DATE);
+            writeString(out, d.toString());
+        } else if (value instanceof LocalTime t) {
+            out.writeByte(TAG_LOCAL_TIME);
+            writeString(out, t.toString());
+        } else if (value instanceof OffsetDateTime t) {
+            out.writeByte(TAG_OFFSET_DATE_TIME);
+            writeString(out, t.toString());
+        } else if (value instanceof byte[] b) {
+            out.writeByte(TAG_BYTES);
+            out.writeInt(b.length);
+            out.write(b);
+        } else if (value instanceof BigInteger i) {
+            out.writeByte(TAG_BIG_INTEGER);
+            writeString(out, i.toString());
+        } else if (value instanceof Float f) {
+            out.writeByte(TAG_FLOAT);
+            out.writeFloat(f);
+        } else if (value instanceof Short s) {
+            out.writeByte(TAG_SHORT);
+            out.writeShort(s);
+        } else if (value instanceof Byte b) {
+            out.writeByte(TAG_BYTE);
+            out.writeByte(b);
+        } else if (value instanceof Integer i) {
+            out.writeByte(TAG_INT);
+            out.writeInt(i);
+        } else if (value instanceof Long l) {
+            out.writeByte(TAG_LONG);
+            out.writeLong(l);
+        } else if (value instanceof Double d) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(d);
+        } else if (value instanceof Boolean b) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean(b);
+        } else {
+            // 其他类型按字符串保存
+            out.writeByte(TAG_STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static Object readObject(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return readString(in);
+            case TAG_BIG_DECIMAL:
+                return new BigDecimal(readString(in));
+            case TAG_TIMESTAMP: {
+                java.sql.Timestamp t = new java.sql.Timestamp(in.readLong());
+                t.setNanos(in.readInt());
+                return t;
+            }
+            case TAG_SQL_DATE:
+                return new java.sql.Date(in.readLong());
+            case TAG_SQL_TIME:
+                return new java.sql.Time(in.readLong());
+            case TAG_LOCAL_DATE_TIME:
+                return LocalDateTime.parse(readString(in));
+            case TAG_LOCAL_DATE:
+                return LocalDate.parse(readString(in));
+            case TAG_LOCAL_TIME:
+                return LocalTime.parse(readString(in));
+            case TAG_OFFSET_DATE_TIME:
+                return OffsetDateTime.parse(readString(in));
+            case TAG_BYTES: {
+                byte[] b = new byte[in.readInt()];
+                in.readFully(b);
+                return b;
+            }
+            case TAG_BIG_INTEGER:
+                return new BigInteger(readString(in));
+            case TAG_FLOAT:
+                return in.readFloat();
+            case TAG_SHORT:
+                return in.readShort();
+            case TAG_BYTE:
+                return in.readByte();
+            case TAG_INT:
+                return in.readInt();
+            case TAG_LONG:
+                return in.readLong();
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_BOOLEAN:
+                return in.readBoolean();
+            default:
+                throw new IllegalArgumentException("未知的值类型标记: " + tag);
+        }
+    }
+}
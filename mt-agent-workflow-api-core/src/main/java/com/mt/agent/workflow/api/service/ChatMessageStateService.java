@@ -0,0 +1,45 @@
+package com.mt.agent.workflow.api.service;
+
+import com.mt.agent.workflow.api.entity.ChatMessage;
+
+/**
+ * 聊天消息状态服务
+ * 数据问答的每个持久化步骤都是独立的短事务，外部调用（Dify、Python）期间不占用数据库连接。
+ * 助手消息状态流转：处理中(0) -> 成功(1)/失败(2)，只有处理中的消息可以被结束，
+ * 进程异常退出遗留的处理中消息在启动时统一标记为失败
+ */
+public interface ChatMessageStateService {
+
+    int STATUS_PROCESSING = 0;
+    int STATUS_SUCCESS = 1;
+    int STATUS_FAILED = 2;
+
+    /**
+     * 保存用户消息
+     */
+    ChatMessage saveUserMessage(Long sessionId, Long userId, String content);
+
+    /**
+     * 保存处理中的助手消息，并更新会话消息统计
+     *
+     * @param thinkingContent AI思考过程
+     * @param pythonCode 待执行的Python代码，非空时执行状态置为执行中
+     */
+    ChatMessage saveProcessingAssistantMessage(Long sessionId, Long userId, String thinkingContent, String pythonCode);
+
+    /**
+     * 结束助手消息：仅当消息仍处于处理中时写入最终状态、执行结果和耗时
+     *
+     * @param message 携带最终状态的消息
+     * @return 是否成功流转，消息已被结束时返回false
+     */
+    boolean completeAssistantMessage(ChatMessage message);
+
+    /**
+     * 将超过指定时间仍处于处理中的助手消息标记为失败
+     *
+     * @param olderThanMs 消息创建时间早于当前时间减去该值
+     * @return 标记的消息数
+     */
+    int failStaleProcessingMessages(long olderThanMs);
+}
@@ -1,6 +1,8 @@
 package com.mt.agent.workflow.api.service;
 
 import com.mt.agent.workflow.api.dto.DataQuestionResponse;
+import com.mt.agent.workflow.api.infra.pipeline.CancellationToken;
+import com.mt.agent.workflow.api.service.impl.SubEventReporter;
 
 /**
  * 聊天编排服务
@@ -32,4 +34,23 @@ public interface ChatOrchestratorService {
      * @return 数据问答响应对象
      */
     DataQuestionResponse processDataQuestionSync(Long sessionId, Long userId, String question, Long dbConfigId, Long tableId, String tableName);
+    
+    /**
+     * 处理用户消息，执行完整的数据问答流程（流式、可取消版本）
+     * 大模型输出、Python代码、执行进度和每条SQL及行数通过reporter实时推送；
+     * 取消时断开Dify订阅、强制结束Python进程并取消执行中的SQL
+     * 
+     * @param sessionId 会话ID
+     * @param userId 用户ID
+     * @param question 用户问题
+     * @param dbConfigId 数据库配置ID
+     * @param tableId 表ID（可为null）
+     * @param tableName 表名（可为null）
+     * @param reporter 流式输出报告器，为null时阻塞调用Dify
+     * @param cancellation 取消令牌，可为null
+     * @return 数据问答响应对象
+     */
+    DataQuestionResponse processDataQuestion(Long sessionId, Long userId, String question, Long dbConfigId,
+                                             Long tableId, String tableName, SubEventReporter reporter,
+                                             CancellationToken cancellation);
 }
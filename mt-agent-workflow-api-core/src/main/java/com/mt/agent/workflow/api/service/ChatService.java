@@ -41,6 +41,18 @@ public interface ChatService {
      */
     List<ChatMessage> getSessionMessages(Long sessionId, Long userId);
     
+    /**
+     * 按游标分页获取会话消息，返回游标之前的最多limit条，页内按时间正序
+     * @param beforeCreatedAtMs 上一页第一条消息的创建时间，为空时取最新一页
+     * @param beforeId 上一页第一条消息的ID，用于区分同一毫秒内的消息
+     */
+    List<ChatMessage> getSessionMessages(Long sessionId, Long userId, Long beforeCreatedAtMs, Long beforeId, int limit);
+    
+    /**
+     * 获取会话的第一条消息，没有时返回null
+     */
+    ChatMessage getFirstSessionMessage(Long sessionId);
+    
 
     
     /**
@@ -49,10 +61,15 @@ public interface ChatService {
     List<UserToolConfig> getUserTools(Long userId);
     
     /**
-     * 会话消息统计更新
+     * 会话消息统计更新（重新计数，用于修正）
      */
     void updateSessionMessageCount(Long sessionId);
     
+    /**
+     * 会话消息数加一并刷新最后消息时间
+     */
+    void incrementSessionMessageCount(Long sessionId);
+    
     /**
      * 重命名会话
      */
@@ -0,0 +1,57 @@
+package com.mt.agent.workflow.api.service;
+
+import com.mt.agent.workflow.api.dto.DataQuestionJob;
+import com.mt.agent.workflow.api.dto.DataQuestionResponse;
+import com.mt.agent.workflow.api.infra.pipeline.CancellationToken;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 数据问答异步任务服务
+ * 提交后立即返回任务句柄，由有界线程池执行，排队已满时快速拒绝
+ */
+public interface DataQuestionJobService {
+
+    /**
+     * 提交数据问答任务
+     *
+     * @param sessionId 会话ID
+     * @param userId 用户ID
+     * @param question 用户问题
+     * @param task 实际执行的问答流程，参数为本任务的取消令牌
+     * @return 任务句柄，排队已满时状态为REJECTED
+     */
+    DataQuestionJob submit(Long sessionId, Long userId, String question, Function<CancellationToken, DataQuestionResponse> task);
+
+    /**
+     * 取消任务，排队中的任务不再执行，执行中的任务中止各阶段的外部调用
+     *
+     * @param jobId 任务ID
+     * @param reason 取消原因
+     * @return 是否触发了取消，任务不存在或已结束时返回false
+     */
+    boolean cancel(String jobId, String reason);
+
+    /**
+     * 按助手消息ID取消执行中的问答
+     *
+     * @param messageId 助手消息ID
+     * @param reason 取消原因
+     * @return 是否触发了取消
+     */
+    boolean cancelByMessage(Long messageId, String reason);
+
+    /**
+     * 查询任务
+     *
+     * @param jobId 任务ID
+     * @return 任务，不存在或已过期时返回null
+     */
+    DataQuestionJob getJob(String jobId);
+
+    /**
+     * 获取流水线运行统计：任务队列与各阶段的排队数、执行中数量和拒绝次数
+     */
+    Map<String, Object> getPipelineStats();
+}
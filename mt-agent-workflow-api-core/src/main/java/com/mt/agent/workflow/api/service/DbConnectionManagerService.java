@@ -5,12 +5,12 @@ import java.util.List;
 
 /**
  * 数据库连接池管理服务
- * 负责自动管理数据库连接池的创建、维护和清理
+ * 负责数据库连接池的创建、维护和清理
  */
 public interface DbConnectionManagerService {
     
     /**
-     * 初始化所有启用的数据库连接
+     * 初始化所有启用的数据库连接（逐个创建并测试，启动时不再调用，连接池按需创建）
      */
     void initializeEnabledConnections();
     
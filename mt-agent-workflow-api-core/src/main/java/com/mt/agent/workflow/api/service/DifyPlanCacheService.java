@@ -0,0 +1,48 @@
+package com.mt.agent.workflow.api.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Dify分析计划缓存服务
+ * 按问题、表选择、表结构版本与对话历史缓存Dify生成的思考内容和Python代码
+ */
+public interface DifyPlanCacheService {
+
+    /**
+     * 构建缓存键，表结构版本取当前最新的成功版本
+     *
+     * @param tableIds  选择的表ID，为空表示全部启用的表
+     * @param tableInfo 发送给Dify的表信息
+     * @param history   最近的对话历史
+     * @param lastReply 上一条助手回复
+     */
+    PlanKey buildKey(Long dbConfigId, List<Long> tableIds, String question, String tableInfo,
+                     List<Map<String, String>> history, String lastReply);
+
+    Optional<Plan> find(PlanKey key);
+
+    /**
+     * 保存计划，应在Python代码执行成功后调用，避免缓存无法执行的代码
+     */
+    void save(PlanKey key, Plan plan);
+
+    /**
+     * 使缓存失效，dbConfigId为null时清空全部
+     *
+     * @return 清理的Redis键数量
+     */
+    long invalidate(Long dbConfigId);
+
+    /**
+     * 命中统计
+     */
+    Map<String, Object> getStats();
+
+    record PlanKey(Long dbConfigId, String fingerprint) {
+    }
+
+    record Plan(String thinking, String pythonCode) {
+    }
+}
@@ -1,5 +1,6 @@
 package com.mt.agent.workflow.api.service;
 
+import com.mt.agent.workflow.api.dto.ExecutionContext;
 import com.mt.agent.workflow.api.dto.PythonExecutionResult;
 import com.mt.agent.workflow.api.service.impl.SubEventReporter;
 import java.util.HashMap;
@@ -35,4 +36,12 @@ public interface PythonExecutorService {
      * @return 执行结果
      */
     PythonExecutionResult executePythonCodeWithResult(Long messageId, Long dbConfigId, Long userId);
+
+    /**
+     * 使用独立的执行上下文执行Python代码并返回结果
+     * @param messageId 消息ID
+     * @param context 执行上下文（数据库配置、问题、历史、表结构等）
+     * @return 执行结果
+     */
+    PythonExecutionResult executePythonCodeWithResult(Long messageId, ExecutionContext context);
 }
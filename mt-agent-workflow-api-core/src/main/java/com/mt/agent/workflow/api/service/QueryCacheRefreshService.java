@@ -0,0 +1,14 @@
+package com.mt.agent.workflow.api.service;
+
+/**
+ * 热点查询缓存预刷新
+ * 按API配置的刷新周期，在缓存过期前重新执行该数据库下访问最多的查询
+ */
+public interface QueryCacheRefreshService {
+
+    /**
+     * 执行一轮刷新检查
+     * @return 本轮刷新的查询数
+     */
+    int refreshDue();
+}
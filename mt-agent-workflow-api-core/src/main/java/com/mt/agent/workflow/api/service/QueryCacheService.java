@@ -1,10 +1,44 @@
 package com.mt.agent.workflow.api.service;
 
 import java.util.Optional;
+import java.util.OptionalLong;
 
 public interface QueryCacheService {
-    Optional<String> findPreview(Long tenantId, Long dbConfigId, Long schemaVersionId, String sqlHash);
-    void savePreview(Long tenantId, Long dbConfigId, Long schemaVersionId, String sqlHash, String resultPreview, long ttlMs);
-}
+    /**
+     * 查找未过期的缓存结果
+     * @return ResultPayloadCodec编码的结果负载
+     */
+    Optional<byte[]> findPreview(Long tenantId, Long dbConfigId, Long schemaVersionId, String sqlHash);
+
+    /**
+     * 查找缓存预览，过期后仍在容忍窗口内的条目也返回，由调用方决定是否先返回旧值再异步刷新
+     */
+    Optional<CachedPreview> findPreviewAllowStale(Long tenantId, Long dbConfigId, Long schemaVersionId, String sqlHash);
 
+    /**
+     * 只读取缓存条目的过期时间，供预刷新探测使用，不计入命中率统计
+     * @return 各层中未过期条目的过期时间，均已过期时返回最晚的过期时间，不存在时为空
+     */
+    OptionalLong findExpiry(Long tenantId, Long dbConfigId, Long schemaVersionId, String sqlHash);
 
+    /**
+     * 保存结果负载，按存储字节数决定写入的缓存层级
+     * @param payload ResultPayloadCodec编码的结果负载
+     * @param rawSizeBytes 压缩前大小
+     */
+    void savePreview(Long tenantId, Long dbConfigId, Long schemaVersionId, String sqlHash, byte[] payload,
+                     long rawSizeBytes, long ttlMs);
+    String calculateSqlHash(String sql);
+
+    /**
+     * 缓存的结果预览
+     *
+     * @param payload     ResultPayloadCodec编码的结果负载
+     * @param expiredAtMs 过期时间
+     */
+    record CachedPreview(byte[] payload, long expiredAtMs) {
+        public boolean isStale() {
+            return expiredAtMs <= System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.mt.agent.workflow.api.service;
+
+import com.mt.agent.workflow.api.entity.ChatMessage;
+
+import java.util.List;
+
+/**
+ * 会话历史缓存
+ * 维护每个会话最近的成功消息（用户消息与助手回复），供大模型提示词拼接对话历史
+ */
+public interface SessionHistoryCacheService {
+
+    /**
+     * 追加一条成功消息，所在事务提交后写入
+     */
+    void append(ChatMessage message);
+
+    /**
+     * 最近的若干条消息，按时间正序
+     */
+    List<HistoryEntry> recent(Long sessionId, int limit);
+
+    /**
+     * 最近一条助手回复的内容，没有时返回null
+     */
+    String lastAssistantReply(Long sessionId);
+
+    /**
+     * 清除会话的历史缓存
+     */
+    void evict(Long sessionId);
+
+    /**
+     * 历史消息
+     *
+     * @param content 用户消息为原文；助手消息依次取执行结果、思考内容、原文
+     */
+    record HistoryEntry(Long id, String role, String content, Long createdAtMs) {
+    }
+}
@@ -2,6 +2,7 @@ package com.mt.agent.workflow.api.service;
 
 import com.mt.agent.workflow.api.entity.SqlExecution;
 import com.mt.agent.workflow.api.infra.ExternalDbExecutor;
+import com.mt.agent.workflow.api.infra.pipeline.CancellationToken;
 
 public interface SqlExecutionService {
     
@@ -21,6 +22,34 @@ public interface SqlExecutionService {
      */
     SqlExecutionResult executeWithResult(Long dbConfigId, String sql);
     
+    /**
+     * 执行SQL并返回结果，取消时中止执行中的语句
+     * @param dbConfigId 数据库配置ID
+     * @param sql SQL语句
+     * @param cancellation 取消令牌，可为null
+     * @return 执行记录和结果
+     */
+    SqlExecutionResult executeWithResult(Long dbConfigId, String sql, CancellationToken cancellation);
+    
+    /**
+     * 流式执行只读SQL，行数据按游标分批拉取并逐行交给回调，不在内存中累积
+     * @param dbConfigId 数据库配置ID
+     * @param sql SQL语句
+     * @param callback 行回调
+     * @param cancellation 取消令牌，可为null
+     * @return 列信息、行数和耗时（不含行数据）
+     */
+    ExternalDbExecutor.QueryResult executeStreaming(Long dbConfigId, String sql, ExternalDbExecutor.RowCallback callback,
+                                                    CancellationToken cancellation);
+    
+    /**
+     * 按SQL安全策略重新执行查询并覆盖缓存，不读取缓存也不产生执行记录
+     * @param dbConfigId 数据库配置ID
+     * @param sql SQL语句
+     * @return 未同步过schema时不缓存，返回false
+     */
+    boolean refreshCachedResult(Long dbConfigId, String sql);
+    
     /**
      * 获取执行结果
      * @param executionId 执行记录ID
@@ -0,0 +1,32 @@
+package com.mt.agent.workflow.api.service;
+
+import java.util.Optional;
+
+/**
+ * 生成SQL缓存服务
+ * 相同提示词输入直接复用已生成的SQL，避免重复调用大模型
+ */
+public interface SqlGenerationCacheService {
+
+    /**
+     * 查找已生成的SQL：先按完整提示词精确匹配，启用时再按规范化查询文本近似匹配
+     */
+    Optional<String> find(Prompt prompt);
+
+    /**
+     * 保存生成的SQL
+     */
+    void save(Prompt prompt, String sql);
+
+    /**
+     * 使指定数据库配置下的缓存全部失效，表结构同步后调用
+     */
+    void invalidate(Long dbConfigId);
+
+    /**
+     * 生成SQL的提示词输入
+     */
+    record Prompt(Long dbConfigId, String queryText, String tableName, String pythonCode,
+                  String historyStr, String question, String tables) {
+    }
+}
@@ -1,10 +1,32 @@
 package com.mt.agent.workflow.api.service;
 
+import com.mt.agent.workflow.api.entity.DbConfig;
 import com.mt.agent.workflow.api.entity.SqlGuardPolicy;
 
 public interface SqlGuardService {
     SqlGuardPolicy getEffectivePolicy(Long tenantId, Long dbConfigId);
-    void validate(String sql, SqlGuardPolicy policy);
-}
 
+    /**
+     * 按策略检查SQL，表名单中未限定库名的表项按连接的默认库匹配，违反策略时抛出IllegalArgumentException
+     */
+    void validate(DbConfig cfg, String sql, SqlGuardPolicy policy);
+
+    /**
+     * 执行前检查：添加或收紧LIMIT，按执行计划预估扫描行数，超过策略上限时抛出ExecutionFailureException（COST_EXCEEDED）
+     *
+     * @param schemaVersionId 执行计划缓存所用的schema版本，可为空
+     * @param rowLimit        本次执行的返回行数上限，0表示不改写LIMIT
+     */
+    GuardedSql prepare(DbConfig cfg, Long schemaVersionId, String sql, SqlGuardPolicy policy, int rowLimit);
 
+    /**
+     * 检查后实际执行的SQL
+     *
+     * @param sql           实际执行的SQL
+     * @param rewritten     是否改写了LIMIT
+     * @param estimatedRows 预估扫描行数，未取得执行计划时为null
+     * @param planCost      优化器估算的代价，未取得执行计划时为null
+     */
+    record GuardedSql(String sql, boolean rewritten, Long estimatedRows, Double planCost) {
+    }
+}
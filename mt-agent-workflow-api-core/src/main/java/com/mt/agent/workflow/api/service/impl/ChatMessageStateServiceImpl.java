@@ -0,0 +1,118 @@
+package com.mt.agent.workflow.api.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.mt.agent.workflow.api.entity.ChatMessage;
+import com.mt.agent.workflow.api.mapper.ChatMessageMapper;
+import com.mt.agent.workflow.api.service.ChatMessageStateService;
+import com.mt.agent.workflow.api.service.ChatService;
+import com.mt.agent.workflow.api.service.SessionHistoryCacheService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatMessageStateServiceImpl implements ChatMessageStateService, ApplicationRunner {
+
+    /**
+     * 启动时清理的处理中消息最短存在时间，超过数据问答整体超时即可认为已中断
+     */
+    private static final long STALE_PROCESSING_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final ChatMessageMapper messageMapper;
+    private final ChatService chatService;
+    private final SessionHistoryCacheService sessionHistoryCacheService;
+
+    @Override
+    @Transactional
+    public ChatMessage saveUserMessage(Long sessionId, Long userId, String content) {
+        ChatMessage message = new ChatMessage();
+        message.setTenantId(0L);
+        message.setSessionId(sessionId);
+        message.setUserId(userId);
+        message.setRole("user");
+        message.setContent(content);
+        message.setContentType("text");
+        message.setStatus(STATUS_SUCCESS);
+        message.setCreatedAtMs(System.currentTimeMillis());
+        messageMapper.insert(message);
+        chatService.incrementSessionMessageCount(sessionId);
+        sessionHistoryCacheService.append(message);
+        return message;
+    }
+
+    @Override
+    @Transactional
+    public ChatMessage saveProcessingAssistantMessage(Long sessionId, Long userId, String thinkingContent, String pythonCode) {
+        ChatMessage message = new ChatMessage();
+        message.setTenantId(0L);
+        message.setSessionId(sessionId);
+        message.setUserId(userId);
+        message.setRole("assistant");
+        message.setContent(thinkingContent != null && !thinkingContent.isEmpty() ? thinkingContent : "AI正在处理中...");
+        message.setContentType("text");
+        message.setStatus(STATUS_PROCESSING);
+        message.setCreatedAtMs(System.currentTimeMillis());
+        message.setThinkingContent(thinkingContent);
+        message.setPythonCode(pythonCode);
+        if (pythonCode != null && !pythonCode.isEmpty()) {
+            message.setExecutionStatus(STATUS_PROCESSING);
+        }
+        messageMapper.insert(message);
+        chatService.incrementSessionMessageCount(sessionId);
+        return message;
+    }
+
+    @Override
+    @Transactional
+    public boolean completeAssistantMessage(ChatMessage message) {
+        int updated = messageMapper.update(null, new LambdaUpdateWrapper<ChatMessage>()
+                .eq(ChatMessage::getId, message.getId())
+                .eq(ChatMessage::getStatus, STATUS_PROCESSING)
+                .set(ChatMessage::getStatus, message.getStatus())
+                .set(message.getExecutionStatus() != null, ChatMessage::getExecutionStatus, message.getExecutionStatus())
+                .set(message.getExecutionResult() != null, ChatMessage::getExecutionResult, message.getExecutionResult())
+                .set(message.getErrorMessage() != null, ChatMessage::getErrorMessage, message.getErrorMessage())
+                .set(message.getDurationMs() != null, ChatMessage::getDurationMs, message.getDurationMs()));
+        if (updated == 0) {
+            log.warn("🔍 [消息状态] 消息已结束，忽略状态更新: messageId={}, status={}", message.getId(), message.getStatus());
+            return false;
+        }
+        if (message.getStatus() != null && message.getStatus() == STATUS_SUCCESS) {
+            // 条件更新只带了变更字段，重新读取完整消息写入历史缓存
+            sessionHistoryCacheService.append(messageMapper.selectById(message.getId()));
+        }
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public int failStaleProcessingMessages(long olderThanMs) {
+        long createdBefore = System.currentTimeMillis() - olderThanMs;
+        return messageMapper.update(null, new LambdaUpdateWrapper<ChatMessage>()
+                .eq(ChatMessage::getRole, "assistant")
+                .eq(ChatMessage::getStatus, STATUS_PROCESSING)
+                .lt(ChatMessage::getCreatedAtMs, createdBefore)
+                .set(ChatMessage::getStatus, STATUS_FAILED)
+                .setSql("execution_status = IF(execution_status = " + STATUS_PROCESSING + ", " + STATUS_FAILED + ", execution_status)")
+                .set(ChatMessage::getErrorMessage, "服务重启，处理已中断"));
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            int count = failStaleProcessingMessages(STALE_PROCESSING_MS);
+            if (count > 0) {
+                log.warn("🔍 [消息状态] 已将{}条中断的处理中消息标记为失败", count);
+            }
+        } catch (Exception e) {
+            log.error("🔍 [消息状态] 清理处理中消息失败: {}", e.getMessage(), e);
+        }
+    }
+}
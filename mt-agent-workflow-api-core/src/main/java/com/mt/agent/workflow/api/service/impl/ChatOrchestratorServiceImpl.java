@@ -3,24 +3,32 @@ package com.mt.agent.workflow.api.service.impl;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.mt.agent.workflow.api.dto.DataQuestionResponse;
+import com.mt.agent.workflow.api.dto.ExecutionContext;
 import com.mt.agent.workflow.api.dto.PythonExecutionResult;
 import com.mt.agent.workflow.api.entity.ChatMessage;
 import com.mt.agent.workflow.api.entity.ChatSession;
+import com.mt.agent.workflow.api.infra.pipeline.CancellationRegistry;
+import com.mt.agent.workflow.api.infra.pipeline.CancellationToken;
+import com.mt.agent.workflow.api.infra.pipeline.PipelineStages;
+import com.mt.agent.workflow.api.service.ChatMessageStateService;
 import com.mt.agent.workflow.api.service.ChatOrchestratorService;
 import com.mt.agent.workflow.api.service.ChatService;
+import com.mt.agent.workflow.api.service.DifyPlanCacheService;
 import com.mt.agent.workflow.api.service.DifyService;
 import com.mt.agent.workflow.api.service.PythonExecutorService;
 import com.mt.agent.workflow.api.service.TableInfoService;
-import com.mt.agent.workflow.api.mapper.ChatMessageMapper;
 import com.mt.agent.workflow.api.util.BufferUtil;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Mono;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -32,56 +40,66 @@ public class ChatOrchestratorServiceImpl implements ChatOrchestratorService {
     private final DifyService difyService;
     private final TableInfoService tableInfoService;
     private final ChatService chatService;
-    private final ChatMessageMapper messageMapper;
+    private final ChatMessageStateService messageStateService;
     private final ObjectMapper objectMapper;
     private final PythonExecutorService pythonExecutorService;
     private final BufferUtil bufferUtil;
+    private final PipelineStages pipelineStages;
+    private final CancellationRegistry cancellationRegistry;
+    private final DifyPlanCacheService difyPlanCacheService;
 
 
 
-    private ChatMessage saveInitialAssistantMessage(Long sessionId, Long userId, String thinkingContent, String pythonCode) {
-        ChatMessage message = new ChatMessage();
-        message.setTenantId(0L);
-        message.setSessionId(sessionId);
-        message.setUserId(userId);
-        message.setRole("assistant");
-        message.setContent(thinkingContent != null && !thinkingContent.isEmpty() ? thinkingContent : "AI正在处理中...");
-        message.setContentType("text");
-        message.setStatus(0); // 状态：处理中
-        message.setCreatedAtMs(System.currentTimeMillis());
-        message.setThinkingContent(thinkingContent);
-        message.setPythonCode(pythonCode);
-        if (pythonCode != null && !pythonCode.isEmpty()) {
-            message.setExecutionStatus(0); // 执行状态：执行中
+    /**
+     * 结束助手消息，状态流转失败（已被结束）时只记录日志
+     */
+    private void finishAssistantMessage(ChatMessage message, boolean success, String executionResult,
+                                        String errorMessage, long startTime) {
+        ChatMessage update = new ChatMessage();
+        update.setId(message.getId());
+        int status = success ? ChatMessageStateService.STATUS_SUCCESS : ChatMessageStateService.STATUS_FAILED;
+        update.setStatus(status);
+        if (message.getExecutionStatus() != null) {
+            update.setExecutionStatus(status);
+        }
+        update.setExecutionResult(executionResult);
+        update.setErrorMessage(errorMessage);
+        update.setDurationMs(System.currentTimeMillis() - startTime);
+        try {
+            messageStateService.completeAssistantMessage(update);
+        } catch (Exception e) {
+            log.error("🔍 [数据问答] 更新消息状态失败, messageId: {}, error: {}", message.getId(), e.getMessage(), e);
         }
-        messageMapper.insert(message);
-        chatService.updateSessionMessageCount(sessionId);
-        return message;
-    }
-
-    private ChatMessage saveUserMessage(Long sessionId, Long userId, String content) {
-        ChatMessage message = new ChatMessage();
-        message.setTenantId(0L);
-        message.setSessionId(sessionId);
-        message.setUserId(userId);
-        message.setRole("user");
-        message.setContent(content);
-        message.setContentType("text");
-        message.setStatus(1);
-        message.setCreatedAtMs(System.currentTimeMillis());
-        messageMapper.insert(message);
-        return message;
     }
     
     @Override
-    @Transactional
     public DataQuestionResponse processDataQuestionSync(Long sessionId, Long userId, String question, Long dbConfigId, Long tableId) {
+        return doProcessDataQuestion(sessionId, userId, question, dbConfigId, tableId, null, null);
+    }
+    
+    @Override
+    public DataQuestionResponse processDataQuestion(Long sessionId, Long userId, String question, Long dbConfigId,
+                                                    Long tableId, String tableName, SubEventReporter reporter,
+                                                    CancellationToken cancellation) {
+        return doProcessDataQuestion(sessionId, userId, question, dbConfigId,
+                resolveTableId(dbConfigId, tableId, tableName), reporter, cancellation);
+    }
+    
+    /**
+     * 数据问答主流程，reporter不为null时以流式方式调用Dify并实时输出各阶段进度，
+     * cancellation不为null时各阶段可被取消
+     */
+    private DataQuestionResponse doProcessDataQuestion(Long sessionId, Long userId, String question, Long dbConfigId,
+                                                       Long tableId, SubEventReporter reporter,
+                                                       CancellationToken cancellation) {
 
         // 设置整体超时时间（4分钟，比前端超时时间短）
         long startTime = System.currentTimeMillis();
         long timeoutMs = 4 * 60 * 1000; // 4分钟
         
         DataQuestionResponse response = DataQuestionResponse.success(sessionId, null);
+        // 处理中的助手消息，外部调用期间不持有数据库连接，结束时单独更新状态
+        ChatMessage initialMessage = null;
         
         try {
             ChatSession session = chatService.getSessionById(sessionId, userId);
@@ -100,12 +118,14 @@ public class ChatOrchestratorServiceImpl implements ChatOrchestratorService {
             }
             
             // 1. 保存用户消息
-            saveUserMessage(sessionId, userId, question);
+            messageStateService.saveUserMessage(sessionId, userId, question);
             
-            // 将当前会话ID和问题存储到缓存，供Python执行时使用
+            // 本次执行的上下文，供Python执行时使用
             String userIdStr = userId.toString();
-            bufferUtil.setField(userIdStr, "current_session_id", sessionId.toString(), -1, java.util.concurrent.TimeUnit.DAYS);
-            bufferUtil.setField(userIdStr, "current_question", question, -1, java.util.concurrent.TimeUnit.DAYS);
+            ExecutionContext executionContext = ExecutionContext.forUser(userId);
+            executionContext.setSessionId(sessionId);
+            executionContext.setDbConfigId(dbConfigId);
+            executionContext.setQuestion(question);
             
             // 2. 获取表信息（按session存储的简化版本）
             String tableInfo, tableableSchema;
@@ -115,25 +135,19 @@ public class ChatOrchestratorServiceImpl implements ChatOrchestratorService {
             String tableSchemaKey = "session_table_schema_" + sessionId;
             String tableIdsKey = "session_table_ids_" + sessionId;
             
-            tableInfo = bufferUtil.getField(userIdStr, tableInfoKey);
-            tableableSchema = bufferUtil.getField(userIdStr, tableSchemaKey);
+            Map<String, Object> sessionFields = bufferUtil.getFields(userIdStr, Set.of(tableInfoKey, tableSchemaKey, tableIdsKey));
+            tableInfo = (String) sessionFields.get(tableInfoKey);
+            tableableSchema = (String) sessionFields.get(tableSchemaKey);
             
             // 获取当前传入的表ID列表（来自DataQuestionController）
-            String currentTableIdsStr = bufferUtil.getField(userIdStr, tableIdsKey);
+            String currentTableIdsStr = (String) sessionFields.get(tableIdsKey);
             
             // 如果session缓存为空，使用默认逻辑生成
             if (tableInfo == null || tableableSchema == null) {
                 log.info("🔍 [数据问答] Session缓存为空，使用默认逻辑生成表信息, sessionId: {}", sessionId);
                 
                 // 获取当前会话的表选择（已经在上面获取过了）
-                List<Long> currentTableIds = null;
-                if (currentTableIdsStr != null && !currentTableIdsStr.trim().isEmpty()) {
-                    currentTableIds = java.util.Arrays.stream(currentTableIdsStr.split(","))
-                        .map(String::trim)
-                        .filter(s -> !s.isEmpty())
-                        .map(Long::valueOf)
-                        .collect(java.util.stream.Collectors.toList());
-                }
+                List<Long> currentTableIds = parseTableIds(currentTableIdsStr);
                 
                 // 生成表信息
                 if (currentTableIds != null && !currentTableIds.isEmpty()) {
@@ -151,8 +165,7 @@ public class ChatOrchestratorServiceImpl implements ChatOrchestratorService {
                 
                 // 存储到session缓存
                 if (tableInfo != null && tableableSchema != null) {
-                    bufferUtil.setField(userIdStr, tableInfoKey, tableInfo, 24, TimeUnit.HOURS);
-                    bufferUtil.setField(userIdStr, tableSchemaKey, tableableSchema, 24, TimeUnit.HOURS);
+                    bufferUtil.setFields(userIdStr, Map.of(tableInfoKey, tableInfo, tableSchemaKey, tableableSchema), 24, TimeUnit.HOURS);
                     log.info("🔍 [数据问答] 已存储到session缓存, sessionId: {}, tableInfo长度: {}, tableSchema长度: {}", 
                         sessionId, tableInfo.length(), tableableSchema.length());
                 }
@@ -169,9 +182,7 @@ public class ChatOrchestratorServiceImpl implements ChatOrchestratorService {
             }
 
             
-            // 存储到统一缓存供Python使用
-            bufferUtil.setField(userIdStr, "current_table_info", tableInfo, 24, TimeUnit.HOURS);
-            bufferUtil.setField(userIdStr, "TableSchema_result", tableableSchema, 24, TimeUnit.HOURS);
+            executionContext.setTableSchema(tableableSchema);
             // 检查超时
             if (System.currentTimeMillis() - startTime > timeoutMs) {
                 response.setSuccess(false);
@@ -185,7 +196,7 @@ public class ChatOrchestratorServiceImpl implements ChatOrchestratorService {
             String lastReply = chatService.getLastAssistantReply(sessionId);
             String userIdentifier = "user_" + userId;
             
-            // 将历史对话存储到缓存，供Python执行时使用
+            // 将历史对话记录到执行上下文，供Python执行时使用
             if (!history.isEmpty()) {
                 StringBuilder historyContext = new StringBuilder();
                 for (Map<String, String> item : history) {
@@ -196,68 +207,112 @@ public class ChatOrchestratorServiceImpl implements ChatOrchestratorService {
                         historyContext.append(item.get("content"));
                     }
                 }
-                bufferUtil.setField(userIdStr, "history_context", historyContext.toString(), -1, java.util.concurrent.TimeUnit.DAYS);
+                executionContext.setHistoryContext(historyContext.toString());
             }
             
             // 如果用户在会话中切换了表，确保使用最新的表信息
             // tableInfo已经在步骤2中根据当前的tableId或dbConfigId获取了最新的表信息
             
-            String difyResponse = difyService.blockingChat(tableInfo, question, history, lastReply, userIdentifier)
-                .block(); // 阻塞等待响应
-            if (difyResponse == null || difyResponse.trim().isEmpty()) {
-                response.setSuccess(false);
-                response.setError("Dify服务返回空响应");
-                response.setDuration(System.currentTimeMillis() - startTime);
-                return response;
+            // 相同问题、表选择、表结构版本与对话历史直接复用已验证的分析计划
+            List<Long> selectedTableIds = parseTableIds(currentTableIdsStr);
+            if (selectedTableIds == null && tableId != null) {
+                selectedTableIds = List.of(tableId);
             }
+            DifyPlanCacheService.PlanKey planKey = difyPlanCacheService.buildKey(
+                    dbConfigId, selectedTableIds, question, tableInfo, history, lastReply);
+            Optional<DifyPlanCacheService.Plan> cachedPlan = difyPlanCacheService.find(planKey);
             
-            // 4. 处理Dify响应
             StringBuilder thinkingContent = new StringBuilder();
             StringBuilder pythonCode = new StringBuilder();
             
-            try {
-                JsonNode rootNode = objectMapper.readTree(difyResponse);
+            if (cachedPlan.isPresent()) {
+                String thinking = cachedPlan.get().thinking();
+                if (thinking != null && !thinking.isEmpty()) {
+                    thinkingContent.append(thinking);
+                    response.setThinking(thinking);
+                    if (reporter != null) {
+                        reporter.reportThinking(thinking);
+                    }
+                }
+                String cachedCode = cachedPlan.get().pythonCode();
+                pythonCode.append(cachedCode);
+                response.setPythonCode(cachedCode);
+                executionContext.setPythonCode(cachedCode);
+                if (reporter != null) {
+                    reporter.reportPythonCode(cachedCode);
+                }
+            } else {
+                // 大模型阶段限流，流式请求边接收边输出，否则阻塞等待响应
+                final String finalTableInfo = tableInfo;
+                String difyResponse = pipelineStages.llm().execute(() -> reporter != null
+                        ? streamDifyChat(finalTableInfo, question, history, lastReply, userIdentifier, reporter, cancellation)
+                        : untilCancelled(difyService.blockingChat(finalTableInfo, question, history, lastReply, userIdentifier), cancellation).block());
+                if (cancellation != null) {
+                    cancellation.throwIfCancelled();
+                }
+                if (difyResponse == null || difyResponse.trim().isEmpty()) {
+                    response.setSuccess(false);
+                    response.setError("Dify服务返回空响应");
+                    response.setDuration(System.currentTimeMillis() - startTime);
+                    return response;
+                }
+            
+                // 4. 处理Dify响应
+                try {
+                    JsonNode rootNode = objectMapper.readTree(difyResponse);
                 
-                if (rootNode.has("data") && rootNode.get("data").has("outputs") && rootNode.get("data").get("outputs").has("code")) {
-                    String codeContent = rootNode.get("data").get("outputs").get("code").asText();
+                    if (rootNode.has("data") && rootNode.get("data").has("outputs") && rootNode.get("data").get("outputs").has("code")) {
+                        String codeContent = rootNode.get("data").get("outputs").get("code").asText();
                     
-                    Pattern thinkPattern = Pattern.compile("<think>(.*?)</think>", Pattern.DOTALL);
-                    Matcher thinkMatcher = thinkPattern.matcher(codeContent);
-                    if (thinkMatcher.find()) {
-                        String thinking = thinkMatcher.group(1).trim();
-                        thinkingContent.append(thinking);
-                        // 设置思考内容到response对象
-                        response.setThinking(thinking);
-                    } else {
-                        log.warn("🔍 [数据问答] 未找到思考内容标签");
-                    }
+                        Pattern thinkPattern = Pattern.compile("<think>(.*?)</think>", Pattern.DOTALL);
+                        Matcher thinkMatcher = thinkPattern.matcher(codeContent);
+                        if (thinkMatcher.find()) {
+                            String thinking = thinkMatcher.group(1).trim();
+                            thinkingContent.append(thinking);
+                            // 设置思考内容到response对象
+                            response.setThinking(thinking);
+                        } else {
+                            log.warn("🔍 [数据问答] 未找到思考内容标签");
+                        }
 
-                    // 支持多种Python代码块格式：```python, ```Python, ```py, ```PY
-                    Pattern codePattern = Pattern.compile("```[Pp]ython\\s*(.*?)```", Pattern.DOTALL);
-                    Matcher codeMatcher = codePattern.matcher(codeContent);
-                    if (codeMatcher.find()) {
-                        String extractedCode = codeMatcher.group(1).trim();
-                        pythonCode.append(extractedCode);
+                        // 支持多种Python代码块格式：```python, ```Python, ```py, ```PY
+                        Pattern codePattern = Pattern.compile("```[Pp]ython\\s*(.*?)```", Pattern.DOTALL);
+                        Matcher codeMatcher = codePattern.matcher(codeContent);
+                        if (codeMatcher.find()) {
+                            String extractedCode = codeMatcher.group(1).trim();
+                            pythonCode.append(extractedCode);
 
-                        // 设置Python代码到response对象
-                        response.setPythonCode(extractedCode);
-                        bufferUtil.savePythonCode(userIdentifier, extractedCode);
+                            // 设置Python代码到response对象
+                            response.setPythonCode(extractedCode);
+                            executionContext.setPythonCode(extractedCode);
+                            if (reporter != null) {
+                                reporter.reportPythonCode(extractedCode);
+                            }
+                        } else {
+                            log.warn("🔍 [数据问答] 未找到Python代码块");
+                        }
                     } else {
-                        log.warn("🔍 [数据问答] 未找到Python代码块");
+                        log.error("🔍 [数据问答] Dify响应格式不正确，缺少data.outputs.code字段");
                     }
-                } else {
-                    log.error("🔍 [数据问答] Dify响应格式不正确，缺少data.outputs.code字段");
+                } catch (Exception e) {
+                    log.error("🔍 [数据问答] 解析Dify响应失败: {}", e.getMessage(), e);
+                    response.setSuccess(false);
+                    response.setError("解析Dify响应失败: " + e.getMessage());
+                    response.setDuration(System.currentTimeMillis() - startTime);
+                    return response;
                 }
-            } catch (Exception e) {
-                log.error("🔍 [数据问答] 解析Dify响应失败: {}", e.getMessage(), e);
-                response.setSuccess(false);
-                response.setError("解析Dify响应失败: " + e.getMessage());
-                response.setDuration(System.currentTimeMillis() - startTime);
-                return response;
             }
 
-            ChatMessage initialMessage = saveInitialAssistantMessage(sessionId, userId, thinkingContent.toString(), pythonCode.toString());
+            executionContext.setReporter(reporter);
+            executionContext.setCancellation(cancellation);
+            
+            // 5. 保存处理中的助手消息
+            initialMessage = messageStateService.saveProcessingAssistantMessage(sessionId, userId, thinkingContent.toString(), pythonCode.toString());
             response.setMessageId(initialMessage.getId());
+            final Long messageId = initialMessage.getId();
+            if (cancellation != null) {
+                cancellationRegistry.registerMessage(messageId, cancellation);
+            }
             
             // 6. 执行Python代码
             if (pythonCode.length() > 0) {
@@ -266,18 +321,22 @@ public class ChatOrchestratorServiceImpl implements ChatOrchestratorService {
                 // 检查超时
                 if (System.currentTimeMillis() - startTime > timeoutMs) {
                     log.error("🔍 [数据问答] 处理超时，已耗时: {}ms", System.currentTimeMillis() - startTime);
+                    finishAssistantMessage(initialMessage, false, null, "处理超时", startTime);
                     response.setSuccess(false);
                     response.setError("处理超时，请稍后重试");
                     response.setDuration(System.currentTimeMillis() - startTime);
                     return response;
                 }
-                PythonExecutionResult result = pythonExecutorService.executePythonCodeWithResult(initialMessage.getId(), dbConfigId,userId);
+                PythonExecutionResult result = pipelineStages.python().execute(() ->
+                        pythonExecutorService.executePythonCodeWithResult(messageId, executionContext));
                 log.debug("🔍 [数据问答] Python执行结果: {}", result.getData());
                 
-                // 7. 更新消息并构建响应
-                initialMessage.setExecutionStatus(result.isSuccess() ? 1 : 2);
+                // 7. 结束消息并构建响应
                 if (result.isSuccess()) {
-                    initialMessage.setExecutionResult(result.getData());
+                    finishAssistantMessage(initialMessage, true, result.getData(), null, startTime);
+                    if (cachedPlan.isEmpty()) {
+                        difyPlanCacheService.save(planKey, new DifyPlanCacheService.Plan(thinkingContent.toString(), pythonCode.toString()));
+                    }
                     
                     // 设置执行结果到response对象
                     String responseContent = result.getData();
@@ -309,15 +368,14 @@ public class ChatOrchestratorServiceImpl implements ChatOrchestratorService {
                         response.setResultType("text");
                     }
                 } else {
-                    initialMessage.setErrorMessage(result.getErrorMessage());
-                    initialMessage.setExecutionResult(result.getErrorMessage());
+                    finishAssistantMessage(initialMessage, false, result.getErrorMessage(), result.getErrorMessage(), startTime);
                     log.error("🔍 [数据问答] Python执行失败: {}", result.getErrorMessage());
                     response.setSuccess(false);
                     response.setError("Python代码执行失败: " + result.getErrorMessage());
                 }
-                messageMapper.updateById(initialMessage);
             } else {
                 log.warn("🔍 [数据问答] 没有Python代码需要执行");
+                finishAssistantMessage(initialMessage, true, null, null, startTime);
                 // 如果没有Python代码，只返回思考内容
                 String responseContent = thinkingContent.toString();
                 if (responseContent.trim().isEmpty()) {
@@ -344,6 +402,15 @@ public class ChatOrchestratorServiceImpl implements ChatOrchestratorService {
             
         } catch (Exception e) {
             log.error("🔍 [数据问答] 处理数据问答失败(同步版本): {}", e.getMessage(), e);
+            if (initialMessage != null) {
+                finishAssistantMessage(initialMessage, false, null, e.getMessage(), startTime);
+            }
+            if (cancellation != null && cancellation.isCancelled()) {
+                response.setSuccess(false);
+                response.setError(cancellation.cancelledException().getMessage());
+                response.setDuration(System.currentTimeMillis() - startTime);
+                return response;
+            }
             response.setSuccess(false);
             response.setError("处理数据问答失败: " + e.getMessage());
             response.setDuration(System.currentTimeMillis() - startTime);
@@ -352,9 +419,30 @@ public class ChatOrchestratorServiceImpl implements ChatOrchestratorService {
     }
     
     @Override
-    @Transactional
     public DataQuestionResponse processDataQuestionSync(Long sessionId, Long userId, String question, Long dbConfigId, Long tableId, String tableName) {
-        // 如果提供了表名但没有表ID，尝试查找表ID
+        // 调用原有的方法
+        return processDataQuestionSync(sessionId, userId, question, dbConfigId, resolveTableId(dbConfigId, tableId, tableName));
+    }
+    
+    /**
+     * 解析会话缓存中逗号分隔的表ID，为空时返回null
+     */
+    private static List<Long> parseTableIds(String tableIdsStr) {
+        if (tableIdsStr == null || tableIdsStr.trim().isEmpty()) {
+            return null;
+        }
+        List<Long> tableIds = java.util.Arrays.stream(tableIdsStr.split(","))
+            .map(String::trim)
+            .filter(s -> !s.isEmpty())
+            .map(Long::valueOf)
+            .collect(java.util.stream.Collectors.toList());
+        return tableIds.isEmpty() ? null : tableIds;
+    }
+    
+    /**
+     * 如果提供了表名但没有表ID，尝试查找表ID
+     */
+    private Long resolveTableId(Long dbConfigId, Long tableId, String tableName) {
         if (tableId == null && tableName != null && !tableName.trim().isEmpty()) {
             tableId = tableInfoService.getTableIdByName(dbConfigId, tableName);
             if (tableId != null) {
@@ -363,9 +451,68 @@ public class ChatOrchestratorServiceImpl implements ChatOrchestratorService {
                 log.warn("🔍 [数据问答] 根据表名 {} 未找到对应的表ID", tableName);
             }
         }
-        // 调用原有的方法
-        return processDataQuestionSync(sessionId, userId, question, dbConfigId, tableId);
+        return tableId;
+    }
+    
+    /**
+     * 流式调用Dify工作流，逐段输出大模型内容，
+     * 结束后拼装成与阻塞式响应相同的结构（data.outputs.code）供后续解析
+     */
+    private String streamDifyChat(String tableInfo, String question, List<Map<String, String>> history,
+                                  String lastReply, String userIdentifier, SubEventReporter reporter,
+                                  CancellationToken cancellation) {
+        StringBuilder streamedText = new StringBuilder();
+        AtomicReference<String> finalOutput = new AtomicReference<>();
+        AtomicReference<String> workflowError = new AtomicReference<>();
+        
+        difyService.streamChat(tableInfo, question, history, lastReply, userIdentifier)
+            .doOnNext(chunk -> {
+                String payload = chunk.startsWith("data:") ? chunk.substring(5).trim() : chunk.trim();
+                if (payload.isEmpty()) {
+                    return;
+                }
+                try {
+                    JsonNode event = objectMapper.readTree(payload);
+                    String eventType = event.path("event").asText();
+                    JsonNode data = event.path("data");
+                    if ("text_chunk".equals(eventType)) {
+                        String text = data.path("text").asText("");
+                        streamedText.append(text);
+                        reporter.reportThinking(text);
+                    } else if ("workflow_finished".equals(eventType)) {
+                        if (data.path("outputs").has("code")) {
+                            finalOutput.set(data.path("outputs").path("code").asText());
+                        }
+                        if (data.hasNonNull("error") && !data.path("error").asText().isEmpty()) {
+                            workflowError.set(data.path("error").asText());
+                        }
+                    }
+                } catch (Exception e) {
+                    log.debug("🔍 [数据问答] 忽略无法解析的Dify流式数据: {}", payload);
+                }
+            })
+            .takeUntilOther(cancellation != null ? cancellation.onCancel() : Mono.never())
+            .blockLast();
+        
+        if (workflowError.get() != null) {
+            throw new RuntimeException("Dify工作流执行失败: " + workflowError.get());
+        }
+        String code = finalOutput.get() != null ? finalOutput.get() : streamedText.toString();
+        if (code.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(Map.of("data", Map.of("outputs", Map.of("code", code))));
+        } catch (Exception e) {
+            throw new RuntimeException("组装Dify响应失败: " + e.getMessage(), e);
+        }
     }
     
+    /**
+     * 收到取消信号时断开Dify请求的订阅
+     */
+    private static <T> Mono<T> untilCancelled(Mono<T> mono, CancellationToken cancellation) {
+        return cancellation != null ? mono.takeUntilOther(cancellation.onCancel()) : mono;
+    }
 
 }
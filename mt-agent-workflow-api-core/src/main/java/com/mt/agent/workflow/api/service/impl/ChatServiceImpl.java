@@ -1,6 +1,7 @@
 package com.mt.agent.workflow.api.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.mt.agent.workflow.api.entity.ChatMessage;
@@ -11,6 +12,7 @@ import com.mt.agent.workflow.api.mapper.ChatSessionMapper;
 import com.mt.agent.workflow.api.mapper.UserToolConfigMapper;
 import com.mt.agent.workflow.api.service.ChatService;
 import com.mt.agent.workflow.api.service.SessionAuditService;
+import com.mt.agent.workflow.api.service.SessionHistoryCacheService;
 import com.mt.agent.workflow.api.exception.SessionException;
 import com.mt.agent.workflow.api.util.SessionUtil;
 import lombok.extern.slf4j.Slf4j;
@@ -18,6 +20,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +38,8 @@ public class ChatServiceImpl implements ChatService {
     private UserToolConfigMapper toolConfigMapper;
     @Autowired
     private SessionAuditService sessionAuditService;
+    @Autowired
+    private SessionHistoryCacheService sessionHistoryCacheService;
 
     @Override
     public IPage<ChatSession> getUserSessions(Long userId, Page<ChatSession> page) {
@@ -119,7 +124,56 @@ public class ChatServiceImpl implements ChatService {
 
     @Override
     public List<ChatMessage> getSessionMessages(Long sessionId, Long userId) {
-        // 验证会话所有权
+        checkSessionAccess(sessionId, userId);
+        
+        return messageMapper.selectList(
+            new LambdaQueryWrapper<ChatMessage>()
+                .eq(ChatMessage::getSessionId, sessionId)
+                .orderByAsc(ChatMessage::getCreatedAtMs)
+        );
+    }
+
+    @Override
+    public List<ChatMessage> getSessionMessages(Long sessionId, Long userId, Long beforeCreatedAtMs, Long beforeId, int limit) {
+        checkSessionAccess(sessionId, userId);
+        
+        // 按(created_at_ms, id)游标倒序取一页，命中idx_session_created索引，不随翻页深度变慢
+        LambdaQueryWrapper<ChatMessage> wrapper = new LambdaQueryWrapper<ChatMessage>()
+            .eq(ChatMessage::getSessionId, sessionId);
+        if (beforeCreatedAtMs != null) {
+            if (beforeId != null) {
+                wrapper.and(w -> w.lt(ChatMessage::getCreatedAtMs, beforeCreatedAtMs)
+                    .or(o -> o.eq(ChatMessage::getCreatedAtMs, beforeCreatedAtMs).lt(ChatMessage::getId, beforeId)));
+            } else {
+                wrapper.lt(ChatMessage::getCreatedAtMs, beforeCreatedAtMs);
+            }
+        }
+        wrapper.orderByDesc(ChatMessage::getCreatedAtMs)
+            .orderByDesc(ChatMessage::getId)
+            .last("LIMIT " + limit);
+        
+        List<ChatMessage> messages = new ArrayList<>(messageMapper.selectList(wrapper));
+        // 页内按时间正序返回
+        Collections.reverse(messages);
+        return messages;
+    }
+
+    @Override
+    public ChatMessage getFirstSessionMessage(Long sessionId) {
+        List<ChatMessage> messages = messageMapper.selectList(
+            new LambdaQueryWrapper<ChatMessage>()
+                .eq(ChatMessage::getSessionId, sessionId)
+                .orderByAsc(ChatMessage::getCreatedAtMs)
+                .orderByAsc(ChatMessage::getId)
+                .last("LIMIT 1")
+        );
+        return messages.isEmpty() ? null : messages.get(0);
+    }
+
+    /**
+     * 验证会话所有权并记录访问审计日志
+     */
+    private void checkSessionAccess(Long sessionId, Long userId) {
         ChatSession session = sessionMapper.selectById(sessionId);
         if (session == null) {
             throw new SessionException.SessionNotFoundException(sessionId);
@@ -130,12 +184,6 @@ public class ChatServiceImpl implements ChatService {
         
         // 记录会话访问审计日志
         sessionAuditService.logSessionAccessed(userId, sessionId);
-        
-        return messageMapper.selectList(
-            new LambdaQueryWrapper<ChatMessage>()
-                .eq(ChatMessage::getSessionId, sessionId)
-                .orderByAsc(ChatMessage::getCreatedAtMs)
-        );
     }
 
 
@@ -183,6 +231,17 @@ public class ChatServiceImpl implements ChatService {
         }
     }
     
+    @Override
+    public void incrementSessionMessageCount(Long sessionId) {
+        long now = System.currentTimeMillis();
+        // 单条UPDATE原地自增，不再每条消息都COUNT一遍会话
+        sessionMapper.update(null, new LambdaUpdateWrapper<ChatSession>()
+            .eq(ChatSession::getId, sessionId)
+            .setSql("message_count = message_count + 1")
+            .set(ChatSession::getLastMessageAtMs, now)
+            .set(ChatSession::getUpdatedAtMs, now));
+    }
+    
     @Override
     public boolean renameSession(Long userId, Long sessionId, String newName) {
         try {
@@ -253,6 +312,7 @@ public class ChatServiceImpl implements ChatService {
             int result = sessionMapper.updateById(session);
             if (result > 0) {
                 log.info("用户 {} 成功删除会话 {}", userId, sessionId);
+                sessionHistoryCacheService.evict(sessionId);
                 
                 // 记录审计日志
                 sessionAuditService.logSessionDeleted(userId, sessionId, sessionName);
@@ -275,47 +335,19 @@ public class ChatServiceImpl implements ChatService {
     public List<Map<String, String>> getRecentSessionHistory(Long sessionId, int rounds) {
         try {
             // 获取最近的N*2条消息（每轮包含user和assistant两条消息）
-            int messageLimit = rounds * 2;
-            
-            // 查询最近的消息，按时间倒序
-            List<ChatMessage> messages = messageMapper.selectList(
-                new LambdaQueryWrapper<ChatMessage>()
-                    .eq(ChatMessage::getSessionId, sessionId)
-                    .in(ChatMessage::getRole, "user", "assistant")
-                    .eq(ChatMessage::getStatus, 1) // 只获取成功的消息
-                    .orderByDesc(ChatMessage::getCreatedAtMs)
-                    .last("LIMIT " + messageLimit)
-            );
+            List<SessionHistoryCacheService.HistoryEntry> entries = sessionHistoryCacheService.recent(sessionId, rounds * 2);
             
             // 如果没有历史消息，返回空列表
-            if (messages == null || messages.isEmpty()) {
+            if (entries.isEmpty()) {
                 log.debug("会话 {} 没有历史消息", sessionId);
                 return new ArrayList<>();
             }
             
-            // 反转列表以获得正确的时间顺序
             List<Map<String, String>> history = new ArrayList<>();
-            for (int i = messages.size() - 1; i >= 0; i--) {
-                ChatMessage msg = messages.get(i);
+            for (SessionHistoryCacheService.HistoryEntry entry : entries) {
                 Map<String, String> historyItem = new HashMap<>();
-                historyItem.put("role", msg.getRole());
-                
-                // 根据角色构建内容
-                if ("user".equals(msg.getRole())) {
-                    // 用户消息：使用原始内容
-                    historyItem.put("content", msg.getContent());
-                } else if ("assistant".equals(msg.getRole())) {
-                    // 助手消息：优先使用执行结果，其次使用思考内容，最后使用原始内容
-                    String content = msg.getExecutionResult();
-                    if (content == null || content.trim().isEmpty()) {
-                        content = msg.getThinkingContent();
-                    }
-                    if (content == null || content.trim().isEmpty()) {
-                        content = msg.getContent();
-                    }
-                    historyItem.put("content", content != null ? content : "");
-                }
-                
+                historyItem.put("role", entry.role());
+                historyItem.put("content", entry.content());
                 history.add(historyItem);
             }
             
@@ -331,34 +363,13 @@ public class ChatServiceImpl implements ChatService {
     @Override
     public String getLastAssistantReply(Long sessionId) {
         try {
-            // 查询最近一条助手消息
-            List<ChatMessage> messages = messageMapper.selectList(
-                new LambdaQueryWrapper<ChatMessage>()
-                    .eq(ChatMessage::getSessionId, sessionId)
-                    .eq(ChatMessage::getRole, "assistant")
-                    .eq(ChatMessage::getStatus, 1) // 只获取成功的消息
-                    .orderByDesc(ChatMessage::getCreatedAtMs)
-                    .last("LIMIT 1")
-            );
-            
-            if (messages != null && !messages.isEmpty()) {
-                ChatMessage lastAssistantMsg = messages.get(0);
-                // 优先返回执行结果，其次返回思考内容，最后返回原始内容
-                String reply = lastAssistantMsg.getExecutionResult();
-                if (reply == null || reply.trim().isEmpty()) {
-                    reply = lastAssistantMsg.getThinkingContent();
-                }
-                if (reply == null || reply.trim().isEmpty()) {
-                    reply = lastAssistantMsg.getContent();
-                }
-                
-                log.debug("获取会话 {} 的上一条助手回复，长度: {}", 
-                    sessionId, reply != null ? reply.length() : 0);
-                return reply;
+            String reply = sessionHistoryCacheService.lastAssistantReply(sessionId);
+            if (reply == null) {
+                log.debug("会话 {} 没有找到助手回复", sessionId);
+                return null;
             }
-            
-            log.debug("会话 {} 没有找到助手回复", sessionId);
-            return null;
+            log.debug("获取会话 {} 的上一条助手回复，长度: {}", sessionId, reply.length());
+            return reply;
             
         } catch (Exception e) {
             log.error("获取上一条助手回复失败，sessionId: {}", sessionId, e);
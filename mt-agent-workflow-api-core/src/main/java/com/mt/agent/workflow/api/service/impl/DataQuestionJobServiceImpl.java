@@ -0,0 +1,198 @@
+package com.mt.agent.workflow.api.service.impl;
+
+import com.mt.agent.workflow.api.config.QuestionPipelineProperties;
+import com.mt.agent.workflow.api.dto.DataQuestionJob;
+import com.mt.agent.workflow.api.dto.DataQuestionResponse;
+import com.mt.agent.workflow.api.infra.pipeline.CancellationRegistry;
+import com.mt.agent.workflow.api.infra.pipeline.CancellationToken;
+import com.mt.agent.workflow.api.infra.pipeline.PipelineStages;
+import com.mt.agent.workflow.api.infra.pipeline.StageBulkhead;
+import com.mt.agent.workflow.api.service.DataQuestionJobService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 数据问答异步任务服务实现
+ * 任务在有界线程池中执行，各阶段再由PipelineStages分别限流
+ */
+@Slf4j
+@Service
+public class DataQuestionJobServiceImpl implements DataQuestionJobService {
+
+    private final QuestionPipelineProperties properties;
+    private final PipelineStages pipelineStages;
+    private final CancellationRegistry cancellationRegistry;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, DataQuestionJob> jobs = new ConcurrentHashMap<>();
+    private final Counter rejectedCounter;
+
+    public DataQuestionJobServiceImpl(QuestionPipelineProperties properties, PipelineStages pipelineStages,
+                                      CancellationRegistry cancellationRegistry, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.pipelineStages = pipelineStages;
+        this.cancellationRegistry = cancellationRegistry;
+        AtomicInteger threadIndex = new AtomicInteger();
+        int workers = Math.max(1, properties.getJobWorkers());
+        this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, properties.getJobQueueCapacity())),
+                r -> {
+                    Thread thread = new Thread(r, "data-question-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.rejectedCounter = Counter.builder("dataquestion.job.rejected")
+                .description("异步任务拒绝次数")
+                .register(meterRegistry);
+        Gauge.builder("dataquestion.job.queue.depth", executor, e -> e.getQueue().size())
+                .description("异步任务排队数")
+                .register(meterRegistry);
+        Gauge.builder("dataquestion.job.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("异步任务执行中数量")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public DataQuestionJob submit(Long sessionId, Long userId, String question, Function<CancellationToken, DataQuestionResponse> task) {
+        removeExpiredJobs();
+
+        DataQuestionJob job = new DataQuestionJob();
+        job.setJobId(UUID.randomUUID().toString().replace("-", ""));
+        job.setSessionId(sessionId);
+        job.setUserId(userId);
+        job.setQuestion(question);
+        job.setStatus(DataQuestionJob.QUEUED);
+        job.setSubmittedAt(System.currentTimeMillis());
+        jobs.put(job.getJobId(), job);
+        CancellationToken cancellation = new CancellationToken();
+        cancellationRegistry.registerJob(job.getJobId(), cancellation);
+
+        try {
+            executor.execute(() -> run(job, task, cancellation));
+            log.info("📋 [异步问答] 任务已提交: jobId={}, 排队数={}", job.getJobId(), executor.getQueue().size());
+        } catch (RejectedExecutionException e) {
+            cancellationRegistry.remove(cancellation);
+            rejectedCounter.increment();
+            job.setStatus(DataQuestionJob.REJECTED);
+            job.setError("系统繁忙，请稍后重试");
+            job.setFinishedAt(System.currentTimeMillis());
+            log.warn("📋 [异步问答] 任务队列已满，拒绝任务: jobId={}", job.getJobId());
+        }
+        return job;
+    }
+
+    private void run(DataQuestionJob job, Function<CancellationToken, DataQuestionResponse> task,
+                     CancellationToken cancellation) {
+        if (cancellation.isCancelled()) {
+            // 排队期间已取消
+            job.setStatus(DataQuestionJob.CANCELLED);
+            job.setError(cancellation.cancelledException().getMessage());
+            job.setFinishedAt(System.currentTimeMillis());
+            cancellationRegistry.remove(cancellation);
+            return;
+        }
+        job.setStartedAt(System.currentTimeMillis());
+        job.setStatus(DataQuestionJob.RUNNING);
+        try {
+            DataQuestionResponse response = task.apply(cancellation);
+            job.setResponse(response);
+            if (cancellation.isCancelled()) {
+                job.setError(cancellation.cancelledException().getMessage());
+                job.setStatus(DataQuestionJob.CANCELLED);
+            } else if (response != null && response.isSuccess()) {
+                job.setStatus(DataQuestionJob.SUCCEEDED);
+            } else {
+                job.setError(response != null ? response.getError() : "处理结果为空");
+                job.setStatus(DataQuestionJob.FAILED);
+            }
+        } catch (Exception e) {
+            log.error("📋 [异步问答] 任务执行失败: jobId={}, error={}", job.getJobId(), e.getMessage(), e);
+            job.setError(e.getMessage() != null ? e.getMessage() : "处理数据问答失败");
+            job.setStatus(cancellation.isCancelled() ? DataQuestionJob.CANCELLED : DataQuestionJob.FAILED);
+        } finally {
+            job.setFinishedAt(System.currentTimeMillis());
+            cancellationRegistry.remove(cancellation);
+        }
+    }
+
+    @Override
+    public boolean cancel(String jobId, String reason) {
+        DataQuestionJob job = getJob(jobId);
+        if (job == null || job.isFinished()) {
+            return false;
+        }
+        boolean cancelled = cancellationRegistry.cancelJob(jobId, reason);
+        if (cancelled) {
+            log.info("📋 [异步问答] 任务已取消: jobId={}, 原因: {}", jobId, reason);
+        }
+        return cancelled;
+    }
+
+    @Override
+    public boolean cancelByMessage(Long messageId, String reason) {
+        boolean cancelled = messageId != null && cancellationRegistry.cancelMessage(messageId, reason);
+        if (cancelled) {
+            log.info("📋 [异步问答] 消息对应的执行已取消: messageId={}, 原因: {}", messageId, reason);
+        }
+        return cancelled;
+    }
+
+    @Override
+    public DataQuestionJob getJob(String jobId) {
+        return jobId != null ? jobs.get(jobId) : null;
+    }
+
+    @Override
+    public Map<String, Object> getPipelineStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<String, Object> jobStats = new LinkedHashMap<>();
+        jobStats.put("workers", executor.getMaximumPoolSize());
+        jobStats.put("active", executor.getActiveCount());
+        jobStats.put("queueDepth", executor.getQueue().size());
+        jobStats.put("queueCapacity", properties.getJobQueueCapacity());
+        jobStats.put("rejected", (long) rejectedCounter.count());
+        jobStats.put("tracked", jobs.size());
+        stats.put("jobs", jobStats);
+
+        for (StageBulkhead stage : pipelineStages.all()) {
+            Map<String, Object> stageStats = new LinkedHashMap<>();
+            stageStats.put("maxConcurrent", stage.getMaxConcurrent());
+            stageStats.put("active", stage.getActive());
+            stageStats.put("queueDepth", stage.getQueueDepth());
+            stageStats.put("queueCapacity", stage.getQueueCapacity());
+            stageStats.put("rejected", stage.getRejectedCount());
+            stats.put(stage.getName(), stageStats);
+        }
+        return stats;
+    }
+
+    /**
+     * 清理超过保留时间的已结束任务
+     */
+    private void removeExpiredJobs() {
+        long expireBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(properties.getJobRetentionMinutes());
+        jobs.values().removeIf(job -> job.isFinished()
+                && job.getFinishedAt() != null && job.getFinishedAt() < expireBefore);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
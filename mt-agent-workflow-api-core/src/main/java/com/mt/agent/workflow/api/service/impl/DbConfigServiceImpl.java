@@ -2,6 +2,7 @@ package com.mt.agent.workflow.api.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.mt.agent.workflow.api.entity.DbConfig;
+import com.mt.agent.workflow.api.infra.DbConnectionPoolManager;
 
 import com.mt.agent.workflow.api.mapper.DbConfigMapper;
 import com.mt.agent.workflow.api.service.AuditService;
@@ -26,6 +27,9 @@ public class DbConfigServiceImpl implements DbConfigService {
 	@Autowired
 	private AuditService auditService;
 
+	@Autowired
+	private DbConnectionPoolManager dbConnectionPoolManager;
+
 	// 统一密钥提供
 	private final byte[] masterKey = com.mt.agent.workflow.api.util.CryptoKeyProvider.getMasterKey();
 
@@ -70,6 +74,8 @@ public class DbConfigServiceImpl implements DbConfigService {
 		} else {
 			dbConfigMapper.updateById(config);
 			auditService.log("update_db_config", "db_config", config.getId(), null, null);
+			// 连接池按最新配置调整大小，连接信息变更时替换
+			dbConnectionPoolManager.refresh(dbConfigMapper.selectById(config.getId()));
 		}
 		return config;
 	}
@@ -142,6 +148,9 @@ public class DbConfigServiceImpl implements DbConfigService {
 			if (result > 0) {
 				auditService.log("update_db_config_status", "db_config", id, null, null);
 				log.info("更新数据库配置 {} 状态为: {}", id, status);
+				if (!Integer.valueOf(1).equals(status)) {
+					dbConnectionPoolManager.evict(id);
+				}
 			}
 			return result > 0;
 		} catch (Exception e) {
@@ -186,6 +195,7 @@ public class DbConfigServiceImpl implements DbConfigService {
 		int result = dbConfigMapper.deleteById(id);
 		if (result > 0) {
 			auditService.log("delete_db_config", "db_config", id, null, null);
+			dbConnectionPoolManager.evict(id);
 		}
 		return result > 0;
 	}
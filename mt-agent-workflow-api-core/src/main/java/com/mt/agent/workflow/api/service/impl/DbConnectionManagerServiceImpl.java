@@ -1,22 +1,17 @@
 package com.mt.agent.workflow.api.service.impl;
 
 import com.mt.agent.workflow.api.entity.DbConfig;
+import com.mt.agent.workflow.api.infra.DbConnectionPoolManager;
 import com.mt.agent.workflow.api.service.DbConnectionManagerService;
 import com.mt.agent.workflow.api.service.DbConfigService;
 import com.mt.agent.workflow.api.util.PasswordCipherService;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import jakarta.annotation.PostConstruct;
-import jakarta.annotation.PreDestroy;
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 数据库连接池管理服务实现
@@ -28,27 +23,13 @@ public class DbConnectionManagerServiceImpl implements DbConnectionManagerServic
     @Autowired
     private DbConfigService dbConfigService;
     
-    // 存储所有活跃的连接池
-    private final Map<Long, HikariDataSource> connectionPools = new ConcurrentHashMap<>();
+    // 连接池统一由注册表管理，与SQL执行共用
+    @Autowired
+    private DbConnectionPoolManager dbConnectionPoolManager;
     
     // 统一密钥提供
     private final byte[] masterKey = com.mt.agent.workflow.api.util.CryptoKeyProvider.getMasterKey();
     
-    @PostConstruct
-    public void init() {
-        log.info("数据库连接池管理服务启动");
-        // 启动时自动初始化所有启用的数据库连接
-        initializeEnabledConnections();
-    }
-    
-    @PreDestroy
-    public void destroy() {
-        log.info("数据库连接池管理服务关闭，清理所有连接池");
-        // 关闭所有连接池
-        connectionPools.values().forEach(HikariDataSource::close);
-        connectionPools.clear();
-    }
-    
     @Override
     public void initializeEnabledConnections() {
         try {
@@ -76,61 +57,15 @@ public class DbConnectionManagerServiceImpl implements DbConnectionManagerServic
     @Override
     public boolean createConnectionPool(DbConfig config) {
         try {
-            // 如果连接池已存在，先关闭
-            closeConnectionPool(config.getId());
-            
-            // 解密密码
-            String password;
-            try {
-                log.debug("开始解密数据库配置 {} 的密码", config.getId());
-                password = PasswordCipherService.decryptToStringFromString(masterKey, config.getPasswordCipher());
-                log.debug("数据库配置 {} 密码解密成功", config.getId());
-            } catch (Exception decryptError) {
-                log.warn("密码解密失败，尝试使用明文密码: {}", decryptError.getMessage());
-                log.debug("解密失败详情 - 配置ID: {}, 密码长度: {}, 错误: {}", 
-                         config.getId(), 
-                         config.getPasswordCipher() != null ? config.getPasswordCipher().length() : 0,
-                         decryptError.getClass().getSimpleName());
-                
-                if (config.getRawPassword() != null && !config.getRawPassword().isEmpty()) {
-                    password = config.getRawPassword();
-                    log.info("使用明文密码作为备用方案");
-                } else {
-                    log.error("密码解密失败，且无明文密码可用。配置ID: {}, 错误: {}", 
-                             config.getId(), decryptError.getMessage());
-                    throw new RuntimeException("密码解密失败，且无明文密码可用: " + decryptError.getMessage());
-                }
-            }
-            
-            // 构建JDBC URL
-            String jdbcUrl = String.format("jdbc:mysql://%s:%d/%s?characterEncoding=utf-8&serverTimezone=Asia/Shanghai&connectTimeout=10000&socketTimeout=10000",
-                    config.getHost(), config.getPort(), config.getDatabaseName());
-            
-            // 创建HikariCP配置
-            HikariConfig hikariConfig = new HikariConfig();
-            hikariConfig.setJdbcUrl(jdbcUrl);
-            hikariConfig.setUsername(config.getUsername());
-            hikariConfig.setPassword(password);
-            hikariConfig.setPoolName("HikariPool-" + config.getId());
-            hikariConfig.setMaximumPoolSize(5);
-            hikariConfig.setMinimumIdle(1);
-            hikariConfig.setIdleTimeout(300000); // 5分钟
-            hikariConfig.setConnectionTimeout(10000); // 10秒
-            hikariConfig.setMaxLifetime(1800000); // 30分钟
-            hikariConfig.setLeakDetectionThreshold(60000); // 1分钟
-            hikariConfig.setValidationTimeout(5000); // 5秒
-            
-            // 创建数据源
-            HikariDataSource dataSource = new HikariDataSource(hikariConfig);
+            // 已有连接池时按最新配置调整或替换，不再关闭重建
+            DataSource dataSource = dbConnectionPoolManager.getOrCreate(config);
             
             // 测试连接
             try (Connection conn = dataSource.getConnection()) {
                 if (conn.isValid(5)) {
-                    connectionPools.put(config.getId(), dataSource);
                     log.info("数据库配置 {} ({}) 连接池创建成功", config.getId(), config.getName());
                     return true;
                 } else {
-                    dataSource.close();
                     log.error("数据库配置 {} ({}) 连接验证失败", config.getId(), config.getName());
                     return false;
                 }
@@ -144,30 +79,29 @@ public class DbConnectionManagerServiceImpl implements DbConnectionManagerServic
     
     @Override
     public void closeConnectionPool(Long dbConfigId) {
-        HikariDataSource dataSource = connectionPools.remove(dbConfigId);
-        if (dataSource != null) {
-            try {
-                dataSource.close();
-                log.info("数据库配置 {} 的连接池已关闭", dbConfigId);
-            } catch (Exception e) {
-                log.error("关闭数据库配置 {} 的连接池时发生错误: {}", dbConfigId, e.getMessage());
-            }
+        try {
+            dbConnectionPoolManager.evict(dbConfigId);
+            log.info("数据库配置 {} 的连接池已移除，执行中的查询结束后关闭", dbConfigId);
+        } catch (Exception e) {
+            log.error("关闭数据库配置 {} 的连接池时发生错误: {}", dbConfigId, e.getMessage());
         }
     }
     
     @Override
     public Connection getConnection(Long dbConfigId) {
-        HikariDataSource dataSource = connectionPools.get(dbConfigId);
-        if (dataSource != null) {
-            try {
-                return dataSource.getConnection();
-            } catch (Exception e) {
-                log.error("获取数据库配置 {} 的连接失败: {}", dbConfigId, e.getMessage());
-                throw new RuntimeException("获取数据库连接失败: " + e.getMessage());
-            }
-        } else {
+        if (!dbConnectionPoolManager.contains(dbConfigId)) {
             throw new RuntimeException("数据库配置 " + dbConfigId + " 的连接池不存在");
         }
+        DbConfig config = dbConfigService.getDbConfig(dbConfigId);
+        if (config == null) {
+            throw new RuntimeException("数据库配置 " + dbConfigId + " 不存在");
+        }
+        try {
+            return dbConnectionPoolManager.getOrCreate(config).getConnection();
+        } catch (Exception e) {
+            log.error("获取数据库配置 {} 的连接失败: {}", dbConfigId, e.getMessage());
+            throw new RuntimeException("获取数据库连接失败: " + e.getMessage());
+        }
     }
     
     @Override
@@ -203,7 +137,7 @@ public class DbConnectionManagerServiceImpl implements DbConnectionManagerServic
     
     @Override
     public List<String> getActiveConnectionPools() {
-        return connectionPools.keySet().stream()
+        return dbConnectionPoolManager.poolIds().stream()
                 .map(id -> "数据库配置 " + id + " 的连接池")
                 .toList();
     }
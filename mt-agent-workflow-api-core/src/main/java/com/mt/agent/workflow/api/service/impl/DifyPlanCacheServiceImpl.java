@@ -0,0 +1,175 @@
+package com.mt.agent.workflow.api.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mt.agent.workflow.api.config.DifyPlanCacheProperties;
+import com.mt.agent.workflow.api.entity.SchemaVersion;
+import com.mt.agent.workflow.api.mapper.SchemaVersionMapper;
+import com.mt.agent.workflow.api.service.DifyPlanCacheService;
+import com.mt.agent.workflow.api.util.CacheKeyUtil;
+import com.mt.agent.workflow.api.util.MD5Util;
+import com.mt.agent.workflow.api.util.TableSelectionHashUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dify分析计划缓存实现
+ * 进程内缓存 + Redis共享缓存，OpenAPI等无状态调用每次都是新会话、没有历史，相同问题可直接复用计划
+ */
+@Slf4j
+@Service
+public class DifyPlanCacheServiceImpl implements DifyPlanCacheService {
+
+    private final DifyPlanCacheProperties properties;
+    private final SchemaVersionMapper schemaVersionMapper;
+    private final RedissonClient redissonClient;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, Plan> local;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public DifyPlanCacheServiceImpl(DifyPlanCacheProperties properties, SchemaVersionMapper schemaVersionMapper,
+                                    RedissonClient redissonClient, ObjectMapper objectMapper,
+                                    MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.schemaVersionMapper = schemaVersionMapper;
+        this.redissonClient = redissonClient;
+        this.objectMapper = objectMapper;
+        this.local = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1, properties.getLocalMaxEntries()))
+                .expireAfterWrite(Math.max(1, properties.getTtlMinutes()), TimeUnit.MINUTES)
+                .build();
+        this.hitCounter = Counter.builder("dataquestion.plan.cache.lookup").tag("result", "hit")
+                .description("Dify分析计划缓存查询次数")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("dataquestion.plan.cache.lookup").tag("result", "miss")
+                .description("Dify分析计划缓存查询次数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public PlanKey buildKey(Long dbConfigId, List<Long> tableIds, String question, String tableInfo,
+                            List<Map<String, String>> history, String lastReply) {
+        StringBuilder historyText = new StringBuilder();
+        if (history != null) {
+            for (Map<String, String> item : history) {
+                CacheKeyUtil.appendPart(historyText, item.get("role"));
+                CacheKeyUtil.appendPart(historyText, item.get("content"));
+            }
+        }
+        CacheKeyUtil.appendPart(historyText, lastReply);
+
+        String fingerprint = CacheKeyUtil.fingerprint(
+                TableSelectionHashUtil.generateTableSelectionHash(dbConfigId, tableIds),
+                String.valueOf(latestSchemaVersionId(dbConfigId)),
+                question != null ? question.trim() : null,
+                MD5Util.encrypt(tableInfo != null ? tableInfo : ""),
+                MD5Util.encrypt(historyText.toString()));
+        return new PlanKey(dbConfigId, fingerprint);
+    }
+
+    @Override
+    public Optional<Plan> find(PlanKey key) {
+        if (!properties.isEnabled()) {
+            return Optional.empty();
+        }
+        String cacheKey = cacheKey(key);
+        Plan plan = local.getIfPresent(cacheKey);
+        if (plan == null && properties.isRedisEnabled()) {
+            try {
+                String json = bucket(cacheKey).get();
+                if (json != null) {
+                    plan = objectMapper.readValue(json, Plan.class);
+                    local.put(cacheKey, plan);
+                }
+            } catch (Exception e) {
+                log.warn("🔍 [数据问答] 读取分析计划缓存失败: {}", e.getMessage());
+            }
+        }
+        if (plan == null) {
+            missCounter.increment();
+            return Optional.empty();
+        }
+        hitCounter.increment();
+        log.info("🔍 [数据问答] 命中分析计划缓存，跳过Dify调用, dbConfigId: {}", key.dbConfigId());
+        return Optional.of(plan);
+    }
+
+    @Override
+    public void save(PlanKey key, Plan plan) {
+        if (!properties.isEnabled() || plan == null || plan.pythonCode() == null || plan.pythonCode().isBlank()) {
+            return;
+        }
+        String cacheKey = cacheKey(key);
+        local.put(cacheKey, plan);
+        if (properties.isRedisEnabled()) {
+            try {
+                bucket(cacheKey).set(objectMapper.writeValueAsString(plan),
+                        Math.max(1, properties.getTtlMinutes()), TimeUnit.MINUTES);
+            } catch (Exception e) {
+                log.warn("🔍 [数据问答] 写入分析计划缓存失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public long invalidate(Long dbConfigId) {
+        String prefix = dbConfigId != null ? dbConfigId + ":" : "";
+        local.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        long deleted = 0;
+        if (properties.isRedisEnabled()) {
+            try {
+                deleted = redissonClient.getKeys().deleteByPattern(properties.getRedisKeyPrefix() + prefix + "*");
+            } catch (Exception e) {
+                log.warn("🔍 [数据问答] 清理分析计划缓存失败, dbConfigId: {}: {}", dbConfigId, e.getMessage());
+            }
+        }
+        log.info("🔍 [数据问答] 已清理分析计划缓存, dbConfigId: {}, Redis删除: {}", dbConfigId, deleted);
+        return deleted;
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        double hits = hitCounter.count();
+        double misses = missCounter.count();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("hits", (long) hits);
+        stats.put("misses", (long) misses);
+        stats.put("hitRate", hits + misses > 0 ? hits / (hits + misses) : 0.0);
+        stats.put("localSize", local.size());
+        return stats;
+    }
+
+    private Long latestSchemaVersionId(Long dbConfigId) {
+        SchemaVersion version = schemaVersionMapper.selectOne(
+                new LambdaQueryWrapper<SchemaVersion>()
+                        .select(SchemaVersion::getId)
+                        .eq(SchemaVersion::getDbConfigId, dbConfigId)
+                        .eq(SchemaVersion::getStatus, 1)
+                        .orderByDesc(SchemaVersion::getVersionNo)
+                        .last("limit 1"));
+        return version != null ? version.getId() : null;
+    }
+
+    private RBucket<String> bucket(String cacheKey) {
+        return redissonClient.getBucket(properties.getRedisKeyPrefix() + cacheKey, StringCodec.INSTANCE);
+    }
+
+    private static String cacheKey(PlanKey key) {
+        return key.dbConfigId() + ":" + key.fingerprint();
+    }
+}
@@ -1,9 +1,21 @@
 package com.mt.agent.workflow.api.service.impl;
 
+import com.mt.agent.workflow.api.dto.ExecutionContext;
 import com.mt.agent.workflow.api.dto.PythonExecutionResult;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.mt.agent.workflow.api.entity.ChatMessage;
 import com.mt.agent.workflow.api.entity.ChatSession;
+import com.mt.agent.workflow.api.exception.ExecutionFailureException;
+import com.mt.agent.workflow.api.infra.ExternalDbExecutor;
+import com.mt.agent.workflow.api.infra.pipeline.CancellationToken;
+import com.mt.agent.workflow.api.infra.pipeline.PipelineStages;
+import com.mt.agent.workflow.api.infra.result.ResultTable;
+import com.mt.agent.workflow.api.infra.python.BridgeFrame;
+import com.mt.agent.workflow.api.infra.python.PythonBridgeChannel;
+import com.mt.agent.workflow.api.infra.python.PythonBridgeCodec;
+import com.mt.agent.workflow.api.infra.python.PythonBridgeScripts;
+import com.mt.agent.workflow.api.infra.python.PythonWorker;
+import com.mt.agent.workflow.api.infra.python.PythonWorkerPool;
 import com.mt.agent.workflow.api.mapper.ChatMessageMapper;
 import com.mt.agent.workflow.api.mapper.ChatSessionMapper;
 import com.mt.agent.workflow.api.service.DbConfigService;
@@ -11,6 +23,7 @@ import com.mt.agent.workflow.api.service.PythonExecutorService;
 import com.mt.agent.workflow.api.service.SqlExecutionService;
 import com.mt.agent.workflow.api.service.AISQLQueryService;
 import com.mt.agent.workflow.api.service.SchemaContextService;
+import com.mt.agent.workflow.api.service.SqlGenerationCacheService;
 import com.mt.agent.workflow.api.service.impl.SubEventReporter;
 import com.mt.agent.workflow.api.util.BufferUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -26,7 +39,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -50,9 +66,10 @@ public class PythonDirectExecutorService implements PythonExecutorService {
     private final SqlExecutionService sqlExecutionService;
     private final AISQLQueryService aiSqlQueryService;
     private final SchemaContextService schemaContextService;
-
-    // 存储Python执行过程中的错误信息，用于异常分析
-    private String pythonErrorOutput = "";
+    private final PythonWorkerPool pythonWorkerPool;
+    private final PythonBridgeCodec bridgeCodec;
+    private final PipelineStages pipelineStages;
+    private final SqlGenerationCacheService sqlGenerationCacheService;
 
     // 配置ObjectMapper以正确处理UTF-8编码
     @PostConstruct
@@ -66,37 +83,17 @@ public class PythonDirectExecutorService implements PythonExecutorService {
     public void executePythonCode(String pythonCode, HashMap<String, Object> paramMap,
                                  SubEventReporter reporter, String userId) {
         log.info("🔍 [Python执行] 开始执行Python代码（旧版本接口）, userId: {}", userId);
-        Path tempDir = null;
-        Process pythonProcess = null;
-        pythonErrorOutput = "";
+        ExecutionContext context = new ExecutionContext(userId);
+        context.setPythonCode(pythonCode);
 
         try {
-            log.info("准备Python执行环境...");
-
-            // 1. 创建临时执行环境
-            tempDir = createPythonEnvironment(paramMap);
+            log.info("启动Python执行代码...");
 
-            // 2. 生成完整的main.py文件
-            createMainPythonFile(tempDir, pythonCode);
-
-            log.info("启动Python进程执行代码...");
-
-            // 3. 启动Python进程
-            pythonProcess = startPythonProcess(tempDir);
-
-            // 4. 处理Python进程的输入输出
-            handlePythonExecution(pythonProcess, userId);
-
-            // 5. 等待执行完成
-            boolean finished = pythonProcess.waitFor(300, TimeUnit.SECONDS);
-            if (!finished) {
-                throw new RuntimeException("Python代码执行超时（300秒）");
-            }
-
-            int exitCode = pythonProcess.exitValue();
+            // 执行代码（常驻工作进程或一次性进程）
+            int exitCode = runPythonJob(pythonCode, paramMap, context);
             if (exitCode != 0) {
                 // 根据错误输出和退出码分析异常类型
-                throw analyzeAndCreateException(exitCode, pythonErrorOutput, pythonCode);
+                throw analyzeAndCreateException(exitCode, context.getErrorOutput().toString(), pythonCode);
             }
 
             log.info("Python代码执行完成");
@@ -107,52 +104,24 @@ public class PythonDirectExecutorService implements PythonExecutorService {
             reporter.reportStep("执行失败: " + e.getMessage());
             }
             throw new RuntimeException("Python代码执行失败: " + e.getMessage(), e);
-        } finally {
-            // 清理资源
-            if (pythonProcess != null && pythonProcess.isAlive()) {
-                pythonProcess.destroyForcibly();
-            }
-            cleanupTempDirectory(tempDir);
         }
     }
 
     @Override
     public Object executePythonCodeWithResult(String pythonCode, HashMap<String, Object> paramMap, String userId) {
 //        log.info("🔍 [Python执行] 开始执行Python代码并返回结果, userId: {}", userId);
-        Path tempDir = null;
-        Process pythonProcess = null;
-        pythonErrorOutput = "";
+        ExecutionContext context = new ExecutionContext(userId);
+        context.setPythonCode(pythonCode);
 
         try {
-//            log.info("准备Python执行环境...");
-
-            // 1. 创建临时执行环境
-            tempDir = createPythonEnvironment(paramMap);
-
-            // 2. 生成完整的main.py文件
-            createMainPythonFile(tempDir, pythonCode);
-
-//            log.info("启动Python进程执行代码...");
-
-            // 3. 启动Python进程
-            pythonProcess = startPythonProcess(tempDir);
-
-            // 4. 处理Python进程的输入输出
-            handlePythonExecution(pythonProcess, userId);
-
-            // 5. 等待执行完成
-            boolean finished = pythonProcess.waitFor(300, TimeUnit.SECONDS);
-            if (!finished) {
-                throw new RuntimeException("Python代码执行超时（300秒）");
-            }
-
-            int exitCode = pythonProcess.exitValue();
+            // 1. 执行代码（常驻工作进程或一次性进程）
+            int exitCode = runPythonJob(pythonCode, paramMap, context);
             if (exitCode != 0) {
-                throw analyzeAndCreateException(exitCode, pythonErrorOutput, pythonCode);
+                throw analyzeAndCreateException(exitCode, context.getErrorOutput().toString(), pythonCode);
             }
 
-            // 6. 获取执行结果
-            String result = bufferUtil.getField(userId, "result");
+            // 2. 获取执行结果
+            String result = context.getOutputResult();
             log.info("Python代码执行完成，结果: {}", result != null ? result.length() : 0);
 
             return result;
@@ -160,27 +129,26 @@ public class PythonDirectExecutorService implements PythonExecutorService {
         } catch (Exception e) {
             log.error("Python代码执行失败", e);
             throw new RuntimeException("Python代码执行失败: " + e.getMessage(), e);
-        } finally {
-            // 清理资源
-            if (pythonProcess != null && pythonProcess.isAlive()) {
-                pythonProcess.destroyForcibly();
-            }
-            cleanupTempDirectory(tempDir);
         }
     }
 
+    @Override
     public PythonExecutionResult executePythonCodeWithResult(Long messageId, Long dbConfigId, Long userId) {
-//        log.info("🔍 [Python执行] 开始执行Python代码, messageId: {}, dbConfigId: {}", messageId, dbConfigId);
+        ExecutionContext context = ExecutionContext.forUser(userId);
+        context.setDbConfigId(dbConfigId);
+        return executePythonCodeWithResult(messageId, context);
+    }
+
+    @Override
+    public PythonExecutionResult executePythonCodeWithResult(Long messageId, ExecutionContext context) {
+//        log.info("🔍 [Python执行] 开始执行Python代码, messageId: {}, dbConfigId: {}", messageId, context.getDbConfigId());
+        Long dbConfigId = context.getDbConfigId();
         
         // 验证dbConfigId是否有效
         if (dbConfigId == null) {
             log.error("🔍 [Python执行] dbConfigId为null, messageId: {}", messageId);
             return PythonExecutionResult.failure("数据库配置ID为空", "INVALID_DB_CONFIG");
         }
-        
-        Path tempDir = null;
-        Process pythonProcess = null;
-        pythonErrorOutput = "";
 
         try {
             // 1. 获取消息和Python代码
@@ -195,57 +163,166 @@ public class PythonDirectExecutorService implements PythonExecutorService {
                 log.error("🔍 [Python执行] Python代码为空, messageId: {}", messageId);
                 return PythonExecutionResult.failure("Python代码为空", "EMPTY_CODE");
             }
+            context.setMessageId(messageId);
+            if (context.getPythonCode() == null) {
+                context.setPythonCode(pythonCode);
+            }
 
-            // 2. 创建临时执行环境
+            // 2. 准备执行参数
             HashMap<String, Object> paramMap = new HashMap<>();
             paramMap.put("dbConfigId", dbConfigId);
             paramMap.put("messageId", messageId);
-            
-            // 将dbConfigId存储到缓冲区，供后续使用
-            bufferUtil.setField(userId.toString(),"dbConfigId", dbConfigId.toString(), -1, TimeUnit.DAYS);
-//            log.info("🔍 [Python执行] 已将dbConfigId={}存储到用户{}的缓存中", dbConfigId, userId);
-            tempDir = createPythonEnvironment(paramMap);
-            // 3. 生成完整的main.py文件
-            createMainPythonFile(tempDir, pythonCode);
-            // 4. 启动Python进程
-            pythonProcess = startPythonProcess(tempDir);
-            // 5. 处理Python进程的输入输出
-            handlePythonExecution(pythonProcess, userId.toString());
-
-            // 6. 等待执行完成
-            boolean finished = pythonProcess.waitFor(300, TimeUnit.SECONDS);
-            if (!finished) {
-                log.error("🔍 [Python执行] Python代码执行超时（300秒）");
-                return PythonExecutionResult.failure("Python代码执行超时（300秒）", "TIMEOUT");
-            }
 
-            int exitCode = pythonProcess.exitValue();
+            // 3. 执行代码（常驻工作进程或一次性进程）
+            int exitCode = runPythonJob(pythonCode, paramMap, context);
             
             if (exitCode != 0) {
                 // 根据错误输出和退出码分析异常类型
-                Exception analysedException = analyzeAndCreateException(exitCode, pythonErrorOutput, pythonCode);
+                Exception analysedException = analyzeAndCreateException(exitCode, context.getErrorOutput().toString(), pythonCode);
                 log.error("🔍 [Python执行] Python进程退出码非零: {}, 异常: {}", exitCode, analysedException.getMessage());
                 return PythonExecutionResult.failure("Python代码执行失败: " + analysedException.getMessage(), "EXECUTION_ERROR");
             }
 
-            // 7. 获取执行结果
-            String result = bufferUtil.getField(userId.toString(), "result");
+            // 4. 获取执行结果
+            String result = context.getOutputResult();
             if (result != null && !result.trim().isEmpty()) {
-                // TODO：捋清楚 Output_result 和 execution_result
-                String outputResult = bufferUtil.getOutputResult(userId.toString());
                 log.info("🔍 [Python执行] 使用output_result结果: {}", result);
             } else {
                 // 如果没有output_result，回退到execution_result
-                result = bufferUtil.getField(userId.toString(), "execution_result");
+                result = context.getLastQueryResult() != null
+                        ? objectMapper.writeValueAsString(context.getLastQueryResult()) : null;
                 log.info("🔍 [Python执行] 使用execution_result结果: {}", result);
             }
 
             return PythonExecutionResult.success(result);
 
+        } catch (ExecutionFailureException e) {
+            log.error("🔍 [Python执行] {}", e.getMessage());
+            return PythonExecutionResult.failure(e.getMessage(), e.getErrorCode());
         } catch (Exception e) {
 //            log.error("🔍 [Python执行] Python代码执行异常: {}", e.getMessage(), e);
             return PythonExecutionResult.failure("Python代码执行异常: " + e.getMessage(), "EXCEPTION");
+        }
+    }
+
+    /**
+     * 执行Python代码并返回退出码
+     * 启用工作进程池时复用常驻Python进程，否则启动一次性进程
+     */
+    private int runPythonJob(String pythonCode, HashMap<String, Object> paramMap, ExecutionContext context) throws Exception {
+        String mainCode = buildMainPythonCode(pythonCode);
+        if (pythonWorkerPool.isEnabled()) {
+            return runInWorker(mainCode, paramMap, context);
+        }
+        return runInNewProcess(mainCode, paramMap, context);
+    }
+
+    /**
+     * 在常驻工作进程中执行，超时或进程异常时强制结束该进程
+     */
+    private int runInWorker(String mainCode, HashMap<String, Object> paramMap, ExecutionContext context) throws Exception {
+        int timeoutSeconds = pythonWorkerPool.getJobTimeoutSeconds();
+        Map<String, Object> job = new HashMap<>();
+        job.put("code", mainCode);
+        job.put("params", paramMap);
+
+        PythonWorker worker = pythonWorkerPool.borrow();
+        CancellationToken cancellation = context.getCancellation();
+        Runnable unregister = cancellation != null ? cancellation.register(worker::destroy) : null;
+        CompletableFuture<Integer> execution;
+        try {
+            execution = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return worker.runJob(job,
+                            (frame, channel) -> handleJavaFunctionCall(frame, channel, context),
+                            line -> handlePythonOutput(line, context));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, pythonWorkerPool.getJobExecutor());
+        } catch (RejectedExecutionException e) {
+            if (detach(unregister, cancellation)) {
+                pythonWorkerPool.discard(worker, "执行已取消");
+                throw cancellation.cancelledException();
+            }
+            pythonWorkerPool.release(worker);
+            throw ExecutionFailureException.processError("Python工作进程任务线程已满，请稍后重试");
+        }
+
+        // 各分支先注销取消动作再归还或丢弃进程，避免取消作用到已归还、正在执行其他任务的进程
+        int exitCode;
+        try {
+            exitCode = execution.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            detach(unregister, cancellation);
+            pythonWorkerPool.discard(worker, "执行超时");
+            throw ExecutionFailureException.timeoutError("Python代码执行超时（" + timeoutSeconds + "秒）");
+        } catch (ExecutionException e) {
+            boolean cancelled = detach(unregister, cancellation);
+            pythonWorkerPool.discard(worker, "执行异常");
+            if (cancelled) {
+                throw cancellation.cancelledException();
+            }
+            throw ExecutionFailureException.processError("Python工作进程异常: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            detach(unregister, cancellation);
+            pythonWorkerPool.discard(worker, "执行被中断");
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+        if (detach(unregister, cancellation)) {
+            pythonWorkerPool.discard(worker, "执行已取消");
+            throw cancellation.cancelledException();
+        }
+        pythonWorkerPool.release(worker);
+        return exitCode;
+    }
+
+    /**
+     * 注销取消动作
+     *
+     * @return 是否已取消；注销后再读取，此后取消不会再作用到该进程
+     */
+    private static boolean detach(Runnable unregister, CancellationToken cancellation) {
+        if (unregister != null) {
+            unregister.run();
+        }
+        return cancellation != null && cancellation.isCancelled();
+    }
+
+    /**
+     * 在一次性Python进程中执行
+     */
+    private int runInNewProcess(String mainCode, HashMap<String, Object> paramMap, ExecutionContext context) throws Exception {
+        Path tempDir = null;
+        Process pythonProcess = null;
+        int timeoutSeconds = pythonWorkerPool.getJobTimeoutSeconds();
+        CancellationToken cancellation = context.getCancellation();
+        Runnable unregister = null;
+        try (PythonBridgeChannel.Listener listener = PythonBridgeChannel.listen(bridgeCodec)) {
+            // 1. 创建临时执行环境并写入main.py
+            tempDir = createPythonEnvironment(paramMap);
+            Files.writeString(tempDir.resolve("main.py"), mainCode, StandardCharsets.UTF_8);
+
+            // 2. 启动Python进程，处理桥接通道请求与stdout输出
+            pythonProcess = startPythonProcess(tempDir, listener);
+            if (cancellation != null) {
+                unregister = cancellation.register(pythonProcess::destroyForcibly);
+            }
+            handlePythonExecution(pythonProcess, listener, context, timeoutSeconds);
+
+            // 3. 等待执行完成
+            if (!pythonProcess.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                throw ExecutionFailureException.timeoutError("Python代码执行超时（" + timeoutSeconds + "秒）");
+            }
+            if (cancellation != null && cancellation.isCancelled()) {
+                throw cancellation.cancelledException();
+            }
+            return pythonProcess.exitValue();
         } finally {
+            if (unregister != null) {
+                unregister.run();
+            }
             // 清理资源
             if (pythonProcess != null && pythonProcess.isAlive()) {
                 pythonProcess.destroyForcibly();
@@ -260,11 +337,8 @@ public class PythonDirectExecutorService implements PythonExecutorService {
     private Path createPythonEnvironment(HashMap<String, Object> paramMap) throws IOException {
         Path tempDir = Files.createTempDirectory("python_exec_");
 
-        // 创建Java Bridge模块
-        createJavaBridge(tempDir);
-
-        // 创建系统函数模块
-        createSystemFunctions(tempDir);
+        // 创建Java Bridge与系统函数模块
+        PythonBridgeScripts.writeRuntimeModules(tempDir);
 
         // 创建参数文件
         String paramsJson = objectMapper.writeValueAsString(paramMap);
@@ -275,123 +349,25 @@ public class PythonDirectExecutorService implements PythonExecutorService {
     }
 
     /**
-     * 创建Java Bridge通信模块
-     */
-    private void createJavaBridge(Path tempDir) throws IOException {
-        String bridgeCode = """
-                import json
-                import sys
-                import threading
-                import queue
-                from typing import Any, Dict, List
-
-                class JavaBridge:
-                    def __init__(self):
-                        self.request_id = 0
-                        self.response_queue = queue.Queue()
-
-                    def call_java_function(self, function_name: str, *args) -> Any:
-                        '''调用Java函数并返回结果'''
-                        self.request_id += 1
-                        request = {
-                            'id': self.request_id,
-                            'type': 'function_call',
-                            'function': function_name,
-                            'args': list(args)
-                        }
-
-                        # 发送请求到Java端，确保使用UTF-8编码
-                        print(f"JAVA_REQUEST:{json.dumps(request, ensure_ascii=False)}", flush=True)
-
-                        # 等待Java响应
-                        try:
-                            response_line = input()
-                            if response_line.startswith("JAVA_RESPONSE:"):
-                                response_data = response_line[14:]  # 移除前缀
-                                response = json.loads(response_data)
-
-                                if response.get('error'):
-                                    raise Exception(f"Java函数调用失败: {response['error']}")
-
-                                return response.get('result')
-                            else:
-                                raise Exception(f"无效的Java响应格式: {response_line}")
-                        except EOFError:
-                            raise Exception("Java进程通信中断")
-                        except json.JSONDecodeError as e:
-                            raise Exception(f"Java响应JSON解析失败: {e}")
-
-                    def report_step(self, message: str):
-                        '''报告执行步骤'''
-                        self.call_java_function('report_step', message)
-
-                    def report_progress(self, message: str):
-                        '''报告执行进度'''
-                        self.call_java_function('report_progress', message)
-
-                # 全局Bridge实例
-                bridge = JavaBridge()
-
-                # 报告函数 - 供用户代码调用
-                def report(message: str):
-                    '''流式输出报告函数，供大模型在Python代码中调用'''
-                    bridge.report_progress(message)
-                """;
-
-        Files.writeString(tempDir.resolve("java_bridge.py"), bridgeCode, StandardCharsets.UTF_8);
-    }
-
-    /**
-     * 创建系统函数模块
+     * 生成主执行代码（新的灵活执行方式）
      */
-    private void createSystemFunctions(Path tempDir) throws IOException {
-        String systemFunctionsCode = """
-                from java_bridge import bridge
-                from typing import List, Dict, Any
-
-                def gen_sql(query, table_name=None):
-                    '''生成SQL查询
-                    Args:
-                        query: 查询文本
-                        table_name: 表名（可选）
-                    '''
-                    if table_name:
-                        return bridge.call_java_function('gen_sql', query, table_name)
-                    else:
-                        return bridge.call_java_function('gen_sql', query)
-                
-                def exec_sql(query):
-                    '''执行SQL查询'''
-                    return bridge.call_java_function('exec_sql', query)
-                
-                def output_result(res: dict[str, object]) -> None:
-                   '''将待展示的结果进行输出,其中key值是数据说明'''
-                   return bridge.call_java_function('output_result', res)
-                """;
-
-        Files.writeString(tempDir.resolve("system_functions.py"), systemFunctionsCode, StandardCharsets.UTF_8);
-    }
-
-    /**
-     * 生成主执行文件（新的灵活执行方式）
-     */
-    private void createMainPythonFile(Path tempDir, String userPythonCode) throws IOException {
+    private String buildMainPythonCode(String userPythonCode) {
         // 分析代码结构，决定使用哪种执行策略
         CodeStructure structure = analyzeCodeStructure(userPythonCode);
 
         if (structure.requiresFlexibleExecution()) {
             // 使用新的灵活执行方式
-            createFlexiblePythonFile(tempDir, userPythonCode, structure);
+            return buildFlexiblePythonCode(userPythonCode, structure);
         } else {
             // 使用原有的函数调用方式（向后兼容）
-            createLegacyPythonFile(tempDir, userPythonCode);
+            return buildLegacyPythonCode(userPythonCode);
         }
     }
 
     /**
-     * 创建灵活的Python执行文件（方案三实现）
+     * 生成灵活的Python执行代码（方案三实现）
      */
-    private void createFlexiblePythonFile(Path tempDir, String userPythonCode, CodeStructure structure) throws IOException {
+    private String buildFlexiblePythonCode(String userPythonCode, CodeStructure structure) {
         // 转义用户代码中的三引号
         String escapedUserCode = escapeUserCode(userPythonCode);
 
@@ -401,7 +377,7 @@ public class PythonDirectExecutorService implements PythonExecutorService {
                 import sys
                 import traceback
                 import types
-                from java_bridge import bridge, report
+                from java_bridge import bridge, report, load_params
                 from system_functions import *
                 
                 def execute_dynamic_code():
@@ -409,8 +385,7 @@ public class PythonDirectExecutorService implements PythonExecutorService {
                         bridge.report_step("开始动态执行Python代码\\n")
                 
                         # 加载参数到全局命名空间
-                        with open('params.json', 'r', encoding='utf-8') as f:
-                            params = json.load(f)
+                        params = load_params()
                 
                         # 创建安全的执行命名空间
                         exec_namespace = create_execution_namespace()
@@ -448,6 +423,7 @@ public class PythonDirectExecutorService implements PythonExecutorService {
                         'report': report,
                         'gen_sql': gen_sql,
                         'exec_sql': exec_sql,
+                        'exec_sql_frame': exec_sql_frame,
                         'output_result': output_result,
                         # 添加常用的Python内置模块
                         'json': json,
@@ -499,13 +475,13 @@ public class PythonDirectExecutorService implements PythonExecutorService {
         String finalCode = String.format(flexibleTemplate, escapedUserCode);
 //        log.info("灵活执行代码：" + finalCode);
 
-        Files.writeString(tempDir.resolve("main.py"), finalCode, StandardCharsets.UTF_8);
+        return finalCode;
     }
 
     /**
-     * 创建传统的Python执行文件（向后兼容）
+     * 生成传统的Python执行代码（向后兼容）
      */
-    private void createLegacyPythonFile(Path tempDir, String userPythonCode) throws IOException {
+    private String buildLegacyPythonCode(String userPythonCode) {
         // 预处理用户代码，确保正确的缩进
         String processedUserCode = preprocessUserCode(userPythonCode);
 
@@ -517,15 +493,14 @@ public class PythonDirectExecutorService implements PythonExecutorService {
                 import json
                 import sys
                 import traceback
-                from java_bridge import bridge, report
+                from java_bridge import bridge, report, load_params
                 from system_functions import *
 
                 def main():
                     try:
                         bridge.report_step("开始执行Python代码\\n")
                         # 加载参数到全局命名空间
-                        with open('params.json', 'r', encoding='utf-8') as f:
-                            params = json.load(f)
+                        params = load_params()
                         globals().update(params)
 
                         # 执行用户代码
@@ -545,7 +520,7 @@ public class PythonDirectExecutorService implements PythonExecutorService {
         String mainCode = mainCode1 + processedUserCode + mainCode2;
         log.info("传统执行代码：" + mainCode);
 
-        Files.writeString(tempDir.resolve("main.py"), mainCode, StandardCharsets.UTF_8);
+        return mainCode;
     }
 
     /**
@@ -734,50 +709,55 @@ public class PythonDirectExecutorService implements PythonExecutorService {
     /**
      * 启动Python进程
      */
-    private Process startPythonProcess(Path tempDir) throws IOException {
-        ProcessBuilder processBuilder = new ProcessBuilder("python", "main.py");
+    private Process startPythonProcess(Path tempDir, PythonBridgeChannel.Listener listener) throws IOException {
+        ProcessBuilder processBuilder = new ProcessBuilder(pythonWorkerPool.getPythonCommand(), "main.py");
         processBuilder.directory(tempDir.toFile());
         processBuilder.redirectErrorStream(true);
 
         // 设置环境变量确保Python使用UTF-8编码
         Map<String, String> env = processBuilder.environment();
         env.put("PYTHONIOENCODING", "utf-8");
+        listener.configure(processBuilder);
 
         return processBuilder.start();
     }
 
     /**
      * 处理Python进程执行
+     * 桥接通道处理Java函数调用，stdout只包含用户代码输出
      */
-    private void handlePythonExecution(Process pythonProcess, String userId) {
-        // 获取Python进程的输入输出流，明确指定UTF-8编码
-        BufferedReader reader = new BufferedReader(
-                new InputStreamReader(pythonProcess.getInputStream(), StandardCharsets.UTF_8));
-        PrintWriter writer = new PrintWriter(
-                new OutputStreamWriter(pythonProcess.getOutputStream(), StandardCharsets.UTF_8), true);
-
-        // 启动输出处理线程
+    private void handlePythonExecution(Process pythonProcess, PythonBridgeChannel.Listener listener,
+                                       ExecutionContext context, int timeoutSeconds) {
+        // 启动输出处理线程，明确指定UTF-8编码
         CompletableFuture<Void> outputHandler = CompletableFuture.runAsync(() -> {
-            try {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(pythonProcess.getInputStream(), StandardCharsets.UTF_8))) {
                 String line;
                 while ((line = reader.readLine()) != null) {
-                    handlePythonOutput(line, writer, userId);
+                    handlePythonOutput(line, context);
                 }
             } catch (IOException e) {
                 log.error("处理Python输出时发生错误", e);
-            } finally {
-                try {
-                    reader.close();
-                    writer.close();
-                } catch (IOException e) {
-                    log.error("关闭Python进程流时发生错误", e);
+            }
+        });
+
+        // 启动桥接通道处理线程，Python退出后通道关闭
+        CompletableFuture<Void> bridgeHandler = CompletableFuture.runAsync(() -> {
+            try (PythonBridgeChannel channel = listener.accept(pythonProcess, bridgeCodec.getProperties().getConnectTimeoutSeconds())) {
+                BridgeFrame frame;
+                while ((frame = channel.readFrame()) != null) {
+                    if (frame.type == BridgeFrame.REQUEST) {
+                        handleJavaFunctionCall(frame, channel, context);
+                    }
                 }
+            } catch (IOException e) {
+                log.warn("Python桥接通道结束: {}", e.getMessage());
             }
         });
 
-        // 等待输出处理完成
+        // 等待处理完成
         try {
-            outputHandler.get(300, TimeUnit.SECONDS);
+            CompletableFuture.allOf(outputHandler, bridgeHandler).get(timeoutSeconds, TimeUnit.SECONDS);
         } catch (Exception e) {
             log.error("Python输出处理超时或失败", e);
         }
@@ -786,24 +766,14 @@ public class PythonDirectExecutorService implements PythonExecutorService {
     /**
      * 处理Python输出
      */
-    private void handlePythonOutput(String line, PrintWriter writer, String userId) {
-        try {
-            if (line.startsWith("JAVA_REQUEST:")) {
-                // 处理Java函数调用请求
-                handleJavaFunctionCall(line.substring(13), writer, userId);
-            } else {
-                // 检测是否为错误输出
-                if (isErrorOutput(line)) {
-                    pythonErrorOutput += line + "\n";
-                    log.error("Python错误输出: {}", line);
-                } else {
-                    // 普通输出
-                    log.info("Python输出: {}", line);
-                }
-            }
-        } catch (Exception e) {
-//            log.error("处理Python输出失败: {}", line, e);
-            pythonErrorOutput += "处理输出异常: " + line + "\n";
+    private void handlePythonOutput(String line, ExecutionContext context) {
+        // 检测是否为错误输出
+        if (isErrorOutput(line)) {
+            context.getErrorOutput().append(line);
+            log.error("Python错误输出: {}", line);
+        } else {
+            // 普通输出
+            log.info("Python输出: {}", line);
         }
     }
 
@@ -827,62 +797,41 @@ public class PythonDirectExecutorService implements PythonExecutorService {
 
     /**
      * 处理Java函数调用
+     * 列表结果（如SQL行数据）按行分块、列式结果按列分块流式返回，其余结果单帧返回
      */
-    private void handleJavaFunctionCall(String requestJson, PrintWriter writer,
-                                       String userId) {
+    @SuppressWarnings("unchecked")
+    private void handleJavaFunctionCall(BridgeFrame frame, PythonBridgeChannel channel, ExecutionContext context) {
         try {
-            Map<String, Object> request = objectMapper.readValue(requestJson, Map.class);
+            Map<String, Object> request = channel.decode(frame, Map.class);
             String functionName = (String) request.get("function");
             List<Object> args = (List<Object>) request.get("args");
-            Integer requestId = (Integer) request.get("id");
 
             // 调用对应的Java函数
-            Object result = callJavaFunction(functionName, args, userId);
+            Object result = callJavaFunction(functionName, args, context);
 
             // 返回结果给Python
-            Map<String, Object> response = Map.of(
-                    "id", requestId,
-                    "result", result != null ? result : "");
-
-            String responseJson = objectMapper.writeValueAsString(response);
-
-            // 发送响应到Python进程
-            writer.println("JAVA_RESPONSE:" + responseJson);
-            writer.flush();
+            if (result instanceof PythonBridgeChannel.Columnar columnar) {
+                channel.sendColumns(frame.requestId, columnar);
+            } else if (result instanceof List<?> rows) {
+                channel.sendRows(frame.requestId, rows);
+            } else {
+                channel.send(BridgeFrame.RESPONSE, frame.requestId, result != null ? result : "");
+            }
 
         } catch (Exception e) {
             log.error("处理Java函数调用失败", e);
             // 发送错误响应
-            Integer requestId = extractRequestIdSafely(requestJson);
-            sendErrorResponse(writer, e.getMessage(), requestId);
-            pythonErrorOutput += "Java函数调用异常: " + e.getMessage() + "\n";
-        }
-    }
-
-    /**
-     * 安全地提取请求ID
-     */
-    private Integer extractRequestIdSafely(String requestJson) {
-        try {
-            Map<String, Object> request = objectMapper.readValue(requestJson, Map.class);
-            return (Integer) request.get("id");
-        } catch (Exception e) {
-            log.warn("提取请求ID失败: {}", e.getMessage());
-            return -1;
+            sendErrorResponse(channel, e.getMessage(), frame.requestId);
+            context.getErrorOutput().append("Java函数调用异常: " + e.getMessage());
         }
     }
 
     /**
      * 发送错误响应到Python
      */
-    private void sendErrorResponse(PrintWriter writer, String errorMessage, Integer requestId) {
+    private void sendErrorResponse(PythonBridgeChannel channel, String errorMessage, int requestId) {
         try {
-            Map<String, Object> errorResponse = Map.of(
-                    "id", requestId != null ? requestId : -1,
-                    "error", errorMessage);
-            String responseJson = objectMapper.writeValueAsString(errorResponse);
-            writer.println("JAVA_RESPONSE:" + responseJson);
-            writer.flush();
+            channel.sendError(requestId, errorMessage);
         } catch (Exception ex) {
             log.error("发送错误响应失败", ex);
         }
@@ -891,24 +840,33 @@ public class PythonDirectExecutorService implements PythonExecutorService {
     /**
      * 调用对应的Java函数
      */
-    private Object callJavaFunction(String functionName, List<Object> args, String userId) {
+    private Object callJavaFunction(String functionName, List<Object> args, ExecutionContext context) {
         switch (functionName) {
             case "report_step":
                 log.info("报告步骤: {}", args.get(0));
+                if (context.getReporter() != null) {
+                    context.getReporter().reportStep(String.valueOf(args.get(0)));
+                }
                 return null;
 
             case "report_progress":
                 log.info("报告进度: {}", args.get(0));
+                if (context.getReporter() != null) {
+                    context.getReporter().reportStep(String.valueOf(args.get(0)));
+                }
                 return null;
 
             case "gen_sql":
-                return genSQL(args, userId);
+                return genSQL(args, context);
 
             case "exec_sql":
-                return execSQL(args, userId);
+                return execSQL(args, context);
+
+            case "exec_sql_frame":
+                return execSQLFrame(args, context);
 
             case "output_result":
-                bufferUtil.saveOutputResult(args.get(0), userId);
+                context.appendOutputResult(args.get(0));
 //                return null;
                 return args.get(0);
 
@@ -918,7 +876,7 @@ public class PythonDirectExecutorService implements PythonExecutorService {
     }
 
     @Nullable
-    private String genSQL(List<Object> args, String userId) {
+    private String genSQL(List<Object> args, ExecutionContext context) {
         try {
             // 处理1个或2个参数的情况
             String query = (String) args.get(0);
@@ -927,25 +885,43 @@ public class PythonDirectExecutorService implements PythonExecutorService {
 //            log.info("🔍 [SQL生成] 开始生成SQL: query={}, tableName={}, userID={}", query, tableName,userId);
             
             // 获取数据库配置ID用于获取表结构
-            Long dbConfigId = getDbConfigIdFromUserId(userId);
+            Long dbConfigId = getDbConfigId(context);
             if (dbConfigId == null) {
                 log.warn("🔍 [SQL生成] 无法获取数据库配置ID");
             }
             
-            // 获取当前会话的上下文信息
-            String userIdentifier = "user_" + userId;
-            String pythonCode = bufferUtil.getPythonCode(userIdentifier);
+            // 获取当前会话的上下文信息，执行上下文中没有时回退到缓存
+            String userId = context.getUserId();
+            String pythonCode = context.getPythonCode() != null
+                    ? context.getPythonCode() : bufferUtil.getPythonCode("user_" + userId);
 //            log.info("🔍 [SQL生成] 开始生成SQL: pythonCode={}, userID={}", pythonCode, userId);
-            String historyStr = getHistoryFromUserId(userId);
-            String question = getCurrentQuestionFromUserId(userId);
+            // 执行上下文缺少的信息一次性从缓存读取
+            Map<String, Object> buffered = context.getHistoryContext() != null && context.getQuestion() != null
+                    && context.getTableSchema() != null
+                    ? Map.of()
+                    : bufferUtil.getFields(userId, Set.of("history_context", "current_question", "current_session_id", "TableSchema_result"));
+            String historyStr = context.getHistoryContext() != null
+                    ? context.getHistoryContext() : getHistoryFromBuffer(buffered);
+            String question = context.getQuestion() != null
+                    ? context.getQuestion() : getCurrentQuestionFromBuffer(buffered);
             
             // 获取表结构信息
-            String tableSchema = bufferUtil.getField(userId, "TableSchema_result");
+            String tableSchema = context.getTableSchema() != null
+                    ? context.getTableSchema() : (String) buffered.get("TableSchema_result");
             log.info("🔍 [SQL生成] 获取的tableSchema={}", tableSchema);
             
+            // 相同提示词输入直接复用已生成的SQL
+            SqlGenerationCacheService.Prompt prompt = new SqlGenerationCacheService.Prompt(
+                dbConfigId, query, tableName, pythonCode, historyStr, question, tableSchema);
+            Optional<String> cachedSQL = sqlGenerationCacheService.find(prompt);
+            if (cachedSQL.isPresent()) {
+                return cachedSQL.get();
+            }
+
             // 调用AI服务生成SQL
-            String generatedSQL = aiSqlQueryService.generateSQL(
-                query, tableName, pythonCode, historyStr, question, tableSchema);
+            String generatedSQL = pipelineStages.llm().execute(() -> aiSqlQueryService.generateSQL(
+                query, tableName, pythonCode, historyStr, question, tableSchema));
+            sqlGenerationCacheService.save(prompt, generatedSQL);
             
 //            log.info("🔍 [SQL生成] AI生成SQL成功: {}", generatedSQL);
             return generatedSQL;
@@ -965,16 +941,16 @@ public class PythonDirectExecutorService implements PythonExecutorService {
     /**
      * 获取历史对话信息
      */
-    private String getHistoryFromUserId(String userId) {
+    private String getHistoryFromBuffer(Map<String, Object> buffered) {
         try {
             // 尝试从缓存获取历史对话上下文
-            String historyContext = bufferUtil.getField(userId, "history_context");
+            String historyContext = (String) buffered.get("history_context");
             if (historyContext != null && !historyContext.trim().isEmpty()) {
                 return historyContext;
             }
             
             // 如果缓存中没有，尝试从当前会话ID获取历史对话
-            String sessionIdStr = bufferUtil.getField(userId, "current_session_id");
+            String sessionIdStr = (String) buffered.get("current_session_id");
             if (sessionIdStr != null) {
                 Long sessionId = Long.parseLong(sessionIdStr);
                 List<ChatMessage> messages = messageMapper.selectList(
@@ -1006,16 +982,16 @@ public class PythonDirectExecutorService implements PythonExecutorService {
     /**
      * 获取当前用户问题
      */
-    private String getCurrentQuestionFromUserId(String userId) {
+    private String getCurrentQuestionFromBuffer(Map<String, Object> buffered) {
         try {
             // 从缓存中获取当前问题
-            String currentQuestion = bufferUtil.getField(userId, "current_question");
+            String currentQuestion = (String) buffered.get("current_question");
             if (currentQuestion != null && !currentQuestion.trim().isEmpty()) {
                 return currentQuestion;
             }
             
             // 如果缓存中没有，尝试从当前会话获取最新的用户消息
-            String sessionIdStr = bufferUtil.getField(userId, "current_session_id");
+            String sessionIdStr = (String) buffered.get("current_session_id");
             if (sessionIdStr != null) {
                 Long sessionId = Long.parseLong(sessionIdStr);
                 List<ChatMessage> messages = messageMapper.selectList(
@@ -1040,38 +1016,72 @@ public class PythonDirectExecutorService implements PythonExecutorService {
     /**
      * 执行SQL查询并返回结果
      */
-    private Object execSQL(List<Object> args, String userId) {
+    private Object execSQL(List<Object> args, ExecutionContext context) {
+        ExternalDbExecutor.QueryResult queryResult = executeQuery((String) args.get(0), context);
+        if (queryResult == null) {
+            log.warn("🔍 [SQL执行] SQL执行返回空结果");
+            return List.of();
+        }
+        return queryResult.getRows();
+    }
+
+    /**
+     * 执行SQL查询并以列式结构返回，供Python直接构建DataFrame
+     */
+    private Object execSQLFrame(List<Object> args, ExecutionContext context) {
+        ExternalDbExecutor.QueryResult queryResult = executeQuery((String) args.get(0), context);
+        if (queryResult == null) {
+            log.warn("🔍 [SQL执行] SQL执行返回空结果");
+            return new PythonBridgeChannel.Columnar(ResultTable.empty(List.of()));
+        }
+        return new PythonBridgeChannel.Columnar(queryResult.table);
+    }
+
+    /**
+     * 执行SQL查询，结果同时记录到执行上下文
+     */
+    private ExternalDbExecutor.QueryResult executeQuery(String sql, ExecutionContext context) {
         try {
-            String sql = (String) args.get(0);
             log.info("🔍 [SQL执行] 执行SQL查询: {}", sql);
 
             // 从参数中获取数据库配置ID
-            Long dbConfigId = getDbConfigIdFromUserId(userId);
+            Long dbConfigId = getDbConfigId(context);
             if (dbConfigId == null) {
                 log.error("🔍 [SQL执行] 无法获取数据库配置ID");
                 throw new RuntimeException("无法获取数据库配置ID");
             }
 
             // 使用SqlExecutionService执行SQL
-            SqlExecutionService.SqlExecutionResult result = sqlExecutionService.executeWithResult(dbConfigId, sql);
+            SqlExecutionService.SqlExecutionResult result = pipelineStages.sql().execute(() ->
+                    sqlExecutionService.executeWithResult(dbConfigId, sql, context.getCancellation()));
             
-            if (result.queryResult != null && result.queryResult.rows != null) {
-//                log.info("🔍 [SQL执行] SQL执行成功，返回{}行数据", result.queryResult.rows.size());
-                // 将查询结果存储到缓冲区，供Python代码获取
-                String resultJson = objectMapper.writeValueAsString(result.queryResult);
-                bufferUtil.setField(userId, "execution_result", resultJson, -1, TimeUnit.DAYS);
+            if (result.queryResult != null && result.queryResult.table != null) {
+//                log.info("🔍 [SQL执行] SQL执行成功，返回{}行数据", result.queryResult.rowCount);
+                // 记录查询结果，没有output_result时作为执行结果
+                context.setLastQueryResult(result.queryResult);
+                if (context.getReporter() != null) {
+                    context.getReporter().reportSql(sql, result.queryResult.table.getRowCount());
+                }
                 
-                return result.queryResult.rows;
-                } else {
-                log.warn("🔍 [SQL执行] SQL执行返回空结果");
-                return List.of();
+                return result.queryResult;
             }
+            return null;
         } catch (Exception e) {
             log.error("🔍 [SQL执行] SQL执行失败: {}", e.getMessage(), e);
             throw new RuntimeException("SQL执行失败: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * 获取数据库配置ID，执行上下文中没有时从缓存获取
+     */
+    private Long getDbConfigId(ExecutionContext context) {
+        if (context.getDbConfigId() != null) {
+            return context.getDbConfigId();
+        }
+        return getDbConfigIdFromUserId(context.getUserId());
+    }
+
     /**
      * 用userId从缓存中获取数据库配置ID
      */
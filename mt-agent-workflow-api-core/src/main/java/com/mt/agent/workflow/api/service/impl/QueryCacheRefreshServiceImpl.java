@@ -0,0 +1,140 @@
+package com.mt.agent.workflow.api.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.mt.agent.workflow.api.config.QueryCacheProperties;
+import com.mt.agent.workflow.api.entity.ApiConfig;
+import com.mt.agent.workflow.api.infra.cache.HotQueryTracker;
+import com.mt.agent.workflow.api.mapper.ApiConfigMapper;
+import com.mt.agent.workflow.api.service.QueryCacheRefreshService;
+import com.mt.agent.workflow.api.service.QueryCacheService;
+import com.mt.agent.workflow.api.service.SqlExecutionService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热点查询缓存预刷新
+ * 单线程定时检查启用了刷新周期的API配置，到期时取其数据库下命中最多的前K个查询，
+ * 剩余有效期不足一个刷新周期的重新执行；执行受SQL安全策略约束，
+ * 多节点同时刷新时由跨节点执行锁合并为一次
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QueryCacheRefreshServiceImpl implements QueryCacheRefreshService {
+
+    private static final int DEFAULT_TOP_K = 10;
+
+    private final ApiConfigMapper apiConfigMapper;
+    private final HotQueryTracker hotQueryTracker;
+    private final QueryCacheService queryCacheService;
+    private final SqlExecutionService sqlExecutionService;
+    private final QueryCacheProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * API配置ID -> 上次刷新时间
+     */
+    private final Map<Long, Long> lastRefreshAtMs = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isScheduledRefreshEnabled()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "query-cache-scheduled-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tick = Math.max(1, properties.getRefreshTickSeconds());
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refreshDue();
+            } catch (Exception e) {
+                log.error("热点查询缓存预刷新失败: {}", e.getMessage(), e);
+            }
+        }, tick, tick, TimeUnit.SECONDS);
+        log.info("热点查询缓存预刷新已启动，检查间隔{}秒", tick);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public int refreshDue() {
+        List<ApiConfig> configs = apiConfigMapper.selectList(
+            new LambdaQueryWrapper<ApiConfig>()
+                .eq(ApiConfig::getStatus, 1)
+                .gt(ApiConfig::getCacheRefreshSeconds, 0)
+        );
+        long now = System.currentTimeMillis();
+        // 多个API指向同一数据库时，同一轮内每个查询只刷新一次
+        Set<String> refreshed = new HashSet<>();
+        int count = 0;
+        for (ApiConfig config : configs) {
+            long intervalMs = config.getCacheRefreshSeconds() * 1000L;
+            Long last = lastRefreshAtMs.get(config.getId());
+            if (last != null && now - last < intervalMs) {
+                continue;
+            }
+            lastRefreshAtMs.put(config.getId(), now);
+            int topK = config.getCacheRefreshTopK() == null ? DEFAULT_TOP_K : config.getCacheRefreshTopK();
+            for (HotQueryTracker.HotQuery query : hotQueryTracker.top(config.getDbConfigId(), topK)) {
+                String key = query.getDbConfigId() + ":" + query.getSchemaVersionId() + ":" + query.getSqlHash();
+                if (!refreshed.add(key) || !expiresWithin(query, intervalMs)) {
+                    continue;
+                }
+                if (refresh(query)) {
+                    count++;
+                }
+            }
+        }
+        if (count > 0) {
+            log.info("热点查询缓存预刷新完成，刷新{}条", count);
+        }
+        return count;
+    }
+
+    /**
+     * 缓存不存在、已过期或在下个刷新周期前过期
+     */
+    private boolean expiresWithin(HotQueryTracker.HotQuery query, long intervalMs) {
+        // 只读过期时间，探测不计入命中率
+        OptionalLong expiredAtMs = queryCacheService.findExpiry(
+                0L, query.getDbConfigId(), query.getSchemaVersionId(), query.getSqlHash()); // 使用默认租户ID
+        return expiredAtMs.isEmpty() || expiredAtMs.getAsLong() - System.currentTimeMillis() < intervalMs;
+    }
+
+    private boolean refresh(HotQueryTracker.HotQuery query) {
+        try {
+            boolean done = sqlExecutionService.refreshCachedResult(query.getDbConfigId(), query.getSql());
+            meterRegistry.counter("query.cache.refresh", "trigger", "scheduled", "result", done ? "success" : "skipped").increment();
+            return done;
+        } catch (Exception e) {
+            meterRegistry.counter("query.cache.refresh", "trigger", "scheduled", "result", "failure").increment();
+            log.warn("热点查询缓存预刷新失败, dbConfigId: {}, sqlHash: {}, error: {}",
+                    query.getDbConfigId(), query.getSqlHash(), e.getMessage());
+            return false;
+        }
+    }
+}
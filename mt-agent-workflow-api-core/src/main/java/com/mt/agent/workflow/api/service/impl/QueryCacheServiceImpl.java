@@ -1,85 +1,412 @@
 package com.mt.agent.workflow.api.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mt.agent.workflow.api.config.QueryCacheProperties;
 import com.mt.agent.workflow.api.entity.QueryResultCache;
+import com.mt.agent.workflow.api.infra.SqlCanonicalizer;
 import com.mt.agent.workflow.api.mapper.QueryResultCacheMapper;
 import com.mt.agent.workflow.api.service.QueryCacheService;
 import com.mt.agent.workflow.api.util.MD5Util;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
 import org.springframework.stereotype.Service;
 
+import java.nio.ByteBuffer;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 查询结果多级缓存
+ * 读：L1进程内缓存 → L2 Redis → L3 query_result_cache表，命中下层时回填上层；
+ * 各层保存ResultPayloadCodec压缩后的二进制负载，容量与上限均按压缩后字节数计算；
+ * 写：同步写L1/L2，L3异步落库，同一键的多次写入在落库前合并为最后一次；
+ * 过期条目在staleWindowSeconds内仍保留，供调用方先返回旧值再异步刷新
+ */
 @Slf4j
 @Service
 public class QueryCacheServiceImpl implements QueryCacheService {
 
-    @Autowired
-    private QueryResultCacheMapper cacheMapper;
+    /**
+     * Redis值格式版本，格式变化时换用新键，旧值自然过期
+     */
+    private static final String L2_FORMAT_VERSION = "v2:";
+
+    private final QueryResultCacheMapper cacheMapper;
+    private final RedissonClient redissonClient;
+    private final QueryCacheProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final Cache<String, CachedPreview> l1;
+    private final ThreadPoolExecutor writeBehindExecutor;
+    private final Map<String, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    private final Counter writeBehindDropped;
+    private final Counter oversizeSkipped;
+    private final DistributionSummary entryRawBytes;
+    private final DistributionSummary entryStoredBytes;
 
+    public QueryCacheServiceImpl(QueryResultCacheMapper cacheMapper, RedissonClient redissonClient,
+                                 QueryCacheProperties properties, MeterRegistry meterRegistry) {
+        this.cacheMapper = cacheMapper;
+        this.redissonClient = redissonClient;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.l1 = CacheBuilder.newBuilder()
+                .maximumWeight(Math.max(1, properties.getL1MaxSizeMb()) * 1024L * 1024L)
+                .weigher((String key, CachedPreview value) -> value.payload().length + 64)
+                .expireAfterWrite(Math.max(1, properties.getL1TtlSeconds()), TimeUnit.SECONDS)
+                .build();
+        this.writeBehindExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, properties.getWriteBehindQueueCapacity())),
+                r -> {
+                    Thread thread = new Thread(r, "query-cache-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.writeBehindDropped = Counter.builder("query.cache.write_behind.dropped")
+                .description("查询缓存异步落库丢弃次数")
+                .register(meterRegistry);
+        this.oversizeSkipped = Counter.builder("query.cache.oversize.skipped")
+                .description("查询结果超过缓存大小上限未缓存次数")
+                .register(meterRegistry);
+        this.entryRawBytes = DistributionSummary.builder("query.cache.entry.bytes")
+                .tag("form", "raw")
+                .baseUnit("bytes")
+                .description("查询缓存条目压缩前大小")
+                .register(meterRegistry);
+        this.entryStoredBytes = DistributionSummary.builder("query.cache.entry.bytes")
+                .tag("form", "stored")
+                .baseUnit("bytes")
+                .description("查询缓存条目压缩后大小")
+                .register(meterRegistry);
+        Gauge.builder("query.cache.l1.size", l1, Cache::size)
+                .description("查询缓存L1条目数")
+                .register(meterRegistry);
+        Gauge.builder("query.cache.write_behind.pending", pendingWrites, Map::size)
+                .description("查询缓存待落库条目数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Optional<byte[]> findPreview(Long tenantId, Long dbConfigId, Long schemaVersionId, String sqlHash) {
+        return lookup(tenantId, dbConfigId, schemaVersionId, sqlHash, false).map(CachedPreview::payload);
+    }
+
+    @Override
+    public Optional<CachedPreview> findPreviewAllowStale(Long tenantId, Long dbConfigId, Long schemaVersionId, String sqlHash) {
+        return lookup(tenantId, dbConfigId, schemaVersionId, sqlHash, true);
+    }
+
+    /**
+     * 按与lookup相同的层级顺序读取过期时间，不读取负载、不回填上层，也不计入命中率统计；
+     * L2由剩余TTL反推过期时间，L3只查询expired_at_ms列
+     */
     @Override
-    public Optional<String> findPreview(Long tenantId, Long dbConfigId, Long schemaVersionId, String sqlHash) {
+    public OptionalLong findExpiry(Long tenantId, Long dbConfigId, Long schemaVersionId, String sqlHash) {
+        String key = cacheKey(tenantId, dbConfigId, schemaVersionId, sqlHash);
+        long now = System.currentTimeMillis();
+        long latest = Long.MIN_VALUE;
+
+        CachedPreview local = l1.getIfPresent(key);
+        if (local != null) {
+            if (local.expiredAtMs() > now) {
+                return OptionalLong.of(local.expiredAtMs());
+            }
+            latest = local.expiredAtMs();
+        }
+
+        PendingWrite pending = pendingWrites.get(key);
+        if (pending != null && pending.expiredAtMs() > now) {
+            return OptionalLong.of(pending.expiredAtMs());
+        }
+
+        if (properties.isL2Enabled()) {
+            try {
+                long ttlMs = l2Bucket(key).remainTimeToLive();
+                if (ttlMs > 0) {
+                    long expiredAtMs = now + ttlMs - staleWindowMs();
+                    if (expiredAtMs > now) {
+                        return OptionalLong.of(expiredAtMs);
+                    }
+                    latest = Math.max(latest, expiredAtMs);
+                }
+            } catch (Exception e) {
+                log.warn("读取Redis查询缓存过期时间失败，降级查库: {}", e.getMessage());
+            }
+        }
+
         try {
             QueryResultCache cache = cacheMapper.selectOne(
                 new LambdaQueryWrapper<QueryResultCache>()
+                    .select(QueryResultCache::getExpiredAtMs)
                     .eq(QueryResultCache::getTenantId, tenantId)
                     .eq(QueryResultCache::getDbConfigId, dbConfigId)
                     .eq(QueryResultCache::getSchemaVersionId, schemaVersionId)
                     .eq(QueryResultCache::getSqlHash, sqlHash)
-                    .gt(QueryResultCache::getExpiredAtMs, System.currentTimeMillis()) // 未过期
+                    .isNotNull(QueryResultCache::getPreviewBlob)
                     .orderByDesc(QueryResultCache::getCreatedAtMs)
                     .last("limit 1")
             );
+            if (cache != null && cache.getExpiredAtMs() != null) {
+                latest = Math.max(latest, cache.getExpiredAtMs());
+            }
+        } catch (Exception e) {
+            log.error("查询缓存过期时间失败: {}", e.getMessage(), e);
+        }
 
-            if (cache != null && cache.getPreviewJson() != null) {
-                log.debug("找到缓存的查询预览，sqlHash: {}", sqlHash);
-                return Optional.of(cache.getPreviewJson());
+        return latest == Long.MIN_VALUE ? OptionalLong.empty() : OptionalLong.of(latest);
+    }
+
+    /**
+     * 逐级查找，任一层命中未过期条目即返回；允许过期时记下容忍窗口内最早遇到的旧条目，
+     * 各层都没有新值时返回它
+     */
+    private Optional<CachedPreview> lookup(Long tenantId, Long dbConfigId, Long schemaVersionId, String sqlHash,
+                                           boolean allowStale) {
+        String key = cacheKey(tenantId, dbConfigId, schemaVersionId, sqlHash);
+        long now = System.currentTimeMillis();
+        long staleFloor = allowStale ? now - staleWindowMs() : now;
+        CachedPreview stale = null;
+
+        // L1
+        CachedPreview local = l1.getIfPresent(key);
+        if (local != null && local.expiredAtMs() > now) {
+            record("l1", "hit");
+            return Optional.of(local);
+        }
+        if (local != null && local.expiredAtMs() > staleFloor) {
+            stale = local;
+        }
+        record("l1", "miss");
+
+        // 尚未落库的写入也视为命中，避免刚写入的结果在L2不可用时查不到
+        PendingWrite pending = pendingWrites.get(key);
+        if (pending != null && pending.expiredAtMs() > now) {
+            return Optional.of(new CachedPreview(pending.payload(), pending.expiredAtMs()));
+        }
+
+        // L2
+        if (properties.isL2Enabled()) {
+            try {
+                CachedPreview shared = decodeL2(l2Bucket(key).get());
+                if (shared != null && shared.expiredAtMs() > now) {
+                    record("l2", "hit");
+                    putL1(key, shared.payload(), shared.expiredAtMs());
+                    return Optional.of(shared);
+                }
+                if (stale == null && shared != null && shared.expiredAtMs() > staleFloor) {
+                    stale = shared;
+                }
+                record("l2", "miss");
+            } catch (Exception e) {
+                log.warn("读取Redis查询缓存失败，降级查库: {}", e.getMessage());
+                record("l2", "miss");
             }
+        }
 
-            return Optional.empty();
+        // L3
+        try {
+            QueryResultCache cache = cacheMapper.selectOne(
+                new LambdaQueryWrapper<QueryResultCache>()
+                    .eq(QueryResultCache::getTenantId, tenantId)
+                    .eq(QueryResultCache::getDbConfigId, dbConfigId)
+                    .eq(QueryResultCache::getSchemaVersionId, schemaVersionId)
+                    .eq(QueryResultCache::getSqlHash, sqlHash)
+                    .gt(QueryResultCache::getExpiredAtMs, staleFloor) // 未过期，或仍在容忍窗口内
+                    .isNotNull(QueryResultCache::getPreviewBlob) // 旧版本写入的JSON预览不再读取
+                    .orderByDesc(QueryResultCache::getCreatedAtMs)
+                    .last("limit 1")
+            );
+
+            if (cache != null && cache.getPreviewBlob() != null) {
+                CachedPreview stored = new CachedPreview(cache.getPreviewBlob(), cache.getExpiredAtMs());
+                if (stored.expiredAtMs() > now) {
+                    record("l3", "hit");
+                    log.debug("找到缓存的查询预览，sqlHash: {}", sqlHash);
+                    putL1(key, stored.payload(), stored.expiredAtMs());
+                    putL2(key, stored.payload(), stored.expiredAtMs());
+                    return Optional.of(stored);
+                }
+                if (stale == null) {
+                    stale = stored;
+                }
+            }
+
+            record("l3", "miss");
         } catch (Exception e) {
             log.error("查询缓存预览失败: {}", e.getMessage(), e);
-            return Optional.empty();
         }
+
+        if (stale != null) {
+            record("any", "stale");
+            return Optional.of(stale);
+        }
+        return Optional.empty();
     }
 
     @Override
-    public void savePreview(Long tenantId, Long dbConfigId, Long schemaVersionId, String sqlHash, 
-                           String resultPreview, long ttlMs) {
+    public void savePreview(Long tenantId, Long dbConfigId, Long schemaVersionId, String sqlHash,
+                           byte[] payload, long rawSizeBytes, long ttlMs) {
+        if (payload == null || ttlMs <= 0) {
+            return;
+        }
+        entryRawBytes.record(rawSizeBytes);
+        entryStoredBytes.record(payload.length);
+        if (payload.length > properties.getMaxStoredEntryKb() * 1024L) {
+            oversizeSkipped.increment();
+            log.info("查询结果压缩后{}字节，超过缓存上限，不缓存，sqlHash: {}", payload.length, sqlHash);
+            return;
+        }
+        String key = cacheKey(tenantId, dbConfigId, schemaVersionId, sqlHash);
+        long expiredAtMs = System.currentTimeMillis() + ttlMs;
+
+        putL1(key, payload, expiredAtMs);
+        putL2(key, payload, expiredAtMs);
+
+        PendingWrite write = new PendingWrite(tenantId, dbConfigId, schemaVersionId, sqlHash, payload, rawSizeBytes, expiredAtMs);
+        if (pendingWrites.put(key, write) != null) {
+            // 已有待落库任务，落库时会取到最新值
+            return;
+        }
+        try {
+            writeBehindExecutor.execute(() -> flush(key));
+        } catch (RejectedExecutionException e) {
+            pendingWrites.remove(key);
+            writeBehindDropped.increment();
+            log.warn("查询缓存落库队列已满，跳过落库，sqlHash: {}", sqlHash);
+        }
+    }
+
+    /**
+     * 计算SQL的hash值
+     * 基于规范化后的SQL，仅写法不同（别名、条件顺序、冗余括号等）的语句得到相同的hash
+     */
+    @Override
+    public String calculateSqlHash(String sql) {
+        return MD5Util.encrypt(SqlCanonicalizer.canonicalize(sql));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writeBehindExecutor.shutdown();
+        try {
+            if (!writeBehindExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("查询缓存仍有{}条未落库，放弃写入", pendingWrites.size());
+                writeBehindExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writeBehindExecutor.shutdownNow();
+        }
+    }
+
+    private void flush(String key) {
+        PendingWrite write = pendingWrites.remove(key);
+        if (write == null) {
+            return;
+        }
         try {
             // 删除旧的缓存记录
             cacheMapper.delete(
                 new LambdaQueryWrapper<QueryResultCache>()
-                    .eq(QueryResultCache::getTenantId, tenantId)
-                    .eq(QueryResultCache::getDbConfigId, dbConfigId)
-                    .eq(QueryResultCache::getSqlHash, sqlHash)
+                    .eq(QueryResultCache::getTenantId, write.tenantId())
+                    .eq(QueryResultCache::getDbConfigId, write.dbConfigId())
+                    .eq(QueryResultCache::getSqlHash, write.sqlHash())
             );
 
             // 创建新的缓存记录
             QueryResultCache cache = new QueryResultCache();
-            cache.setTenantId(tenantId);
-            cache.setDbConfigId(dbConfigId);
-            cache.setSchemaVersionId(schemaVersionId);
-            cache.setSqlHash(sqlHash);
-            cache.setPreviewJson(resultPreview);
+            cache.setTenantId(write.tenantId());
+            cache.setDbConfigId(write.dbConfigId());
+            cache.setSchemaVersionId(write.schemaVersionId());
+            cache.setSqlHash(write.sqlHash());
+            cache.setPreviewBlob(write.payload());
+            cache.setRawSizeBytes(write.rawSizeBytes());
+            cache.setStoredSizeBytes((long) write.payload().length);
             cache.setCreatedAtMs(System.currentTimeMillis());
-            cache.setExpiredAtMs(System.currentTimeMillis() + ttlMs);
+            cache.setExpiredAtMs(write.expiredAtMs());
 
             cacheMapper.insert(cache);
-            log.debug("保存查询预览缓存成功，sqlHash: {}", sqlHash);
+            log.debug("保存查询预览缓存成功，sqlHash: {}", write.sqlHash());
 
         } catch (Exception e) {
             log.error("保存查询预览缓存失败: {}", e.getMessage(), e);
         }
     }
 
+    private void putL1(String key, byte[] payload, long expiredAtMs) {
+        if (!fitsInMemory(payload)) {
+            return;
+        }
+        l1.put(key, new CachedPreview(payload, expiredAtMs));
+    }
+
     /**
-     * 计算SQL的hash值
+     * Redis中保留到过期后容忍窗口结束，值前8字节为过期时间，用于区分新旧
      */
-    public String calculateSqlHash(String sql) {
-        // 标准化SQL（移除多余空格、转小写）
-        String normalizedSql = sql.trim().toLowerCase().replaceAll("\\s+", " ");
-        return MD5Util.encrypt(normalizedSql);
+    private void putL2(String key, byte[] payload, long expiredAtMs) {
+        long ttlMs = expiredAtMs + staleWindowMs() - System.currentTimeMillis();
+        if (!properties.isL2Enabled() || ttlMs <= 0 || !fitsInMemory(payload)) {
+            return;
+        }
+        try {
+            byte[] value = ByteBuffer.allocate(Long.BYTES + payload.length)
+                    .putLong(expiredAtMs)
+                    .put(payload)
+                    .array();
+            l2Bucket(key).set(value, ttlMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.warn("写入Redis查询缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private static CachedPreview decodeL2(byte[] value) {
+        if (value == null || value.length <= Long.BYTES) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        long expiredAtMs = buffer.getLong();
+        byte[] payload = new byte[buffer.remaining()];
+        buffer.get(payload);
+        return new CachedPreview(payload, expiredAtMs);
+    }
+
+    private long staleWindowMs() {
+        return Math.max(0, properties.getStaleWindowSeconds()) * 1000L;
+    }
+
+    private boolean fitsInMemory(byte[] payload) {
+        return payload.length <= properties.getMaxEntryKb() * 1024L;
+    }
+
+    private RBucket<byte[]> l2Bucket(String key) {
+        return redissonClient.getBucket(properties.getL2KeyPrefix() + L2_FORMAT_VERSION + key, ByteArrayCodec.INSTANCE);
+    }
+
+    private void record(String tier, String result) {
+        meterRegistry.counter("query.cache.lookup", "tier", tier, "result", result).increment();
+    }
+
+    private static String cacheKey(Long tenantId, Long dbConfigId, Long schemaVersionId, String sqlHash) {
+        return tenantId + ":" + dbConfigId + ":" + schemaVersionId + ":" + sqlHash;
+    }
+
+    private record PendingWrite(Long tenantId, Long dbConfigId, Long schemaVersionId, String sqlHash,
+                                byte[] payload, long rawSizeBytes, long expiredAtMs) {
     }
 }
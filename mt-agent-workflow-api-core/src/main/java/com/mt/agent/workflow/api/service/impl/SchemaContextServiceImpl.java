@@ -5,10 +5,10 @@ import com.mt.agent.workflow.api.entity.DbConfig;
 import com.mt.agent.workflow.api.entity.TableInfo;
 import com.mt.agent.workflow.api.infra.DbConnectionPoolManager;
 import com.mt.agent.workflow.api.infra.ExternalDbExecutor;
+import com.mt.agent.workflow.api.infra.pipeline.DatasourceBulkheads;
 import com.mt.agent.workflow.api.mapper.DbConfigMapper;
 import com.mt.agent.workflow.api.mapper.TableInfoMapper;
 import com.mt.agent.workflow.api.service.SchemaContextService;
-import com.mt.agent.workflow.api.util.CryptoKeyProvider;
 import com.mt.agent.workflow.api.util.DdlParser;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,6 +27,10 @@ public class SchemaContextServiceImpl implements SchemaContextService {
     private DbConfigMapper dbConfigMapper;
     @Autowired
     private TableInfoMapper tableInfoMapper;
+    @Autowired
+    private DbConnectionPoolManager dbConnectionPoolManager;
+    @Autowired
+    private DatasourceBulkheads datasourceBulkheads;
 
     @Override
     public String buildPromptContext(Long dbConfigId) {
@@ -117,21 +121,22 @@ public class SchemaContextServiceImpl implements SchemaContextService {
             DbConfig config = dbConfigMapper.selectById(dbConfigId);
             if (config == null) return "{}";
 
-            DataSource ds = DbConnectionPoolManager.getOrCreate(dbConfigId, config, CryptoKeyProvider.getMasterKey());
+            DataSource ds = dbConnectionPoolManager.getOrCreate(config);
             
             String sql = "SELECT * FROM " + tableName + " LIMIT " + maxRows;
             ExternalDbExecutor.ExecOptions options = new ExternalDbExecutor.ExecOptions();
             options.maxRows = maxRows;
             options.queryTimeoutSeconds = 10;
 
-            ExternalDbExecutor.QueryResult result = ExternalDbExecutor.query(ds, sql, options);
+            ExternalDbExecutor.QueryResult result = datasourceBulkheads.execute(config, () -> ExternalDbExecutor.query(ds, sql, options));
             
             // 简单转换为JSON字符串
             StringBuilder json = new StringBuilder("{\"rows\":[");
-            for (int i = 0; i < result.rows.size(); i++) {
+            List<Map<String, Object>> rows = result.getRows();
+            for (int i = 0; i < rows.size(); i++) {
                 if (i > 0) json.append(",");
                 json.append("{");
-                Map<String, Object> row = result.rows.get(i);
+                Map<String, Object> row = rows.get(i);
                 int colIndex = 0;
                 for (Map.Entry<String, Object> entry : row.entrySet()) {
                     if (colIndex > 0) json.append(",");
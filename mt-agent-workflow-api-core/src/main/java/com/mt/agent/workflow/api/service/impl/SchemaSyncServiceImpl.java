@@ -10,8 +10,9 @@ import com.mt.agent.workflow.api.infra.MySqlIntrospector;
 import com.mt.agent.workflow.api.mapper.DbConfigMapper;
 import com.mt.agent.workflow.api.mapper.SchemaVersionMapper;
 import com.mt.agent.workflow.api.mapper.TableInfoMapper;
+import com.mt.agent.workflow.api.service.DifyPlanCacheService;
 import com.mt.agent.workflow.api.service.SchemaSyncService;
-import com.mt.agent.workflow.api.util.CryptoKeyProvider;
+import com.mt.agent.workflow.api.service.SqlGenerationCacheService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -30,6 +31,12 @@ public class SchemaSyncServiceImpl implements SchemaSyncService {
 	private DbConfigMapper dbConfigMapper;
 	@Autowired
 	private TableInfoMapper tableInfoMapper;
+	@Autowired
+	private SqlGenerationCacheService sqlGenerationCacheService;
+	@Autowired
+	private DifyPlanCacheService difyPlanCacheService;
+	@Autowired
+	private DbConnectionPoolManager dbConnectionPoolManager;
 
 	private final ExternalDbIntrospector introspector = new MySqlIntrospector();
 
@@ -65,7 +72,7 @@ public class SchemaSyncServiceImpl implements SchemaSyncService {
 
 		try {
 			// 连接外部数据库
-			DataSource ds = DbConnectionPoolManager.getOrCreate(dbConfigId, cfg, CryptoKeyProvider.getMasterKey());
+			DataSource ds = dbConnectionPoolManager.getOrCreate(cfg);
 			List<ExternalDbIntrospector.TableMeta> tables = introspector.listTables(ds, cfg.getDatabaseName());
 			
 			log.info("获取到 {} 个表，开始同步", tables.size());
@@ -117,6 +124,10 @@ public class SchemaSyncServiceImpl implements SchemaSyncService {
 			v.setStatus(1); // 成功
 			v.setFinishedAtMs(System.currentTimeMillis());
 			schemaVersionMapper.updateById(v);
+
+			// 表结构已变化，之前生成的SQL与分析计划不再可靠
+			sqlGenerationCacheService.invalidate(dbConfigId);
+			difyPlanCacheService.invalidate(dbConfigId);
 			
 			log.info("数据库结构同步成功完成，dbConfigId: {}, 版本: {}", dbConfigId, v.getVersionNo());
 			return v;
@@ -0,0 +1,269 @@
+package com.mt.agent.workflow.api.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mt.agent.workflow.api.config.SessionHistoryCacheProperties;
+import com.mt.agent.workflow.api.entity.ChatMessage;
+import com.mt.agent.workflow.api.mapper.ChatMessageMapper;
+import com.mt.agent.workflow.api.service.ChatMessageStateService;
+import com.mt.agent.workflow.api.service.SessionHistoryCacheService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.BatchResult;
+import org.redisson.api.RAtomicLongAsync;
+import org.redisson.api.RBatch;
+import org.redisson.api.RListAsync;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话历史缓存
+ * Redis列表保存会话最近maxMessages条成功消息：写消息时仅在列表已存在时追加并截断，
+ * 列表不存在（首次读取或已过期）时读取方从库中加载一次回填。
+ * 列表首元素为占位标记，保证没有消息的会话也能缓存，超过容量后随截断移除。
+ * 每次追加递增会话的版本号，回填在查库前读取版本号、写入时用脚本比较，
+ * 期间有追加时放弃回填，避免用查库时的旧历史覆盖刚追加的消息
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SessionHistoryCacheServiceImpl implements SessionHistoryCacheService {
+
+    private static final String PLACEHOLDER = "-";
+
+    /**
+     * 版本号未变化时重写列表：KEYS[1]列表，KEYS[2]版本号；ARGV[1]查库前的版本号，ARGV[2]存活秒数，其余为列表元素
+     */
+    private static final String FILL_SCRIPT =
+            "if (redis.call('get', KEYS[2]) or '0') ~= ARGV[1] then return 0 end " +
+            "redis.call('del', KEYS[1]) " +
+            "redis.call('rpush', KEYS[1], unpack(ARGV, 3)) " +
+            "redis.call('expire', KEYS[1], ARGV[2]) " +
+            "return 1";
+
+    private final ChatMessageMapper messageMapper;
+    private final RedissonClient redissonClient;
+    private final SessionHistoryCacheProperties properties;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    public void append(ChatMessage message) {
+        if (!properties.isEnabled() || message == null || message.getSessionId() == null
+                || !Integer.valueOf(ChatMessageStateService.STATUS_SUCCESS).equals(message.getStatus())) {
+            return;
+        }
+        HistoryEntry entry = toEntry(message);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    push(message.getSessionId(), entry);
+                }
+            });
+        } else {
+            push(message.getSessionId(), entry);
+        }
+    }
+
+    @Override
+    public List<HistoryEntry> recent(Long sessionId, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        if (!properties.isEnabled() || limit > properties.getMaxMessages()) {
+            return load(sessionId, limit);
+        }
+        List<HistoryEntry> entries = readOrLoad(sessionId);
+        return new ArrayList<>(entries.subList(Math.max(0, entries.size() - limit), entries.size()));
+    }
+
+    @Override
+    public String lastAssistantReply(Long sessionId) {
+        if (properties.isEnabled()) {
+            List<HistoryEntry> entries = readOrLoad(sessionId);
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                if ("assistant".equals(entries.get(i).role())) {
+                    return entries.get(i).content();
+                }
+            }
+            if (entries.size() < properties.getMaxMessages()) {
+                // 缓存中是会话的全部历史
+                return null;
+            }
+        }
+        // 最近的消息里没有助手回复，回库查询
+        List<ChatMessage> messages = messageMapper.selectList(
+            new LambdaQueryWrapper<ChatMessage>()
+                .eq(ChatMessage::getSessionId, sessionId)
+                .eq(ChatMessage::getRole, "assistant")
+                .eq(ChatMessage::getStatus, ChatMessageStateService.STATUS_SUCCESS)
+                .orderByDesc(ChatMessage::getCreatedAtMs)
+                .last("LIMIT 1")
+        );
+        return messages.isEmpty() ? null : toEntry(messages.get(0)).content();
+    }
+
+    @Override
+    public void evict(Long sessionId) {
+        try {
+            redissonClient.getList(key(sessionId), StringCodec.INSTANCE).delete();
+        } catch (Exception e) {
+            log.warn("清除会话历史缓存失败, sessionId: {}, error: {}", sessionId, e.getMessage());
+        }
+    }
+
+    private List<HistoryEntry> readOrLoad(Long sessionId) {
+        List<String> cached;
+        try {
+            cached = redissonClient.<String>getList(key(sessionId), StringCodec.INSTANCE).readAll();
+        } catch (Exception e) {
+            log.warn("读取会话历史缓存失败，降级查库, sessionId: {}, error: {}", sessionId, e.getMessage());
+            return load(sessionId, properties.getMaxMessages());
+        }
+        if (!cached.isEmpty()) {
+            meterRegistry.counter("session.history.cache.lookup", "result", "hit").increment();
+            List<HistoryEntry> entries = new ArrayList<>(cached.size());
+            for (String value : cached) {
+                if (!PLACEHOLDER.equals(value)) {
+                    entries.add(parse(value));
+                }
+            }
+            // 并发问答时追加顺序可能与创建顺序不同；回填已包含的消息可能再被追加一次
+            entries.sort(Comparator.comparing(HistoryEntry::createdAtMs).thenComparing(HistoryEntry::id));
+            List<HistoryEntry> distinct = new ArrayList<>(entries.size());
+            for (HistoryEntry entry : entries) {
+                HistoryEntry previous = distinct.isEmpty() ? null : distinct.get(distinct.size() - 1);
+                if (previous == null || entry.id() == null || !entry.id().equals(previous.id())) {
+                    distinct.add(entry);
+                }
+            }
+            return distinct;
+        }
+
+        meterRegistry.counter("session.history.cache.lookup", "result", "miss").increment();
+        Long version = readVersion(sessionId);
+        List<HistoryEntry> entries = load(sessionId, properties.getMaxMessages());
+        if (version != null) {
+            fill(sessionId, entries, version);
+        }
+        return entries;
+    }
+
+    private Long readVersion(Long sessionId) {
+        try {
+            return redissonClient.getAtomicLong(versionKey(sessionId)).get();
+        } catch (Exception e) {
+            log.warn("读取会话历史版本失败，跳过回填, sessionId: {}, error: {}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 从库中加载最近的成功消息，按时间正序
+     */
+    private List<HistoryEntry> load(Long sessionId, int limit) {
+        List<ChatMessage> messages = messageMapper.selectList(
+            new LambdaQueryWrapper<ChatMessage>()
+                .eq(ChatMessage::getSessionId, sessionId)
+                .in(ChatMessage::getRole, "user", "assistant")
+                .eq(ChatMessage::getStatus, ChatMessageStateService.STATUS_SUCCESS) // 只获取成功的消息
+                .orderByDesc(ChatMessage::getCreatedAtMs)
+                .orderByDesc(ChatMessage::getId)
+                .last("LIMIT " + limit)
+        );
+        List<HistoryEntry> entries = new ArrayList<>(messages.size());
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            entries.add(toEntry(messages.get(i)));
+        }
+        return entries;
+    }
+
+    private void fill(Long sessionId, List<HistoryEntry> entries, long version) {
+        try {
+            List<Object> args = new ArrayList<>(entries.size() + 3);
+            args.add(String.valueOf(version));
+            args.add(String.valueOf(TimeUnit.MINUTES.toSeconds(properties.getTtlMinutes())));
+            args.add(PLACEHOLDER);
+            for (HistoryEntry entry : entries) {
+                args.add(objectMapper.writeValueAsString(entry));
+            }
+            Long filled = redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, FILL_SCRIPT,
+                    RScript.ReturnType.INTEGER, List.of(key(sessionId), versionKey(sessionId)), args.toArray());
+            if (filled == null || filled == 0) {
+                log.debug("回填期间会话有新消息，放弃回填, sessionId: {}", sessionId);
+            }
+        } catch (Exception e) {
+            log.warn("回填会话历史缓存失败, sessionId: {}, error: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * 列表存在时追加并截断到容量，不存在时由下次读取回填
+     */
+    private void push(Long sessionId, HistoryEntry entry) {
+        try {
+            RBatch batch = redissonClient.createBatch();
+            // 先递增版本号，使进行中的回填放弃写入
+            RAtomicLongAsync version = batch.getAtomicLong(versionKey(sessionId));
+            version.incrementAndGetAsync();
+            version.expireAsync(properties.getTtlMinutes(), TimeUnit.MINUTES);
+            RListAsync<String> list = batch.getList(key(sessionId), StringCodec.INSTANCE);
+            batch.<String>getDeque(key(sessionId), StringCodec.INSTANCE)
+                    .addLastIfExistsAsync(objectMapper.writeValueAsString(entry));
+            list.trimAsync(-properties.getMaxMessages() - 1, -1);
+            list.expireAsync(properties.getTtlMinutes(), TimeUnit.MINUTES);
+            BatchResult<?> result = batch.execute();
+            log.debug("追加会话历史缓存, sessionId: {}, 结果: {}", sessionId, result.getResponses());
+        } catch (Exception e) {
+            // 追加失败时清除，避免读到缺少该消息的历史
+            log.warn("追加会话历史缓存失败, sessionId: {}, error: {}", sessionId, e.getMessage());
+            evict(sessionId);
+        }
+    }
+
+    private HistoryEntry parse(String value) {
+        try {
+            return objectMapper.readValue(value, HistoryEntry.class);
+        } catch (Exception e) {
+            throw new IllegalStateException("解析会话历史缓存失败", e);
+        }
+    }
+
+    private static HistoryEntry toEntry(ChatMessage message) {
+        String content = message.getContent();
+        if ("assistant".equals(message.getRole())) {
+            // 助手消息：优先使用执行结果，其次使用思考内容，最后使用原始内容
+            content = message.getExecutionResult();
+            if (content == null || content.trim().isEmpty()) {
+                content = message.getThinkingContent();
+            }
+            if (content == null || content.trim().isEmpty()) {
+                content = message.getContent();
+            }
+        }
+        return new HistoryEntry(message.getId(), message.getRole(), content != null ? content : "",
+                message.getCreatedAtMs() != null ? message.getCreatedAtMs() : 0L);
+    }
+
+    /**
+     * 列表与版本号使用相同的哈希标签，集群模式下位于同一槽位，回填脚本可同时访问
+     */
+    private String key(Long sessionId) {
+        return properties.getKeyPrefix() + "{" + sessionId + "}";
+    }
+
+    private String versionKey(Long sessionId) {
+        return key(sessionId) + ":version";
+    }
+}
@@ -37,4 +37,19 @@ public class SimpleLogReporter extends SubEventReporter {
     public void reportError(String error) {
         log.error("❌ [执行错误] {}", error);
     }
-}
\ No newline at end of file
+    
+    @Override
+    public void reportThinking(String token) {
+        log.debug("💭 [思考过程] {}", token);
+    }
+    
+    @Override
+    public void reportPythonCode(String pythonCode) {
+        log.debug("🐍 [Python代码] {}", pythonCode);
+    }
+    
+    @Override
+    public void reportSql(String sql, int rowCount) {
+        log.info("🔍 [SQL执行] {}，返回{}行", sql, rowCount);
+    }
+}
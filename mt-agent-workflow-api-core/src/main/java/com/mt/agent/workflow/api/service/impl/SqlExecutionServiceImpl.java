@@ -1,28 +1,43 @@
 package com.mt.agent.workflow.api.service.impl;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mt.agent.workflow.api.config.QueryCacheProperties;
 import com.mt.agent.workflow.api.entity.DbConfig;
 import com.mt.agent.workflow.api.entity.SchemaVersion;
 import com.mt.agent.workflow.api.entity.SqlExecution;
 import com.mt.agent.workflow.api.entity.SqlGuardPolicy;
+import com.mt.agent.workflow.api.exception.ExecutionFailureException;
 import com.mt.agent.workflow.api.infra.DbConnectionPoolManager;
 import com.mt.agent.workflow.api.infra.ExternalDbExecutor;
 import com.mt.agent.workflow.api.infra.SqlParserUtil;
+import com.mt.agent.workflow.api.infra.cache.HotQueryTracker;
+import com.mt.agent.workflow.api.infra.pipeline.CancellationToken;
+import com.mt.agent.workflow.api.infra.pipeline.DatasourceBulkheads;
+import com.mt.agent.workflow.api.infra.pipeline.SingleFlight;
+import com.mt.agent.workflow.api.infra.result.ResultPayloadCodec;
 import com.mt.agent.workflow.api.mapper.DbConfigMapper;
 import com.mt.agent.workflow.api.mapper.SchemaVersionMapper;
 import com.mt.agent.workflow.api.mapper.SqlExecutionMapper;
 import com.mt.agent.workflow.api.service.QueryCacheService;
 import com.mt.agent.workflow.api.service.SqlExecutionService;
 import com.mt.agent.workflow.api.service.SqlGuardService;
-import com.mt.agent.workflow.api.service.impl.QueryCacheServiceImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.sql.DataSource;
 import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
@@ -39,34 +54,80 @@ public class SqlExecutionServiceImpl implements SqlExecutionService {
 	@Autowired
 	private SchemaVersionMapper schemaVersionMapper;
 	@Autowired
-	private ObjectMapper objectMapper;
+	private RedissonClient redissonClient;
+	@Autowired
+	private QueryCacheProperties queryCacheProperties;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Autowired
+	private HotQueryTracker hotQueryTracker;
+	@Autowired
+	private DbConnectionPoolManager dbConnectionPoolManager;
+	@Autowired
+	private DatasourceBulkheads datasourceBulkheads;
 
-	private final byte[] masterKey = com.mt.agent.workflow.api.util.CryptoKeyProvider.getMasterKey();
+	/**
+	 * 流式读取时每批从服务端拉取的行数，数据库配置未指定fetchSize时使用
+	 */
+	private static final int STREAM_FETCH_SIZE = 1000;
+
+	/**
+	 * 跨节点合并执行的Redis锁前缀
+	 */
+	private static final String FLIGHT_LOCK_PREFIX = "query_flight:";
+
+	private final SingleFlight<String, ExternalDbExecutor.QueryResult> queryFlights = new SingleFlight<>();
+
+	/**
+	 * 正在后台刷新的缓存键
+	 */
+	private final Set<String> refreshingKeys = ConcurrentHashMap.newKeySet();
+
+	private ThreadPoolExecutor refreshExecutor;
+
+	@PostConstruct
+	public void initRefreshExecutor() {
+		int threads = Math.max(1, queryCacheProperties.getRefreshThreads());
+		refreshExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(Math.max(1, queryCacheProperties.getRefreshQueueCapacity())),
+				r -> {
+					Thread thread = new Thread(r, "query-cache-refresh");
+					thread.setDaemon(true);
+					return thread;
+				},
+				new ThreadPoolExecutor.AbortPolicy());
+		refreshExecutor.allowCoreThreadTimeOut(true);
+	}
 
 	@Override
 	public SqlExecution executeReadOnly(Long dbConfigId, String sql) {
 		DbConfig cfg = dbConfigMapper.selectById(dbConfigId);
 		if (cfg == null) throw new IllegalArgumentException("配置不存在");
 		SqlGuardPolicy policy = sqlGuardService.getEffectivePolicy(0L, dbConfigId); // 使用默认租户ID
-		sqlGuardService.validate(sql, policy);
-//		String safeSql = SqlParserUtil.ensureLimit(sql, policy.getMaxScanRows() == null ? 1000 : policy.getMaxScanRows().intValue());
+		sqlGuardService.validate(cfg, sql, policy);
 
-		ExternalDbExecutor.ExecOptions opt = new ExternalDbExecutor.ExecOptions();
-		opt.queryTimeoutSeconds = (policy.getMaxTimeoutMs() == null ? 30_000 : policy.getMaxTimeoutMs()) / 1000;
-		opt.maxRows = (policy.getMaxScanRows() == null ? 1000 : policy.getMaxScanRows().intValue());
+		ExternalDbExecutor.ExecOptions opt = previewOptions(cfg, policy);
 
-		DataSource ds = DbConnectionPoolManager.getOrCreate(dbConfigId, cfg, masterKey);
+		DataSource ds = dbConnectionPoolManager.getOrCreate(cfg);
+		SqlGuardService.GuardedSql guarded = null;
 		try {
-			ExternalDbExecutor.QueryResult qr = ExternalDbExecutor.query(ds, sql, opt);
-			return createCompleteExecutionRecord(dbConfigId, sql, null, 1, qr.durationMs, qr.rowCount, null);
+			guarded = sqlGuardService.prepare(cfg, null, sql, policy, opt.maxRows);
+			String execSql = guarded.sql();
+			ExternalDbExecutor.QueryResult qr = datasourceBulkheads.execute(cfg, () -> ExternalDbExecutor.query(ds, execSql, opt));
+			return createCompleteExecutionRecord(dbConfigId, sql, null, 1, qr.durationMs, qr.rowCount, null, guarded);
 		} catch (RuntimeException e) {
-			createCompleteExecutionRecord(dbConfigId, sql, null, 2, 0L, 0L, e.getMessage());
+			createCompleteExecutionRecord(dbConfigId, sql, null, 2, 0L, 0L, e.getMessage(), guarded);
 			throw e;
 		}
 	}
 
 	@Override
 	public SqlExecutionResult executeWithResult(Long dbConfigId, String sql) {
+		return executeWithResult(dbConfigId, sql, null);
+	}
+
+	@Override
+	public SqlExecutionResult executeWithResult(Long dbConfigId, String sql, CancellationToken cancellation) {
 		DbConfig cfg = dbConfigMapper.selectById(dbConfigId);
 		if (cfg == null) throw new IllegalArgumentException("配置不存在");
 
@@ -75,15 +136,22 @@ public class SqlExecutionServiceImpl implements SqlExecutionService {
 		Long schemaVersionId = schemaVersion != null ? schemaVersion.getId() : null;
 
 		// 计算SQL hash用于缓存
-		String sqlHash = ((QueryCacheServiceImpl) queryCacheService).calculateSqlHash(sql);
+		String sqlHash = queryCacheService.calculateSqlHash(sql);
 
 		// 检查缓存
 		if (schemaVersionId != null) {
-			var cachedResult = queryCacheService.findPreview(0L, dbConfigId, schemaVersionId, sqlHash); // 使用默认租户ID
+			hotQueryTracker.record(dbConfigId, schemaVersionId, sqlHash, sql);
+			var cachedResult = queryCacheService.findPreviewAllowStale(0L, dbConfigId, schemaVersionId, sqlHash); // 使用默认租户ID
 			if (cachedResult.isPresent()) {
-				log.info("使用缓存的查询结果, sqlHash: {}", sqlHash);
+				if (cachedResult.get().isStale()) {
+					// 过期但仍在容忍窗口内，先返回旧结果，后台刷新
+					log.info("使用已过期的缓存结果并后台刷新, sqlHash: {}", sqlHash);
+					refreshInBackground(dbConfigId, cfg, schemaVersionId, sqlHash, sql);
+				} else {
+					log.info("使用缓存的查询结果, sqlHash: {}", sqlHash);
+				}
 				// 从缓存构造QueryResult
-				ExternalDbExecutor.QueryResult result = parseJsonResult(cachedResult.get());
+				ExternalDbExecutor.QueryResult result = decodeCachedResult(cachedResult.get().payload());
 				// 创建一条完整的执行记录并直接插入
 				SqlExecution exec = createCompleteExecutionRecord(dbConfigId, sql, schemaVersionId, 1, 0L, result.rowCount, null);
 				return new SqlExecutionResult(exec, result);
@@ -92,32 +160,212 @@ public class SqlExecutionServiceImpl implements SqlExecutionService {
 
 		// 执行SQL
 		SqlGuardPolicy policy = sqlGuardService.getEffectivePolicy(0L, dbConfigId); // 使用默认租户ID
-		sqlGuardService.validate(sql, policy);
-//		String safeSql = SqlParserUtil.ensureLimit(sql, policy.getMaxScanRows() == null ? 1000 : policy.getMaxScanRows().intValue());
+		sqlGuardService.validate(cfg, sql, policy);
 
+		ExternalDbExecutor.ExecOptions opt = previewOptions(cfg, policy);
+		opt.cancellation = cancellation;
+
+		DataSource ds = dbConnectionPoolManager.getOrCreate(cfg);
+		SqlGuardService.GuardedSql guarded = null;
+		try {
+			// 执行前检查：收紧LIMIT，预估扫描行数超限时拒绝
+			guarded = sqlGuardService.prepare(cfg, schemaVersionId, sql, policy, opt.maxRows);
+			String execSql = guarded.sql();
+			ExternalDbExecutor.QueryResult qr;
+			if (schemaVersionId == null) {
+				qr = datasourceBulkheads.execute(cfg, () -> ExternalDbExecutor.query(ds, execSql, opt));
+			} else {
+				// 相同SQL的并发执行合并为一次，结果写入缓存
+				String flightKey = dbConfigId + ":" + schemaVersionId + ":" + sqlHash;
+				qr = executeCoalesced(flightKey, cancellation,
+						() -> executeAndCache(flightKey, cfg, ds, execSql, opt, schemaVersionId, sqlHash));
+			}
+			SqlExecution exec = createCompleteExecutionRecord(dbConfigId, sql, schemaVersionId, 1, qr.durationMs, qr.rowCount, null, guarded);
+			return new SqlExecutionResult(exec, qr);
+		} catch (RuntimeException e) {
+			createCompleteExecutionRecord(dbConfigId, sql, schemaVersionId, 2, 0L, 0L, e.getMessage(), guarded);
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean refreshCachedResult(Long dbConfigId, String sql) {
+		DbConfig cfg = dbConfigMapper.selectById(dbConfigId);
+		if (cfg == null) throw new IllegalArgumentException("配置不存在");
+		SchemaVersion schemaVersion = getLatestSchemaVersion(dbConfigId);
+		if (schemaVersion == null) {
+			return false;
+		}
+		refresh(dbConfigId, cfg, schemaVersion.getId(), queryCacheService.calculateSqlHash(sql), sql);
+		return true;
+	}
+
+	/**
+	 * 后台刷新过期缓存，同一键同时只提交一次，刷新队列满时跳过
+	 */
+	private void refreshInBackground(Long dbConfigId, DbConfig cfg, Long schemaVersionId, String sqlHash, String sql) {
+		String flightKey = dbConfigId + ":" + schemaVersionId + ":" + sqlHash;
+		if (!refreshingKeys.add(flightKey)) {
+			return;
+		}
+		try {
+			refreshExecutor.execute(() -> {
+				try {
+					refresh(dbConfigId, cfg, schemaVersionId, sqlHash, sql);
+					meterRegistry.counter("query.cache.refresh", "trigger", "stale", "result", "success").increment();
+				} catch (Exception e) {
+					meterRegistry.counter("query.cache.refresh", "trigger", "stale", "result", "failure").increment();
+					log.warn("🔍 [SQL执行] 后台刷新缓存失败, key: {}, error: {}", flightKey, e.getMessage());
+				} finally {
+					refreshingKeys.remove(flightKey);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			refreshingKeys.remove(flightKey);
+			meterRegistry.counter("query.cache.refresh", "trigger", "stale", "result", "skipped").increment();
+			log.warn("🔍 [SQL执行] 缓存刷新队列已满，跳过刷新, key: {}", flightKey);
+		}
+	}
+
+	/**
+	 * 按SQL安全策略重新执行并覆盖缓存，与前台的相同SQL共用一次执行
+	 */
+	private void refresh(Long dbConfigId, DbConfig cfg, Long schemaVersionId, String sqlHash, String sql) {
+		SqlGuardPolicy policy = sqlGuardService.getEffectivePolicy(0L, dbConfigId); // 使用默认租户ID
+		sqlGuardService.validate(cfg, sql, policy);
+		ExternalDbExecutor.ExecOptions opt = previewOptions(cfg, policy);
+		DataSource ds = dbConnectionPoolManager.getOrCreate(cfg);
+		String execSql = sqlGuardService.prepare(cfg, schemaVersionId, sql, policy, opt.maxRows).sql();
+		String flightKey = dbConfigId + ":" + schemaVersionId + ":" + sqlHash;
+		queryFlights.join(flightKey, () -> executeAndCache(flightKey, cfg, ds, execSql, opt, schemaVersionId, sqlHash))
+				.await(null);
+	}
+
+	private ExternalDbExecutor.ExecOptions previewOptions(DbConfig cfg, SqlGuardPolicy policy) {
 		ExternalDbExecutor.ExecOptions opt = new ExternalDbExecutor.ExecOptions();
 		opt.queryTimeoutSeconds = (policy.getMaxTimeoutMs() == null ? 30_000 : policy.getMaxTimeoutMs()) / 1000;
 		opt.maxRows = (policy.getMaxScanRows() == null ? 1000 : policy.getMaxScanRows().intValue());
+		opt.fetchSize = dbConnectionPoolManager.fetchSize(cfg, 0);
+		return opt;
+	}
 
-		DataSource ds = DbConnectionPoolManager.getOrCreate(dbConfigId, cfg, masterKey);
+	@PreDestroy
+	public void shutdownRefresh() {
+		refreshExecutor.shutdownNow();
+	}
+
+	/**
+	 * 合并本进程内相同SQL的并发执行
+	 * 执行方被取消时，未取消的等待方重新发起一次执行，避免被他人的取消连带失败
+	 */
+	private ExternalDbExecutor.QueryResult executeCoalesced(String flightKey, CancellationToken cancellation,
+															 Supplier<ExternalDbExecutor.QueryResult> loader) {
+		SingleFlight.Call<ExternalDbExecutor.QueryResult> call = queryFlights.join(flightKey, loader);
+		if (!call.isLeader()) {
+			meterRegistry.counter("sql.singleflight.coalesced", "scope", "local").increment();
+			log.info("🔍 [SQL执行] 合并相同SQL的并发执行, key: {}", flightKey);
+		}
 		try {
-			ExternalDbExecutor.QueryResult qr = ExternalDbExecutor.query(ds, sql, opt);
-			SqlExecution exec = createCompleteExecutionRecord(dbConfigId, sql, schemaVersionId, 1, qr.durationMs, qr.rowCount, null);
+			return call.await(cancellation);
+		} catch (ExecutionFailureException e) {
+			boolean selfCancelled = cancellation != null && cancellation.isCancelled();
+			if (call.isLeader() || selfCancelled || !CancellationToken.CANCELLED_CODE.equals(e.getErrorCode())) {
+				throw e;
+			}
+			log.info("🔍 [SQL执行] 合并执行的发起方已取消，重新执行, key: {}", flightKey);
+			return queryFlights.join(flightKey, loader).await(cancellation);
+		}
+	}
+
+	/**
+	 * 执行SQL并写入缓存
+	 * 启用跨节点合并时先获取Redis锁，等待过锁说明其他节点刚执行过，重新查一次缓存
+	 */
+	private ExternalDbExecutor.QueryResult executeAndCache(String flightKey, DbConfig cfg, DataSource ds, String sql,
+														   ExternalDbExecutor.ExecOptions opt, Long schemaVersionId,
+														   String sqlHash) {
+		Long dbConfigId = cfg.getId();
+		RLock lock = null;
+		boolean locked = false;
+		if (queryCacheProperties.isSingleFlightDistributed()) {
+			try {
+				lock = redissonClient.getLock(FLIGHT_LOCK_PREFIX + flightKey);
+				long leaseSeconds = opt.queryTimeoutSeconds + 30L;
+				locked = lock.tryLock(0, leaseSeconds, TimeUnit.SECONDS);
+				if (!locked) {
+					locked = lock.tryLock(opt.queryTimeoutSeconds, leaseSeconds, TimeUnit.SECONDS);
+					if (locked) {
+						var cachedResult = queryCacheService.findPreview(0L, dbConfigId, schemaVersionId, sqlHash); // 使用默认租户ID
+						if (cachedResult.isPresent()) {
+							meterRegistry.counter("sql.singleflight.coalesced", "scope", "remote").increment();
+							log.info("🔍 [SQL执行] 其他节点已执行相同SQL，使用其缓存结果, key: {}", flightKey);
+							return decodeCachedResult(cachedResult.get());
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("等待SQL执行锁时被中断", e);
+			} catch (Exception e) {
+				log.warn("🔍 [SQL执行] 获取跨节点执行锁失败，直接执行: {}", e.getMessage());
+			}
+		}
 
+		try {
+			ExternalDbExecutor.QueryResult qr = datasourceBulkheads.execute(cfg, () -> ExternalDbExecutor.query(ds, sql, opt));
 			// 保存到缓存
-			if (schemaVersionId != null) {
-				String resultJson = buildResultPreviewJson(qr);
-				queryCacheService.savePreview(0L, dbConfigId, schemaVersionId, sqlHash, resultJson, 3600_000L); // 1小时缓存，使用默认租户ID
+			ResultPayloadCodec.Encoded encoded = ResultPayloadCodec.encode(qr.table, qr.rowCount, qr.durationMs,
+					queryCacheProperties.getCompressionLevel());
+			queryCacheService.savePreview(0L, dbConfigId, schemaVersionId, sqlHash, encoded.bytes(), encoded.rawBytes(),
+					queryCacheProperties.getTtlSeconds() * 1000L); // 使用默认租户ID
+			return qr;
+		} finally {
+			if (locked) {
+				try {
+					lock.unlock();
+				} catch (Exception e) {
+					log.warn("🔍 [SQL执行] 释放跨节点执行锁失败: {}", e.getMessage());
+				}
 			}
+		}
+	}
 
-			return new SqlExecutionResult(exec, qr);
+	@Override
+	public ExternalDbExecutor.QueryResult executeStreaming(Long dbConfigId, String sql, ExternalDbExecutor.RowCallback callback,
+														   CancellationToken cancellation) {
+		DbConfig cfg = dbConfigMapper.selectById(dbConfigId);
+		if (cfg == null) throw new IllegalArgumentException("配置不存在");
+		SqlGuardPolicy policy = sqlGuardService.getEffectivePolicy(0L, dbConfigId); // 使用默认租户ID
+		sqlGuardService.validate(cfg, sql, policy);
+
+		ExternalDbExecutor.ExecOptions opt = new ExternalDbExecutor.ExecOptions();
+		opt.queryTimeoutSeconds = (policy.getMaxTimeoutMs() == null ? 30_000 : policy.getMaxTimeoutMs()) / 1000;
+		// 流式导出不限制行数；策略的max_scan_rows在未配置策略时是预览行数，不适用于导出
+		opt.maxRows = 0;
+		opt.fetchSize = dbConnectionPoolManager.fetchSize(cfg, STREAM_FETCH_SIZE);
+		opt.cancellation = cancellation;
+
+		DataSource ds = dbConnectionPoolManager.getOrCreate(cfg);
+		SqlGuardService.GuardedSql guarded = null;
+		try {
+			// 导出不改写LIMIT，只做扫描行数检查
+			guarded = sqlGuardService.prepare(cfg, null, sql, policy, 0);
+			String execSql = guarded.sql();
+			ExternalDbExecutor.QueryResult summary = datasourceBulkheads.executeStreaming(cfg, () -> ExternalDbExecutor.stream(ds, execSql, opt, callback));
+			createCompleteExecutionRecord(dbConfigId, sql, null, 1, summary.durationMs, summary.rowCount, null, guarded);
+			return summary;
 		} catch (RuntimeException e) {
-			SqlExecution exec = createCompleteExecutionRecord(dbConfigId, sql, schemaVersionId, 2, 0L, 0L, e.getMessage());
+			createCompleteExecutionRecord(dbConfigId, sql, null, 2, 0L, 0L, e.getMessage(), guarded);
 			throw e;
 		}
 	}
 
 	private SqlExecution createCompleteExecutionRecord(Long dbConfigId, String sql, Long schemaVersionId, int status, long durationMs, long affectedRows, String errorMsg) {
+		return createCompleteExecutionRecord(dbConfigId, sql, schemaVersionId, status, durationMs, affectedRows, errorMsg, null);
+	}
+
+	private SqlExecution createCompleteExecutionRecord(Long dbConfigId, String sql, Long schemaVersionId, int status, long durationMs, long affectedRows, String errorMsg,
+													   SqlGuardService.GuardedSql guarded) {
 		SqlExecution exec = new SqlExecution();
 		// 使用默认租户ID，因为tenantId字段已标记为非持久化
 		exec.setTenantId(0L);
@@ -128,6 +376,12 @@ public class SqlExecutionServiceImpl implements SqlExecutionService {
 		exec.setDurationMs(durationMs);
 		exec.setAffectedRows(affectedRows);
 		exec.setErrorMsg(errorMsg);
+		if (guarded != null) {
+			// 记录执行前检查的改写与执行计划
+			exec.setExecutedSql(guarded.rewritten() ? guarded.sql() : null);
+			exec.setEstimatedRows(guarded.estimatedRows());
+			exec.setPlanCost(guarded.planCost());
+		}
 		exec.setCreatedAtMs(System.currentTimeMillis());
 		exec.setFinishedAtMs(System.currentTimeMillis()); // 创建即完成
 		sqlExecutionMapper.insert(exec);
@@ -148,10 +402,10 @@ public class SqlExecutionServiceImpl implements SqlExecutionService {
 		// 尝试从缓存获取
 		DbConfig cfg = dbConfigMapper.selectById(exec.getDbConfigId());
 		if (cfg != null && exec.getSchemaVersionId() != null) {
-			String sqlHash = ((QueryCacheServiceImpl) queryCacheService).calculateSqlHash(exec.getSqlText());
+			String sqlHash = queryCacheService.calculateSqlHash(exec.getSqlText());
 			var cachedResult = queryCacheService.findPreview(0L, exec.getDbConfigId(), exec.getSchemaVersionId(), sqlHash); // 使用默认租户ID
 			if (cachedResult.isPresent()) {
-				return parseJsonResult(cachedResult.get());
+				return decodeCachedResult(cachedResult.get());
 			}
 		}
 		
@@ -179,36 +433,14 @@ public class SqlExecutionServiceImpl implements SqlExecutionService {
 		);
 	}
 	
-	private String buildResultPreviewJson(ExternalDbExecutor.QueryResult qr) {
-		try {
-			Map<String, Object> preview = new HashMap<>();
-			preview.put("rows", qr.rows);
-			preview.put("rowCount", qr.rowCount);
-			preview.put("durationMs", qr.durationMs);
-			
-			// 提取列头信息
-			if (!qr.rows.isEmpty()) {
-				List<String> columns = List.copyOf(qr.rows.get(0).keySet());
-				preview.put("columns", columns);
-			}
-			
-			return objectMapper.writeValueAsString(preview);
-		} catch (Exception e) {
-			log.error("构建结果预览JSON失败: {}", e.getMessage(), e);
-			return "{\"error\":\"" + e.getMessage() + "\"}";
-		}
-	}
-	
-	private ExternalDbExecutor.QueryResult parseJsonResult(String jsonResult) {
+	private ExternalDbExecutor.QueryResult decodeCachedResult(byte[] payload) {
 		try {
-			@SuppressWarnings("unchecked")
-			Map<String, Object> data = objectMapper.readValue(jsonResult, Map.class);
-			
+			ResultPayloadCodec.Decoded decoded = ResultPayloadCodec.decode(payload);
 			ExternalDbExecutor.QueryResult result = new ExternalDbExecutor.QueryResult();
-			result.rows = (List<Map<String, Object>>) data.get("rows");
-			result.rowCount = ((Number) data.get("rowCount")).longValue();
-			result.durationMs = data.containsKey("durationMs") ? ((Number) data.get("durationMs")).longValue() : 0L;
-			
+			result.table = decoded.table();
+			result.columns = decoded.table().getColumns();
+			result.rowCount = decoded.rowCount();
+			result.durationMs = decoded.durationMs();
 			return result;
 		} catch (Exception e) {
 			log.error("解析缓存结果失败: {}", e.getMessage(), e);
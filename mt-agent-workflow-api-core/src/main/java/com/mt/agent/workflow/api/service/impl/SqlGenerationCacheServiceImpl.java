@@ -0,0 +1,145 @@
+package com.mt.agent.workflow.api.service.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mt.agent.workflow.api.config.SqlGenerationCacheProperties;
+import com.mt.agent.workflow.api.service.SqlGenerationCacheService;
+import com.mt.agent.workflow.api.util.CacheKeyUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 生成SQL缓存实现
+ * 进程内缓存 + Redis共享缓存，键包含数据库配置ID与提示词输入的指纹；
+ * 表结构文本本身也是提示词输入，结构变化后自然不再命中，同步时再主动清理
+ */
+@Slf4j
+@Service
+public class SqlGenerationCacheServiceImpl implements SqlGenerationCacheService {
+
+    private static final String EXACT = "exact";
+    private static final String NEAR = "near";
+
+    private final SqlGenerationCacheProperties properties;
+    private final RedissonClient redissonClient;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, String> local;
+
+    public SqlGenerationCacheServiceImpl(SqlGenerationCacheProperties properties, RedissonClient redissonClient,
+                                         MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.redissonClient = redissonClient;
+        this.meterRegistry = meterRegistry;
+        this.local = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1, properties.getLocalMaxEntries()))
+                .expireAfterWrite(Math.max(1, properties.getTtlMinutes()), TimeUnit.MINUTES)
+                .build();
+    }
+
+    @Override
+    public Optional<String> find(Prompt prompt) {
+        if (!properties.isEnabled()) {
+            return Optional.empty();
+        }
+        Optional<String> exact = lookup(EXACT, exactKey(prompt));
+        if (exact.isPresent() || !properties.isNearDuplicateEnabled()) {
+            return exact;
+        }
+        return lookup(NEAR, nearKey(prompt));
+    }
+
+    @Override
+    public void save(Prompt prompt, String sql) {
+        if (!properties.isEnabled() || sql == null || sql.isBlank()) {
+            return;
+        }
+        store(exactKey(prompt), sql);
+        if (properties.isNearDuplicateEnabled()) {
+            store(nearKey(prompt), sql);
+        }
+    }
+
+    @Override
+    public void invalidate(Long dbConfigId) {
+        String prefix = dbConfigId + ":";
+        local.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        if (properties.isRedisEnabled()) {
+            try {
+                long deleted = redissonClient.getKeys().deleteByPattern(properties.getRedisKeyPrefix() + prefix + "*");
+                log.info("🔍 [SQL生成] 表结构已更新，清理生成SQL缓存, dbConfigId: {}, Redis删除: {}", dbConfigId, deleted);
+            } catch (Exception e) {
+                log.warn("🔍 [SQL生成] 清理Redis生成SQL缓存失败, dbConfigId: {}: {}", dbConfigId, e.getMessage());
+            }
+        }
+    }
+
+    private Optional<String> lookup(String tier, String key) {
+        String sql = local.getIfPresent(key);
+        if (sql == null && properties.isRedisEnabled()) {
+            try {
+                sql = bucket(key).get();
+                if (sql != null) {
+                    local.put(key, sql);
+                }
+            } catch (Exception e) {
+                log.warn("🔍 [SQL生成] 读取Redis生成SQL缓存失败: {}", e.getMessage());
+            }
+        }
+        meterRegistry.counter("sqlgen.cache.lookup", "tier", tier, "result", sql != null ? "hit" : "miss").increment();
+        if (sql != null) {
+            log.info("🔍 [SQL生成] 命中生成SQL缓存({}), key: {}", tier, key);
+        }
+        return Optional.ofNullable(sql);
+    }
+
+    private void store(String key, String sql) {
+        local.put(key, sql);
+        if (properties.isRedisEnabled()) {
+            try {
+                bucket(key).set(sql, Math.max(1, properties.getTtlMinutes()), TimeUnit.MINUTES);
+            } catch (Exception e) {
+                log.warn("🔍 [SQL生成] 写入Redis生成SQL缓存失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private RBucket<String> bucket(String key) {
+        return redissonClient.getBucket(properties.getRedisKeyPrefix() + key, StringCodec.INSTANCE);
+    }
+
+    /**
+     * 完整提示词输入的指纹
+     */
+    private static String exactKey(Prompt prompt) {
+        return prompt.dbConfigId() + ":" + EXACT + ":" + CacheKeyUtil.fingerprint(prompt.tables(), prompt.tableName(),
+                prompt.queryText(), prompt.pythonCode(), prompt.historyStr(), prompt.question());
+    }
+
+    /**
+     * 近似匹配指纹：只取表结构、表名与规范化后的查询文本
+     */
+    private static String nearKey(Prompt prompt) {
+        return prompt.dbConfigId() + ":" + NEAR + ":" + CacheKeyUtil.fingerprint(prompt.tables(), prompt.tableName(),
+                normalizeText(prompt.queryText()));
+    }
+
+    /**
+     * 规范化问题文本：全角转半角、转小写、去掉空白与标点
+     */
+    private static String normalizeText(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        return normalized.replaceAll("[\\s\\p{P}]+", "");
+    }
+}
@@ -1,18 +1,62 @@
 package com.mt.agent.workflow.api.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mt.agent.workflow.api.config.SqlGuardProperties;
+import com.mt.agent.workflow.api.entity.DbConfig;
 import com.mt.agent.workflow.api.entity.SqlGuardPolicy;
+import com.mt.agent.workflow.api.exception.ExecutionFailureException;
+import com.mt.agent.workflow.api.infra.CompiledSqlPolicy;
+import com.mt.agent.workflow.api.infra.DbConnectionPoolManager;
+import com.mt.agent.workflow.api.infra.ExplainPlan;
+import com.mt.agent.workflow.api.infra.ExternalDbExecutor;
+import com.mt.agent.workflow.api.infra.SqlCanonicalizer;
 import com.mt.agent.workflow.api.infra.SqlParserUtil;
 import com.mt.agent.workflow.api.mapper.SqlGuardPolicyMapper;
 import com.mt.agent.workflow.api.service.SqlGuardService;
+import com.mt.agent.workflow.api.util.MD5Util;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
 @Service
 public class SqlGuardServiceImpl implements SqlGuardService {
 
     @Autowired
     private SqlGuardPolicyMapper policyMapper;
+    @Autowired
+    private SqlGuardProperties properties;
+    @Autowired
+    private DbConnectionPoolManager dbConnectionPoolManager;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 执行计划缓存，键为 数据库配置ID:schema版本ID:规范化SQL的MD5
+     */
+    private Cache<String, ExplainPlan> planCache;
+
+    /**
+     * 编译后的策略缓存，键为数据库配置ID，策略ID或更新时间变化时重新编译
+     */
+    private Cache<Long, CompiledSqlPolicy> compiledPolicies;
+
+    @PostConstruct
+    public void initPlanCache() {
+        planCache = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1, properties.getExplainCacheMaxEntries()))
+                .expireAfterWrite(Math.max(1, properties.getExplainCacheTtlMinutes()), TimeUnit.MINUTES)
+                .build();
+        compiledPolicies = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1, properties.getPolicyCacheMaxEntries()))
+                .build();
+    }
 
     @Override
     public SqlGuardPolicy getEffectivePolicy(Long tenantId, Long dbConfigId) {
@@ -24,6 +68,7 @@ public class SqlGuardServiceImpl implements SqlGuardService {
         SqlGuardPolicy p = policyMapper.selectOne(qw);
         if (p == null) {
             p = new SqlGuardPolicy();
+            p.setDbConfigId(dbConfigId);
             p.setReadOnly(1);
             p.setMaxScanRows(1000L);
             p.setMaxTimeoutMs(30_000);
@@ -33,22 +78,75 @@ public class SqlGuardServiceImpl implements SqlGuardService {
     }
 
     @Override
-    public void validate(String sql, SqlGuardPolicy policy) {
-        if (policy.getReadOnly() == null || policy.getReadOnly() == 1) {
-            SqlParserUtil.assertReadOnly(sql);
+    public void validate(DbConfig cfg, String sql, SqlGuardPolicy policy) {
+        compiledPolicy(policy).check(sql, cfg != null ? cfg.getDatabaseName() : null);
+    }
+
+    private CompiledSqlPolicy compiledPolicy(SqlGuardPolicy policy) {
+        Long key = policy.getDbConfigId() != null ? policy.getDbConfigId() : 0L;
+        CompiledSqlPolicy compiled = compiledPolicies.getIfPresent(key);
+        if (compiled == null || !compiled.isCompiledFrom(policy)) {
+            compiled = CompiledSqlPolicy.compile(policy, properties.getDenyFunctions(), properties.getMaxSubqueryDepth());
+            compiledPolicies.put(key, compiled);
+            log.info("🔍 [SQL检查] 编译SQL安全策略: dbConfigId={}, policyId={}", policy.getDbConfigId(), policy.getId());
         }
-        // deny keywords 简化处理
-        if (policy.getDenyKeywords() != null && !policy.getDenyKeywords().isEmpty()) {
-            String upper = sql.toUpperCase();
-            for (String kw : policy.getDenyKeywords().replace("[", "").replace("]", "").split(",")) {
-                kw = kw.replace("\"", "").trim().toUpperCase();
-                if (!kw.isEmpty() && upper.contains(kw)) {
-                    throw new IllegalArgumentException("包含禁止关键字: " + kw);
-                }
+        return compiled;
+    }
+
+    @Override
+    public GuardedSql prepare(DbConfig cfg, Long schemaVersionId, String sql, SqlGuardPolicy policy, int rowLimit) {
+        SqlParserUtil.LimitRewrite rewrite = properties.isLimitRewriteEnabled()
+                ? SqlParserUtil.applyLimit(sql, rowLimit)
+                : new SqlParserUtil.LimitRewrite(sql, false, false);
+        if (rewrite.rewritten()) {
+            meterRegistry.counter("sql.guard.rewritten").increment();
+        }
+
+        ExplainPlan plan = properties.isExplainEnabled() ? explain(cfg, schemaVersionId, rewrite.sql()) : null;
+        if (plan == null) {
+            return new GuardedSql(rewrite.sql(), rewrite.rewritten(), null, null);
+        }
+
+        // 未配置策略时默认的max_scan_rows只是预览行数，不作为扫描上限
+        long maxExaminedRows = policy.getId() != null && policy.getMaxScanRows() != null
+                ? policy.getMaxScanRows() : properties.getDefaultMaxExaminedRows();
+        if (maxExaminedRows > 0 && plan.estimatedRows() > maxExaminedRows) {
+            if (rewrite.limitBounded()) {
+                // 单表无条件的LIMIT扫描读够行数即停止，实际扫描远小于预估
+                log.info("🔍 [SQL检查] 预估扫描{}行超过上限{}，LIMIT可提前结束，放行", plan.estimatedRows(), maxExaminedRows);
+            } else {
+                meterRegistry.counter("sql.guard.rejected", "reason", "cost").increment();
+                log.warn("🔍 [SQL检查] 预估扫描{}行超过上限{}，拒绝执行: {}", plan.estimatedRows(), maxExaminedRows, sql);
+                throw new ExecutionFailureException("查询预估扫描约" + plan.estimatedRows() + "行，超过上限" + maxExaminedRows
+                        + "行，请增加过滤条件或缩小查询范围", "COST_EXCEEDED");
             }
         }
-        // TODO: 表级白名单/黑名单校验（需要解析表名或通过 EXPLAIN 粗判）
+        return new GuardedSql(rewrite.sql(), rewrite.rewritten(), plan.estimatedRows(), plan.queryCost());
     }
-}
-
 
+    /**
+     * 获取执行计划，失败时返回null不阻断执行
+     */
+    private ExplainPlan explain(DbConfig cfg, Long schemaVersionId, String sql) {
+        String key = cfg.getId() + ":" + (schemaVersionId != null ? schemaVersionId : 0) + ":"
+                + MD5Util.encrypt(SqlCanonicalizer.canonicalize(sql));
+        ExplainPlan cached = planCache.getIfPresent(key);
+        if (cached != null) {
+            meterRegistry.counter("sql.guard.explain", "result", "hit").increment();
+            return cached;
+        }
+        try {
+            String json = ExternalDbExecutor.explain(dbConnectionPoolManager.getOrCreate(cfg), sql,
+                    properties.getExplainTimeoutSeconds());
+            ExplainPlan plan = ExplainPlan.parse(json);
+            planCache.put(key, plan);
+            meterRegistry.counter("sql.guard.explain", "result", "miss").increment();
+            log.info("🔍 [SQL检查] 执行计划: 预估扫描{}行, 代价{}", plan.estimatedRows(), plan.queryCost());
+            return plan;
+        } catch (Exception e) {
+            meterRegistry.counter("sql.guard.explain", "result", "error").increment();
+            log.warn("🔍 [SQL检查] 获取执行计划失败，跳过扫描行数检查: {}", e.getMessage());
+            return null;
+        }
+    }
+}
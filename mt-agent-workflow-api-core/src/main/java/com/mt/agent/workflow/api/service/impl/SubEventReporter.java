@@ -14,6 +14,10 @@ public class SubEventReporter {
     
     private final SseEmitter emitter;
     private final String eventType;
+    /**
+     * 发送失败（通常是客户端已断开）时的回调
+     */
+    private volatile Runnable sendFailureHandler;
     
     public SubEventReporter(SseEmitter emitter) {
         this(emitter, "progress");
@@ -38,6 +42,7 @@ public class SubEventReporter {
                 .data(data));
         } catch (Exception e) {
             log.error("发送步骤报告失败: {}", e.getMessage(), e);
+            handleSendFailure();
         }
     }
     
@@ -55,6 +60,7 @@ public class SubEventReporter {
                 .data(data));
         } catch (Exception e) {
             log.error("发送节点结果失败: {}", e.getMessage(), e);
+            handleSendFailure();
         }
     }
     
@@ -72,6 +78,77 @@ public class SubEventReporter {
                 .data(data));
         } catch (Exception e) {
             log.error("发送错误报告失败: {}", e.getMessage(), e);
+            handleSendFailure();
+        }
+    }
+    
+    /**
+     * 报告大模型思考过程的增量内容
+     */
+    public void reportThinking(String token) {
+        try {
+            Map<String, String> data = new HashMap<>();
+            data.put("type", "thinking");
+            data.put("content", token);
+            
+            emitter.send(SseEmitter.event()
+                .name("thinking")
+                .data(data));
+        } catch (Exception e) {
+            log.error("发送思考内容失败: {}", e.getMessage(), e);
+            handleSendFailure();
+        }
+    }
+    
+    /**
+     * 报告提取出的Python代码
+     */
+    public void reportPythonCode(String pythonCode) {
+        try {
+            Map<String, String> data = new HashMap<>();
+            data.put("type", "python_code");
+            data.put("content", pythonCode);
+            
+            emitter.send(SseEmitter.event()
+                .name("python_code")
+                .data(data));
+        } catch (Exception e) {
+            log.error("发送Python代码失败: {}", e.getMessage(), e);
+            handleSendFailure();
+        }
+    }
+    
+    /**
+     * 报告执行的SQL及返回行数
+     */
+    public void reportSql(String sql, int rowCount) {
+        try {
+            Map<String, Object> data = new HashMap<>();
+            data.put("type", "sql");
+            data.put("sql", sql);
+            data.put("rowCount", rowCount);
+            
+            emitter.send(SseEmitter.event()
+                .name("sql")
+                .data(data));
+        } catch (Exception e) {
+            log.error("发送SQL执行信息失败: {}", e.getMessage(), e);
+            handleSendFailure();
+        }
+    }
+    
+    /**
+     * 设置发送失败回调，只触发一次
+     */
+    public void onSendFailure(Runnable handler) {
+        this.sendFailureHandler = handler;
+    }
+    
+    private void handleSendFailure() {
+        Runnable handler = sendFailureHandler;
+        sendFailureHandler = null;
+        if (handler != null) {
+            handler.run();
         }
     }
 }
@@ -0,0 +1,236 @@
+package com.mt.agent.workflow.api.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mt.agent.workflow.api.config.BufferNearCacheProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * BufferUtil自定义域的近端缓存
+ * 指定前缀的域读取后在进程内保留，本节点写入时更新本地并发布失效通知，
+ * 其他节点收到通知后丢弃本地副本、下次读取时回源Redis。
+ * 本地副本的存活时间不超过域自身的过期时间与ttlSeconds。
+ * 回源读取期间收到的失效通知通过按用户分段的失效版本识别，读到的旧值不写入本地
+ */
+@Slf4j
+@Component
+public class BufferNearCache {
+
+    private static final String ALL_FIELDS = "*";
+    private static final char KEY_SEPARATOR = '\u0000';
+    private static final String FIELD_SEPARATOR = "\n";
+    private static final int VERSION_STRIPES = 256;
+
+    private final BufferNearCacheProperties properties;
+    private final RedissonClient redissonClient;
+    private final MeterRegistry meterRegistry;
+
+    private final Cache<String, Entry> local;
+    /**
+     * 本节点标识，忽略自己发出的失效通知
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+    /**
+     * 按用户ID分段的失效版本，每次丢弃本地副本前递增
+     */
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    private RTopic topic;
+    private Integer listenerId;
+
+    public BufferNearCache(BufferNearCacheProperties properties, RedissonClient redissonClient, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.redissonClient = redissonClient;
+        this.meterRegistry = meterRegistry;
+        this.local = CacheBuilder.newBuilder()
+                .maximumWeight(Math.max(1, properties.getMaxSizeMb()) * 1024L * 1024L)
+                .weigher((String key, Entry entry) -> entry.weight())
+                .expireAfterWrite(Math.max(1, properties.getTtlSeconds()), TimeUnit.SECONDS)
+                .build();
+        Gauge.builder("buffer.near_cache.size", local, Cache::size)
+                .description("会话缓存近端缓存条目数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            topic = redissonClient.getTopic(properties.getInvalidationTopic(), StringCodec.INSTANCE);
+            listenerId = topic.addListener(String.class, (channel, message) -> onInvalidation(message));
+        } catch (Exception e) {
+            // 订阅失败时本地副本只靠ttlSeconds过期，关闭近端缓存以免读到其他节点已改写的值
+            log.warn("订阅会话缓存失效通知失败，近端缓存不可用: {}", e.getMessage());
+            topic = null;
+        }
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        if (topic != null && listenerId != null) {
+            try {
+                topic.removeListener(listenerId);
+            } catch (Exception e) {
+                log.debug("取消订阅会话缓存失效通知失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 域是否使用近端缓存
+     */
+    public boolean accepts(String field) {
+        if (topic == null || field == null) {
+            return false;
+        }
+        for (String prefix : properties.getFieldPrefixes()) {
+            if (field.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 读取本地副本，未命中返回null
+     */
+    public Object get(String userId, String field) {
+        Entry entry = local.getIfPresent(key(userId, field));
+        boolean hit = entry != null && entry.expiredAtMs() > System.currentTimeMillis();
+        meterRegistry.counter("buffer.near_cache.lookup", "result", hit ? "hit" : "miss").increment();
+        return hit ? entry.value() : null;
+    }
+
+    /**
+     * 保存本地副本
+     *
+     * @param remainTtlMs 域在Redis中的剩余存活时间，小于等于0表示永久
+     */
+    public void put(String userId, String field, Object value, long remainTtlMs) {
+        if (value == null) {
+            local.invalidate(key(userId, field));
+            return;
+        }
+        long ttlMs = Math.max(1, properties.getTtlSeconds()) * 1000L;
+        if (remainTtlMs > 0) {
+            ttlMs = Math.min(ttlMs, remainTtlMs);
+        }
+        local.put(key(userId, field), new Entry(value, System.currentTimeMillis() + ttlMs));
+    }
+
+    /**
+     * 回源读取Redis前调用，记下用户当前的失效版本
+     */
+    public long version(String userId) {
+        return versions.get(stripe(userId));
+    }
+
+    /**
+     * 保存回源读取的值；读取期间用户有过失效时不保存，避免通知先于写入到达后旧值留在本地
+     *
+     * @param version     回源读取前{@link #version(String)}的返回值
+     * @param remainTtlMs 域在Redis中的剩余存活时间，小于等于0表示永久
+     */
+    public void fill(String userId, String field, Object value, long remainTtlMs, long version) {
+        int stripe = stripe(userId);
+        if (versions.get(stripe) != version) {
+            return;
+        }
+        put(userId, field, value, remainTtlMs);
+        // 检查与写入之间到达的失效已执行过丢弃，需撤销本次写入
+        if (versions.get(stripe) != version) {
+            local.invalidate(key(userId, field));
+        }
+    }
+
+    /**
+     * 本节点写入或删除域后调用：丢弃本地副本并通知其他节点
+     */
+    public void invalidate(String userId, Collection<String> fields) {
+        StringJoiner accepted = new StringJoiner(FIELD_SEPARATOR);
+        versions.incrementAndGet(stripe(userId));
+        for (String field : fields) {
+            if (accepts(field)) {
+                local.invalidate(key(userId, field));
+                accepted.add(field);
+            }
+        }
+        if (accepted.length() > 0) {
+            publish(userId, accepted.toString());
+        }
+    }
+
+    /**
+     * 丢弃用户的全部本地副本并通知其他节点
+     */
+    public void invalidateUser(String userId) {
+        if (topic == null) {
+            return;
+        }
+        invalidateLocalUser(userId);
+        publish(userId, ALL_FIELDS);
+    }
+
+    /**
+     * 异步发布失效通知，不占用写入路径的往返：节点ID|用户ID|域1\n域2...
+     */
+    private void publish(String userId, String fields) {
+        try {
+            topic.publishAsync(nodeId + "|" + userId + "|" + fields);
+        } catch (Exception e) {
+            log.warn("发布会话缓存失效通知失败, userId: {}, fields: {}, error: {}", userId, fields, e.getMessage());
+        }
+    }
+
+    private void onInvalidation(String message) {
+        String[] parts = message.split("\\|", 3);
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        if (ALL_FIELDS.equals(parts[2])) {
+            invalidateLocalUser(parts[1]);
+            return;
+        }
+        versions.incrementAndGet(stripe(parts[1]));
+        for (String field : parts[2].split(FIELD_SEPARATOR)) {
+            local.invalidate(key(parts[1], field));
+        }
+    }
+
+    private void invalidateLocalUser(String userId) {
+        versions.incrementAndGet(stripe(userId));
+        String prefix = userId + KEY_SEPARATOR;
+        local.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private static int stripe(String userId) {
+        return Math.floorMod(String.valueOf(userId).hashCode(), VERSION_STRIPES);
+    }
+
+    private static String key(String userId, String field) {
+        return userId + KEY_SEPARATOR + field;
+    }
+
+    private record Entry(Object value, long expiredAtMs) {
+        int weight() {
+            // 会话域多为大字符串，按UTF-16字符估算堆占用
+            return value instanceof String s ? s.length() * 2 + 64 : 256;
+        }
+    }
+}
@@ -2,7 +2,11 @@ package com.mt.agent.workflow.api.util;
 
 
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
 import org.redisson.api.RBucket;
+import org.redisson.api.RFuture;
+import org.redisson.api.RMapCache;
+import org.redisson.api.RMapCacheAsync;
 import org.redisson.api.RedissonClient;
 import org.redisson.client.codec.StringCodec;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,13 +14,19 @@ import org.springframework.stereotype.Component;
 import com.mt.agent.workflow.api.util.Buffer.HistoryLog;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
  * 基于Redis的中间变量缓存工具类
- * 使用Hash结构存储，支持按用户ID隔离数据
+ * 自定义域按用户存放在同一个Hash（RMapCache）中，每个域可单独设置过期时间；
+ * 多个域的读写通过getFields/setFields或batch()一次往返完成；
+ * 表信息、表结构等大体积会话域经BufferNearCache在进程内缓存，跨节点写入时通过发布订阅失效
  */
 @Slf4j
 @Component
@@ -29,16 +39,19 @@ public class BufferUtil {
     private static final String PYTHON_CODE = "pythonCode";
     private static final String REPLY_CODE = "reply";
     private static final String TABLES = "tables";
+    private static final String FIELDS = "fields";
 
     // 默认过期时间（分钟）
     public static final long DEFAULT_EXPIRE_TIME = 10;
     public static final long DATASOURCE_EXPIRE_TIME = 20;
 
     private final RedissonClient redissonClient;
+    private final BufferNearCache nearCache;
 
     @Autowired
-    public BufferUtil(RedissonClient redissonClient) {
+    public BufferUtil(RedissonClient redissonClient, BufferNearCache nearCache) {
         this.redissonClient = redissonClient;
+        this.nearCache = nearCache;
     }
 
     /**
@@ -75,6 +88,16 @@ public class BufferUtil {
         return getUserBufferKeyPrefix(userId) + RESULT_FIELD;
     }
 
+    /**
+     * 获取用户自定义域所在的Hash
+     *
+     * @param userId 用户ID
+     * @return 自定义域Hash
+     */
+    private RMapCache<String, Object> getFieldMap(String userId) {
+        return redissonClient.getMapCache(getUserBufferKeyPrefix(userId) + FIELDS);
+    }
+
 
     /**
      * 清空用户缓存
@@ -83,16 +106,16 @@ public class BufferUtil {
      */
     public void clearUserCache(String userId) {
         log.info("清空id为{}的用户缓存: ", userId);
+        RBatch batch = redissonClient.createBatch();
         // 删除翻译器1生成代码的缓存
-        redissonClient.getBucket(getPythonCodePrefix(userId), StringCodec.INSTANCE).delete();
+        batch.getBucket(getPythonCodePrefix(userId), StringCodec.INSTANCE).deleteAsync();
         // 删除用户历史对话
-        redissonClient.getBucket(getHistoryLogKey(userId)).delete();
-        // 删除数据库配置ID缓存
-        deleteField(userId, "dbConfigId");
-        // 删除其他自定义字段
-        deleteField(userId, "execution_result");
-        deleteField(userId, "history_context");
-        deleteField(userId, "question");
+        batch.getBucket(getHistoryLogKey(userId)).deleteAsync();
+        // 删除数据库配置ID缓存和其他自定义字段
+        batch.<String, Object>getMapCache(getUserBufferKeyPrefix(userId) + FIELDS)
+                .fastRemoveAsync("dbConfigId", "execution_result", "history_context", "question");
+        batch.execute();
+        nearCache.invalidateUser(userId);
     }
 
 
@@ -141,6 +164,11 @@ public class BufferUtil {
         for (String key : redissonClient.getKeys().getKeysByPattern(pattern)) {
             redissonClient.getBucket(key).delete();
             count++;
+            // 删除了用户的自定义域Hash时同步丢弃近端副本
+            String fieldsSuffix = ":" + FIELDS;
+            if (key.startsWith(KEY_PREFIX) && key.endsWith(fieldsSuffix)) {
+                nearCache.invalidateUser(key.substring(KEY_PREFIX.length(), key.length() - fieldsSuffix.length()));
+            }
         }
         log.info("批量清除缓存完成, 共清除 {} 个键", count);
         return count;
@@ -167,8 +195,8 @@ public class BufferUtil {
      */
     public void setFieldExpire(String userId, String field, long expireTime, TimeUnit timeUnit) {
         log.info("设置域[{}]的过期时间: {}, {} {}", field, userId, expireTime, timeUnit);
-        String fieldKey = getUserBufferKeyPrefix(userId) + field;
-        redissonClient.getBucket(fieldKey).expire(expireTime, timeUnit);
+        getFieldMap(userId).updateEntryExpiration(field, expireTime, timeUnit, 0, TimeUnit.MILLISECONDS);
+        nearCache.invalidate(userId, List.of(field));
     }
 
     /**
@@ -179,8 +207,7 @@ public class BufferUtil {
      */
     public void removeFieldExpire(String userId, String field) {
         log.info("移除域[{}]的过期时间，设为永久: {}", field, userId);
-        String fieldKey = getUserBufferKeyPrefix(userId) + field;
-        redissonClient.getBucket(fieldKey).clearExpire();
+        getFieldMap(userId).updateEntryExpiration(field, 0, TimeUnit.MILLISECONDS, 0, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -191,8 +218,7 @@ public class BufferUtil {
      * @return 剩余时间（毫秒），如果为永久则返回-1，如果不存在则返回-2
      */
     public long getFieldExpireTime(String userId, String field) {
-        String fieldKey = getUserBufferKeyPrefix(userId) + field;
-        return redissonClient.getBucket(fieldKey).remainTimeToLive();
+        return getFieldMap(userId).remainTimeToLive(field);
     }
 
     /**
@@ -211,25 +237,74 @@ public class BufferUtil {
      *
      * @param userId     用户ID
      * @param field      域名称
-     * @param value      域值（必须实现Serializable接口）
+     * @param value      域值（必须实现Serializable接口），为null时删除该域
      * @param expireTime 过期时间（如果小于等于0则永久保存）
      * @param timeUnit   时间单位
      * @param <T>        值类型
      */
     public <T> void setField(String userId, String field, T value, long expireTime, TimeUnit timeUnit) {
 //        log.info("设置自定义域: {}, {}", userId, field);
-        String fieldKey = getUserBufferKeyPrefix(userId) + field;
-        RBucket<T> bucket = redissonClient.getBucket(fieldKey);
+        RMapCache<String, Object> fields = getFieldMap(userId);
 
-        if (expireTime <= 0) {
+        if (value == null) {
+            fields.fastRemove(field);
+        } else if (expireTime <= 0) {
             // 永久保存
-            bucket.set(value);
+            fields.fastPut(field, value);
 //            log.info("自定义域设置为永久保存: {}, {}", userId, field);
         } else {
             // 设置过期时间
-            bucket.set(value, expireTime, timeUnit);
+            fields.fastPut(field, value, expireTime, timeUnit);
 //            log.info("自定义域设置过期时间: {}, {}, {} {}", userId, field, expireTime, timeUnit);
         }
+        if (nearCache.accepts(field)) {
+            nearCache.invalidate(userId, List.of(field));
+            nearCache.put(userId, field, value, expireTime <= 0 ? 0 : timeUnit.toMillis(expireTime));
+        }
+    }
+
+    /**
+     * 批量创建或更新自定义域，所有域使用相同的过期时间，一次往返完成
+     *
+     * @param userId     用户ID
+     * @param values     域名称到域值，值为null的域被删除
+     * @param expireTime 过期时间（如果小于等于0则永久保存）
+     * @param timeUnit   时间单位
+     */
+    public void setFields(String userId, Map<String, ?> values, long expireTime, TimeUnit timeUnit) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        Map<String, Object> present = new HashMap<>();
+        List<String> removed = new ArrayList<>();
+        values.forEach((field, value) -> {
+            if (value != null) {
+                present.put(field, value);
+            } else {
+                removed.add(field);
+            }
+        });
+        // 删除与写入放在同一批次中提交
+        RBatch batch = redissonClient.createBatch();
+        RMapCacheAsync<String, Object> fields = batch.getMapCache(getUserBufferKeyPrefix(userId) + FIELDS);
+        if (!removed.isEmpty()) {
+            fields.fastRemoveAsync(removed.toArray(new String[0]));
+        }
+        if (!present.isEmpty()) {
+            if (expireTime <= 0) {
+                fields.putAllAsync(present);
+            } else {
+                fields.putAllAsync(present, expireTime, timeUnit);
+            }
+        }
+        batch.execute();
+        nearCache.invalidate(userId, values.keySet());
+        long ttlMs = expireTime <= 0 ? 0 : timeUnit.toMillis(expireTime);
+        present.forEach((field, value) -> {
+            if (nearCache.accepts(field)) {
+                nearCache.put(userId, field, value, ttlMs);
+            }
+        });
     }
 
     /**
@@ -255,8 +330,79 @@ public class BufferUtil {
     @SuppressWarnings("unchecked")
     public <T> T getField(String userId, String field) {
 //        log.debug("获取自定义域: 用户id:{}, {}", userId, field);
-        String fieldKey = getUserBufferKeyPrefix(userId) + field;
-        return (T) redissonClient.getBucket(fieldKey).get();
+        if (!nearCache.accepts(field)) {
+            return (T) getFieldMap(userId).get(field);
+        }
+        Object value = nearCache.get(userId, field);
+        if (value == null) {
+            value = loadFields(userId, Set.of(field)).get(field);
+        }
+        return (T) value;
+    }
+
+    /**
+     * 批量获取自定义域的值，一次往返完成
+     *
+     * @param userId 用户ID
+     * @param fields 域名称
+     * @return 域名称到域值，不存在或已过期的域不包含在内
+     */
+    public Map<String, Object> getFields(String userId, Set<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return Map.of();
+        }
+        // 近端缓存命中的域不再回源
+        Map<String, Object> result = new HashMap<>();
+        Set<String> remote = new HashSet<>();
+        for (String field : fields) {
+            Object value = nearCache.accepts(field) ? nearCache.get(userId, field) : null;
+            if (value != null) {
+                result.put(field, value);
+            } else {
+                remote.add(field);
+            }
+        }
+        if (!remote.isEmpty()) {
+            result.putAll(loadFields(userId, remote));
+        }
+        return result;
+    }
+
+    /**
+     * 回源Redis读取域，并按域在Redis中的剩余存活时间写入近端缓存；
+     * 值与剩余时间在同一批次中读取，不增加往返
+     */
+    private Map<String, Object> loadFields(String userId, Set<String> fields) {
+        long version = nearCache.version(userId);
+        RBatch batch = redissonClient.createBatch();
+        RMapCacheAsync<String, Object> fieldMap = batch.getMapCache(getUserBufferKeyPrefix(userId) + FIELDS);
+        RFuture<Map<String, Object>> values = fieldMap.getAllAsync(fields);
+        Map<String, RFuture<Long>> ttls = new HashMap<>();
+        for (String field : fields) {
+            if (nearCache.accepts(field)) {
+                ttls.put(field, fieldMap.remainTimeToLiveAsync(field));
+            }
+        }
+        batch.execute();
+        Map<String, Object> loaded = values.toCompletableFuture().join();
+        ttls.forEach((field, ttl) -> {
+            long remainTtlMs = ttl.toCompletableFuture().join();
+            // -1表示永久；-2或0表示读取后已过期，不缓存
+            if (loaded.get(field) != null && (remainTtlMs > 0 || remainTtlMs == -1)) {
+                nearCache.fill(userId, field, loaded.get(field), Math.max(0, remainTtlMs), version);
+            }
+        });
+        return loaded;
+    }
+
+    /**
+     * 创建自定义域的批量写入，过期时间不同的多个域通过管道一次提交
+     *
+     * @param userId 用户ID
+     * @return 批量写入
+     */
+    public FieldBatch batch(String userId) {
+        return new FieldBatch(redissonClient.createBatch(), getUserBufferKeyPrefix(userId) + FIELDS, userId, nearCache);
     }
 
     /**
@@ -268,8 +414,9 @@ public class BufferUtil {
      */
     public boolean deleteField(String userId, String field) {
         log.info("删除自定义域: {}, {}", userId, field);
-        String fieldKey = getUserBufferKeyPrefix(userId) + field;
-        return redissonClient.getBucket(fieldKey).delete();
+        boolean deleted = getFieldMap(userId).fastRemove(field) > 0;
+        nearCache.invalidate(userId, List.of(field));
+        return deleted;
     }
 
     /**
@@ -280,8 +427,7 @@ public class BufferUtil {
      * @return 是否存在
      */
     public boolean hasField(String userId, String field) {
-        String fieldKey = getUserBufferKeyPrefix(userId) + field;
-        return redissonClient.getBucket(fieldKey).isExists();
+        return getFieldMap(userId).containsKey(field);
     }
 
 
@@ -512,4 +658,51 @@ public class BufferUtil {
         return (String) redissonClient.getBucket(getOutputResultKey(userId)).get();
     }
 
+    /**
+     * 自定义域批量写入，execute()时通过管道一次提交
+     */
+    public static class FieldBatch {
+        private final RBatch batch;
+        private final RMapCacheAsync<String, Object> fields;
+        private final String userId;
+        private final BufferNearCache nearCache;
+        private final Set<String> touched = new HashSet<>();
+
+        private FieldBatch(RBatch batch, String fieldMapKey, String userId, BufferNearCache nearCache) {
+            this.batch = batch;
+            this.fields = batch.getMapCache(fieldMapKey);
+            this.userId = userId;
+            this.nearCache = nearCache;
+        }
+
+        /**
+         * 写入域（过期时间小于等于0则永久保存，值为null则删除）
+         */
+        public FieldBatch set(String field, Object value, long expireTime, TimeUnit timeUnit) {
+            if (value == null) {
+                fields.fastRemoveAsync(field);
+            } else if (expireTime <= 0) {
+                fields.fastPutAsync(field, value);
+            } else {
+                fields.fastPutAsync(field, value, expireTime, timeUnit);
+            }
+            touched.add(field);
+            return this;
+        }
+
+        /**
+         * 删除域
+         */
+        public FieldBatch delete(String field) {
+            fields.fastRemoveAsync(field);
+            touched.add(field);
+            return this;
+        }
+
+        public void execute() {
+            batch.execute();
+            nearCache.invalidate(userId, touched);
+        }
+    }
+
 }
@@ -0,0 +1,36 @@
+package com.mt.agent.workflow.api.util;
+
+/**
+ * 缓存键指纹工具类
+ * 各字段按长度前缀拼接，避免字段边界不同的输入拼出相同文本
+ */
+public class CacheKeyUtil {
+
+    private CacheKeyUtil() {
+    }
+
+    /**
+     * 各字段按长度前缀拼接后取MD5
+     *
+     * @param parts 参与指纹的字段，null与空串区分
+     * @return MD5指纹
+     */
+    public static String fingerprint(String... parts) {
+        StringBuilder sb = new StringBuilder();
+        for (String part : parts) {
+            appendPart(sb, part);
+        }
+        return MD5Util.encrypt(sb.toString());
+    }
+
+    /**
+     * 追加一个长度前缀字段，null记为"-1:"
+     */
+    public static void appendPart(StringBuilder sb, String part) {
+        if (part == null) {
+            sb.append("-1:");
+        } else {
+            sb.append(part.length()).append(':').append(part);
+        }
+    }
+}
@@ -37,6 +37,8 @@ CREATE TABLE `api_config` (
   `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   `rate_limit` int DEFAULT '60' COMMENT '速率限制（每分钟最大请求数）',
   `timeout` int DEFAULT '30' COMMENT '超时时间（秒）',
+  `cache_refresh_seconds` int DEFAULT NULL COMMENT '热点查询缓存预刷新周期（秒），为空或0不刷新',
+  `cache_refresh_top_k` int DEFAULT '10' COMMENT '每次预刷新的热点查询数',
   PRIMARY KEY (`id`),
   UNIQUE KEY `uk_api_path` (`api_path`),
   KEY `idx_user_id` (`user_id`),
@@ -129,6 +131,12 @@ CREATE TABLE `db_config` (
   `password_cipher` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '加密后的密码',
   `database_name` varchar(50) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '数据库名称',
   `status` tinyint NOT NULL DEFAULT '1' COMMENT '状态（1启用 0禁用）',
+  `pool_max_size` int NULL DEFAULT NULL COMMENT '连接池最大连接数，为空使用默认值',
+  `pool_min_idle` int NULL DEFAULT NULL COMMENT '连接池最小空闲连接数，为空使用默认值',
+  `connection_timeout_ms` bigint NULL DEFAULT NULL COMMENT '获取连接超时（毫秒），为空使用默认值',
+  `idle_timeout_ms` bigint NULL DEFAULT NULL COMMENT '空闲连接回收时间（毫秒），为空使用默认值',
+  `max_lifetime_ms` bigint NULL DEFAULT NULL COMMENT '连接最长存活时间（毫秒），为空使用默认值',
+  `fetch_size` int NULL DEFAULT NULL COMMENT '查询默认fetchSize，为空使用默认值',
   `created_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `updated_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   PRIMARY KEY (`id`)
@@ -184,6 +192,9 @@ CREATE TABLE `sql_execution` (
   `affected_rows` bigint DEFAULT NULL COMMENT '影响行数',
   `error_msg` text COMMENT '错误信息',
   `result_cache_key` varchar(255) DEFAULT NULL COMMENT '结果缓存的Key',
+  `executed_sql` text COMMENT '改写LIMIT后实际执行的SQL，未改写时为空',
+  `estimated_rows` bigint DEFAULT NULL COMMENT '执行计划预估扫描行数',
+  `plan_cost` double DEFAULT NULL COMMENT '执行计划估算代价',
   `created_at_ms` bigint NOT NULL COMMENT '创建时间（毫秒）',
   `finished_at_ms` bigint DEFAULT NULL COMMENT '完成时间（毫秒）',
   PRIMARY KEY (`id`)
@@ -201,6 +212,8 @@ CREATE TABLE `sql_guard_policy` (
   `deny_keywords` text COMMENT '禁止的关键词（逗号分隔）',
   `table_blacklist` text COMMENT '表黑名单（逗号分隔）',
   `table_whitelist` text COMMENT '表白名单（逗号分隔）',
+  `deny_functions` text COMMENT '禁止调用的函数（逗号分隔），与全局默认禁止函数合并',
+  `max_subquery_depth` int DEFAULT NULL COMMENT '子查询最大嵌套层数，为空时使用全局默认值',
   `max_scan_rows` bigint DEFAULT NULL COMMENT '最大扫描行数限制',
   `max_timeout_ms` int DEFAULT NULL COMMENT '最大超时时间（毫秒）',
   `status` int DEFAULT '1' COMMENT '策略状态（0禁用 1启用）',
@@ -238,6 +251,9 @@ CREATE TABLE `query_result_cache` (
   `schema_version_id` bigint DEFAULT NULL,
   `sql_hash` varchar(64) NOT NULL COMMENT 'SQL语句的Hash值',
   `preview_json` json DEFAULT NULL COMMENT '结果预览JSON',
+  `preview_blob` mediumblob DEFAULT NULL COMMENT '压缩后的结果负载',
+  `raw_size_bytes` bigint DEFAULT NULL COMMENT '结果负载压缩前大小',
+  `stored_size_bytes` bigint DEFAULT NULL COMMENT '结果负载压缩后大小',
   `result_path` varchar(1024) DEFAULT NULL COMMENT '完整结果文件路径',
   `row_count` bigint DEFAULT NULL COMMENT '总行数',
   `column_headers_json` json DEFAULT NULL COMMENT '列头信息JSON',
@@ -245,7 +261,8 @@ CREATE TABLE `query_result_cache` (
   `expired_at_ms` bigint NOT NULL COMMENT '过期时间',
   `created_at_ms` bigint NOT NULL,
   PRIMARY KEY (`id`),
-  KEY `idx_sql_hash` (`sql_hash`)
+  KEY `idx_sql_hash` (`sql_hash`),
+  KEY `idx_lookup` (`tenant_id`,`db_config_id`,`schema_version_id`,`sql_hash`,`expired_at_ms`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='查询结果缓存表';
 
 -- ----------------------------
@@ -283,6 +300,8 @@ CREATE TABLE IF NOT EXISTS `api_config` (
   `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   `rate_limit` int DEFAULT '60' COMMENT '速率限制（每分钟最大请求数）',
   `timeout` int DEFAULT '30' COMMENT '超时时间（秒）',
+  `cache_refresh_seconds` int DEFAULT NULL COMMENT '热点查询缓存预刷新周期（秒），为空或0不刷新',
+  `cache_refresh_top_k` int DEFAULT '10' COMMENT '每次预刷新的热点查询数',
   PRIMARY KEY (`id`),
   UNIQUE KEY `uk_api_path` (`api_path`),
   KEY `idx_user_id` (`user_id`),
@@ -0,0 +1,134 @@
+package com.mt.agent.workflow.api.infra;
+
+import com.mt.agent.workflow.api.entity.SqlGuardPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * 测试CompiledSqlPolicy的策略检查
+ */
+public class CompiledSqlPolicyTest {
+
+    private static CompiledSqlPolicy compile(String whitelist, String blacklist, String denyKeywords, Integer maxDepth) {
+        SqlGuardPolicy policy = new SqlGuardPolicy();
+        policy.setReadOnly(1);
+        policy.setTableWhitelist(whitelist);
+        policy.setTableBlacklist(blacklist);
+        policy.setDenyKeywords(denyKeywords);
+        policy.setMaxSubqueryDepth(maxDepth);
+        return CompiledSqlPolicy.compile(policy, List.of("SLEEP", "BENCHMARK"), 5);
+    }
+
+    private static void assertAllowed(CompiledSqlPolicy policy, String sql) {
+        assertAllowed(policy, sql, null);
+    }
+
+    private static void assertAllowed(CompiledSqlPolicy policy, String sql, String database) {
+        try {
+            policy.check(sql, database);
+        } catch (IllegalArgumentException e) {
+            assert false : "应允许执行: " + sql + "，实际: " + e.getMessage();
+        }
+    }
+
+    private static void assertRejected(CompiledSqlPolicy policy, String sql) {
+        assertRejected(policy, sql, null);
+    }
+
+    private static void assertRejected(CompiledSqlPolicy policy, String sql, String database) {
+        boolean rejected = false;
+        try {
+            policy.check(sql, database);
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        assert rejected : "应拒绝执行: " + sql;
+    }
+
+    @Test
+    public void testReadOnly() {
+        CompiledSqlPolicy policy = CompiledSqlPolicy.READ_ONLY;
+        assertAllowed(policy, "SELECT * FROM orders WHERE note = 'UPDATE me; DROP TABLE x'");
+        assertAllowed(policy, "select update_time, REPLACE(name, 'a', 'b') from orders -- delete later\n");
+        assertAllowed(policy, "SELECT o.`update` FROM orders o /* INSERT */ WHERE o.id = 1;");
+        assertAllowed(policy, "WITH t AS (SELECT 1 AS a) SELECT a FROM t");
+
+        assertRejected(policy, "DELETE FROM orders");
+        assertRejected(policy, "select 1; drop table orders");
+        assertRejected(policy, "WITH t AS (SELECT id FROM orders) UPDATE orders SET a = 1");
+        assertRejected(policy, "SELECT * INTO OUTFILE '/tmp/x' FROM orders");
+        // 可执行注释中的内容会被MySQL执行
+        assertRejected(policy, "SELECT 1 /*!50000 ; DELETE FROM orders */");
+    }
+
+    @Test
+    public void testTableLists() {
+        CompiledSqlPolicy policy = compile("orders, users, report.daily", "users_secret", null, null);
+        assertAllowed(policy, "SELECT * FROM orders o JOIN `users` u ON u.id = o.user_id");
+        assertAllowed(policy, "SELECT * FROM report.daily, orders WHERE EXTRACT(YEAR FROM created_at) = 2024");
+        assertAllowed(policy, "WITH recent AS (SELECT * FROM orders) SELECT * FROM recent");
+        assertAllowed(policy, "SELECT * FROM daily");
+
+        assertRejected(policy, "SELECT * FROM orders, payments");
+        assertRejected(policy, "SELECT * FROM orders WHERE id IN (SELECT order_id FROM `payments`)");
+        assertRejected(policy, "SELECT * FROM orders o LEFT JOIN other.daily d ON d.id = o.id");
+        assertRejected(policy, "SELECT * FROM (SELECT * FROM users_secret) t");
+        assertRejected(policy, "SELECT a--x FROM payments");
+    }
+
+    @Test
+    public void testTableStatement() {
+        CompiledSqlPolicy policy = compile("orders", "users_secret", null, 1);
+        assertAllowed(policy, "SELECT * FROM orders UNION ALL TABLE orders ORDER BY id LIMIT 10");
+        assertAllowed(policy, "SELECT `table` FROM orders");
+
+        assertRejected(policy, "SELECT * FROM orders UNION TABLE users_secret");
+        assertRejected(policy, "SELECT * FROM orders UNION DISTINCT TABLE payments");
+        assertRejected(policy, "SELECT * FROM orders WHERE id IN (TABLE users_secret)");
+        assertRejected(policy, "SELECT * FROM orders EXCEPT (TABLE payments)");
+        assertRejected(policy, "SELECT * FROM orders WHERE id IN (SELECT id FROM orders WHERE id IN (TABLE orders))");
+    }
+
+    @Test
+    public void testQualifiedNames() {
+        CompiledSqlPolicy policy = compile("user, orders, report.daily", "users_secret", null, null);
+        assertAllowed(policy, "SELECT * FROM shop.orders o JOIN `user` u ON u.id = o.user_id", "shop");
+        assertAllowed(policy, "SELECT * FROM report.daily", "shop");
+
+        // 表名项只代表默认库下的表
+        assertRejected(policy, "SELECT * FROM mysql.user", "shop");
+        assertRejected(policy, "SELECT * FROM otherdb.orders", "shop");
+        assertRejected(policy, "SELECT * FROM mysql.user");
+        assertRejected(policy, "SELECT * FROM daily", "shop");
+
+        // 黑名单表名项拦截任意库下的同名表
+        CompiledSqlPolicy blacklistOnly = compile(null, "users_secret", null, null);
+        assertAllowed(blacklistOnly, "SELECT * FROM otherdb.orders", "shop");
+        assertRejected(blacklistOnly, "SELECT * FROM otherdb.users_secret", "shop");
+    }
+
+    @Test
+    public void testCteScope() {
+        CompiledSqlPolicy policy = compile("orders", "users_secret", null, null);
+        assertAllowed(policy, "WITH a AS (SELECT * FROM orders), b AS (SELECT * FROM a) SELECT * FROM b");
+        assertAllowed(policy, "WITH a (id) AS ((SELECT id FROM orders) UNION (SELECT 1)) SELECT * FROM a");
+        assertAllowed(policy, "WITH RECURSIVE r AS (SELECT 1 AS n UNION ALL SELECT n + 1 FROM r WHERE n < 3) SELECT * FROM r");
+
+        // 非递归CTE体内的同名引用读取的是真实表
+        assertRejected(policy, "WITH users_secret AS (SELECT * FROM users_secret) SELECT * FROM users_secret");
+        assertRejected(policy, "WITH payments AS (SELECT * FROM payments) SELECT * FROM orders");
+    }
+
+    @Test
+    public void testFunctionsKeywordsAndDepth() {
+        CompiledSqlPolicy policy = compile(null, null, "[\"information_schema\", \"INTO DUMPFILE\"]", 2);
+        assertAllowed(policy, "SELECT 'sleep(10)', benchmark_id FROM orders");
+        assertAllowed(policy, "SELECT * FROM a WHERE id IN (SELECT id FROM b WHERE x IN (SELECT x FROM c))");
+
+        assertRejected(policy, "SELECT SLEEP(10)");
+        assertRejected(policy, "SELECT benchmark (1000000, md5('a'))");
+        assertRejected(policy, "SELECT * FROM information_schema.tables");
+        assertRejected(policy, "SELECT * FROM a WHERE id IN (SELECT id FROM b WHERE x IN (SELECT x FROM c WHERE y IN (SELECT y FROM d)))");
+    }
+}
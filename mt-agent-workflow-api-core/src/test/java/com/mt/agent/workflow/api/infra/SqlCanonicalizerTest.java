@@ -0,0 +1,84 @@
+package com.mt.agent.workflow.api.infra;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * 测试SqlCanonicalizer生成的缓存指纹
+ */
+public class SqlCanonicalizerTest {
+
+    private static void assertSame(String a, String b) {
+        String ca = SqlCanonicalizer.canonicalize(a);
+        String cb = SqlCanonicalizer.canonicalize(b);
+        assert ca.equals(cb) : "应得到相同的规范形式:\n" + ca + "\n" + cb;
+    }
+
+    private static void assertDifferent(String a, String b) {
+        String ca = SqlCanonicalizer.canonicalize(a);
+        String cb = SqlCanonicalizer.canonicalize(b);
+        assert !ca.equals(cb) : "应得到不同的规范形式: " + ca;
+    }
+
+    @Test
+    public void testSuperficialDifferencesAreIgnored() {
+        assertSame(
+                "SELECT a, b FROM orders o WHERE o.status = 'Paid' AND o.amount > 10",
+                "select a,b from `orders` x where 10 < x.amount and (x.status='Paid');");
+
+        assertSame(
+                "SELECT o.region, SUM(o.amount) AS total FROM orders o JOIN users u ON u.id = o.user_id "
+                        + "WHERE (o.y = 1 OR o.z = 2) AND o.k = 3 GROUP BY o.region ORDER BY total DESC LIMIT 10",
+                "select x.region, sum(x.amount) as total from orders x join users y on x.user_id = y.id "
+                        + "where x.k=3 and (x.z=2 or x.y=1) group by x.region order by total desc limit 10");
+    }
+
+    @Test
+    public void testSemanticDifferencesAreKept() {
+        // 字符串字面量区分大小写
+        assertDifferent(
+                "SELECT a FROM t WHERE name = 'Paid'",
+                "SELECT a FROM t WHERE name = 'paid'");
+        // MySQL中双引号默认是字符串
+        assertDifferent(
+                "SELECT a FROM t WHERE name = \"Bob\"",
+                "SELECT a FROM t WHERE name = \"BOB\"");
+        // 括号改变运算优先级
+        assertDifferent(
+                "SELECT * FROM t WHERE (a = 1 AND b = 2) OR c = 3",
+                "SELECT * FROM t WHERE a = 1 AND (b = 2 OR c = 3)");
+        // 选择列的顺序和列别名决定结果结构
+        assertDifferent("SELECT a, b FROM t", "SELECT b, a FROM t");
+        assertDifferent("SELECT a AS x FROM t", "SELECT a AS y FROM t");
+        // 别名指向不同的表
+        assertDifferent(
+                "SELECT p.c FROM x p JOIN y q ON p.id = q.id",
+                "SELECT q.c FROM x p JOIN y q ON p.id = q.id");
+    }
+
+    @Test
+    public void testResultLabelsAreKept() {
+        // 结果列名随选择项写法变化，命中缓存的查询必须得到相同的列名
+        assertDifferent("SELECT Name FROM users", "select name from users");
+        assertDifferent("SELECT SUM(Price) FROM t", "SELECT sum(price) FROM t");
+        assertDifferent("SELECT a+b FROM t", "SELECT a + b FROM t");
+        assertSame("SELECT u.Name, COUNT(*) AS cnt FROM users u", "select x.Name, count(*) as cnt from `users` x");
+
+        assertLabels("SELECT u.Name, `Age`, SUM(Price), a + b AS total, o.* FROM users u",
+                "Name", "Age", "SUM(Price)", "total", "*");
+        assertLabels("WITH t AS (SELECT id FROM x) SELECT Max(id), 'a,b' FROM t", "Max(id)", "'a,b'");
+        assertLabels("SELECT Id FROM a UNION SELECT id FROM b", "Id");
+    }
+
+    private static void assertLabels(String sql, String... expected) {
+        List<String> labels = SqlCanonicalizer.resultLabels(sql);
+        assert labels.equals(List.of(expected)) : "结果列标签不正确: " + labels;
+    }
+
+    @Test
+    public void testUnparsableSqlFallsBackToLexicalForm() {
+        String canonical = SqlCanonicalizer.canonicalize("SELEC  a FROM   t WHERE b = 'Keep Case'");
+        assert canonical.equals("selec a from t where b = 'Keep Case'") : "词法规范化结果不正确: " + canonical;
+    }
+}
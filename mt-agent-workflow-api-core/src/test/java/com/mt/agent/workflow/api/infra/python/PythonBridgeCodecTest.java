@@ -0,0 +1,70 @@
+package com.mt.agent.workflow.api.infra.python;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mt.agent.workflow.api.config.PythonBridgeProperties;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 测试桥接协议的编码协商与编解码
+ */
+public class PythonBridgeCodecTest {
+
+    private static PythonBridgeCodec codec(boolean compactEncoding) {
+        PythonBridgeProperties properties = new PythonBridgeProperties();
+        properties.setCompactEncoding(compactEncoding);
+        return new PythonBridgeCodec(new ObjectMapper(), properties);
+    }
+
+    private static Map<String, Object> sampleChunk() {
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("columns", List.of("id", "name", "amount"));
+        value.put("rows", List.of(
+                Arrays.asList(1, "华东", 12.5),
+                Arrays.asList(2, null, 0.25)));
+        value.put("done", true);
+        return value;
+    }
+
+    @Test
+    public void testCborRoundTrip() throws IOException {
+        PythonBridgeCodec codec = codec(true);
+        byte encoding = codec.negotiate(List.of("json", "cbor"));
+        assert encoding == BridgeFrame.ENCODING_CBOR : "双方都支持时应使用CBOR";
+
+        Map<String, Object> value = sampleChunk();
+        byte[] payload = codec.encode(value, encoding);
+        assert payload[0] != '{' : "CBOR负载不应是JSON文本";
+        assert payload.length < codec.encode(value, BridgeFrame.ENCODING_JSON).length : "CBOR负载应比JSON小";
+
+        Object decoded = codec.decode(new BridgeFrame(BridgeFrame.CHUNK, encoding, 7, payload), Map.class);
+        assert value.equals(decoded) : "CBOR往返后应不变，实际: " + decoded;
+    }
+
+    @Test
+    public void testJsonFallback() throws IOException {
+        assert codec(true).negotiate(List.of("json")) == BridgeFrame.ENCODING_JSON : "Python端不支持CBOR时应使用JSON";
+        assert codec(true).negotiate(null) == BridgeFrame.ENCODING_JSON : "未声明编码时应使用JSON";
+
+        PythonBridgeCodec codec = codec(false);
+        assert codec.negotiate(List.of("json", "cbor")) == BridgeFrame.ENCODING_JSON : "关闭紧凑编码时应使用JSON";
+
+        Map<String, Object> value = sampleChunk();
+        byte[] payload = codec.encode(value, BridgeFrame.ENCODING_JSON);
+        Object decoded = codec.decode(new BridgeFrame(BridgeFrame.CHUNK, BridgeFrame.ENCODING_JSON, 7, payload), Map.class);
+        assert value.equals(decoded) : "JSON往返后应不变，实际: " + decoded;
+
+        boolean rejected = false;
+        try {
+            codec.decode(new BridgeFrame(BridgeFrame.CHUNK, BridgeFrame.ENCODING_CBOR, 7, payload), Map.class);
+        } catch (IOException e) {
+            rejected = true;
+        }
+        assert rejected : "关闭紧凑编码时应拒绝CBOR帧";
+    }
+}
@@ -0,0 +1,112 @@
+package com.mt.agent.workflow.api.infra.result;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 测试ResultTable列式存储、行视图与编码
+ */
+public class ResultTableTest {
+
+    private ResultTable sampleTable() {
+        ResultTable.Builder builder = ResultTable.builder(List.of("id", "name", "amount", "score", "flag", "created_at"));
+        for (int i = 0; i < 100; i++) {
+            builder.addRow(new Object[]{
+                    (long) i,
+                    i % 3 == 0 ? "华东" : (i % 3 == 1 ? "华南" : null),
+                    new BigDecimal(i + ".50"),
+                    i % 2 == 0 ? i * 1.5 : null,
+                    i % 2 == 0,
+                    new Timestamp(1700000000000L + i)
+            });
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testTypedColumnsAndRowViews() {
+        ResultTable table = sampleTable();
+
+        assert table.getRowCount() == 100 : "行数应为100";
+        assert table.getColumnType(0) == ResultTable.ColumnType.LONG : "id列应为LONG";
+        assert table.getColumnType(1) == ResultTable.ColumnType.STRING : "name列应为STRING";
+        assert table.getColumnType(2) == ResultTable.ColumnType.OBJECT : "amount列应为OBJECT";
+        assert table.getColumnType(3) == ResultTable.ColumnType.DOUBLE : "score列应为DOUBLE";
+        assert table.getColumnType(4) == ResultTable.ColumnType.BOOLEAN : "flag列应为BOOLEAN";
+
+        Map<String, Object> row = table.rows().get(4);
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("id", 4L);
+        expected.put("name", "华南");
+        expected.put("amount", new BigDecimal("4.50"));
+        expected.put("score", 6.0);
+        expected.put("flag", true);
+        expected.put("created_at", new Timestamp(1700000000004L));
+        assert expected.equals(row) : "行视图应与原始行一致，实际: " + row;
+        assert row.get("name") != null && table.rows().get(2).get("name") == null : "空值应保持为null";
+        assert List.copyOf(row.keySet()).equals(table.getColumns()) : "行视图应保持列顺序";
+    }
+
+    @Test
+    public void testMixedTypesFallBackToObject() {
+        ResultTable table = ResultTable.builder(List.of("v"))
+                .addRow(new Object[]{1})
+                .addRow(new Object[]{2L})
+                .addRow(new Object[]{null})
+                .build();
+
+        assert table.getColumnType(0) == ResultTable.ColumnType.OBJECT : "混合类型应退化为OBJECT";
+        assert Integer.valueOf(1).equals(table.get(0, 0)) : "原有值类型应保留";
+        assert Long.valueOf(2L).equals(table.get(1, 0)) : "新值类型应保留";
+        assert table.get(2, 0) == null : "空值应保留";
+    }
+
+    @Test
+    public void testBinaryRoundTrip() {
+        ResultTable table = sampleTable();
+        ResultTable decoded = ResultTableCodec.fromBinary(ResultTableCodec.toBinary(table));
+
+        assert decoded.getColumns().equals(table.getColumns()) : "列名应一致";
+        assert decoded.rows().equals(table.rows()) : "解码后的行应一致";
+        for (int c = 0; c < table.getColumnCount(); c++) {
+            assert decoded.getColumnType(c) == table.getColumnType(c) : "列类型应一致: " + c;
+        }
+    }
+
+    @Test
+    public void testCompressedPayloadRoundTrip() {
+        ResultTable table = sampleTable();
+        ResultPayloadCodec.Encoded encoded = ResultPayloadCodec.encode(table, 100, 42, 1);
+
+        assert encoded.storedBytes() < encoded.rawBytes() : "重复数据压缩后应变小";
+        assert ResultPayloadCodec.rawBytes(encoded.bytes()) == encoded.rawBytes() : "头部应记录原始大小";
+
+        ResultPayloadCodec.Decoded decoded = ResultPayloadCodec.decode(encoded.bytes());
+        assert decoded.rowCount() == 100 : "行数应一致";
+        assert decoded.durationMs() == 42 : "耗时应一致";
+        assert decoded.table().rows().equals(table.rows()) : "解码后的行应一致";
+
+        ResultTable empty = ResultTable.empty(List.of("id"));
+        assert ResultPayloadCodec.decode(ResultPayloadCodec.encode(empty, 0, 0, 1).bytes()).table().getRowCount() == 0 : "空结果应可往返";
+    }
+
+    @Test
+    public void testCsvEscaping() throws Exception {
+        ResultTable table = ResultTable.builder(List.of("a", "b"))
+                .addRow(new Object[]{"x,y", "say \"hi\""})
+                .addRow(new Object[]{null, 1})
+                .build();
+        StringWriter writer = new StringWriter();
+        ResultTableCodec.writeCsv(table, writer);
+
+        String expected = "a,b\r\n\"x,y\",\"say \"\"hi\"\"\"\r\n,1\r\n";
+        assert expected.equals(writer.toString()) : "CSV转义不正确: " + Arrays.toString(writer.toString().split("\r\n"));
+    }
+}